@@ -1,16 +1,942 @@
 package com.nes;
 
+import java.nio.ByteBuffer;
+
 /**
- * Stub for the Audio Processing Unit (APU).
+ * NES Audio Processing Unit (2A03): two pulse channels, triangle, noise,
+ * DMC and the frame counter.
+ *
+ * The APU is run lazily in CPU cycles: the bus catches it up to the current
+ * CPU cycle before every register access, at the cycle of its next IRQ (see
+ * getNextIrqCycle) and at the end of every run().
+ * Channels jump from one timer event to the next instead of being clocked
+ * per cycle, and only report amplitude changes to a BlipBuffer, which
+ * resamples them band-limited to the output rate.
  */
 public class Apu {
 
+    public static final int CPU_CLOCK_RATE = 1789773;  // NTSC
+    public static final int DEFAULT_SAMPLE_RATE = 48000;
+
+    // Longest stretch emulated before its samples are handed to the buffer
+    private static final int MAX_CHUNK_CYCLES = 4096;
+
+    private static final int[] LENGTH_TABLE = {
+        10, 254, 20, 2, 40, 4, 80, 6, 160, 8, 60, 10, 14, 12, 26, 14,
+        12, 16, 24, 18, 48, 20, 96, 22, 192, 24, 72, 26, 16, 28, 32, 30
+    };
+
+    private static final int[][] DUTY_TABLE = {
+        {0, 1, 0, 0, 0, 0, 0, 0},
+        {0, 1, 1, 0, 0, 0, 0, 0},
+        {0, 1, 1, 1, 1, 0, 0, 0},
+        {1, 0, 0, 1, 1, 1, 1, 1}
+    };
+
+    private static final int[] TRIANGLE_TABLE = {
+        15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0,
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15
+    };
+
+    // Periods in CPU cycles (NTSC)
+    private static final int[] NOISE_PERIODS = {
+        4, 8, 16, 32, 64, 96, 128, 160, 202, 254, 380, 508, 762, 1016, 2034, 4068
+    };
+    private static final int[] DMC_PERIODS = {
+        428, 380, 340, 320, 286, 254, 226, 214, 190, 160, 142, 128, 106, 84, 72, 54
+    };
+
+    // Frame counter steps in CPU cycles
+    private static final int FRAME_STEP_1 = 7457;
+    private static final int FRAME_STEP_2 = 14913;
+    private static final int FRAME_STEP_3 = 22371;
+    private static final int FRAME_STEP_4 = 29829;
+    private static final int FRAME_STEP_5 = 37281;
+
+    // Linear mixer weights per output step (nesdev linear approximation),
+    // scaled so the loudest mix stays inside a 16-bit sample
+    private static final int PULSE_WEIGHT = 241;
+    private static final int TRIANGLE_WEIGHT = 272;
+    private static final int NOISE_WEIGHT = 158;
+    private static final int DMC_WEIGHT = 107;
+
+    private Bus bus;
+    private BlipBuffer blip = new BlipBuffer(CPU_CLOCK_RATE, DEFAULT_SAMPLE_RATE, 16384);
+
+    // CPU cycles emulated so far, and the cycle the blip frame started at
+    private long time = 0;
+    private long frameStart = 0;
+
+    private final Pulse pulse1 = new Pulse(true);
+    private final Pulse pulse2 = new Pulse(false);
+    private final Triangle triangle = new Triangle();
+    private final Noise noise = new Noise();
+    private final Dmc dmc = new Dmc();
+
+    // Frame counter
+    private boolean fiveStepMode = false;
+    private boolean irqInhibit = false;
+    private boolean frameIrq = false;
+    private int frameCycle = 0;
+
+    public void connectBus(Bus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * Use a different output sample rate. Buffered samples are discarded.
+     */
+    public void setSampleRate(int sampleRate) {
+        blip = new BlipBuffer(CPU_CLOCK_RATE, sampleRate, 16384);
+    }
+
+    public int getSampleRate() {
+        return blip.getSampleRate();
+    }
+
+    public void reset() {
+        time = 0;
+        frameStart = 0;
+        cpuWrite(0x4015, (byte) 0x00);
+        cpuWrite(0x4017, (byte) 0x00);
+        frameCycle = 0;
+        frameIrq = false;
+        dmc.irq = false;
+        restartOutput();
+    }
+
+    /**
+     * Catch up to a CPU cycle.
+     * @param cpuCycle Absolute CPU cycle count to run to
+     */
+    public void run(long cpuCycle) {
+        while (time < cpuCycle) {
+            int cycles = (int) Math.min(cpuCycle - time, MAX_CHUNK_CYCLES);
+
+            // Split the chunk at frame counter steps
+            while (cycles > 0) {
+                int toStep = nextFrameStep() - frameCycle;
+                int n = Math.min(cycles, toStep);
+                runChannels(n);
+                frameCycle += n;
+                cycles -= n;
+                if (n == toStep) {
+                    clockFrameCounter();
+                }
+            }
+
+            blip.endFrame((int) (time - frameStart));
+            frameStart = time;
+        }
+    }
+
+    private void runChannels(int cycles) {
+        int start = (int) (time - frameStart);
+        pulse1.run(start, cycles);
+        pulse2.run(start, cycles);
+        triangle.run(start, cycles);
+        noise.run(start, cycles);
+        dmc.run(start, cycles);
+        time += cycles;
+    }
+
+    private int nextFrameStep() {
+        if (frameCycle < FRAME_STEP_1) return FRAME_STEP_1;
+        if (frameCycle < FRAME_STEP_2) return FRAME_STEP_2;
+        if (frameCycle < FRAME_STEP_3) return FRAME_STEP_3;
+        if (frameCycle < FRAME_STEP_4) return FRAME_STEP_4;
+        return FRAME_STEP_5;
+    }
+
+    private void clockFrameCounter() {
+        switch (frameCycle) {
+            case FRAME_STEP_1:
+            case FRAME_STEP_3:
+                quarterFrame();
+                break;
+            case FRAME_STEP_2:
+                quarterFrame();
+                halfFrame();
+                break;
+            case FRAME_STEP_4:
+                if (!fiveStepMode) {
+                    quarterFrame();
+                    halfFrame();
+                    if (!irqInhibit) frameIrq = true;
+                    frameCycle = 0;
+                }
+                break;
+            case FRAME_STEP_5:
+                quarterFrame();
+                halfFrame();
+                frameCycle = 0;
+                break;
+        }
+        updateOutputs();
+    }
+
+    private void quarterFrame() {
+        pulse1.envelope.clock();
+        pulse2.envelope.clock();
+        triangle.clockLinearCounter();
+        noise.envelope.clock();
+    }
+
+    private void halfFrame() {
+        pulse1.clockLengthAndSweep();
+        pulse2.clockLengthAndSweep();
+        triangle.clockLength();
+        noise.clockLength();
+    }
+
+    private void updateOutputs() {
+        int t = (int) (time - frameStart);
+        pulse1.update(t);
+        pulse2.update(t);
+        triangle.update(t);
+        noise.update(t);
+        dmc.update(t);
+    }
+
+    /**
+     * True while the frame counter or DMC interrupt flag is set.
+     */
+    public boolean isIrqPending() {
+        return frameIrq || dmc.irq;
+    }
+
+    /**
+     * True while the DMC is playing a sample, i.e. still fetching bytes
+     * from PRG memory.
+     */
+    public boolean isDmcActive() {
+        return dmc.bytesRemaining > 0;
+    }
+
+    /**
+     * CPU cycle at which the frame counter or DMC raises its next IRQ flag,
+     * or -1 if neither will without a register write. The bus syncs the APU
+     * there so the IRQ reaches the CPU on time despite the lazy run.
+     */
+    public long getNextIrqCycle() {
+        long next = -1;
+        if (!fiveStepMode && !irqInhibit && !frameIrq) {
+            next = time + FRAME_STEP_4 - frameCycle;
+        }
+        long dmcIrq = dmc.nextIrqCycle();
+        if (dmcIrq >= 0 && (next < 0 || dmcIrq < next)) {
+            next = dmcIrq;
+        }
+        return next;
+    }
+
     public byte cpuRead(int addr) {
-        // TODO: Implement APU registers
+        if (addr == 0x4015) {
+            int status = 0;
+            if (pulse1.length > 0) status |= 0x01;
+            if (pulse2.length > 0) status |= 0x02;
+            if (triangle.length > 0) status |= 0x04;
+            if (noise.length > 0) status |= 0x08;
+            if (dmc.bytesRemaining > 0) status |= 0x10;
+            if (frameIrq) status |= 0x40;
+            if (dmc.irq) status |= 0x80;
+            // Reading the status acknowledges the frame interrupt
+            frameIrq = false;
+            return (byte) status;
+        }
         return 0x00;
     }
 
     public void cpuWrite(int addr, byte data) {
-        // TODO: Implement APU registers
+        int value = data & 0xFF;
+        switch (addr) {
+            case 0x4000: case 0x4001: case 0x4002: case 0x4003:
+                pulse1.write(addr & 0x03, value);
+                break;
+            case 0x4004: case 0x4005: case 0x4006: case 0x4007:
+                pulse2.write(addr & 0x03, value);
+                break;
+            case 0x4008: case 0x4009: case 0x400A: case 0x400B:
+                triangle.write(addr & 0x03, value);
+                break;
+            case 0x400C: case 0x400D: case 0x400E: case 0x400F:
+                noise.write(addr & 0x03, value);
+                break;
+            case 0x4010: case 0x4011: case 0x4012: case 0x4013:
+                dmc.write(addr & 0x03, value);
+                break;
+            case 0x4015:
+                pulse1.setEnabled((value & 0x01) != 0);
+                pulse2.setEnabled((value & 0x02) != 0);
+                triangle.setEnabled((value & 0x04) != 0);
+                noise.setEnabled((value & 0x08) != 0);
+                dmc.setEnabled((value & 0x10) != 0);
+                dmc.irq = false;
+                break;
+            case 0x4017:
+                fiveStepMode = (value & 0x80) != 0;
+                irqInhibit = (value & 0x40) != 0;
+                if (irqInhibit) frameIrq = false;
+                frameCycle = 0;
+                if (fiveStepMode) {
+                    quarterFrame();
+                    halfFrame();
+                }
+                break;
+            default:
+                return;
+        }
+        updateOutputs();
+    }
+
+    /**
+     * Number of output samples ready to read.
+     */
+    public int samplesAvailable() {
+        return blip.samplesAvailable();
+    }
+
+    /**
+     * Read and remove up to count mono 16-bit samples.
+     * @return Samples read
+     */
+    public int readSamples(short[] out, int offset, int count) {
+        return blip.readSamples(out, offset, count);
+    }
+
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    public static final int STATE_SIZE = 8 + 1 + 1 + 1 + 4
+            + 2 * Pulse.STATE_SIZE + Triangle.STATE_SIZE + Noise.STATE_SIZE + Dmc.STATE_SIZE;
+
+    /**
+     * Write frame counter and channel state into a buffer.
+     * Buffered output samples are not machine state and are not included.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putLong(time);
+        buffer.put((byte) (fiveStepMode ? 1 : 0));
+        buffer.put((byte) (irqInhibit ? 1 : 0));
+        buffer.put((byte) (frameIrq ? 1 : 0));
+        buffer.putInt(frameCycle);
+        pulse1.save(buffer);
+        pulse2.save(buffer);
+        triangle.save(buffer);
+        noise.save(buffer);
+        dmc.save(buffer);
+    }
+
+    /**
+     * Restore the state written by saveState().
+     */
+    public void loadState(ByteBuffer buffer) {
+        time = buffer.getLong();
+        frameStart = time;
+        fiveStepMode = buffer.get() != 0;
+        irqInhibit = buffer.get() != 0;
+        frameIrq = buffer.get() != 0;
+        frameCycle = buffer.getInt();
+        pulse1.load(buffer);
+        pulse2.load(buffer);
+        triangle.load(buffer);
+        noise.load(buffer);
+        dmc.load(buffer);
+
+        restartOutput();
+    }
+
+    /**
+     * Drop buffered output and take the current channel levels as the
+     * baseline. The output is DC-blocked anyway, so this avoids a click.
+     */
+    private void restartOutput() {
+        blip.clear();
+        pulse1.lastOutput = pulse1.output();
+        pulse2.lastOutput = pulse2.output();
+        triangle.lastOutput = triangle.output();
+        noise.lastOutput = noise.output();
+        dmc.lastOutput = dmc.output();
+    }
+
+    /**
+     * Volume envelope shared by the pulse and noise channels.
+     */
+    private static final class Envelope {
+        boolean start;
+        boolean loop;
+        boolean constant;
+        int period;
+        int divider;
+        int decay;
+
+        void write(int value) {
+            loop = (value & 0x20) != 0;
+            constant = (value & 0x10) != 0;
+            period = value & 0x0F;
+        }
+
+        void clock() {
+            if (start) {
+                start = false;
+                decay = 15;
+                divider = period;
+            } else if (divider == 0) {
+                divider = period;
+                if (decay > 0) {
+                    decay--;
+                } else if (loop) {
+                    decay = 15;
+                }
+            } else {
+                divider--;
+            }
+        }
+
+        int volume() {
+            return constant ? period : decay;
+        }
+
+        static final int STATE_SIZE = 3 + 3 * 4;
+
+        void save(ByteBuffer buffer) {
+            buffer.put((byte) (start ? 1 : 0));
+            buffer.put((byte) (loop ? 1 : 0));
+            buffer.put((byte) (constant ? 1 : 0));
+            buffer.putInt(period);
+            buffer.putInt(divider);
+            buffer.putInt(decay);
+        }
+
+        void load(ByteBuffer buffer) {
+            start = buffer.get() != 0;
+            loop = buffer.get() != 0;
+            constant = buffer.get() != 0;
+            period = buffer.getInt();
+            divider = buffer.getInt();
+            decay = buffer.getInt();
+        }
+    }
+
+    private final class Pulse {
+        final boolean first;  // Pulse 1 negates in ones' complement
+        final Envelope envelope = new Envelope();
+        boolean enabled;
+        int duty;
+        int dutyPos;
+        int timerPeriod;
+        int timerCounter = 2;  // CPU cycles until the next sequencer step
+        int length;
+        boolean lengthHalt;
+        boolean sweepEnabled;
+        int sweepPeriod;
+        boolean sweepNegate;
+        int sweepShift;
+        int sweepDivider;
+        boolean sweepReload;
+        int lastOutput;
+
+        Pulse(boolean first) {
+            this.first = first;
+        }
+
+        void write(int reg, int value) {
+            switch (reg) {
+                case 0:
+                    duty = value >> 6;
+                    lengthHalt = (value & 0x20) != 0;
+                    envelope.write(value);
+                    break;
+                case 1:
+                    sweepEnabled = (value & 0x80) != 0;
+                    sweepPeriod = (value >> 4) & 0x07;
+                    sweepNegate = (value & 0x08) != 0;
+                    sweepShift = value & 0x07;
+                    sweepReload = true;
+                    break;
+                case 2:
+                    timerPeriod = (timerPeriod & 0x700) | value;
+                    break;
+                case 3:
+                    timerPeriod = (timerPeriod & 0xFF) | ((value & 0x07) << 8);
+                    if (enabled) length = LENGTH_TABLE[value >> 3];
+                    dutyPos = 0;
+                    envelope.start = true;
+                    break;
+            }
+        }
+
+        void setEnabled(boolean on) {
+            enabled = on;
+            if (!on) length = 0;
+        }
+
+        int sweepTarget() {
+            int change = timerPeriod >> sweepShift;
+            if (sweepNegate) {
+                return timerPeriod - change - (first ? 1 : 0);
+            }
+            return timerPeriod + change;
+        }
+
+        boolean muted() {
+            return length == 0 || timerPeriod < 8 || sweepTarget() > 0x7FF;
+        }
+
+        void clockLengthAndSweep() {
+            if (!lengthHalt && length > 0) length--;
+
+            if (sweepDivider == 0 && sweepEnabled && sweepShift > 0 && !muted()) {
+                timerPeriod = sweepTarget();
+            }
+            if (sweepDivider == 0 || sweepReload) {
+                sweepDivider = sweepPeriod;
+                sweepReload = false;
+            } else {
+                sweepDivider--;
+            }
+        }
+
+        int output() {
+            if (muted() || DUTY_TABLE[duty][dutyPos] == 0) return 0;
+            return envelope.volume();
+        }
+
+        void update(int t) {
+            int out = output();
+            if (out != lastOutput) {
+                blip.addDelta(t, (out - lastOutput) * PULSE_WEIGHT);
+                lastOutput = out;
+            }
+        }
+
+        void run(int start, int cycles) {
+            int period = (timerPeriod + 1) * 2;
+            if (muted() || envelope.volume() == 0) {
+                // Silent: only the sequencer position advances
+                if (timerCounter > cycles) {
+                    timerCounter -= cycles;
+                } else {
+                    int rest = cycles - timerCounter;
+                    dutyPos = (dutyPos + 1 + rest / period) & 0x07;
+                    timerCounter = period - rest % period;
+                }
+                return;
+            }
+            int t = start;
+            int remaining = cycles;
+            while (timerCounter <= remaining) {
+                t += timerCounter;
+                remaining -= timerCounter;
+                timerCounter = period;
+                dutyPos = (dutyPos + 1) & 0x07;
+                update(t);
+            }
+            timerCounter -= remaining;
+        }
+
+        static final int STATE_SIZE = Envelope.STATE_SIZE + 1 + 4 * 5 + 1 + 1 + 4 + 1 + 4 * 2 + 1;
+
+        void save(ByteBuffer buffer) {
+            envelope.save(buffer);
+            buffer.put((byte) (enabled ? 1 : 0));
+            buffer.putInt(duty);
+            buffer.putInt(dutyPos);
+            buffer.putInt(timerPeriod);
+            buffer.putInt(timerCounter);
+            buffer.putInt(length);
+            buffer.put((byte) (lengthHalt ? 1 : 0));
+            buffer.put((byte) (sweepEnabled ? 1 : 0));
+            buffer.putInt(sweepPeriod);
+            buffer.put((byte) (sweepNegate ? 1 : 0));
+            buffer.putInt(sweepShift);
+            buffer.putInt(sweepDivider);
+            buffer.put((byte) (sweepReload ? 1 : 0));
+        }
+
+        void load(ByteBuffer buffer) {
+            envelope.load(buffer);
+            enabled = buffer.get() != 0;
+            duty = buffer.getInt();
+            dutyPos = buffer.getInt();
+            timerPeriod = buffer.getInt();
+            timerCounter = buffer.getInt();
+            length = buffer.getInt();
+            lengthHalt = buffer.get() != 0;
+            sweepEnabled = buffer.get() != 0;
+            sweepPeriod = buffer.getInt();
+            sweepNegate = buffer.get() != 0;
+            sweepShift = buffer.getInt();
+            sweepDivider = buffer.getInt();
+            sweepReload = buffer.get() != 0;
+        }
+    }
+
+    private final class Triangle {
+        boolean enabled;
+        boolean control;  // Length counter halt / linear counter control
+        int linearPeriod;
+        int linearCounter;
+        boolean linearReload;
+        int timerPeriod;
+        int timerCounter = 1;
+        int step;
+        int length;
+        int lastOutput;
+
+        void write(int reg, int value) {
+            switch (reg) {
+                case 0:
+                    control = (value & 0x80) != 0;
+                    linearPeriod = value & 0x7F;
+                    break;
+                case 2:
+                    timerPeriod = (timerPeriod & 0x700) | value;
+                    break;
+                case 3:
+                    timerPeriod = (timerPeriod & 0xFF) | ((value & 0x07) << 8);
+                    if (enabled) length = LENGTH_TABLE[value >> 3];
+                    linearReload = true;
+                    break;
+            }
+        }
+
+        void setEnabled(boolean on) {
+            enabled = on;
+            if (!on) length = 0;
+        }
+
+        void clockLinearCounter() {
+            if (linearReload) {
+                linearCounter = linearPeriod;
+            } else if (linearCounter > 0) {
+                linearCounter--;
+            }
+            if (!control) linearReload = false;
+        }
+
+        void clockLength() {
+            if (!control && length > 0) length--;
+        }
+
+        int output() {
+            return TRIANGLE_TABLE[step];
+        }
+
+        void update(int t) {
+            int out = output();
+            if (out != lastOutput) {
+                blip.addDelta(t, (out - lastOutput) * TRIANGLE_WEIGHT);
+                lastOutput = out;
+            }
+        }
+
+        void run(int start, int cycles) {
+            int period = timerPeriod + 1;
+            // The sequencer holds its position when halted; ultrasonic
+            // periods are held as well instead of producing inaudible noise
+            if (length == 0 || linearCounter == 0 || timerPeriod < 2) {
+                if (timerCounter > cycles) {
+                    timerCounter -= cycles;
+                } else {
+                    timerCounter = period - (cycles - timerCounter) % period;
+                }
+                return;
+            }
+            int t = start;
+            int remaining = cycles;
+            while (timerCounter <= remaining) {
+                t += timerCounter;
+                remaining -= timerCounter;
+                timerCounter = period;
+                step = (step + 1) & 0x1F;
+                update(t);
+            }
+            timerCounter -= remaining;
+        }
+
+        static final int STATE_SIZE = 1 + 1 + 4 * 2 + 1 + 4 * 4;
+
+        void save(ByteBuffer buffer) {
+            buffer.put((byte) (enabled ? 1 : 0));
+            buffer.put((byte) (control ? 1 : 0));
+            buffer.putInt(linearPeriod);
+            buffer.putInt(linearCounter);
+            buffer.put((byte) (linearReload ? 1 : 0));
+            buffer.putInt(timerPeriod);
+            buffer.putInt(timerCounter);
+            buffer.putInt(step);
+            buffer.putInt(length);
+        }
+
+        void load(ByteBuffer buffer) {
+            enabled = buffer.get() != 0;
+            control = buffer.get() != 0;
+            linearPeriod = buffer.getInt();
+            linearCounter = buffer.getInt();
+            linearReload = buffer.get() != 0;
+            timerPeriod = buffer.getInt();
+            timerCounter = buffer.getInt();
+            step = buffer.getInt();
+            length = buffer.getInt();
+        }
+    }
+
+    private final class Noise {
+        final Envelope envelope = new Envelope();
+        boolean enabled;
+        boolean mode;
+        int period = NOISE_PERIODS[0];
+        int timerCounter = 1;
+        int shift = 1;
+        int length;
+        boolean lengthHalt;
+        int lastOutput;
+
+        void write(int reg, int value) {
+            switch (reg) {
+                case 0:
+                    lengthHalt = (value & 0x20) != 0;
+                    envelope.write(value);
+                    break;
+                case 2:
+                    mode = (value & 0x80) != 0;
+                    period = NOISE_PERIODS[value & 0x0F];
+                    break;
+                case 3:
+                    if (enabled) length = LENGTH_TABLE[value >> 3];
+                    envelope.start = true;
+                    break;
+            }
+        }
+
+        void setEnabled(boolean on) {
+            enabled = on;
+            if (!on) length = 0;
+        }
+
+        void clockLength() {
+            if (!lengthHalt && length > 0) length--;
+        }
+
+        int output() {
+            if (length == 0 || (shift & 0x01) != 0) return 0;
+            return envelope.volume();
+        }
+
+        void update(int t) {
+            int out = output();
+            if (out != lastOutput) {
+                blip.addDelta(t, (out - lastOutput) * NOISE_WEIGHT);
+                lastOutput = out;
+            }
+        }
+
+        void run(int start, int cycles) {
+            // The shift register keeps running while silent, it just emits nothing
+            boolean silent = length == 0 || envelope.volume() == 0;
+            int tap = mode ? 6 : 1;
+            int t = start;
+            int remaining = cycles;
+            while (timerCounter <= remaining) {
+                t += timerCounter;
+                remaining -= timerCounter;
+                timerCounter = period;
+                int feedback = (shift ^ (shift >> tap)) & 0x01;
+                shift = (shift >> 1) | (feedback << 14);
+                if (!silent) update(t);
+            }
+            timerCounter -= remaining;
+        }
+
+        static final int STATE_SIZE = Envelope.STATE_SIZE + 1 + 1 + 4 * 4 + 1;
+
+        void save(ByteBuffer buffer) {
+            envelope.save(buffer);
+            buffer.put((byte) (enabled ? 1 : 0));
+            buffer.put((byte) (mode ? 1 : 0));
+            buffer.putInt(period);
+            buffer.putInt(timerCounter);
+            buffer.putInt(shift);
+            buffer.putInt(length);
+            buffer.put((byte) (lengthHalt ? 1 : 0));
+        }
+
+        void load(ByteBuffer buffer) {
+            envelope.load(buffer);
+            enabled = buffer.get() != 0;
+            mode = buffer.get() != 0;
+            period = buffer.getInt();
+            timerCounter = buffer.getInt();
+            shift = buffer.getInt();
+            length = buffer.getInt();
+            lengthHalt = buffer.get() != 0;
+        }
+    }
+
+    private final class Dmc {
+        boolean irqEnabled;
+        boolean loop;
+        int period = DMC_PERIODS[0];
+        int timerCounter = DMC_PERIODS[0];
+        int level;
+        int sampleAddress = 0xC000;
+        int sampleLength = 1;
+        int currentAddress;
+        int bytesRemaining;
+        int sampleBuffer;
+        boolean bufferEmpty = true;
+        int shift;
+        int bitsRemaining = 8;
+        boolean silence = true;
+        boolean irq;
+        int lastOutput;
+
+        void write(int reg, int value) {
+            switch (reg) {
+                case 0:
+                    irqEnabled = (value & 0x80) != 0;
+                    loop = (value & 0x40) != 0;
+                    period = DMC_PERIODS[value & 0x0F];
+                    if (!irqEnabled) irq = false;
+                    break;
+                case 1:
+                    level = value & 0x7F;
+                    break;
+                case 2:
+                    sampleAddress = 0xC000 | (value << 6);
+                    break;
+                case 3:
+                    sampleLength = (value << 4) | 1;
+                    break;
+            }
+        }
+
+        void setEnabled(boolean on) {
+            if (!on) {
+                bytesRemaining = 0;
+            } else if (bytesRemaining == 0) {
+                restart();
+                fetch();
+            }
+        }
+
+        private void restart() {
+            currentAddress = sampleAddress;
+            bytesRemaining = sampleLength;
+        }
+
+        /**
+         * Memory reader: refill the sample buffer if it is empty.
+         * The CPU stall of the real DMA is not emulated.
+         */
+        private void fetch() {
+            if (!bufferEmpty || bytesRemaining == 0 || bus == null) return;
+            sampleBuffer = bus.read(currentAddress) & 0xFF;
+            bufferEmpty = false;
+            currentAddress = (currentAddress == 0xFFFF) ? 0x8000 : currentAddress + 1;
+            bytesRemaining--;
+            if (bytesRemaining == 0) {
+                if (loop) {
+                    restart();
+                } else if (irqEnabled) {
+                    irq = true;
+                }
+            }
+        }
+
+        /**
+         * CPU cycle of the fetch that empties a non-looping sample with its
+         * IRQ enabled, or -1. The buffer is refilled as soon as the output
+         * unit takes it, so that fetch comes at the bytesRemaining-th
+         * output cycle boundary from now.
+         */
+        long nextIrqCycle() {
+            if (!irqEnabled || loop || irq || bytesRemaining == 0 || bufferEmpty) return -1;
+            return time + timerCounter + (long) (bitsRemaining - 1) * period
+                    + (long) (bytesRemaining - 1) * 8 * period;
+        }
+
+        int output() {
+            return level;
+        }
+
+        void update(int t) {
+            int out = output();
+            if (out != lastOutput) {
+                blip.addDelta(t, (out - lastOutput) * DMC_WEIGHT);
+                lastOutput = out;
+            }
+        }
+
+        void run(int start, int cycles) {
+            int t = start;
+            int remaining = cycles;
+            while (timerCounter <= remaining) {
+                t += timerCounter;
+                remaining -= timerCounter;
+                timerCounter = period;
+
+                if (!silence) {
+                    if ((shift & 0x01) != 0) {
+                        if (level <= 125) level += 2;
+                    } else {
+                        if (level >= 2) level -= 2;
+                    }
+                    update(t);
+                }
+                shift >>= 1;
+                if (--bitsRemaining == 0) {
+                    bitsRemaining = 8;
+                    if (bufferEmpty) {
+                        silence = true;
+                    } else {
+                        silence = false;
+                        shift = sampleBuffer;
+                        bufferEmpty = true;
+                        fetch();
+                    }
+                }
+            }
+            timerCounter -= remaining;
+        }
+
+        static final int STATE_SIZE = 1 + 1 + 4 * 9 + 1 + 4 + 1 + 1;
+
+        void save(ByteBuffer buffer) {
+            buffer.put((byte) (irqEnabled ? 1 : 0));
+            buffer.put((byte) (loop ? 1 : 0));
+            buffer.putInt(period);
+            buffer.putInt(timerCounter);
+            buffer.putInt(level);
+            buffer.putInt(sampleAddress);
+            buffer.putInt(sampleLength);
+            buffer.putInt(currentAddress);
+            buffer.putInt(bytesRemaining);
+            buffer.putInt(sampleBuffer);
+            buffer.putInt(shift);
+            buffer.put((byte) (bufferEmpty ? 1 : 0));
+            buffer.putInt(bitsRemaining);
+            buffer.put((byte) (silence ? 1 : 0));
+            buffer.put((byte) (irq ? 1 : 0));
+        }
+
+        void load(ByteBuffer buffer) {
+            irqEnabled = buffer.get() != 0;
+            loop = buffer.get() != 0;
+            period = buffer.getInt();
+            timerCounter = buffer.getInt();
+            level = buffer.getInt();
+            sampleAddress = buffer.getInt();
+            sampleLength = buffer.getInt();
+            currentAddress = buffer.getInt();
+            bytesRemaining = buffer.getInt();
+            sampleBuffer = buffer.getInt();
+            shift = buffer.getInt();
+            bufferEmpty = buffer.get() != 0;
+            bitsRemaining = buffer.getInt();
+            silence = buffer.get() != 0;
+            irq = buffer.get() != 0;
+        }
     }
 }
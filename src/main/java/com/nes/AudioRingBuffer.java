@@ -0,0 +1,97 @@
+package com.nes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of 16-bit samples.
+ *
+ * The emulation thread writes, the audio output thread reads. Each side
+ * owns one index and only publishes it (release store) after copying the
+ * samples; the other side reads it with a volatile load. Each side also
+ * caches the last seen value of the other index, so the shared indices are
+ * only touched when the cached view says the ring is full or empty.
+ */
+public class AudioRingBuffer {
+
+    private final short[] samples;
+    private final int mask;
+
+    // Total samples written and read; indices are these modulo the capacity
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicLong readIndex = new AtomicLong();
+
+    // Producer's view of readIndex
+    private long cachedRead = 0;
+    // Consumer's view of writeIndex
+    private long cachedWrite = 0;
+
+    /**
+     * @param capacity Samples the ring can hold; rounded up to a power of two
+     */
+    public AudioRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        samples = new short[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+    /**
+     * Samples currently buffered. Exact from either thread for its own
+     * purposes: the producer may see fewer free slots, the consumer fewer
+     * samples, than a moment later.
+     */
+    public int size() {
+        return (int) (writeIndex.get() - readIndex.get());
+    }
+
+    /**
+     * Producer: append up to count samples.
+     * @return Samples written; fewer than count if the ring is full
+     */
+    public int write(short[] src, int offset, int count) {
+        long write = writeIndex.get();
+        int free = (int) (samples.length - (write - cachedRead));
+        if (free < count) {
+            cachedRead = readIndex.get();
+            free = (int) (samples.length - (write - cachedRead));
+        }
+        int n = Math.min(count, free);
+        if (n <= 0) return 0;
+
+        int start = (int) write & mask;
+        int first = Math.min(n, samples.length - start);
+        System.arraycopy(src, offset, samples, start, first);
+        System.arraycopy(src, offset + first, samples, 0, n - first);
+        writeIndex.lazySet(write + n);
+        return n;
+    }
+
+    /**
+     * Consumer: remove up to count samples.
+     * @return Samples read; fewer than count if the ring ran empty
+     */
+    public int read(short[] dst, int offset, int count) {
+        long read = readIndex.get();
+        int available = (int) (cachedWrite - read);
+        if (available < count) {
+            cachedWrite = writeIndex.get();
+            available = (int) (cachedWrite - read);
+        }
+        int n = Math.min(count, available);
+        if (n <= 0) return 0;
+
+        int start = (int) read & mask;
+        int first = Math.min(n, samples.length - start);
+        System.arraycopy(samples, start, dst, offset, first);
+        System.arraycopy(samples, 0, dst, offset + first, n - first);
+        readIndex.lazySet(read + n);
+        return n;
+    }
+}
@@ -0,0 +1,115 @@
+package com.nes;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audio output fed by the emulation thread through an AudioRingBuffer and
+ * drained in real time by an output thread.
+ *
+ * Because the sink consumes samples at exactly its sample rate, the ring's
+ * fill level doubles as the emulator's clock: after each frame the
+ * emulation thread calls pace(), which parks until the buffered audio has
+ * drained to the target latency. No sleeping to a frame deadline, no spin.
+ */
+public abstract class AudioSink implements AutoCloseable {
+
+    public static final int DEFAULT_RING_SAMPLES = 8192;
+
+    protected final int sampleRate;
+    protected final AudioRingBuffer buffer;
+
+    private Thread thread;
+    protected volatile boolean running = false;
+
+    protected AudioSink(int sampleRate, int ringSamples) {
+        this.sampleRate = sampleRate;
+        this.buffer = new AudioRingBuffer(ringSamples);
+    }
+
+    /**
+     * Open the default audio device, or a NullAudioSink if there is none
+     * or the nes.audio system property is "null".
+     */
+    public static AudioSink open(int sampleRate) {
+        if (!"null".equals(System.getProperty("nes.audio"))) {
+            try {
+                return new LineAudioSink(sampleRate, DEFAULT_RING_SAMPLES);
+            } catch (Exception | LinkageError e) {
+                System.err.println("No audio device (" + e.getMessage() + "), using the null sink");
+            }
+        }
+        return new NullAudioSink(sampleRate, DEFAULT_RING_SAMPLES);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public AudioRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Samples waiting to be played.
+     */
+    public int buffered() {
+        return buffer.size();
+    }
+
+    /**
+     * Start the output thread.
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this::drain, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Queue samples for playback (producer side). Samples that do not fit
+     * are dropped; with pace() called every frame the ring never fills.
+     * @return Samples queued
+     */
+    public int write(short[] samples, int offset, int count) {
+        return buffer.write(samples, offset, count);
+    }
+
+    /**
+     * Park the calling (producer) thread until no more than targetSamples
+     * are buffered.
+     */
+    public void pace(int targetSamples) throws InterruptedException {
+        int excess;
+        while (running && (excess = buffer.size() - targetSamples) > 0) {
+            // Sleep for the time the excess takes to play
+            LockSupport.parkNanos(excess * 1_000_000_000L / sampleRate);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Output thread body: consume samples in real time until stopped.
+     */
+    protected abstract void drain();
+
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
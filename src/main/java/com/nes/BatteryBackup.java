@@ -0,0 +1,197 @@
+package com.nes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists a cartridge's battery-backed PRG-RAM to a .sav file.
+ *
+ * The emulation thread calls sync() once per frame. When the RAM changed
+ * it copies it into a snapshot and hands that to a background writer;
+ * a newer snapshot replaces one not yet written. The writer waits until
+ * the RAM has been quiet for the idle delay before touching the disk, so
+ * a game writing SRAM every frame costs one 8KB copy per frame and no I/O
+ * until it settles. close() writes whatever is still pending.
+ *
+ * The file is replaced atomically, so a crash mid-write leaves the
+ * previous save.
+ */
+public class BatteryBackup implements AutoCloseable {
+
+    /** Quiet time after the last change before the RAM is written. */
+    public static final long DEFAULT_IDLE_MILLIS = 1000;
+
+    private final Cartridge cartridge;
+    private final Path file;
+    private final long idleNanos;
+
+    // Hand-off between sync() and the writer, guarded by lock
+    private final Object lock = new Object();
+    private final byte[] snapshot;
+    private boolean pending = false;
+    private long changedAt;
+    private boolean closed = false;
+
+    // Serialises take-and-write so an older snapshot never lands after a newer one
+    private final Object fileLock = new Object();
+    private final byte[] out;
+    private int writeCount = 0;
+    private IOException error;
+
+    private final Thread writer;
+
+    /**
+     * Open with the default idle delay.
+     * @see #BatteryBackup(Cartridge, Path, long)
+     */
+    public BatteryBackup(Cartridge cartridge, Path file) throws IOException {
+        this(cartridge, file, DEFAULT_IDLE_MILLIS);
+    }
+
+    /**
+     * Load the save file into PRG-RAM, if it exists, and start the writer.
+     * @param idleMillis Quiet time after the last change before writing
+     */
+    public BatteryBackup(Cartridge cartridge, Path file, long idleMillis) throws IOException {
+        this.cartridge = cartridge;
+        this.file = file;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+
+        byte[] ram = cartridge.getPrgRam();
+        snapshot = new byte[ram.length];
+        out = new byte[ram.length];
+        if (Files.isRegularFile(file)) {
+            byte[] saved = Files.readAllBytes(file);
+            System.arraycopy(saved, 0, ram, 0, Math.min(saved.length, ram.length));
+        }
+        // Loading is not a change
+        cartridge.takePrgRamDirty();
+
+        writer = new Thread(this::run, "battery-backup");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The .sav file next to a ROM: same name, extension replaced.
+     */
+    public static Path savePath(Path rom) {
+        String name = rom.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return rom.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".sav");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Number of times the file has been written.
+     */
+    public int getWriteCount() {
+        synchronized (fileLock) {
+            return writeCount;
+        }
+    }
+
+    /**
+     * Snapshot PRG-RAM if it changed since the last call.
+     * Called by the emulation thread between frames; never blocks on I/O.
+     */
+    public void sync() {
+        if (!cartridge.takePrgRamDirty()) return;
+        synchronized (lock) {
+            System.arraycopy(cartridge.getPrgRam(), 0, snapshot, 0, snapshot.length);
+            pending = true;
+            changedAt = System.nanoTime();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Write the latest changes now, on the calling thread.
+     * @throws IOException if this or an earlier background write failed
+     */
+    public void flush() throws IOException {
+        sync();
+        synchronized (fileLock) {
+            writePending();
+            if (error != null) {
+                IOException e = error;
+                error = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Write the pending changes and stop the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void run() {
+        while (awaitIdle()) {
+            synchronized (fileLock) {
+                writePending();
+            }
+        }
+    }
+
+    /**
+     * Wait until a snapshot has been quiet for the idle delay.
+     * @return False once closed; close() writes the rest itself
+     */
+    private boolean awaitIdle() {
+        synchronized (lock) {
+            try {
+                while (!closed) {
+                    if (!pending) {
+                        lock.wait();
+                        continue;
+                    }
+                    long remaining = changedAt + idleNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        return true;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+    }
+
+    // Caller holds fileLock
+    private void writePending() {
+        synchronized (lock) {
+            if (!pending) return;
+            System.arraycopy(snapshot, 0, out, 0, out.length);
+            pending = false;
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            Files.write(temp, out);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeCount++;
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.nes;
+
+/**
+ * Band-limited step synthesizer (in the style of blargg's Blip_Buffer).
+ *
+ * Sound channels report only amplitude changes ("deltas") at CPU clock
+ * times. Each delta is added to a buffer as a windowed-sinc impulse at its
+ * exact fractional sample position; reading integrates the buffer into
+ * samples. Resampling from 1.79 MHz to the output rate is therefore done
+ * per amplitude change, never per clock, and stays alias-free.
+ */
+public class BlipBuffer {
+
+    private static final int PHASE_BITS = 5;
+    private static final int PHASES = 1 << PHASE_BITS;
+    // Taps per impulse; impulses are centered WIDTH / 2 samples late
+    private static final int WIDTH = 16;
+    private static final int KERNEL_BITS = 10;
+    private static final int KERNEL_UNIT = 1 << KERNEL_BITS;
+    // Integrator leak; removes DC below ~15 Hz at 48 kHz
+    private static final int BASS_SHIFT = 9;
+    private static final int FRAC_BITS = 32;
+
+    private static final int[][] KERNEL = buildKernel();
+
+    private final int clockRate;
+    private final int sampleRate;
+    // Output samples per clock, FRAC_BITS fixed point
+    private final long factor;
+    // Position of the current frame's clock 0 in the buffer, FRAC_BITS fixed point
+    private long offset = 0;
+
+    private final int[] buffer;
+    private int available = 0;
+    private int integrator = 0;
+
+    /**
+     * @param clockRate Input clock rate (Hz)
+     * @param sampleRate Output sample rate (Hz)
+     * @param capacity Samples that can be buffered before the oldest are dropped
+     */
+    public BlipBuffer(int clockRate, int sampleRate, int capacity) {
+        this.clockRate = clockRate;
+        this.sampleRate = sampleRate;
+        this.factor = (long) Math.floor((double) sampleRate * (1L << FRAC_BITS) / clockRate);
+        this.buffer = new int[capacity + WIDTH];
+    }
+
+    public int getClockRate() { return clockRate; }
+    public int getSampleRate() { return sampleRate; }
+
+    /**
+     * Add an amplitude change.
+     * @param time Clock time relative to the start of the current frame
+     * @param delta Change in amplitude (output sample units)
+     */
+    public void addDelta(int time, int delta) {
+        long fixed = time * factor + offset;
+        int index = (int) (fixed >>> FRAC_BITS);
+        int[] kernel = KERNEL[(int) (fixed >>> (FRAC_BITS - PHASE_BITS)) & (PHASES - 1)];
+        for (int i = 0; i < WIDTH; i++) {
+            buffer[index + i] += kernel[i] * delta;
+        }
+    }
+
+    /**
+     * Close the current frame after the given number of clocks, making its
+     * samples readable. Later deltas are relative to the new frame start.
+     * Frames must be short enough to fit in the buffer (a few thousand clocks).
+     */
+    public void endFrame(int clocks) {
+        offset += clocks * factor;
+        available = (int) (offset >>> FRAC_BITS);
+
+        // Nobody is reading: drop the oldest samples rather than overflow
+        int limit = buffer.length - WIDTH - 1024;
+        if (available > limit) {
+            removeSamples(available - limit, null, 0);
+        }
+    }
+
+    /**
+     * Number of samples ready to read.
+     */
+    public int samplesAvailable() {
+        return available;
+    }
+
+    /**
+     * Read and remove up to count samples.
+     * @return Samples read
+     */
+    public int readSamples(short[] out, int outOffset, int count) {
+        int n = Math.min(count, available);
+        removeSamples(n, out, outOffset);
+        return n;
+    }
+
+    /**
+     * Forget all buffered samples and pending deltas.
+     */
+    public void clear() {
+        java.util.Arrays.fill(buffer, 0);
+        offset &= (1L << FRAC_BITS) - 1;
+        available = 0;
+        integrator = 0;
+    }
+
+    private void removeSamples(int n, short[] out, int outOffset) {
+        int sum = integrator;
+        for (int i = 0; i < n; i++) {
+            sum += buffer[i];
+            int sample = sum >> KERNEL_BITS;
+            sum -= sum >> BASS_SHIFT;
+            if (out != null) {
+                if (sample > Short.MAX_VALUE) sample = Short.MAX_VALUE;
+                if (sample < Short.MIN_VALUE) sample = Short.MIN_VALUE;
+                out[outOffset + i] = (short) sample;
+            }
+        }
+        integrator = sum;
+
+        // Keep the not yet readable tail, including impulses still spreading
+        int remaining = available - n + WIDTH;
+        System.arraycopy(buffer, n, buffer, 0, remaining);
+        java.util.Arrays.fill(buffer, remaining, remaining + n, 0);
+        offset -= (long) n << FRAC_BITS;
+        available -= n;
+    }
+
+    /**
+     * Blackman-windowed sinc impulses for each fractional phase, each
+     * summing to exactly KERNEL_UNIT so steps settle at the exact amplitude.
+     */
+    private static int[][] buildKernel() {
+        int[][] kernel = new int[PHASES][WIDTH];
+        double cutoff = 0.9;  // Fraction of the output Nyquist frequency
+        int half = WIDTH / 2;
+        for (int phase = 0; phase < PHASES; phase++) {
+            double frac = (double) phase / PHASES;
+            double[] taps = new double[WIDTH];
+            double total = 0;
+            for (int i = 0; i < WIDTH; i++) {
+                double x = i - half + 1 - frac;
+                double sinc = (x == 0) ? 1.0 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                double w = (x + half) / WIDTH;  // 0..1 across the window
+                double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * w) + 0.08 * Math.cos(4 * Math.PI * w);
+                taps[i] = sinc * window;
+                total += taps[i];
+            }
+            int sum = 0;
+            for (int i = 0; i < WIDTH; i++) {
+                kernel[phase][i] = (int) Math.round(taps[i] / total * KERNEL_UNIT);
+                sum += kernel[phase][i];
+            }
+            // Put the rounding error on the center tap
+            kernel[phase][half - 1] += KERNEL_UNIT - sum;
+        }
+        return kernel;
+    }
+}
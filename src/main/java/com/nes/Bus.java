@@ -2,6 +2,8 @@ package com.nes;
 
 import com.nes.cpu.Cpu;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents the NES Bus.
  * Connects the CPU, PPU, and other components to memory.
@@ -13,6 +15,16 @@ public class Bus {
     // 64KB RAM
     private final byte[] ram = new byte[64 * 1024];
     
+    // Page table: one entry per 256-byte CPU page.
+    // A non-null entry maps the page directly onto a byte array (RAM or PRG-ROM),
+    // null pages go through the full address decoder (PPU/APU/IO registers, mapper writes).
+    // CPU reads use the decoder, which measured as fast as a page lookup or
+    // faster on NROM, MMC1 and MMC3; the read pages serve peek() and OAM DMA.
+    private final byte[][] readPages = new byte[256][];
+    private final int[] readOffsets = new int[256];
+    private final byte[][] writePages = new byte[256][];
+    private final int[] writeOffsets = new int[256];
+    
     private Cartridge cartridge;
     private Ppu ppu = new Ppu();
     private Apu apu = new Apu();
@@ -21,6 +33,32 @@ public class Bus {
     private Controller[] controllers = new Controller[2];
     
     private long systemClockCounter = 0;
+    
+    // Master clock ticks in one frame (262 scanlines * 341 cycles)
+    public static final int FRAME_TICKS = 262 * 341;
+    
+    // Catch-up scheduling: the CPU executes whole instructions and the PPU
+    // is advanced in a tight loop for the cycles they took.
+    private boolean catchUp = false;
+    
+    // Ticks left before the CPU starts its next instruction (catch-up mode only)
+    private int cpuIdleTicks = 0;
+    
+    // Catch-up mode: jump over iterations of CPU idle loops (see Cpu.idleLoopCycles)
+    private boolean idleLoopSkip = true;
+    private long skippedCycles = 0;
+    
+    // CPU cycles halted by OAM DMA, before the odd-cycle alignment
+    public static final int OAM_DMA_CYCLES = 513;
+    
+    // IRQ sources; the CPU IRQ line is asserted while any of them is
+    public static final int IRQ_APU = 0x01;
+    public static final int IRQ_MAPPER = 0x02;
+    private int irqSources = 0;
+    
+    // Tick of the APU's next predicted IRQ, when it is synced even if
+    // nothing touches its registers; Long.MAX_VALUE if none is scheduled
+    private long apuIrqTick = Long.MAX_VALUE;
 
     public Bus() {
         // Initialize RAM to 0
@@ -31,22 +69,133 @@ public class Bus {
         // Initialize Controllers
         controllers[0] = new Controller();
         controllers[1] = new Controller();
+        
+        // The DMC fetches its samples over the bus
+        apu.connectBus(this);
+        
+        // RAM (0x0000 - 0x1FFF) - 2KB mirrored every 0x800
+        for (int page = 0x00; page <= 0x1F; page++) {
+            mapReadPage(page, ram, (page & 0x07) << 8);
+            mapWritePage(page, ram, (page & 0x07) << 8);
+        }
+        mapCartridgeFallback();
+    }
+    
+    /**
+     * Without a cartridge, 0x8000 - 0xFFFF falls back to plain RAM (used by tests).
+     */
+    private void mapCartridgeFallback() {
+        for (int page = 0x80; page <= 0xFF; page++) {
+            mapReadPage(page, ram, page << 8);
+            mapWritePage(page, ram, page << 8);
+        }
+    }
+    
+    /**
+     * Map a CPU page for reading directly onto a byte array.
+     * @param page CPU page number (addr >> 8)
+     * @param data Backing array, or null to route the page through the address decoder
+     * @param offset Index in data of the first byte of the page
+     */
+    public void mapReadPage(int page, byte[] data, int offset) {
+        readPages[page] = data;
+        readOffsets[page] = offset;
+    }
+    
+    /**
+     * Map a CPU page for writing directly onto a byte array.
+     * @param page CPU page number (addr >> 8)
+     * @param data Backing array, or null to route the page through the address decoder
+     * @param offset Index in data of the first byte of the page
+     */
+    public void mapWritePage(int page, byte[] data, int offset) {
+        writePages[page] = data;
+        writeOffsets[page] = offset;
     }
     
     public void connectCpu(Cpu cpu) {
         this.cpu = cpu;
         ppu.connectBus(this);
+        cpu.setIrq(irqSources != 0);
+    }
+    
+    public Cpu getCpu() {
+        return cpu;
+    }
+    
+    public Cartridge getCartridge() {
+        return cartridge;
     }
     
     public void insertCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
         ppu.connectCartridge(cartridge);
+        
+        // The cartridge publishes its own PRG and PRG-RAM pages; writes go to its registers
+        for (int page = 0x60; page <= 0xFF; page++) {
+            mapReadPage(page, null, 0);
+            mapWritePage(page, null, 0);
+        }
+        cartridge.connectBus(this);
     }
     
     public void reset() {
         if (cpu != null) cpu.reset();
         ppu.reset();
+        apu.reset();
+        irqSources = 0;
+        if (cpu != null) cpu.setIrq(false);
         systemClockCounter = 0;
+        cpuIdleTicks = 0;
+        updateApuIrq();
+    }
+    
+    /**
+     * Switch between per-cycle and catch-up scheduling.
+     * Both modes produce the same results; the switch can happen at any tick.
+     * @param enabled True to execute whole CPU instructions at once.
+     */
+    public void setCatchUp(boolean enabled) {
+        if (enabled == catchUp) return;
+        catchUp = enabled;
+        if (cpu == null) return;
+        
+        if (enabled) {
+            // Wait for the next CPU tick plus whatever is left of an
+            // instruction started by cpu.clock()
+            cpuIdleTicks = (int) ((3 - systemClockCounter % 3) % 3) + 3 * cpu.cycles;
+            cpu.cycles = 0;
+        } else {
+            // Convert the idle ticks back into the CPU's own cycle countdown
+            long nextInstruction = systemClockCounter + cpuIdleTicks;
+            cpu.cycles = (int) (nextInstruction / 3 - (systemClockCounter + 2) / 3);
+            cpuIdleTicks = 0;
+        }
+    }
+    
+    public boolean isCatchUp() {
+        return catchUp;
+    }
+    
+    /**
+     * Let catch-up scheduling skip the iterations of an idle loop (polling
+     * PPUSTATUS or RAM, or JMP to itself) that cannot see anything change,
+     * running the PPU for their cycles in one go. Results are the same
+     * either way. On by default.
+     */
+    public void setIdleLoopSkip(boolean enabled) {
+        idleLoopSkip = enabled;
+    }
+    
+    public boolean isIdleLoopSkip() {
+        return idleLoopSkip;
+    }
+    
+    /**
+     * CPU cycles spent in skipped idle loop iterations since construction.
+     */
+    public long getSkippedCycles() {
+        return skippedCycles;
     }
     
     public void nmi() {
@@ -55,12 +204,35 @@ public class Bus {
         }
     }
     
+    /**
+     * Assert or release one source of the shared IRQ line.
+     * @param source IRQ_APU or IRQ_MAPPER
+     */
+    public void setIrq(int source, boolean asserted) {
+        if (asserted) {
+            irqSources |= source;
+        } else {
+            irqSources &= ~source;
+        }
+        if (cpu != null) {
+            cpu.setIrq(irqSources != 0);
+        }
+    }
+    
     public void clock() {
+        if (catchUp) {
+            run(1);
+            return;
+        }
+        
         // PPU runs 3 times faster than CPU
         ppu.clock();
         
         // CPU runs once every 3 system ticks
         if (systemClockCounter % 3 == 0) {
+            if (systemClockCounter >= apuIrqTick) {
+                syncApu();
+            }
             if (cpu != null) {
                 cpu.clock();
             }
@@ -68,6 +240,135 @@ public class Bus {
         
         systemClockCounter++;
     }
+    
+    /**
+     * Run the system for a number of master clock ticks.
+     * Equivalent to calling clock() that many times.
+     * @param ticks Number of PPU cycles to run.
+     */
+    public void run(long ticks) {
+        long end = systemClockCounter + ticks;
+        
+        if (!catchUp || cpu == null) {
+            while (systemClockCounter < end) {
+                clock();
+            }
+            syncApu();
+            return;
+        }
+        
+        while (systemClockCounter < end) {
+            if (cpuIdleTicks == 0 && idleLoopSkip && skipIdleLoop(end)) {
+                continue;
+            }
+            if (cpuIdleTicks == 0) {
+                if (systemClockCounter >= apuIrqTick) {
+                    syncApu();
+                }
+                // Same order as clock(): the PPU dot of this tick, then the CPU
+                ppu.clock();
+                cpuIdleTicks = 3 * cpu.step() - 1;
+                systemClockCounter++;
+            } else {
+                // Catch the PPU up to the next instruction (or the end of the run)
+                int n = (int) Math.min(cpuIdleTicks, end - systemClockCounter);
+                ppu.run(n);
+                cpuIdleTicks -= n;
+                systemClockCounter += n;
+            }
+        }
+        syncApu();
+    }
+    
+    /**
+     * If the CPU is at an idle loop, credit the iterations that end before
+     * anything it could notice happens as idle ticks, which run() then gives
+     * the PPU in one batch. The CPU resumes at the loop's start a little
+     * before the event and sees it exactly as it would have.
+     * @param end Tick the current run() stops at
+     * @return True if iterations were skipped
+     */
+    private boolean skipIdleLoop(long end) {
+        int period = cpu.idleLoopCycles();
+        if (period == 0) return false;
+        
+        long ticks = Math.min(end - systemClockCounter, ppu.dotsUntilStatusChange());
+        ticks = Math.min(ticks, ticksUntilIrq());
+        // Keep one whole iteration before the event
+        long iterations = (ticks / 3 - period) / period;
+        if (iterations <= 0) return false;
+        
+        cpu.skipIdleLoop(iterations);
+        skippedCycles += iterations * period;
+        cpuIdleTicks = (int) (3 * iterations * period);
+        return true;
+    }
+    
+    /**
+     * Ticks before the mapper or the APU can raise an IRQ, as far as can be
+     * predicted without running them.
+     */
+    private long ticksUntilIrq() {
+        long ticks = apuIrqTick - systemClockCounter;
+        if (cartridge != null && cartridge.getMapper() != null) {
+            // Each rendered line clocks the scanline counter at most once
+            int countdown = cartridge.getMapper().getIrqCountdown();
+            if (countdown >= 0) {
+                ticks = Math.min(ticks, (countdown - 1) * 341L);
+            }
+        }
+        return ticks;
+    }
+    
+    /**
+     * CPU cycles from now before an interrupt can become pending: VBlank
+     * NMI, a mapper IRQ or an APU IRQ. Code that touches no I/O registers
+     * can run that long without any interrupt being taken later than
+     * between its instructions.
+     */
+    public long cyclesUntilInterrupt() {
+        return Math.max(0, Math.min(ppu.dotsUntilVblank(), ticksUntilIrq())) / 3;
+    }
+    
+    /**
+     * Bring the APU up to the current CPU cycle. The APU is run lazily:
+     * before its registers are accessed, at the cycle of its next predicted
+     * IRQ and at the end of each run().
+     */
+    private void syncApu() {
+        apu.run(systemClockCounter / 3);
+        updateApuIrq();
+    }
+    
+    /**
+     * Drive IRQ_APU from the APU's flags and schedule the next sync at the
+     * cycle its next IRQ is due, so frame and DMC IRQs reach the CPU on
+     * the cycle they are raised.
+     */
+    private void updateApuIrq() {
+        setIrq(IRQ_APU, apu.isIrqPending());
+        long cycle = apu.getNextIrqCycle();
+        apuIrqTick = cycle < 0 ? Long.MAX_VALUE : 3 * cycle;
+    }
+    
+    /**
+     * Run the system for exactly one frame worth of ticks.
+     */
+    public void runFrame() {
+        run(FRAME_TICKS);
+    }
+    
+    public long getSystemClockCounter() {
+        return systemClockCounter;
+    }
+    
+    /**
+     * CPU cycles since reset. Exact while the CPU executes: its ticks fall on
+     * multiples of 3 master clock ticks.
+     */
+    public long getCpuCycle() {
+        return systemClockCounter / 3;
+    }
 
     /**
      * Read a byte from the bus.
@@ -75,13 +376,40 @@ public class Bus {
      * @return The byte at the address.
      */
     public byte read(int addr) {
+        return decodeRead(addr & 0xFFFF);
+    }
+    
+    /**
+     * Read a byte without side effects, for code that inspects memory
+     * instead of executing: RAM, PPUSTATUS and the mapped cartridge pages.
+     * @return The byte (0 - 255), or -1 if reading the address has side effects
+     */
+    public int peek(int addr) {
+        addr &= 0xFFFF;
+        if (addr < 0x2000) {
+            return ram[addr & 0x07FF] & 0xFF;
+        }
+        if (addr < 0x4000) {
+            return (addr & 0x0007) == 0x0002 ? ppu.peekStatus() & 0xFF : -1;
+        }
+        int page = addr >> 8;
+        byte[] data = readPages[page];
+        return page >= 0x60 && data != null ? data[readOffsets[page] + (addr & 0xFF)] & 0xFF : -1;
+    }
+    
+    /**
+     * Read a byte through the full address decoder.
+     * @param addr The 16-bit address to read from (0x0000 - 0xFFFF).
+     * @return The byte at the address.
+     */
+    public byte decodeRead(int addr) {
         // Cartridge Address Range (0x4020 - 0xFFFF)
-        if (addr >= 0x8000 && addr <= 0xFFFF) {
+        if (addr >= 0x4020 && addr <= 0xFFFF) {
             if (cartridge != null) {
                 return cartridge.cpuRead(addr);
             }
             // Fallback for testing: read from RAM if no cartridge
-            return ram[addr];
+            return addr >= 0x8000 ? ram[addr] : 0x00;
         }
         
         // RAM (0x0000 - 0x1FFF) - Mirrored every 2KB
@@ -106,7 +434,11 @@ public class Bus {
         
         // APU Registers (0x4000 - 0x4017)
         if (addr >= 0x4000 && addr <= 0x4017) {
-            return apu.cpuRead(addr);
+            syncApu();
+            byte data = apu.cpuRead(addr);
+            // Reading 0x4015 acknowledges the frame IRQ
+            updateApuIrq();
+            return data;
         }
 
         return 0x00;
@@ -118,14 +450,40 @@ public class Bus {
      * @param data The byte to write.
      */
     public void write(int addr, byte data) {
-        // Cartridge Address Range
-        if (addr >= 0x8000 && addr <= 0xFFFF) {
+        addr &= 0xFFFF;
+        int page = addr >> 8;
+        byte[] target = writePages[page];
+        if (target != null) {
+            target[writeOffsets[page] + (addr & 0xFF)] = data;
+            return;
+        }
+        decodeWrite(addr, data);
+    }
+    
+    /**
+     * Write a byte through the full address decoder, bypassing the page table.
+     * @param addr The 16-bit address to write to.
+     * @param data The byte to write.
+     */
+    public void decodeWrite(int addr, byte data) {
+        // Cartridge Address Range (0x4020 - 0xFFFF)
+        if (addr >= 0x4020 && addr <= 0xFFFF) {
             if (cartridge != null) {
+                // DMC fetches already due must read the PRG banks mapped before this write
+                if (apu.isDmcActive()) {
+                    syncApu();
+                }
+                // Dots of a deferred scanline before this write use the old CHR banks and mirroring
+                if (addr >= 0x8000) {
+                    ppu.catchUpScanline();
+                }
                 cartridge.cpuWrite(addr, data);
                 return;
             }
             // Fallback for testing: write to RAM if no cartridge
-            ram[addr] = data;
+            if (addr >= 0x8000) {
+                ram[addr] = data;
+            }
             return;
         }
         
@@ -143,23 +501,26 @@ public class Bus {
         
         // OAM DMA (0x4014)
         if (addr == 0x4014) {
-            // DMA Transfer
-            // CPU writes the high byte of the RAM address (XX00)
-            int page = (data & 0xFF) << 8;
+            // CPU writes the high byte of the source address (XX00)
+            int page = data & 0xFF;
             
-            // Transfer 256 bytes
-            for (int i = 0; i < 256; i++) {
-                // Read from CPU RAM
-                // Note: We use the internal read method or direct array access if possible,
-                // but read() handles mirroring which is safer.
-                byte b = read(page + i);
-                
-                // Write to PPU OAMDATA (0x2004)
-                ppu.cpuWrite(0x2004, b);
+            // RAM, PRG-ROM and PRG-RAM pages are plain arrays: copy in bulk.
+            // The copy lands at once; nothing reads OAM during the halt except
+            // sprite evaluation, and games DMA during vblank.
+            byte[] source = readPages[page];
+            if (source != null) {
+                ppu.oamDma(source, readOffsets[page]);
+            } else {
+                for (int i = 0; i < 256; i++) {
+                    ppu.cpuWrite(0x2004, decodeRead((page << 8) | i));
+                }
             }
             
-            // TODO: CPU suspension (513/514 cycles)
-            // For now, we just do the transfer instantly.
+            // The CPU halts for 1 cycle, 1 more to align on an even cycle,
+            // then 256 read/write pairs, while the PPU keeps running
+            if (cpu != null) {
+                cpu.stall(OAM_DMA_CYCLES, true);
+            }
             return;
         }
 
@@ -173,15 +534,91 @@ public class Bus {
         
         // APU Registers (0x4000 - 0x4017)
         if (addr >= 0x4000 && addr <= 0x4017) {
+            syncApu();
             apu.cpuWrite(addr, data);
+            updateApuIrq();
             return;
         }
     }
     
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    public int stateSize() {
+        return 4 + ramStateSize() + 8
+                + (cpu != null ? Cpu.STATE_SIZE : 0)
+                + Ppu.STATE_SIZE
+                + Apu.STATE_SIZE
+                + (cartridge != null ? cartridge.stateSize() : 0)
+                + 2 * Controller.STATE_SIZE;
+    }
+    
+    // Only the 2KB internal RAM is live once a cartridge owns 0x8000-0xFFFF
+    private int ramStateSize() {
+        return cartridge != null ? 0x0800 : ram.length;
+    }
+    
+    /**
+     * Write RAM, the clock and every connected component into a buffer.
+     * Does not allocate, so it can run every frame.
+     */
+    public void saveState(ByteBuffer buffer) {
+        // Store the CPU timing in its per-cycle form so the state does not
+        // depend on the scheduling mode
+        boolean wasCatchUp = catchUp;
+        setCatchUp(false);
+        
+        buffer.putInt(ramStateSize());
+        buffer.put(ram, 0, ramStateSize());
+        buffer.putLong(systemClockCounter);
+        if (cpu != null) cpu.saveState(buffer);
+        ppu.saveState(buffer);
+        syncApu();
+        apu.saveState(buffer);
+        if (cartridge != null) cartridge.saveState(buffer);
+        controllers[0].saveState(buffer);
+        controllers[1].saveState(buffer);
+        
+        setCatchUp(wasCatchUp);
+    }
+    
+    /**
+     * Restore the state written by saveState().
+     * @throws IllegalArgumentException if the state does not fit this machine
+     */
+    public void loadState(ByteBuffer buffer) {
+        int ramSize = buffer.getInt();
+        if (ramSize != ramStateSize()) {
+            throw new IllegalArgumentException("Save state RAM size " + ramSize + " does not match " + ramStateSize());
+        }
+        
+        boolean wasCatchUp = catchUp;
+        catchUp = false;
+        cpuIdleTicks = 0;
+        
+        buffer.get(ram, 0, ramSize);
+        systemClockCounter = buffer.getLong();
+        if (cpu != null) cpu.loadState(buffer);
+        ppu.loadState(buffer);
+        apu.loadState(buffer);
+        // The IRQ line is not saved; its sources re-assert it as they load
+        updateApuIrq();
+        setIrq(IRQ_MAPPER, false);
+        if (cartridge != null) cartridge.loadState(buffer);
+        controllers[0].loadState(buffer);
+        controllers[1].loadState(buffer);
+        
+        setCatchUp(wasCatchUp);
+    }
+    
     public int[] getFrameBuffer() {
         return ppu.getFrameBuffer();
     }
     
+    public Apu getApu() {
+        return apu;
+    }
+    
     public Ppu getPpu() {
         return ppu;
     }
@@ -1,61 +1,121 @@
 package com.nes;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
-import java.util.Arrays;
+
+import com.nes.mapper.Mapper;
 
 /**
  * Represents a NES Cartridge.
  * Handles loading of iNES format ROMs.
+ *
+ * PRG, CHR and nametables are reached through bank pointers: 8KB PRG
+ * windows, 1KB CHR windows and four nametable offsets into PPU VRAM.
+ * The Mapper sets them on bank switches, so every read is a single
+ * array index.
+ *
+ * PRG-RAM at 0x6000 - 0x7FFF is mapped into the bus page table for reads
+ * only. Writes go through cpuWrite(), which marks the RAM dirty when a byte
+ * changes; BatteryBackup polls that flag to persist battery-backed RAM.
  */
 public class Cartridge {
 
+    // Nametable mirroring modes
+    public static final int MIRROR_HORIZONTAL = 0;
+    public static final int MIRROR_VERTICAL = 1;
+    public static final int MIRROR_SINGLE_LOWER = 2;
+    public static final int MIRROR_SINGLE_UPPER = 3;
+    public static final int MIRROR_FOUR_SCREEN = 4;
+
+    // VRAM offsets of nametables 0-3 for each mirroring mode
+    private static final int[][] NAMETABLE_LAYOUTS = {
+        {0x000, 0x000, 0x400, 0x400}, // Horizontal
+        {0x000, 0x400, 0x000, 0x400}, // Vertical
+        {0x000, 0x000, 0x000, 0x000}, // Single-screen, lower bank
+        {0x400, 0x400, 0x400, 0x400}, // Single-screen, upper bank
+        {0x000, 0x400, 0x800, 0xC00}, // Four-screen (2KB of extra VRAM on the board)
+    };
+
     private byte[] prgRom;
     private byte[] chrRom;
+    private byte[] prgRam;
     private int mapperId;
     private int prgBanks;
     private int chrBanks;
-    private int mirrorMode; // 0 = Horizontal, 1 = Vertical
-    private int chrBank = 0; // Current CHR Bank (Mapper 3)
+    private int mirrorMode; // 0 = Horizontal, 1 = Vertical, 2/3 = Single-screen, 4 = Four-screen
+    private boolean fourScreen = false;
+    private int submapper = 0;
+    
+    // Header (corrected by the ROM database) when loaded from a file, else null
+    private RomHeader header;
+    
+    private Mapper mapper;
+    
+    // Bank pointers: offset into prgRom of each 8KB window at 0x8000/0xA000/0xC000/0xE000
+    private final int[] prgOffsets = new int[4];
+    // Offset into chrRom of each 1KB window of the pattern space
+    private final int[] chrOffsets = new int[8];
+    // Offset into PPU VRAM of each nametable; the PPU indexes this array directly
+    private final int[] nametables = new int[4];
+    
+    // CPU bus whose page table holds our PRG mapping
+    private Bus bus;
+    
+    // PRG-RAM chip enable and write protect, driven by the mapper
+    private boolean prgRamEnabled = true;
+    private boolean prgRamWritable = true;
+    // Set when a CPU write changes PRG-RAM; cleared by takePrgRamDirty()
+    private boolean prgRamDirty = false;
+    
+    // Level of the mapper's IRQ output
+    private boolean irqAsserted = false;
+    
+    // Decoded tile rows of chrRom, following the current CHR banks
+    private TileCache tileCache;
 
     public Cartridge(String filePath) throws IOException {
-        byte[] data = Files.readAllBytes(Paths.get(filePath));
-        
-        // Parse Header
-        // 0-3: Constant $4E $45 $53 $1A ("NES" + EOF)
-        if (data[0] != 'N' || data[1] != 'E' || data[2] != 'S' || data[3] != 0x1A) {
-            throw new IOException("Invalid NES ROM header");
+        this(RomImage.open(Paths.get(filePath)));
+    }
+    
+    /**
+     * Load from a mapped ROM. PRG and CHR are copied once, straight from
+     * the mapping into the arrays the bus and tile cache index.
+     */
+    public Cartridge(RomImage rom) throws IOException {
+        this(rom, RomDatabase.getDefault().correct(rom));
+    }
+    
+    /**
+     * Load from a mapped ROM using the given header instead of the file's.
+     */
+    public Cartridge(RomImage rom, RomHeader header) throws IOException {
+        this.header = header;
+        mapperId = header.getMapperId();
+        submapper = header.getSubmapper();
+        fourScreen = header.isFourScreen();
+        mirrorMode = fourScreen ? MIRROR_FOUR_SCREEN : header.getMirrorMode(); // 0 = horizontal, 1 = vertical
+        if (!Mapper.isSupported(mapperId)) {
+            throw new IOException("Unsupported mapper " + mapperId);
         }
-
-        prgBanks = data[4] & 0xFF;
-        chrBanks = data[5] & 0xFF;
         
-        int flags6 = data[6] & 0xFF;
-        int flags7 = data[7] & 0xFF;
+        // Banks in iNES units: 16KB PRG, 8KB CHR
+        prgBanks = header.getPrgRomSize() / 16384;
+        chrBanks = header.getChrRomSize() / 8192;
+        
+        prgRom = new byte[header.getPrgRomSize()];
+        rom.prg().get(prgRom);
         
-        mapperId = ((flags7 & 0xF0) | (flags6 >> 4));
-        mirrorMode = (flags6 & 0x01); // Bit 0: 0 = horizontal, 1 = vertical
-
-        // Skip trainer if present (Bit 2 of flags6)
-        int offset = 16;
-        if ((flags6 & 0x04) != 0) {
-            offset += 512;
-        }
-
-        // Read PRG ROM (16KB units)
-        int prgSize = prgBanks * 16384;
-        prgRom = Arrays.copyOfRange(data, offset, offset + prgSize);
-        offset += prgSize;
-
-        // Read CHR ROM (8KB units)
-        int chrSize = chrBanks * 8192;
         if (chrBanks > 0) {
-            chrRom = Arrays.copyOfRange(data, offset, offset + chrSize);
+            chrRom = new byte[header.getChrRomSize()];
+            rom.chr().get(chrRom);
         } else {
-            // If 0, it uses CHR RAM (not handled yet, but initialize empty)
-            chrRom = new byte[8192]; 
+            // CHR-RAM as sized by the header, at least 8KB
+            chrRom = new byte[Math.max(8192, header.getChrRamSize() + header.getChrNvramSize())];
         }
+        // Volatile and battery-backed PRG-RAM share 0x6000; NES 2.0 may declare none
+        prgRam = new byte[Math.min(8192, header.getPrgRamSize() + header.getPrgNvramSize())];
+        init();
     }
 
     // For testing
@@ -66,6 +126,7 @@ public class Cartridge {
         this.prgBanks = prgRom.length / 16384;
         this.chrBanks = chrRom.length / 8192;
         this.mirrorMode = mirrorMode;
+        init();
     }
 
     // Legacy test constructor (defaults to Horizontal)
@@ -81,68 +142,324 @@ public class Cartridge {
         this.mirrorMode = mirrorMode;
         this.prgBanks = prgBanks;
         this.chrBanks = chrBanks;
+        init();
+    }
+    
+    private void init() {
+        if (prgRam == null) {
+            // Test cartridges get the 8KB most boards carry
+            prgRam = new byte[8192];
+        }
+        tileCache = new TileCache(chrRom);
+        setMirroring(mirrorMode);
+        mapper = Mapper.create(mapperId, this);
+        mapper.reset();
+    }
+
+    /**
+     * Connect to the CPU bus and publish the PRG mapping in its page table.
+     */
+    public void connectBus(Bus bus) {
+        this.bus = bus;
+        for (int slot = 0; slot < 4; slot++) {
+            mapPrgPages(slot);
+        }
+        mapPrgRamPages();
+        bus.setIrq(Bus.IRQ_MAPPER, irqAsserted);
+    }
+    
+    /**
+     * Point the bus page table at the PRG-ROM pages of one 8KB window.
+     */
+    private void mapPrgPages(int slot) {
+        if (bus == null) return;
+        
+        int firstPage = 0x80 + slot * 32;
+        for (int i = 0; i < 32; i++) {
+            int offset = prgOffsets[slot] + (i << 8);
+            if (offset + 256 <= prgRom.length) {
+                bus.mapReadPage(firstPage + i, prgRom, offset);
+            } else {
+                bus.mapReadPage(firstPage + i, null, 0);
+            }
+        }
+    }
+    
+    /**
+     * Point the bus page table at PRG-RAM for reads while it is enabled.
+     * Writes always go through cpuWrite() so they can be tracked.
+     */
+    private void mapPrgRamPages() {
+        if (bus == null) return;
+        
+        // RAM smaller than 8KB is mirrored; below one page only the decoder can mirror it
+        boolean mapped = prgRamEnabled && prgRam.length >= 256;
+        for (int i = 0; i < 32; i++) {
+            if (mapped) {
+                bus.mapReadPage(0x60 + i, prgRam, (i << 8) % prgRam.length);
+            } else {
+                bus.mapReadPage(0x60 + i, null, 0);
+            }
+        }
+    }
+    
+    /**
+     * Index in PRG-ROM of a CPU address through the current bank mapping.
+     * @param addr Address in CPU space (0x8000 - 0xFFFF)
+     */
+    public int getPrgRomOffset(int addr) {
+        return prgOffsets[(addr >> 13) & 0x03] + (addr & 0x1FFF);
+    }
+    
+    public int getPrgRomSize() {
+        return prgRom.length;
+    }
+    
+    /**
+     * Number of 8KB PRG banks; bank numbers passed to mapPrg8k() wrap around it.
+     */
+    public int getPrgBankCount8k() {
+        return Math.max(1, prgRom.length / 8192);
+    }
+    
+    /**
+     * Number of 1KB CHR banks; bank numbers passed to mapChr1k() wrap around it.
+     */
+    public int getChrBankCount1k() {
+        return Math.max(1, chrRom.length / 1024);
+    }
+    
+    /**
+     * Map an 8KB PRG window.
+     * @param slot Window index (0 = 0x8000 ... 3 = 0xE000)
+     * @param bank 8KB bank number; negative numbers count from the last bank
+     */
+    public void mapPrg8k(int slot, int bank) {
+        int offset = Math.floorMod(bank, getPrgBankCount8k()) * 8192;
+        if (prgOffsets[slot] == offset) return;
+        prgOffsets[slot] = offset;
+        mapPrgPages(slot);
+    }
+    
+    /**
+     * Map a 16KB PRG window.
+     * @param slot Window index (0 = 0x8000, 1 = 0xC000)
+     * @param bank 16KB bank number; negative numbers count from the last bank
+     */
+    public void mapPrg16k(int slot, int bank) {
+        mapPrg8k(slot * 2, bank * 2);
+        mapPrg8k(slot * 2 + 1, bank * 2 + 1);
+    }
+    
+    /**
+     * Map the whole of 0x8000 - 0xFFFF to a 32KB PRG bank.
+     * A 16KB PRG appears twice.
+     */
+    public void mapPrg32k(int bank) {
+        for (int slot = 0; slot < 4; slot++) {
+            mapPrg8k(slot, bank * 4 + slot);
+        }
+    }
+    
+    /**
+     * Map a 1KB CHR window.
+     * @param slot Window index (PPU address >> 10)
+     * @param bank 1KB bank number; wraps around the CHR size
+     */
+    public void mapChr1k(int slot, int bank) {
+        bank = Math.floorMod(bank, getChrBankCount1k());
+        chrOffsets[slot] = bank * 1024;
+        tileCache.mapChr1k(slot, bank);
+    }
+    
+    /**
+     * Map a 4KB CHR window.
+     * @param slot Window index (0 = 0x0000, 1 = 0x1000)
+     */
+    public void mapChr4k(int slot, int bank) {
+        for (int i = 0; i < 4; i++) {
+            mapChr1k(slot * 4 + i, bank * 4 + i);
+        }
+    }
+    
+    /**
+     * Map the whole pattern space to one 8KB CHR bank.
+     */
+    public void mapChr8k(int bank) {
+        for (int i = 0; i < 8; i++) {
+            mapChr1k(i, bank * 8 + i);
+        }
+    }
+    
+    /**
+     * Select the nametable mirroring (MIRROR_* constant).
+     */
+    public void setMirroring(int mode) {
+        // Four-screen boards ignore the mapper's mirroring control
+        if (fourScreen) mode = MIRROR_FOUR_SCREEN;
+        mirrorMode = mode;
+        System.arraycopy(NAMETABLE_LAYOUTS[mode], 0, nametables, 0, 4);
+    }
+
+    /**
+     * Set the PRG-RAM chip enable and write protect.
+     * Disabled RAM reads as open bus and ignores writes.
+     */
+    public void setPrgRamAccess(boolean enabled, boolean writable) {
+        if (enabled == prgRamEnabled && writable == prgRamWritable) return;
+        prgRamEnabled = enabled;
+        prgRamWritable = writable;
+        mapPrgRamPages();
+    }
+    
+    /**
+     * Whether the board keeps PRG-RAM alive with a battery.
+     */
+    public boolean hasBattery() {
+        return header != null && header.hasBattery();
+    }
+    
+    /**
+     * PRG-RAM contents, updated in place by CPU writes.
+     */
+    public byte[] getPrgRam() {
+        return prgRam;
+    }
+    
+    /**
+     * Whether PRG-RAM changed since the last call; clears the flag.
+     */
+    public boolean takePrgRamDirty() {
+        boolean dirty = prgRamDirty;
+        prgRamDirty = false;
+        return dirty;
+    }
+    
+    /**
+     * Drive the cartridge IRQ output (the mapper's source of the CPU IRQ line).
+     */
+    public void setIrq(boolean asserted) {
+        irqAsserted = asserted;
+        if (bus != null) {
+            bus.setIrq(Bus.IRQ_MAPPER, asserted);
+        }
+    }
+    
+    public boolean isIrqAsserted() {
+        return irqAsserted;
+    }
+    
+    /**
+     * Called by the PPU when its address line A12 rises.
+     */
+    public void ppuA12Rise() {
+        mapper.ppuA12Rise();
+    }
+
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    public int stateSize() {
+        return 4 + 4 + 4 + 4 + 4 + mapper.stateSize() + prgRam.length + (chrBanks == 0 ? chrRom.length : 0);
+    }
+    
+    /**
+     * Write mirroring, mapper registers, PRG-RAM and CHR-RAM into a buffer.
+     * ROM contents are not saved; the mapper and ROM sizes are, so a state
+     * cannot be loaded into a different cartridge by accident.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(mapperId);
+        buffer.putInt(prgRom.length);
+        buffer.putInt(chrRom.length);
+        buffer.putInt(prgRam.length);
+        buffer.putInt(mirrorMode);
+        mapper.saveState(buffer);
+        buffer.put(prgRam);
+        if (chrBanks == 0) {
+            buffer.put(chrRom);
+        }
+    }
+    
+    /**
+     * Restore the state written by saveState().
+     * @throws IllegalArgumentException if the state belongs to another cartridge
+     */
+    public void loadState(ByteBuffer buffer) {
+        int savedMapper = buffer.getInt();
+        int savedPrgSize = buffer.getInt();
+        int savedChrSize = buffer.getInt();
+        int savedPrgRamSize = buffer.getInt();
+        if (savedMapper != mapperId || savedPrgSize != prgRom.length || savedChrSize != chrRom.length
+                || savedPrgRamSize != prgRam.length) {
+            throw new IllegalArgumentException("Save state is for a different cartridge (mapper " + savedMapper
+                    + ", PRG " + savedPrgSize + ", CHR " + savedChrSize + ", PRG-RAM " + savedPrgRamSize + ")");
+        }
+        setMirroring(buffer.getInt());
+        mapper.loadState(buffer);
+        buffer.get(prgRam);
+        // The loaded RAM replaces what the battery holds
+        prgRamDirty = true;
+        if (chrBanks == 0) {
+            buffer.get(chrRom);
+            tileCache.reload();
+        }
     }
 
     public int getPrgBanks() { return prgBanks; }
     public int getChrBanks() { return chrBanks; }
     public int getMapperId() { return mapperId; }
     public int getMirrorMode() { return mirrorMode; }
+    public int getSubmapper() { return submapper; }
+    public RomHeader getHeader() { return header; }
+    public Mapper getMapper() { return mapper; }
+    public TileCache getTileCache() { return tileCache; }
+    
+    /**
+     * VRAM offset (0x000 or 0x400) of each of the four nametables.
+     * The array is updated in place when the mirroring changes.
+     */
+    public int[] getNametables() { return nametables; }
 
     /**
-     * Read from PRG ROM.
-     * Handles Mapper 0 (NROM) logic.
-     * @param addr Address in CPU space (0x8000 - 0xFFFF)
-     * @return Byte at address
+     * Read from PRG ROM through the current bank mapping, or from PRG-RAM.
+     * @param addr Address in CPU space (0x4020 - 0xFFFF)
+     * @return Byte at address; 0 where nothing answers
      */
     public byte cpuRead(int addr) {
-        // Mapper 0
-        if (prgBanks == 1) {
-            // 16KB PRG: Mirror 0x8000-0xBFFF to 0xC000-0xFFFF
-            // Mask with 0x3FFF (16KB - 1)
-            return prgRom[addr & 0x3FFF];
-        } else {
-            // 32KB PRG: Direct map
-            // Mask with 0x7FFF (32KB - 1)
-            return prgRom[addr & 0x7FFF];
+        if (addr >= 0x8000) {
+            return prgRom[prgOffsets[(addr >> 13) & 0x03] + (addr & 0x1FFF)];
+        }
+        if (addr >= 0x6000 && prgRamEnabled && prgRam.length > 0) {
+            return prgRam[(addr & 0x1FFF) % prgRam.length];
         }
+        return 0x00;
     }
 
     /**
-     * Write to PRG ROM (Mapper 0 doesn't support writing to ROM, but some mappers do registers)
+     * Write to the cartridge; on ROM these are mapper register writes,
+     * at 0x6000 - 0x7FFF they go to PRG-RAM.
      */
     public void cpuWrite(int addr, byte data) {
-        // Mapper 3 (CNROM)
-        if (mapperId == 3) {
-            // Write to 0x8000-0xFFFF sets CHR Bank
-            if (addr >= 0x8000 && addr <= 0xFFFF) {
-                chrBank = data & 0x03; // Select 8KB bank (0-3)
+        if (addr >= 0x8000 && addr <= 0xFFFF) {
+            mapper.cpuWrite(addr, data);
+        } else if (addr >= 0x6000 && prgRamWritable && prgRamEnabled && prgRam.length > 0) {
+            int index = (addr & 0x1FFF) % prgRam.length;
+            // Games rewrite the same bytes constantly; only changes need saving
+            if (prgRam[index] != data) {
+                prgRam[index] = data;
+                prgRamDirty = true;
             }
         }
-        // Mapper 0: No write support
     }
     
     /**
-     * PPU reads from CHR-ROM/RAM
+     * PPU reads from CHR-ROM/RAM through the current bank mapping.
      * @param addr Address in PPU space (0x0000 - 0x1FFF)
      * @return Byte at address
      */
     public byte ppuRead(int addr) {
-        addr &= 0x1FFF;
-        
-        if (mapperId == 3) {
-            // Mapper 3: Use chrBank
-            // 8KB banks. Offset = chrBank * 8192 + addr
-            int offset = chrBank * 8192 + addr;
-            if (offset < chrRom.length) {
-                return chrRom[offset];
-            }
-            return 0x00;
-        }
-        
-        if (addr < chrRom.length) {
-            return chrRom[addr];
-        }
-        return 0x00;
+        return chrRom[chrOffsets[(addr >> 10) & 0x07] + (addr & 0x03FF)];
     }
     
     /**
@@ -151,10 +468,11 @@ public class Cartridge {
      * @param data Byte to write
      */
     public void ppuWrite(int addr, byte data) {
-        addr &= 0x1FFF;
         // Only write if using CHR-RAM (chrBanks == 0)
-        if (chrBanks == 0 && addr < chrRom.length) {
-            chrRom[addr] = data;
+        if (chrBanks == 0) {
+            int index = chrOffsets[(addr >> 10) & 0x07] + (addr & 0x03FF);
+            chrRom[index] = data;
+            tileCache.invalidate(index);
         }
     }
 }
@@ -0,0 +1,205 @@
+package com.nes;
+
+import com.nes.cpu.Cpu;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * One complete NES: CPU, PPU, bus and cartridge wired together.
+ * A Console owns all of its emulation state, so any number of them can run
+ * side by side on different threads. The only static data in the core are
+ * read-only tables (e.g. the default palette).
+ *
+ * Consoles run with catch-up scheduling and the scanline renderer, which
+ * give the same frames as per-cycle emulation. A line the scanline
+ * renderer has deferred is run dot by dot up to any PPU or mapper
+ * register write, so mid-line CHR bank, mirroring and scroll changes
+ * land on the same dot.
+ */
+public class Console {
+
+    private final Bus bus;
+    private final Cpu cpu;
+    private final Cartridge cartridge;
+    
+    // Captures a state after every frame while rewind is enabled
+    private RewindBuffer rewindBuffer;
+    
+    // Persists battery-backed PRG-RAM, or null
+    private BatteryBackup batteryBackup;
+
+    public Console(Cartridge cartridge) {
+        this(cartridge, Cpu.Core.SWITCH);
+    }
+
+    public Console(Cartridge cartridge, Cpu.Core core) {
+        this.cartridge = cartridge;
+        bus = new Bus();
+        cpu = new Cpu(core);
+
+        bus.connectCpu(cpu);
+        bus.insertCartridge(cartridge);
+        cpu.connectBus(bus);
+        bus.reset();
+
+        bus.setCatchUp(true);
+        bus.getPpu().setRenderer(Ppu.Renderer.SCANLINE);
+    }
+
+    public Bus getBus() {
+        return bus;
+    }
+
+    public Cpu getCpu() {
+        return cpu;
+    }
+
+    public Ppu getPpu() {
+        return bus.getPpu();
+    }
+
+    public Cartridge getCartridge() {
+        return cartridge;
+    }
+
+    public Controller getController(int index) {
+        return bus.getController(index);
+    }
+
+    public int[] getFrameBuffer() {
+        return bus.getFrameBuffer();
+    }
+
+    // "NESS" followed by the format version
+    public static final int STATE_MAGIC = 0x4E455353;
+    public static final int STATE_VERSION = 6;
+    
+    /**
+     * Size in bytes of a save state of this console.
+     */
+    public int stateSize() {
+        return 8 + bus.stateSize();
+    }
+    
+    /**
+     * Allocate a buffer that fits one save state; reuse it for every save.
+     */
+    public ByteBuffer createStateBuffer() {
+        return ByteBuffer.allocate(stateSize());
+    }
+    
+    /**
+     * Write a versioned save state at the buffer's position.
+     * Allocates nothing, so it is cheap enough to call every frame.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(STATE_MAGIC);
+        buffer.putInt(STATE_VERSION);
+        bus.saveState(buffer);
+    }
+    
+    /**
+     * Restore a save state from the buffer's position.
+     * @throws IllegalArgumentException if the data is not a save state of
+     *         this format version, or belongs to another cartridge
+     */
+    public void loadState(ByteBuffer buffer) {
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        if (magic != STATE_MAGIC) {
+            throw new IllegalArgumentException("Not a save state");
+        }
+        if (version != STATE_VERSION) {
+            throw new IllegalArgumentException("Unsupported save state version " + version);
+        }
+        bus.loadState(buffer);
+    }
+    
+    /**
+     * Start capturing a rewind state after every frame, with the default
+     * 60 seconds of history.
+     */
+    public RewindBuffer enableRewind() {
+        return enableRewind(new RewindBuffer(this));
+    }
+    
+    /**
+     * Start capturing into the given rewind buffer (created for this console).
+     */
+    public RewindBuffer enableRewind(RewindBuffer buffer) {
+        rewindBuffer = buffer;
+        // The current state is the first one rewind can return to
+        rewindBuffer.capture();
+        return rewindBuffer;
+    }
+    
+    public void disableRewind() {
+        rewindBuffer = null;
+    }
+    
+    public RewindBuffer getRewindBuffer() {
+        return rewindBuffer;
+    }
+    
+    /**
+     * Go back one frame.
+     * @return False if rewind is disabled or there is no older frame
+     */
+    public boolean rewind() {
+        return rewindBuffer != null && rewindBuffer.rewind();
+    }
+    
+    /**
+     * Run one frame worth of master clock ticks.
+     */
+    public void runFrame() {
+        bus.runFrame();
+        if (rewindBuffer != null) {
+            rewindBuffer.capture();
+        }
+        if (batteryBackup != null) {
+            batteryBackup.sync();
+        }
+    }
+
+    /**
+     * Load PRG-RAM from a save file and keep the file up to date as the
+     * game changes it. Call close() before exiting to write the last changes.
+     */
+    public BatteryBackup enableBatteryBackup(Path file) throws IOException {
+        batteryBackup = new BatteryBackup(cartridge, file);
+        return batteryBackup;
+    }
+    
+    public BatteryBackup getBatteryBackup() {
+        return batteryBackup;
+    }
+    
+    /**
+     * Write pending battery-backed RAM and stop its writer.
+     */
+    public void close() throws IOException {
+        if (batteryBackup != null) {
+            batteryBackup.close();
+        }
+    }
+
+    /**
+     * Run a number of frames, setting controller 1 before each one.
+     * @param frames Number of frames to run
+     * @param input Maps the frame index (0-based, within this call) to the
+     *              controller 1 button mask; null leaves the controller alone
+     */
+    public void runFrames(int frames, IntUnaryOperator input) {
+        Controller controller = bus.getController(0);
+        for (int frame = 0; frame < frames; frame++) {
+            if (input != null) {
+                controller.setState(input.applyAsInt(frame));
+            }
+            runFrame();
+        }
+    }
+}
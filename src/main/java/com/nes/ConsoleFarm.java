@@ -0,0 +1,96 @@
+package com.nes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Runs many independent Consoles in parallel on a fork-join pool.
+ * Each task builds its own Console (and Cartridge) on the worker thread, so
+ * nothing is shared between instances and throughput scales with cores.
+ *
+ * Example: 64 copies of a ROM, each with its own input script
+ * <pre>
+ * try (ConsoleFarm farm = new ConsoleFarm()) {
+ *     List&lt;Integer&gt; scores = farm.run(64,
+ *         i -&gt; new Console(new Cartridge("rom/90tank.nes")),
+ *         (i, console) -&gt; { console.runFrames(600, scripts[i]); return console.getBus().read(0x0040); });
+ * }
+ * </pre>
+ */
+public class ConsoleFarm implements AutoCloseable {
+
+    /**
+     * Creates a Console for instance i. May throw, e.g. when a ROM fails to load.
+     */
+    @FunctionalInterface
+    public interface ConsoleFactory {
+        Console create(int index) throws Exception;
+    }
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Farm using one worker per available processor.
+     */
+    public ConsoleFarm() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConsoleFarm(int threads) {
+        pool = new ForkJoinPool(threads);
+    }
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Create and drive count consoles in parallel.
+     * @param count Number of instances
+     * @param factory Builds instance i
+     * @param task Runs instance i and extracts its result
+     * @return Results in instance order
+     */
+    public <R> List<R> run(int count, ConsoleFactory factory, BiFunction<Integer, Console, R> task) {
+        // Failures are kept per instance: ForkJoinPool re-wraps exceptions
+        // that cross threads, which would hide the original cause
+        Exception[] failures = new Exception[count];
+        List<Future<R>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            futures.add(pool.submit(() -> {
+                try {
+                    return task.apply(index, factory.create(index));
+                } catch (Exception e) {
+                    failures[index] = e;
+                    return null;
+                }
+            }));
+        }
+
+        List<R> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for console " + i, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Console " + i + " failed", e.getCause());
+            }
+            if (failures[i] != null) {
+                throw new IllegalStateException("Console " + i + " failed", failures[i]);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -1,5 +1,7 @@
 package com.nes;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents a standard NES Controller.
  * Handles input state, strobe mechanism, and serial reporting.
@@ -43,6 +45,37 @@ public class Controller {
         }
     }
 
+    /**
+     * Set all buttons at once.
+     * @param buttons Bitmask of pressed buttons (BUTTON_* values OR'ed together)
+     */
+    public void setState(int buttons) {
+        controllerState = buttons & 0xFF;
+    }
+
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    public static final int STATE_SIZE = 3;
+
+    /**
+     * Write button, shift register and strobe state into a buffer.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) controllerState);
+        buffer.put((byte) controllerStateLatched);
+        buffer.put((byte) (strobe ? 1 : 0));
+    }
+
+    /**
+     * Restore the state written by saveState().
+     */
+    public void loadState(ByteBuffer buffer) {
+        controllerState = buffer.get() & 0xFF;
+        controllerStateLatched = buffer.get() & 0xFF;
+        strobe = buffer.get() != 0;
+    }
+
     /**
      * Write to the controller register (0x4016).
      * Controls the strobe mechanism.
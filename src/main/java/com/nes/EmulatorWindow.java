@@ -21,6 +21,9 @@ public class EmulatorWindow extends JFrame {
     private Canvas displayCanvas;
     private boolean running = false;
     
+    // Held rewind key, polled by the emulation thread
+    private volatile boolean rewinding = false;
+    
     public EmulatorWindow(Bus bus) {
         this.bus = bus;
         
@@ -87,6 +90,9 @@ public class EmulatorWindow extends JFrame {
             case java.awt.event.KeyEvent.VK_RIGHT:
                 controller.setButtonPressed(Controller.BUTTON_RIGHT, pressed);
                 break;
+            case java.awt.event.KeyEvent.VK_BACK_SPACE:
+                rewinding = pressed;
+                break;
         }
     }
     
@@ -154,6 +160,13 @@ public class EmulatorWindow extends JFrame {
      */
     // DisplayPanel class removed
     
+    /**
+     * True while the rewind key is held
+     */
+    public boolean isRewinding() {
+        return rewinding;
+    }
+    
     public boolean isRunning() {
         return running;
     }
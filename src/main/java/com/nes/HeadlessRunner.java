@@ -0,0 +1,297 @@
+package com.nes;
+
+import com.nes.cpu.Cpu;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Runs a ROM without a display, as fast as possible.
+ * Used for ROM regression checks and throughput measurements on machines
+ * with no screen. Nothing here (or in the emulation core) touches AWT;
+ * PNG output is encoded by hand for that reason.
+ *
+ * Usage: HeadlessRunner rom.nes [--frames N] [--until ADDR=VALUE]
+ *                               [--png out.png] [--raw out.rgb]
+ *                               [--palette file.pal] [--core TABLE|SWITCH|RECOMPILER|DECODED]
+ *                               [--idle-skip on|off]
+ */
+public class HeadlessRunner {
+
+    public static final int WIDTH = 256;
+    public static final int HEIGHT = 240;
+
+    private final Console console;
+    private final Bus bus;
+    private final Cpu cpu;
+
+    public HeadlessRunner(Cartridge cartridge) {
+        this(cartridge, Cpu.Core.SWITCH);
+    }
+
+    public HeadlessRunner(Cartridge cartridge, Cpu.Core core) {
+        this(new Console(cartridge, core));
+    }
+
+    public HeadlessRunner(Console console) {
+        this.console = console;
+        this.bus = console.getBus();
+        this.cpu = console.getCpu();
+    }
+
+    public Console getConsole() {
+        return console;
+    }
+
+    public Bus getBus() {
+        return bus;
+    }
+
+    /**
+     * Run until maxFrames frames have been emulated or the stop condition
+     * holds. The condition is checked after every frame.
+     * @param maxFrames Upper bound on frames to run
+     * @param stopCondition Checked after each frame, may be null
+     * @return Counts and timing of the run
+     */
+    public Result run(int maxFrames, Predicate<Bus> stopCondition) {
+        long startInstructions = cpu.getInstructionCount();
+        long startDots = bus.getSystemClockCounter();
+        long startSkipped = bus.getSkippedCycles();
+        long startTime = System.nanoTime();
+
+        int frames = 0;
+        boolean stopped = false;
+        while (frames < maxFrames) {
+            bus.runFrame();
+            frames++;
+            if (stopCondition != null && stopCondition.test(bus)) {
+                stopped = true;
+                break;
+            }
+        }
+
+        long nanos = System.nanoTime() - startTime;
+        return new Result(frames, stopped, nanos,
+                cpu.getInstructionCount() - startInstructions,
+                bus.getSystemClockCounter() - startDots,
+                bus.getSkippedCycles() - startSkipped);
+    }
+
+    /**
+     * Outcome of a headless run.
+     */
+    public static final class Result {
+        public final int frames;
+        public final boolean conditionMet;
+        public final long nanos;
+        public final long instructions;
+        public final long dots;
+        // CPU cycles of idle loops skipped rather than executed
+        public final long skippedCycles;
+
+        Result(int frames, boolean conditionMet, long nanos, long instructions, long dots, long skippedCycles) {
+            this.frames = frames;
+            this.conditionMet = conditionMet;
+            this.nanos = nanos;
+            this.instructions = instructions;
+            this.dots = dots;
+            this.skippedCycles = skippedCycles;
+        }
+
+        public double seconds() {
+            return nanos / 1e9;
+        }
+
+        public double framesPerSecond() {
+            return frames / seconds();
+        }
+
+        public double instructionsPerSecond() {
+            return instructions / seconds();
+        }
+
+        public double dotsPerSecond() {
+            return dots / seconds();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d frames in %.3f s: %.1f frames/s, %.2fM instructions/s, %.2fM dots/s,"
+                    + " %.0f%% of CPU cycles idle-skipped",
+                    frames, seconds(), framesPerSecond(),
+                    instructionsPerSecond() / 1e6, dotsPerSecond() / 1e6,
+                    dots == 0 ? 0.0 : 300.0 * skippedCycles / dots);
+        }
+    }
+
+    /**
+     * Write a frame as a 24-bit RGB PNG.
+     * @param pixels 0xRRGGBB pixels, row-major
+     */
+    public static void writePng(int[] pixels, int width, int height, OutputStream out) throws IOException {
+        // Scanlines, each prefixed with filter type 0 (None)
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed)) {
+            byte[] row = new byte[1 + width * 3];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int color = pixels[y * width + x];
+                    row[1 + x * 3] = (byte) (color >> 16);
+                    row[2 + x * 3] = (byte) (color >> 8);
+                    row[3 + x * 3] = (byte) color;
+                }
+                deflate.write(row);
+            }
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream ihdr = new DataOutputStream(header);
+        ihdr.writeInt(width);
+        ihdr.writeInt(height);
+        ihdr.writeByte(8);  // Bit depth
+        ihdr.writeByte(2);  // Color type: RGB
+        ihdr.writeByte(0);  // Compression
+        ihdr.writeByte(0);  // Filter
+        ihdr.writeByte(0);  // Interlace
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+        writeChunk(data, "IHDR", header.toByteArray());
+        writeChunk(data, "IDAT", compressed.toByteArray());
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] body) throws IOException {
+        byte[] typeBytes = type.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(body);
+
+        out.writeInt(body.length);
+        out.write(typeBytes);
+        out.write(body);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Write a frame as raw RGB24 (3 bytes per pixel, no header),
+     * e.g. for ffmpeg -f rawvideo -pix_fmt rgb24 -s 256x240.
+     */
+    public static void writeRaw(int[] pixels, OutputStream out) throws IOException {
+        byte[] bytes = new byte[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            bytes[i * 3] = (byte) (pixels[i] >> 16);
+            bytes[i * 3 + 1] = (byte) (pixels[i] >> 8);
+            bytes[i * 3 + 2] = (byte) pixels[i];
+        }
+        out.write(bytes);
+        out.flush();
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: HeadlessRunner rom.nes [--frames N] [--until ADDR=VALUE]"
+                    + " [--png out.png] [--raw out.rgb] [--palette file.pal] [--core TABLE|SWITCH|RECOMPILER|DECODED]"
+                    + " [--idle-skip on|off]");
+            System.exit(2);
+        }
+
+        String romPath = args[0];
+        int frames = 600;
+        int untilAddr = -1;
+        int untilValue = 0;
+        String pngPath = null;
+        String rawPath = null;
+        String palettePath = null;
+        Cpu.Core core = Cpu.Core.SWITCH;
+        boolean idleSkip = true;
+
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + option);
+                System.exit(2);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--frames":
+                    frames = Integer.parseInt(value);
+                    break;
+                case "--until":
+                    // ADDR=VALUE in hex, e.g. 6000=00
+                    String[] parts = value.split("=");
+                    untilAddr = Integer.parseInt(parts[0].replace("$", ""), 16);
+                    untilValue = Integer.parseInt(parts[1], 16);
+                    break;
+                case "--png":
+                    pngPath = value;
+                    break;
+                case "--raw":
+                    rawPath = value;
+                    break;
+                case "--palette":
+                    palettePath = value;
+                    break;
+                case "--core":
+                    core = Cpu.Core.valueOf(value.toUpperCase());
+                    break;
+                case "--idle-skip":
+                    idleSkip = !value.equalsIgnoreCase("off");
+                    break;
+                default:
+                    System.err.println("Unknown option " + option);
+                    System.exit(2);
+            }
+        }
+
+        try {
+            HeadlessRunner runner = new HeadlessRunner(new Cartridge(romPath), core);
+            runner.getBus().setIdleLoopSkip(idleSkip);
+            if (palettePath != null) {
+                runner.getBus().getPpu().loadPalette(palettePath);
+            }
+
+            Predicate<Bus> condition = null;
+            if (untilAddr >= 0) {
+                final int addr = untilAddr;
+                final int expected = untilValue;
+                // Peek, so polling does not change what it observes (VBlank
+                // flag, APU IRQ, controller shift); side-effecting registers never match
+                condition = bus -> bus.peek(addr) == expected;
+            }
+
+            Result result = runner.run(frames, condition);
+            System.out.println(romPath + ": " + result);
+
+            int[] frame = runner.getBus().getFrameBuffer();
+            if (pngPath != null) {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pngPath))) {
+                    writePng(frame, WIDTH, HEIGHT, out);
+                }
+            }
+            if (rawPath != null) {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(rawPath))) {
+                    writeRaw(frame, out);
+                }
+            }
+
+            // A condition that never held is a failed check
+            if (condition != null && !result.conditionMet) {
+                System.out.println("Condition not met after " + result.frames + " frames");
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
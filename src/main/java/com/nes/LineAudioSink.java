@@ -0,0 +1,53 @@
+package com.nes;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AudioSink playing through the default javax.sound.sampled output line
+ * as 16-bit signed little-endian mono. The output thread blocks in
+ * SourceDataLine.write(), so it drains the ring at the device's rate.
+ */
+public class LineAudioSink extends AudioSink {
+
+    // Samples moved from the ring to the line per write
+    private static final int CHUNK = 256;
+
+    private final SourceDataLine line;
+
+    public LineAudioSink(int sampleRate, int ringSamples) throws LineUnavailableException {
+        super(sampleRate, ringSamples);
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+        line = AudioSystem.getSourceDataLine(format);
+        // Keep the device buffer small; the ring holds the rest of the latency
+        line.open(format, 4 * CHUNK * 2);
+    }
+
+    @Override
+    protected void drain() {
+        short[] samples = new short[CHUNK];
+        byte[] bytes = new byte[CHUNK * 2];
+        line.start();
+        try {
+            while (running) {
+                int n = buffer.read(samples, 0, CHUNK);
+                if (n == 0) {
+                    // Underrun: wait for the emulator rather than spin
+                    LockSupport.parkNanos(1_000_000L);
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    bytes[2 * i] = (byte) samples[i];
+                    bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+                }
+                line.write(bytes, 0, 2 * n);
+            }
+        } finally {
+            line.stop();
+            line.close();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.nes;
 
-import com.nes.cpu.Cpu;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class Main {
     public static void main(String[] args) {
@@ -30,73 +32,98 @@ public class Main {
                 cart = new Cartridge(prg, chr, 0);
             }
             
-            Bus bus = new Bus();
-            Cpu cpu = new Cpu();
+            // Catch-up scheduling and the scanline renderer are set up by Console
+            Console console = new Console(cart);
+            Bus bus = console.getBus();
             
-            bus.connectCpu(cpu);
-            bus.insertCartridge(cart);
-            cpu.connectBus(bus);
+            // Optional .pal file as the second argument
+            if (args.length > 1) {
+                bus.getPpu().loadPalette(args[1]);
+                System.out.println("Loaded palette: " + args[1]);
+            }
+            
+            // Battery-backed RAM lives in a .sav file next to the ROM
+            if (args.length > 0 && cart.hasBattery()) {
+                BatteryBackup backup = console.enableBatteryBackup(BatteryBackup.savePath(Paths.get(args[0])));
+                System.out.println("Save file: " + backup.getFile());
+                // Closing the window exits the VM; write the last changes on the way out
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        console.close();
+                    } catch (IOException e) {
+                        System.err.println("Could not write save file: " + e.getMessage());
+                    }
+                }));
+            }
             
-            bus.reset();
+            // Keep the last 60 seconds for rewinding
+            console.enableRewind();
             
             // Create and show GUI window
             EmulatorWindow window = new EmulatorWindow(bus);
             window.start();
             
+            // Audio output; its fill level paces the emulation
+            Apu apu = bus.getApu();
+            AudioSink audio = AudioSink.open(apu.getSampleRate());
+            audio.start();
+            System.out.println("Audio output: " + audio.getClass().getSimpleName());
+            
             // Run emulation loop in separate thread
             Thread emulationThread = new Thread(() -> {
                 System.out.println("Emulation thread started");
                 
-                final long TARGET_TIME = 1000000000 / 60; // 60 FPS in nanoseconds
+                // Audio kept queued ahead of the speaker (50ms)
+                final int LATENCY_SAMPLES = apu.getSampleRate() / 20;
+                final int FRAME_SAMPLES = apu.getSampleRate() / 60;
+                short[] samples = new short[2048];
 
-                while (window.isRunning()) {
-                    long startTime = System.nanoTime();
-                    
-                    // Run one frame worth of cycles
-                    // One frame = 262 scanlines * 341 cycles * 3 (CPU runs at 1/3 PPU speed)
-                    // But we call bus.clock() which handles the 3:1 ratio
-                    int frameCycles = 262 * 341;
-                    
-                    for (int i = 0; i < frameCycles; i++) {
-                        bus.clock();
-                    }
-                    
-                    // Render the frame immediately after emulation
-                    window.renderFrame();
-                    
-                    // Debug Alignment
-                    if (bus.getPpu().getFrame() % 60 == 0) {
-                        System.out.println("End of Frame Loop: Scanline=" + bus.getPpu().getScanline() + ", Cycle=" + bus.getPpu().getCycle());
-                    }
-                    
-                    // Debug Output every 60 frames
-                    if (bus.getPpu().getFrame() % 60 == 0) {
-                        Ppu ppu = bus.getPpu();
-                        System.out.println(String.format("Frame: %d, PPU CTRL: %02X, MASK: %02X, STATUS: %02X",
-                            ppu.getFrame(), ppu.getPpuCtrl(), ppu.getPpuMask(), ppu.getPpuStatus()));
-                    }
-
-                    // Adaptive High-Precision Frame Timing
-                    long endTime = System.nanoTime();
-                    long duration = endTime - startTime;
-                    long waitTime = TARGET_TIME - duration;
-                    
-                    if (waitTime > 0) {
-                        try {
-                            // Sleep for most of the time (up to 1ms before target), to save CPU
-                            // Windows Thread.sleep is not precise, so we leave a buffer.
-                            if (waitTime > 1000000) {
-                                Thread.sleep((waitTime - 1000000) / 1000000);
-                            }
-                            
-                            // Busy-wait for the remaining time for high precision
-                            while (System.nanoTime() - startTime < TARGET_TIME) {
-                                // Spin
-                            }
-                        } catch (InterruptedException e) {
-                            break;
+                try {
+                    while (window.isRunning()) {
+                        // Run one frame worth of cycles, or step back one while rewind is held
+                        // One frame = 262 scanlines * 341 cycles (CPU runs at 1/3 PPU speed)
+                        if (window.isRewinding()) {
+                            console.rewind();
+                        } else {
+                            console.runFrame();
+                        }
+                        
+                        // Render the frame immediately after emulation
+                        window.renderFrame();
+                        
+                        // Debug Alignment
+                        if (bus.getPpu().getFrame() % 60 == 0) {
+                            System.out.println("End of Frame Loop: Scanline=" + bus.getPpu().getScanline() + ", Cycle=" + bus.getPpu().getCycle());
+                        }
+                        
+                        // Debug Output every 60 frames
+                        if (bus.getPpu().getFrame() % 60 == 0) {
+                            Ppu ppu = bus.getPpu();
+                            System.out.println(String.format("Frame: %d, PPU CTRL: %02X, MASK: %02X, STATUS: %02X",
+                                ppu.getFrame(), ppu.getPpuCtrl(), ppu.getPpuMask(), ppu.getPpuStatus()));
+                        }
+                        
+                        // Hand the frame's samples to the output thread
+                        int total = 0;
+                        int n;
+                        while ((n = apu.readSamples(samples, 0, samples.length)) > 0) {
+                            audio.write(samples, 0, n);
+                            total += n;
+                        }
+                        // Loading rewind states drops their audio; queue silence
+                        // instead so the frame still takes its time to play
+                        if (total < FRAME_SAMPLES / 2) {
+                            Arrays.fill(samples, 0, FRAME_SAMPLES - total, (short) 0);
+                            audio.write(samples, 0, FRAME_SAMPLES - total);
                         }
+                        
+                        // Frame pacing: wait until the queued audio drains to the target latency
+                        audio.pace(LATENCY_SAMPLES);
                     }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    audio.close();
                 }
                 
                 System.out.println("Emulation thread stopped");
@@ -0,0 +1,37 @@
+package com.nes;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AudioSink for machines without a sound device. Discards samples, but at
+ * the real-time rate a device would play them, so pace() still holds the
+ * emulator to full speed.
+ */
+public class NullAudioSink extends AudioSink {
+
+    public NullAudioSink(int sampleRate, int ringSamples) {
+        super(sampleRate, ringSamples);
+    }
+
+    @Override
+    protected void drain() {
+        short[] scratch = new short[1024];
+        long last = System.nanoTime();
+        // Elapsed time times sample rate not yet turned into whole samples
+        long pending = 0;
+        while (running) {
+            long now = System.nanoTime();
+            pending += (now - last) * sampleRate;
+            last = now;
+            // Time passes whether or not there was anything to play
+            long due = pending / 1_000_000_000L;
+            pending -= due * 1_000_000_000L;
+            while (due > 0) {
+                int n = buffer.read(scratch, 0, (int) Math.min(due, scratch.length));
+                if (n == 0) break;
+                due -= n;
+            }
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.nes;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 /**
  * NES Picture Processing Unit (PPU) - 2C02
  * Handles all graphics rendering for the NES.
@@ -22,7 +27,7 @@ public class Ppu {
     private byte dataBuffer = 0x00;
     
     // Memory
-    private byte[] vram = new byte[2048];      // 2KB nametable memory
+    private byte[] vram = new byte[4096];      // 2KB nametable memory, plus 2KB for four-screen boards
     private byte[] paletteRam = new byte[32];  // 32 bytes palette memory
     private byte[] oam = new byte[256];        // 256 bytes OAM (sprite memory)
     
@@ -43,9 +48,9 @@ public class Ppu {
     private byte[] secondaryOam = new byte[32]; // 8 sprites * 4 bytes
     private int spriteCount = 0; // Number of sprites found for next scanline
     
-    // Sprite shift registers (8 sprites)
-    private int[] spriteShifterPatternLo = new int[8];
-    private int[] spriteShifterPatternHi = new int[8];
+    // Sprite pattern rows (8 sprites), 2-bit pixels already flipped as needed
+    // Leftmost pixel in bits 15-14 (see TileCache.pixels)
+    private int[] spritePattern = new int[8];
     
     // Sprite counters and latches
     private int[] spriteX = new int[8];      // X position counters
@@ -55,6 +60,28 @@ public class Ppu {
     private boolean bSpriteZeroHitPossible = false;
     private boolean bSpriteZeroBeingRendered = false;
     
+    /**
+     * Selects how visible scanlines are drawn.
+     */
+    public enum Renderer {
+        // Full fetch/shift/mux pipeline on every dot
+        DOT,
+        // Whole visible scanline drawn at once at dot 256; falls back to DOT
+        // for the rest of the line when the CPU touches a PPU or mapper
+        // register mid-line
+        SCANLINE
+    }
+    
+    private Renderer renderer = Renderer.DOT;
+    
+    // Dots 1..(cycle - 1) of the current visible scanline have not been run yet
+    private boolean lineDeferred = false;
+    
+    // Scanline renderer scratch: sprite pixels for one line
+    private final int[] lineSprites = new int[256];
+    private static final int LINE_SPRITE_BEHIND = 0x20;
+    private static final int LINE_SPRITE_ZERO = 0x40;
+    
     // Timing
     private int scanline = 0;   // Current scanline (0-261)
     private int cycle = 0;      // Current cycle (0-340)
@@ -67,6 +94,13 @@ public class Ppu {
     // Reference to cartridge for CHR-ROM access
     private Cartridge cartridge;
     
+    // Decoded pattern rows of the cartridge CHR (null without a cartridge)
+    private TileCache tileCache;
+    
+    // VRAM offset of each nametable: the cartridge's live mirroring array,
+    // or vertical mirroring without a cartridge
+    private int[] nametables = {0x000, 0x400, 0x000, 0x400};
+    
     // Reference to bus for NMI triggering
     private Bus bus;
     
@@ -82,8 +116,26 @@ public class Ppu {
         0xE4E594, 0xCFEF96, 0xBDF4AB, 0xB3F3CC, 0xB5EBF2, 0xB8B8B8, 0x000000, 0x000000
     };
     
+    // Each emphasis bit dims the two channels it does not emphasize
+    private static final double EMPHASIS_ATTENUATION = 0.816;
+    
+    // System palette: 64 colors for each of the 8 emphasis combinations,
+    // indexed by (PPUMASK emphasis bits << 6) | color
+    private int[] systemPalette = expandEmphasis(NES_PALETTE);
+    
+    // Palette RAM resolved to RGB under the current greyscale/emphasis bits,
+    // with the 0x10/0x14/0x18/0x1C mirrors already applied. Rebuilt only when
+    // palette RAM, PPUMASK bits 0 and 5-7, or the system palette change.
+    private final int[] paletteColors = new int[32];
+    
+    public Ppu() {
+        resolvePalette();
+    }
+    
     public void connectCartridge(Cartridge cartridge) {
         this.cartridge = cartridge;
+        this.tileCache = (cartridge != null) ? cartridge.getTileCache() : null;
+        this.nametables = (cartridge != null) ? cartridge.getNametables() : new int[] {0x000, 0x400, 0x000, 0x400};
     }
     
     public void connectBus(Bus bus) {
@@ -111,6 +163,7 @@ public class Ppu {
         
         nmiOccurred = false;
         nmiOutput = false;
+        lineDeferred = false;
         
         // Initialize palette RAM with default colors to avoid grey screen
         // Background palette 0
@@ -118,14 +171,14 @@ public class Ppu {
         paletteRam[1] = 0x00;  // Dark grey
         paletteRam[2] = 0x10;  // Light grey  
         paletteRam[3] = 0x30;  // White
+        resolvePalette();
         
         // Reset sprite state
         spriteCount = 0;
         bSpriteZeroHitPossible = false;
         bSpriteZeroBeingRendered = false;
         for (int i = 0; i < 8; i++) {
-            spriteShifterPatternLo[i] = 0;
-            spriteShifterPatternHi[i] = 0;
+            spritePattern[i] = 0;
             spriteX[i] = 0;
             spriteAttribute[i] = 0;
         }
@@ -135,6 +188,8 @@ public class Ppu {
      * CPU reads from PPU registers (0x2000-0x2007, mirrored)
      */
     public byte cpuRead(int addr) {
+        catchUpScanline();
+        
         byte data = 0x00;
         
         switch (addr & 0x0007) {
@@ -191,6 +246,8 @@ public class Ppu {
      * CPU writes to PPU registers (0x2000-0x2007, mirrored)
      */
     public void cpuWrite(int addr, byte data) {
+        catchUpScanline();
+        
         switch (addr & 0x0007) {
             case 0x0000: // PPUCTRL
                 ppuCtrl = data;
@@ -215,7 +272,11 @@ public class Ppu {
                 break;
                 
             case 0x0001: // PPUMASK
+                boolean colorChanged = ((ppuMask ^ data) & 0xE1) != 0;
                 ppuMask = data;
+                if (colorChanged) {
+                    resolvePalette();
+                }
                 break;
                 
             case 0x0002: // PPUSTATUS - Read only
@@ -301,29 +362,9 @@ public class Ppu {
             }
             return 0x00;
         }
-        // Nametables (0x2000-0x3EFF)
+        // Nametables (0x2000-0x3EFF), mirrored through the cartridge's nametable map
         else if (addr < 0x3F00) {
-            addr &= 0x0FFF;
-            
-            // Apply mirroring
-            if (cartridge != null) {
-                int mirrorMode = cartridge.getMirrorMode();
-                if (mirrorMode == 0) { // Horizontal
-                    // NT0 (0x000) & NT1 (0x400) -> VRAM A (0x000)
-                    // NT2 (0x800) & NT3 (0xC00) -> VRAM B (0x400)
-                    if ((addr & 0x0800) != 0) {
-                        addr = 0x0400 | (addr & 0x03FF);
-                    } else {
-                        addr = addr & 0x03FF;
-                    }
-                } else if (mirrorMode == 1) { // Vertical
-                    // NT0 (0x000) & NT2 (0x800) -> VRAM A (0x000)
-                    // NT1 (0x400) & NT3 (0xC00) -> VRAM B (0x400)
-                    addr = addr & 0x07FF;
-                }
-            }
-            
-            return vram[addr & 0x07FF];
+            return vram[nametables[(addr >> 10) & 0x03] | (addr & 0x03FF)];
         }
         // Palette RAM (0x3F00-0x3FFF)
         else {
@@ -339,6 +380,18 @@ public class Ppu {
         }
     }
     
+    /**
+     * OAM DMA: copy a 256-byte page into OAM starting at OAMADDR and
+     * wrapping, as 256 OAMDATA writes would. OAMADDR ends where it started.
+     * @param src Array holding the page
+     * @param offset Index in src of the first byte of the page
+     */
+    void oamDma(byte[] src, int offset) {
+        int start = oamAddr & 0xFF;
+        System.arraycopy(src, offset, oam, start, 256 - start);
+        System.arraycopy(src, offset + 256 - start, oam, 0, start);
+    }
+    
     /**
      * PPU writes to its own address space
      */
@@ -353,23 +406,7 @@ public class Ppu {
         }
         // Nametables (0x2000-0x3EFF)
         else if (addr < 0x3F00) {
-            addr &= 0x0FFF;
-            
-            // Apply mirroring
-            if (cartridge != null) {
-                int mirrorMode = cartridge.getMirrorMode();
-                if (mirrorMode == 0) { // Horizontal
-                    if ((addr & 0x0800) != 0) {
-                        addr = 0x0400 | (addr & 0x03FF);
-                    } else {
-                        addr = addr & 0x03FF;
-                    }
-                } else if (mirrorMode == 1) { // Vertical
-                    addr = addr & 0x07FF;
-                }
-            }
-            
-            vram[addr & 0x07FF] = data;
+            vram[nametables[(addr >> 10) & 0x03] | (addr & 0x03FF)] = data;
         }
         // Palette RAM (0x3F00-0x3FFF)
         else {
@@ -382,6 +419,10 @@ public class Ppu {
             if (addr == 0x001C) addr = 0x000C;
             
             paletteRam[addr] = data;
+            updatePaletteColor(addr);
+            if ((addr & 0x03) == 0) {
+                paletteColors[addr | 0x10] = paletteColors[addr];
+            }
         }
     }
     
@@ -402,14 +443,14 @@ public class Ppu {
         int fineY = (vramAddr >> 12) & 0x07;
         int table = (ppuCtrl & 0x10) != 0 ? 0x1000 : 0x0000;
         int addr = table + (bgNextTileId << 4) + fineY;
-        bgNextTileLsb = ppuRead(addr) & 0xFF;
+        bgNextTileLsb = (tileCache != null) ? tileCache.planes(addr) & 0xFF : 0;
     }
     
     private void fetchPatternHigh() {
         int fineY = (vramAddr >> 12) & 0x07;
         int table = (ppuCtrl & 0x10) != 0 ? 0x1000 : 0x0000;
         int addr = table + (bgNextTileId << 4) + fineY + 8;
-        bgNextTileMsb = ppuRead(addr) & 0xFF;
+        bgNextTileMsb = (tileCache != null) ? tileCache.planes(addr) >> 8 : 0;
     }
     
     private void incrementScrollX() {
@@ -486,10 +527,32 @@ public class Ppu {
         }
     }
     
+    /**
+     * Whether PPU A12 rises around the sprite fetches (dots 257-324) of a
+     * rendered line. It does when the sprites come from 0x1000 after the
+     * background came from 0x0000, or when the background fetches of the
+     * next line (dot 321) come from 0x1000. 8x16 sprites pick the table per
+     * tile, and empty slots fetch tile 0xFF, which lives at 0x1000.
+     */
+    private boolean a12RisesThisLine() {
+        if ((ppuCtrl & 0x10) != 0) return true;
+        if ((ppuCtrl & 0x20) == 0) return (ppuCtrl & 0x08) != 0;
+        if (spriteCount < 8) return true;
+        for (int i = 0; i < spriteCount; i++) {
+            if ((secondaryOam[i * 4 + 1] & 0x01) != 0) return true;
+        }
+        return false;
+    }
+    
     /**
      * Fetch sprite patterns for the next scanline (Cycles 321-340 or end of scanline)
      */
     private void fetchSpritePatterns() {
+        // Scanline-counting mappers (MMC3) clock on the A12 rise of these fetches
+        if ((ppuMask & 0x18) != 0 && cartridge != null && a12RisesThisLine()) {
+            cartridge.ppuA12Rise();
+        }
+        
         // For each visible sprite, fetch its pattern data
         for (int i = 0; i < spriteCount; i++) {
             int spriteY = (secondaryOam[i * 4 + 0] & 0xFF);
@@ -524,32 +587,18 @@ public class Ppu {
                 }
             }
             
-            // Fetch Low and High pattern bytes
-            int patternLo = ppuRead(addr);
-            int patternHi = ppuRead(addr + 8);
-            
-            // Flip Horizontally if needed
+            // Fetch the decoded row, flipped horizontally if needed
+            int pattern = (tileCache != null) ? tileCache.pixels(addr) : 0;
             if ((spriteAttrib & 0x40) != 0) {
-                patternLo = flipByte(patternLo);
-                patternHi = flipByte(patternHi);
+                pattern >>>= 16;
             }
             
-            // Load into shifters
-            spriteShifterPatternLo[i] = patternLo;
-            spriteShifterPatternHi[i] = patternHi;
+            spritePattern[i] = pattern & 0xFFFF;
             spriteX[i] = spriteXPos;
             spriteAttribute[i] = spriteAttrib;
         }
     }
     
-    // Helper to flip a byte horizontally
-    private int flipByte(int b) {
-        b = (b & 0xF0) >> 4 | (b & 0x0F) << 4;
-        b = (b & 0xCC) >> 2 | (b & 0x33) << 2;
-        b = (b & 0xAA) >> 1 | (b & 0x55) << 1;
-        return b & 0xFF;
-    }
-    
     /**
      * Render a single pixel at the current cycle
      */
@@ -594,12 +643,8 @@ public class Ppu {
                 int offset = (cycle - 1) - spriteX[i];
                 if (offset >= 0 && offset < 8) {
                     // Pixel is inside sprite
-                    // Get bit from shifter (MSB first usually, but we flipped if needed)
-                    // Since we flipped, we can just take bit (7 - offset)
-                    int bit = 0x80 >> offset;
-                    int p0 = (spriteShifterPatternLo[i] & bit) != 0 ? 1 : 0;
-                    int p1 = (spriteShifterPatternHi[i] & bit) != 0 ? 2 : 0;
-                    int pixel = p1 | p0;
+                    // Row is already flipped if needed, leftmost pixel first
+                    int pixel = (spritePattern[i] >> (14 - 2 * offset)) & 0x03;
                     
                     if (pixel != 0) {
                         // Found a non-transparent sprite pixel
@@ -664,24 +709,276 @@ public class Ppu {
         }
         
         // 4. Color Output
-        int colorIndex = ppuRead(0x3F00 + (finalPalette << 2) + finalPixel) & 0x3F;
-        frameBuffer[scanline * 256 + (cycle - 1)] = NES_PALETTE[colorIndex];
+        frameBuffer[scanline * 256 + (cycle - 1)] = paletteColors[(finalPalette << 2) | finalPixel];
+    }
+    
+    /**
+     * Render a whole visible scanline at once.
+     * Produces exactly what dots 1-256 of the DOT renderer would: the same
+     * pixels, background fetches, scroll increments, shifter contents and
+     * sprite 0 hit. Fetches and shifts are done per tile instead of per dot,
+     * sprites are composited into a line buffer.
+     */
+    private void renderScanline() {
+        boolean showBg = (ppuMask & 0x08) != 0;
+        boolean zeroHitEnabled = (ppuMask & 0x18) == 0x18;
+        boolean clipLeft = (ppuMask & 0x06) != 0x06;
+        
+        // Sprites from the secondary OAM latches; the lowest index wins
+        java.util.Arrays.fill(lineSprites, 0);
+        if ((ppuMask & 0x10) != 0) {
+            for (int i = 0; i < spriteCount; i++) {
+                int flags = ((spriteAttribute[i] & 0x03) + 4) << 2;
+                if ((spriteAttribute[i] & 0x20) != 0) flags |= LINE_SPRITE_BEHIND;
+                if (i == 0) flags |= LINE_SPRITE_ZERO;
+                
+                for (int offset = 0; offset < 8; offset++) {
+                    int x = spriteX[i] + offset;
+                    if (x >= 256) break;
+                    if (lineSprites[x] != 0) continue;
+                    
+                    int pixel = (spritePattern[i] >> (14 - 2 * offset)) & 0x03;
+                    if (pixel != 0) {
+                        lineSprites[x] = flags | pixel;
+                    }
+                }
+            }
+        }
+        
+        int base = scanline * 256;
+        int bgShift = 15 - fineX;
+        
+        for (int tile = 0; tile < 32; tile++) {
+            // First dot of the tile: shift, reload, then the four fetches
+            updateShifters();
+            loadBackgroundShifters();
+            fetchNametableByte();
+            fetchAttributeByte();
+            fetchPatternLow();
+            fetchPatternHigh();
+            
+            for (int i = 0; i < 8; i++) {
+                int x = tile * 8 + i;
+                
+                int bgPixel = 0;
+                int bgPalette = 0;
+                if (showBg) {
+                    // Shifter contents at this dot are the reload value shifted by i
+                    int shift = bgShift - i;
+                    bgPixel = ((bgShifterPatternLo >> shift) & 1) | (((bgShifterPatternHi >> shift) & 1) << 1);
+                    bgPalette = ((bgShifterAttribLo >> shift) & 1) | (((bgShifterAttribHi >> shift) & 1) << 1);
+                }
+                
+                int sprite = lineSprites[x];
+                int colorIndex;
+                if (sprite == 0) {
+                    colorIndex = (bgPixel == 0) ? 0 : (bgPalette << 2) | bgPixel;
+                } else if (bgPixel == 0) {
+                    colorIndex = sprite & 0x1F;
+                } else {
+                    colorIndex = (sprite & LINE_SPRITE_BEHIND) != 0 ? (bgPalette << 2) | bgPixel : sprite & 0x1F;
+                    
+                    // Sprite 0 Hit: both opaque, outside the clipped left column
+                    if ((sprite & LINE_SPRITE_ZERO) != 0 && zeroHitEnabled && !(clipLeft && x < 8)) {
+                        ppuStatus |= 0x40;
+                    }
+                }
+                
+                frameBuffer[base + x] = paletteColors[colorIndex];
+            }
+            
+            // Remaining 7 dots of the tile
+            if (showBg) {
+                bgShifterPatternLo <<= 7;
+                bgShifterPatternHi <<= 7;
+                bgShifterAttribLo <<= 7;
+                bgShifterAttribHi <<= 7;
+            }
+            incrementScrollX();
+        }
+        
+        incrementScrollY();
+    }
+    
+    /**
+     * Run the visible dots a deferred scanline skipped, then continue the
+     * line dot by dot. Called before any CPU register access, and by the
+     * bus before mapper writes that may switch CHR banks or mirroring, so
+     * the access sees (and affects) exactly what it would with the DOT
+     * renderer.
+     */
+    void catchUpScanline() {
+        if (!lineDeferred) return;
+        lineDeferred = false;
+        
+        int resume = cycle;
+        for (cycle = 1; cycle < resume; cycle++) {
+            clockVisibleDot();
+        }
+    }
+    
+    public void setRenderer(Renderer renderer) {
+        catchUpScanline();
+        this.renderer = renderer;
+    }
+    
+    public Renderer getRenderer() {
+        return renderer;
+    }
+    
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    public static final int STATE_SIZE = 4 + 4 + 4 + 1 + 1 + 1      // Registers, scroll, data buffer
+            + 4096 + 32 + 256                                     // VRAM, palette, OAM
+            + 8 * 4                                               // Background latches and shifters
+            + 32 + 4 + 8 * 4 * 3 + 2                              // Sprite evaluation and latches
+            + 4 + 4 + 8 + 2;                                      // Timing and NMI
+    
+    /**
+     * Write all PPU internals into a buffer.
+     * The frame buffer, renderer choice and system palette are output or
+     * configuration, not machine state, and are not included.
+     */
+    public void saveState(ByteBuffer buffer) {
+        // A deferred scanline would leave dots of this line unrun; run them so
+        // the state is the same whichever renderer loads it
+        catchUpScanline();
+        
+        buffer.put(ppuCtrl);
+        buffer.put(ppuMask);
+        buffer.put(ppuStatus);
+        buffer.put(oamAddr);
+        buffer.putInt(vramAddr);
+        buffer.putInt(tempVramAddr);
+        buffer.put(fineX);
+        buffer.put((byte) (writeToggle ? 1 : 0));
+        buffer.put(dataBuffer);
+        
+        buffer.put(vram);
+        buffer.put(paletteRam);
+        buffer.put(oam);
+        
+        buffer.putInt(bgNextTileId);
+        buffer.putInt(bgNextTileAttrib);
+        buffer.putInt(bgNextTileLsb);
+        buffer.putInt(bgNextTileMsb);
+        buffer.putInt(bgShifterPatternLo);
+        buffer.putInt(bgShifterPatternHi);
+        buffer.putInt(bgShifterAttribLo);
+        buffer.putInt(bgShifterAttribHi);
+        
+        buffer.put(secondaryOam);
+        buffer.putInt(spriteCount);
+        for (int i = 0; i < 8; i++) {
+            buffer.putInt(spritePattern[i]);
+            buffer.putInt(spriteX[i]);
+            buffer.putInt(spriteAttribute[i]);
+        }
+        buffer.put((byte) (bSpriteZeroHitPossible ? 1 : 0));
+        buffer.put((byte) (bSpriteZeroBeingRendered ? 1 : 0));
+        
+        buffer.putInt(scanline);
+        buffer.putInt(cycle);
+        buffer.putLong(frame);
+        buffer.put((byte) (nmiOccurred ? 1 : 0));
+        buffer.put((byte) (nmiOutput ? 1 : 0));
+    }
+    
+    /**
+     * Restore the state written by saveState().
+     */
+    public void loadState(ByteBuffer buffer) {
+        ppuCtrl = buffer.get();
+        ppuMask = buffer.get();
+        ppuStatus = buffer.get();
+        oamAddr = buffer.get();
+        vramAddr = buffer.getInt();
+        tempVramAddr = buffer.getInt();
+        fineX = buffer.get();
+        writeToggle = buffer.get() != 0;
+        dataBuffer = buffer.get();
+        
+        buffer.get(vram);
+        buffer.get(paletteRam);
+        buffer.get(oam);
+        
+        bgNextTileId = buffer.getInt();
+        bgNextTileAttrib = buffer.getInt();
+        bgNextTileLsb = buffer.getInt();
+        bgNextTileMsb = buffer.getInt();
+        bgShifterPatternLo = buffer.getInt();
+        bgShifterPatternHi = buffer.getInt();
+        bgShifterAttribLo = buffer.getInt();
+        bgShifterAttribHi = buffer.getInt();
+        
+        buffer.get(secondaryOam);
+        spriteCount = buffer.getInt();
+        for (int i = 0; i < 8; i++) {
+            spritePattern[i] = buffer.getInt();
+            spriteX[i] = buffer.getInt();
+            spriteAttribute[i] = buffer.getInt();
+        }
+        bSpriteZeroHitPossible = buffer.get() != 0;
+        bSpriteZeroBeingRendered = buffer.get() != 0;
+        
+        scanline = buffer.getInt();
+        cycle = buffer.getInt();
+        frame = buffer.getLong();
+        nmiOccurred = buffer.get() != 0;
+        nmiOutput = buffer.get() != 0;
+        
+        lineDeferred = false;
+        resolvePalette();
+    }
+    
+    /**
+     * Shift and fetch step of the background pipeline (cycles 1-256 and 321-336)
+     */
+    private void clockBackgroundFetch() {
+        updateShifters();
+        switch ((cycle - 1) % 8) {
+            case 0: loadBackgroundShifters(); fetchNametableByte(); break;
+            case 2: fetchAttributeByte(); break;
+            case 4: fetchPatternLow(); break;
+            case 6: fetchPatternHigh(); break;
+            case 7: incrementScrollX(); break;
+        }
+    }
+    
+    /**
+     * One visible dot (scanline 0-239, cycle 1-256) of the DOT renderer
+     */
+    private void clockVisibleDot() {
+        clockBackgroundFetch();
+        if (cycle == 256) incrementScrollY();
+        renderPixel();
     }
     
     /**
      * Advance PPU by one cycle
      */
     public void clock() {
+        // Visible dots
+        if (scanline < 240 && cycle >= 1 && cycle <= 256) {
+            if (cycle == 1 && renderer == Renderer.SCANLINE) {
+                lineDeferred = true;
+            }
+            
+            if (!lineDeferred) {
+                clockVisibleDot();
+            } else if (cycle == 256) {
+                renderScanline();
+                lineDeferred = false;
+            }
+            
+            nextCycle();
+            return;
+        }
+        
         if (scanline < 240 || scanline == 261) {
             if ((cycle >= 1 && cycle <= 256) || (cycle >= 321 && cycle <= 336)) {
-                updateShifters();
-                switch ((cycle - 1) % 8) {
-                    case 0: loadBackgroundShifters(); fetchNametableByte(); break;
-                    case 2: fetchAttributeByte(); break;
-                    case 4: fetchPatternLow(); break;
-                    case 6: fetchPatternHigh(); break;
-                    case 7: incrementScrollX(); break;
-                }
+                clockBackgroundFetch();
             }
             if (cycle == 256) incrementScrollY();
             if (cycle == 257) {
@@ -709,9 +1006,6 @@ public class Ppu {
                 vramAddr = (vramAddr & 0x841F) | (tempVramAddr & 0x7BE0);
             }
             
-            if (scanline < 240 && cycle >= 1 && cycle <= 256) {
-                renderPixel();
-            }
         }
         
         if (scanline == 241 && cycle == 1) {
@@ -724,11 +1018,48 @@ public class Ppu {
         if (scanline == 261 && cycle == 1) {
             ppuStatus &= ~0xE0; // Clear VBlank, Sprite 0, Overflow
             for (int i = 0; i < 8; i++) {
-                spriteShifterPatternLo[i] = 0;
-                spriteShifterPatternHi[i] = 0;
+                spritePattern[i] = 0;
             }
         }
         
+        nextCycle();
+    }
+    
+    /**
+     * Advance PPU by several cycles.
+     * Same result as calling clock() that many times, but jumps over dots
+     * that have nothing to do: the rest of a deferred scanline, the idle
+     * part of horizontal blank and the vertical blanking lines.
+     * @param dots Number of cycles to run
+     */
+    public void run(int dots) {
+        while (dots > 0) {
+            int idle = 0;
+            if (scanline < 240) {
+                if (lineDeferred && cycle < 256) {
+                    idle = 256 - cycle;     // Drawn all at once at dot 256
+                } else if (cycle >= 258 && cycle < 320) {
+                    idle = 320 - cycle;     // Between sprite evaluation and fetch
+                } else if (cycle >= 337) {
+                    idle = 341 - cycle;     // Unused nametable fetches
+                }
+            } else if (scanline <= 260 && !(scanline == 241 && cycle <= 1)) {
+                idle = 341 - cycle;         // Post-render and VBlank (except the VBlank start)
+            }
+            
+            if (idle > 0) {
+                int n = Math.min(idle, dots);
+                cycle += n - 1;
+                nextCycle();
+                dots -= n;
+            } else {
+                clock();
+                dots--;
+            }
+        }
+    }
+    
+    private void nextCycle() {
         cycle++;
         if (cycle >= 341) {
             cycle = 0;
@@ -740,6 +1071,48 @@ public class Ppu {
         }
     }
     
+    /**
+     * PPUSTATUS as a CPU read would return it, without clearing VBlank or
+     * the write toggle.
+     */
+    public byte peekStatus() {
+        return (byte) ((ppuStatus & 0xE0) | (dataBuffer & 0x1F));
+    }
+    
+    /**
+     * Dots until PPUSTATUS or the NMI line may next change without a register
+     * access: the start or end of VBlank, or the first line sprite 0 could
+     * hit on. 0 if a sprite 0 hit is possible on the current line.
+     */
+    public int dotsUntilStatusChange() {
+        int now = scanline * 341 + cycle;
+        int dots = dotsUntil(now, 241 * 341 + 1);
+        dots = Math.min(dots, dotsUntil(now, 261 * 341 + 1));
+        
+        if ((ppuMask & 0x18) != 0 && (ppuStatus & 0x40) == 0) {
+            // Sprite 0 covers at most 16 lines below its Y
+            int first = (oam[0] & 0xFF) + 1;
+            if (first < 240) {
+                if (scanline >= first && scanline < first + 16) {
+                    return 0;
+                }
+                dots = Math.min(dots, dotsUntil(now, first * 341));
+            }
+        }
+        return dots;
+    }
+    
+    /**
+     * Dots until VBlank starts and raises NMI if it is enabled.
+     */
+    public int dotsUntilVblank() {
+        return dotsUntil(scanline * 341 + cycle, 241 * 341 + 1);
+    }
+    
+    private static int dotsUntil(int now, int dot) {
+        return (dot - now + 262 * 341) % (262 * 341);
+    }
+    
     // Debug Getters
     public byte getPpuCtrl() { return ppuCtrl; }
     public byte getPpuMask() { return ppuMask; }
@@ -753,12 +1126,70 @@ public class Ppu {
     public int[] getFrameBuffer() { return frameBuffer; }
     
     /**
-     * Get color from palette RAM
+     * Resolve one palette RAM entry through greyscale and emphasis
+     * @param index Palette RAM index (0-31), mirrors already applied
      */
-    private int getColorFromPalette(int palette, int pixel) {
-        int paletteIndex = (palette << 2) | pixel;
-        int colorIndex = paletteRam[paletteIndex] & 0x3F;
-        return NES_PALETTE[colorIndex];
+    private void updatePaletteColor(int index) {
+        int color = paletteRam[index] & ((ppuMask & 0x01) != 0 ? 0x30 : 0x3F);
+        paletteColors[index] = systemPalette[((ppuMask & 0xE0) << 1) | color];
+    }
+    
+    /**
+     * Rebuild all 32 resolved palette colors
+     */
+    private void resolvePalette() {
+        for (int i = 0; i < 32; i++) {
+            updatePaletteColor(i);
+        }
+        // Sprite palette entry 0 mirrors the background one
+        for (int i = 0x10; i < 0x20; i += 4) {
+            paletteColors[i] = paletteColors[i & 0x0F];
+        }
+    }
+    
+    /**
+     * Load a system palette from a .pal file.
+     * Accepts 64 RGB triplets (192 bytes), in which case the emphasis
+     * variants are derived, or 512 triplets (1536 bytes) with all eight
+     * emphasis combinations in PPUMASK bit order.
+     */
+    public void loadPalette(String filePath) throws IOException {
+        setPalette(Files.readAllBytes(Paths.get(filePath)));
+    }
+    
+    /**
+     * Replace the system palette with raw .pal data (see loadPalette)
+     */
+    public void setPalette(byte[] data) {
+        if (data.length != 64 * 3 && data.length != 512 * 3) {
+            throw new IllegalArgumentException("Palette must be 192 or 1536 bytes, got " + data.length);
+        }
+        int[] rgb = new int[data.length / 3];
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] = ((data[i * 3] & 0xFF) << 16) | ((data[i * 3 + 1] & 0xFF) << 8) | (data[i * 3 + 2] & 0xFF);
+        }
+        systemPalette = (rgb.length == 64) ? expandEmphasis(rgb) : rgb;
+        resolvePalette();
+    }
+    
+    /**
+     * Derive the 8 emphasis variants of a 64-color palette
+     */
+    private static int[] expandEmphasis(int[] base) {
+        int[] palette = new int[512];
+        for (int emphasis = 0; emphasis < 8; emphasis++) {
+            // Bit 0 = red, bit 1 = green, bit 2 = blue; each set bit dims the other two channels
+            double r = Math.pow(EMPHASIS_ATTENUATION, Integer.bitCount(emphasis & ~0x01));
+            double g = Math.pow(EMPHASIS_ATTENUATION, Integer.bitCount(emphasis & ~0x02));
+            double b = Math.pow(EMPHASIS_ATTENUATION, Integer.bitCount(emphasis & ~0x04));
+            for (int i = 0; i < 64; i++) {
+                int color = base[i];
+                palette[(emphasis << 6) | i] = ((int) (((color >> 16) & 0xFF) * r) << 16)
+                        | ((int) (((color >> 8) & 0xFF) * g) << 8)
+                        | (int) ((color & 0xFF) * b);
+            }
+        }
+        return palette;
     }
     
 
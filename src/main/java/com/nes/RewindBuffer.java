@@ -0,0 +1,302 @@
+package com.nes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-memory ring of per-frame save states for rewinding.
+ *
+ * Every capture() takes a full save state of the console. Every
+ * keyframeInterval frames the state is stored as a keyframe; in between,
+ * only the XOR against the last keyframe is stored. Both are run-length
+ * encoded, so the mostly unchanged RAM, VRAM and OAM shrink to a few
+ * control bytes.
+ *
+ * Records are appended to one preallocated byte arena used as a circular
+ * log. When the arena or the frame limit is full, the oldest records are
+ * dropped (together with any deltas whose keyframe was dropped). Capturing
+ * and rewinding allocate nothing.
+ */
+public class RewindBuffer {
+
+    public static final int DEFAULT_FRAMES = 60 * 60;             // 60 seconds at 60 fps
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+    public static final int DEFAULT_ARENA_BYTES = 16 * 1024 * 1024;
+
+    private final Console console;
+    // Index slots: dropping a keyframe drops its deltas too, so keep one
+    // interval of slack to always hold at least the requested frames
+    private final int capacity;
+    private final int keyframeInterval;
+
+    // Raw state of the current capture / rewind target
+    private final byte[] state;
+    private final ByteBuffer stateBuffer;
+    // Last keyframe taken by capture(), used as the XOR base for deltas
+    private final byte[] captureKey;
+    private boolean captureKeyValid = false;
+    private int framesSinceKey = 0;
+    // Most recently decoded keyframe when restoring, by sequence number
+    private final byte[] decodeKey;
+    private long decodeKeySeq = -1;
+    // XOR delta and RLE output scratch
+    private final byte[] delta;
+    private final byte[] encoded;
+
+    // Circular log of encoded records
+    private final byte[] arena;
+    private int head = 0;
+
+    // Record index, a ring of capacity entries starting at oldest
+    private final int[] offsets;
+    private final int[] lengths;
+    private final boolean[] keyframes;
+    private final long[] sequences;
+    private int oldest = 0;
+    private int count = 0;
+    private long nextSeq = 0;
+
+    // Capture cost
+    private long lastCaptureNanos = 0;
+    private long maxCaptureNanos = 0;
+    private long totalCaptureNanos = 0;
+    private long captures = 0;
+
+    public RewindBuffer(Console console) {
+        this(console, DEFAULT_FRAMES, DEFAULT_KEYFRAME_INTERVAL, DEFAULT_ARENA_BYTES);
+    }
+
+    /**
+     * @param console Console to capture and restore
+     * @param maxFrames Frames of history to keep (if the arena has room)
+     * @param keyframeInterval Frames between keyframes
+     * @param arenaBytes Size of the encoded state storage
+     */
+    public RewindBuffer(Console console, int maxFrames, int keyframeInterval, int arenaBytes) {
+        this.console = console;
+        this.capacity = maxFrames + keyframeInterval;
+        this.keyframeInterval = keyframeInterval;
+
+        int size = console.stateSize();
+        state = new byte[size];
+        stateBuffer = ByteBuffer.wrap(state);
+        captureKey = new byte[size];
+        decodeKey = new byte[size];
+        delta = new byte[size];
+        // Worst case: all literals, one control byte per 128
+        encoded = new byte[size + size / 128 + 1];
+        if (arenaBytes < 2 * encoded.length) {
+            throw new IllegalArgumentException("Rewind arena too small for a " + size + " byte state");
+        }
+        arena = new byte[arenaBytes];
+
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        keyframes = new boolean[capacity];
+        sequences = new long[capacity];
+    }
+
+    /**
+     * Store the console's current state as the newest frame.
+     * Call once per emulated frame.
+     */
+    public void capture() {
+        long start = System.nanoTime();
+
+        stateBuffer.clear();
+        console.saveState(stateBuffer);
+
+        boolean key = !captureKeyValid || framesSinceKey >= keyframeInterval;
+        int length;
+        if (key) {
+            System.arraycopy(state, 0, captureKey, 0, state.length);
+            captureKeyValid = true;
+            framesSinceKey = 0;
+            length = encode(state, encoded);
+        } else {
+            for (int i = 0; i < state.length; i++) {
+                delta[i] = (byte) (state[i] ^ captureKey[i]);
+            }
+            length = encode(delta, encoded);
+        }
+        framesSinceKey++;
+
+        store(length, key);
+
+        lastCaptureNanos = System.nanoTime() - start;
+        maxCaptureNanos = Math.max(maxCaptureNanos, lastCaptureNanos);
+        totalCaptureNanos += lastCaptureNanos;
+        captures++;
+    }
+
+    /**
+     * Step back one frame: drop the newest frame and restore the one before.
+     * The frame before that is replayed so the frame buffer shows the
+     * restored frame rather than the one rewound from.
+     * @return False if there is nothing left to rewind to
+     */
+    public boolean rewind() {
+        if (count < 2) return false;
+
+        // Drop the newest record and give its space back
+        count--;
+        int newest = index(count - 1);
+        head = offsets[newest] + lengths[newest];
+        // Deltas captured from here on need a keyframe of their own
+        captureKeyValid = false;
+
+        if (count >= 2) {
+            restore(index(count - 2));
+            console.getBus().runFrame();
+        }
+        restore(newest);
+        return true;
+    }
+
+    private void store(int length, boolean key) {
+        if (count == capacity) {
+            evictOldest();
+        }
+
+        int pos = head;
+        if (pos + length > arena.length) {
+            // Skip the end of the arena; any records there are the oldest
+            while (count > 0 && offsets[oldest] >= head) {
+                evictOldest();
+            }
+            pos = 0;
+        }
+        while (count > 0 && offsets[oldest] < pos + length && offsets[oldest] + lengths[oldest] > pos) {
+            evictOldest();
+        }
+        // A delta without its keyframe cannot be restored
+        while (count > 0 && !keyframes[oldest]) {
+            evictOldest();
+        }
+
+        System.arraycopy(encoded, 0, arena, pos, length);
+        int slot = index(count);
+        offsets[slot] = pos;
+        lengths[slot] = length;
+        keyframes[slot] = key;
+        sequences[slot] = nextSeq++;
+        count++;
+        head = pos + length;
+    }
+
+    private void evictOldest() {
+        oldest = (oldest + 1) % capacity;
+        count--;
+    }
+
+    private int index(int i) {
+        return (oldest + i) % capacity;
+    }
+
+    /**
+     * Decode a record and load it into the console.
+     */
+    private void restore(int slot) {
+        // Nearest keyframe at or before this record
+        int key = slot;
+        while (!keyframes[key]) {
+            key = (key - 1 + capacity) % capacity;
+        }
+        if (sequences[key] != decodeKeySeq) {
+            decode(offsets[key], lengths[key], decodeKey);
+            decodeKeySeq = sequences[key];
+        }
+
+        if (key == slot) {
+            System.arraycopy(decodeKey, 0, state, 0, state.length);
+        } else {
+            decode(offsets[slot], lengths[slot], state);
+            for (int i = 0; i < state.length; i++) {
+                state[i] ^= decodeKey[i];
+            }
+        }
+
+        stateBuffer.clear();
+        console.loadState(stateBuffer);
+    }
+
+    /**
+     * Run-length encode: a control byte below 0x80 is a run of (c + 1)
+     * zeros, otherwise (c - 0x7F) literal bytes follow.
+     * @return Encoded length
+     */
+    static int encode(byte[] src, byte[] dst) {
+        int out = 0;
+        int i = 0;
+        int n = src.length;
+        while (i < n) {
+            if (src[i] == 0) {
+                int run = 1;
+                while (run < 128 && i + run < n && src[i + run] == 0) run++;
+                dst[out++] = (byte) (run - 1);
+                i += run;
+            } else {
+                // Literals until a pair of zeros (a lone zero is cheaper inline)
+                int run = 1;
+                while (run < 128 && i + run < n
+                        && !(src[i + run] == 0 && (i + run + 1 >= n || src[i + run + 1] == 0))) {
+                    run++;
+                }
+                dst[out++] = (byte) (0x80 | (run - 1));
+                System.arraycopy(src, i, dst, out, run);
+                out += run;
+                i += run;
+            }
+        }
+        return out;
+    }
+
+    private void decode(int offset, int length, byte[] dst) {
+        int in = offset;
+        int end = offset + length;
+        int out = 0;
+        while (in < end) {
+            int c = arena[in++] & 0xFF;
+            if (c < 0x80) {
+                int run = c + 1;
+                for (int i = 0; i < run; i++) dst[out++] = 0;
+            } else {
+                int run = (c & 0x7F) + 1;
+                System.arraycopy(arena, in, dst, out, run);
+                in += run;
+                out += run;
+            }
+        }
+    }
+
+    /**
+     * Number of frames that can currently be rewound.
+     */
+    public int getFrameCount() {
+        return Math.max(0, count - 1);
+    }
+
+    /**
+     * Bytes of the arena holding live records.
+     */
+    public long getStoredBytes() {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += lengths[index(i)];
+        }
+        return total;
+    }
+
+    /**
+     * Heap used by this buffer (arena, index and scratch buffers).
+     */
+    public long getMemoryBytes() {
+        return arena.length + (long) capacity * (4 + 4 + 1 + 8) + 5L * state.length + encoded.length;
+    }
+
+    public long getLastCaptureNanos() { return lastCaptureNanos; }
+    public long getMaxCaptureNanos() { return maxCaptureNanos; }
+
+    public long getAverageCaptureNanos() {
+        return captures == 0 ? 0 : totalCaptureNanos / captures;
+    }
+}
@@ -0,0 +1,323 @@
+package com.nes;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Persistent index of ROM files: hashes and header per file, so batch
+ * jobs can pick ROMs by mapper or hash without opening them.
+ *
+ * The index is a UTF-8 text file with one tab-separated line per ROM:
+ * path, size, last-modified millis, CRC32, SHA-1 and the 16 header bytes
+ * in hex. A rescan only re-reads files whose size or modification time
+ * changed.
+ *
+ * Usage: RomCatalog index.tsv rom-directory [--mapper N]
+ */
+public class RomCatalog {
+
+    private static final String FORMAT_LINE = "# nespresso ROM catalogue v1";
+
+    /**
+     * One catalogued ROM file.
+     */
+    public static class Entry {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final long crc32;
+        private final String sha1;
+        private final RomHeader header;
+        private final RomHeader corrected;
+
+        Entry(Path path, long size, long lastModified, long crc32, String sha1, RomHeader header) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc32 = crc32;
+            this.sha1 = sha1;
+            this.header = header;
+            RomOverride override = RomDatabase.getDefault().find(crc32);
+            this.corrected = override != null ? header.withOverride(override) : header;
+        }
+
+        public Path getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public long getCrc32() { return crc32; }
+        public String getSha1() { return sha1; }
+        /**
+         * Header as stored in the file.
+         */
+        public RomHeader getHeader() { return header; }
+
+        /**
+         * Header with the ROM database corrections applied; what Cartridge uses.
+         */
+        public RomHeader getCorrectedHeader() { return corrected; }
+
+        public int getMapperId() { return corrected.getMapperId(); }
+
+        /**
+         * Map the file and build a cartridge from it.
+         */
+        public Cartridge load() throws IOException {
+            return new Cartridge(RomImage.open(path));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s  mapper %d  PRG %dKB  CHR %dKB  crc32 %08x",
+                    path, getMapperId(), corrected.getPrgRomSize() / 1024, corrected.getChrRomSize() / 1024, crc32);
+        }
+    }
+
+    private final Path indexFile;
+    private final Map<Path, Entry> entries = new TreeMap<>();
+    // Entries by hash; usually one each, more for copies of the same ROM
+    private final Map<Long, List<Entry>> byCrc32 = new HashMap<>();
+    private final Map<String, List<Entry>> bySha1 = new HashMap<>();
+    private boolean dirty = false;
+
+    private RomCatalog(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Read an index file. A missing file, or one written by another format
+     * version, gives an empty catalogue that save() will create.
+     * @throws IOException if the file cannot be read or a line is malformed
+     */
+    public static RomCatalog load(Path indexFile) throws IOException {
+        RomCatalog catalog = new RomCatalog(indexFile);
+        try (BufferedReader in = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (!FORMAT_LINE.equals(line)) {
+                catalog.dirty = true;
+                return catalog;
+            }
+            int lineNumber = 1;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                Entry entry = parseEntry(line);
+                if (entry == null) {
+                    throw new IOException(indexFile + ":" + lineNumber + ": malformed catalogue entry");
+                }
+                catalog.put(entry);
+            }
+        } catch (NoSuchFileException e) {
+            catalog.dirty = true;
+        }
+        return catalog;
+    }
+
+    private static Entry parseEntry(String line) {
+        String[] fields = line.split("\t");
+        if (fields.length != 6 || fields[5].length() != 2 * RomHeader.SIZE) {
+            return null;
+        }
+        try {
+            byte[] header = new byte[RomHeader.SIZE];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = (byte) Integer.parseInt(fields[5].substring(2 * i, 2 * i + 2), 16);
+            }
+            return new Entry(Paths.get(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                    Long.parseLong(fields[3], 16), fields[4], new RomHeader(header));
+        } catch (NumberFormatException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Bring the entries for a directory tree up to date: add new *.nes
+     * files, re-read changed ones and drop deleted ones. Files that are
+     * not valid ROMs are skipped.
+     * @return Number of files that had to be opened
+     */
+    public int scan(Path directory) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().toLowerCase().endsWith(".nes"))
+                    .toList();
+        }
+
+        int opened = 0;
+        for (Path file : files) {
+            long size = Files.size(file);
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            Entry known = entries.get(file);
+            if (known != null && known.size == size && known.lastModified == lastModified) {
+                continue;
+            }
+
+            opened++;
+            try {
+                RomImage rom = RomImage.open(file);
+                put(new Entry(file, size, lastModified, rom.crc32(), rom.sha1(), rom.getHeader()));
+            } catch (IOException e) {
+                System.err.println("Skipping " + file + ": " + e.getMessage());
+                remove(file);
+            }
+            dirty = true;
+        }
+
+        // Forget files under this directory that no longer exist
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.path.startsWith(root) && !Files.isRegularFile(entry.path)) {
+                it.remove();
+                unindex(entry);
+                dirty = true;
+            }
+        }
+        return opened;
+    }
+
+    private void put(Entry entry) {
+        Entry replaced = entries.put(entry.path, entry);
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        byCrc32.computeIfAbsent(entry.crc32, k -> new ArrayList<>(1)).add(entry);
+        bySha1.computeIfAbsent(entry.sha1.toLowerCase(), k -> new ArrayList<>(1)).add(entry);
+    }
+
+    private void remove(Path path) {
+        Entry removed = entries.remove(path);
+        if (removed != null) {
+            unindex(removed);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        unindex(byCrc32, entry.crc32, entry);
+        unindex(bySha1, entry.sha1.toLowerCase(), entry);
+    }
+
+    private static <K> void unindex(Map<K, List<Entry>> index, K key, Entry entry) {
+        List<Entry> list = index.get(key);
+        if (list != null && list.remove(entry) && list.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    // The entry with the first path, as a scan of the sorted entries would find
+    private static Entry first(List<Entry> list) {
+        if (list == null) return null;
+        Entry first = null;
+        for (Entry entry : list) {
+            if (first == null || entry.path.compareTo(first.path) < 0) {
+                first = entry;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Write the index if it changed. The file is replaced atomically, so a
+     * crash mid-write leaves the previous index.
+     */
+    public void save() throws IOException {
+        if (!dirty) return;
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(FORMAT_LINE);
+            out.newLine();
+            StringBuilder line = new StringBuilder();
+            for (Entry entry : entries.values()) {
+                line.setLength(0);
+                line.append(entry.path).append('\t')
+                        .append(entry.size).append('\t')
+                        .append(entry.lastModified).append('\t')
+                        .append(String.format("%08x", entry.crc32)).append('\t')
+                        .append(entry.sha1).append('\t');
+                for (byte b : entry.header.getBytes()) {
+                    line.append(String.format("%02x", b & 0xFF));
+                }
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public List<Entry> findByMapper(int mapperId) {
+        List<Entry> found = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.getMapperId() == mapperId) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * First ROM with the given CRC32 (of PRG + CHR), or null.
+     */
+    public Entry findByCrc32(long crc32) {
+        return first(byCrc32.get(crc32));
+    }
+
+    /**
+     * First ROM with the given SHA-1 (of PRG + CHR, hex), or null.
+     */
+    public Entry findBySha1(String sha1) {
+        return first(bySha1.get(sha1.toLowerCase()));
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("Usage: RomCatalog index.tsv rom-directory [--mapper N]");
+            System.exit(2);
+        }
+        int mapper = -1;
+        if (args.length == 4) {
+            if (!"--mapper".equals(args[2])) {
+                System.err.println("Unknown option " + args[2]);
+                System.exit(2);
+            }
+            mapper = Integer.parseInt(args[3]);
+        }
+
+        try {
+            RomCatalog catalog = RomCatalog.load(Paths.get(args[0]));
+            int opened = catalog.scan(Paths.get(args[1]));
+            catalog.save();
+            System.out.println(catalog.getEntries().size() + " ROMs catalogued, " + opened + " files read");
+
+            Collection<Entry> shown = mapper >= 0 ? catalog.findByMapper(mapper) : catalog.getEntries();
+            for (Entry entry : shown) {
+                System.out.println(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.nes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Header corrections keyed by the CRC32 of a ROM's PRG + CHR data.
+ *
+ * Many dumps in circulation carry wrong or incomplete iNES headers (wrong
+ * mapper, missing battery bit, no RAM sizes). Entries here fix them at
+ * load time, so a cartridge comes up with the right hardware on the first
+ * try. Lookup is a single probe sequence in an open-addressing table with
+ * int keys; nothing is boxed.
+ *
+ * Entries are one per line, a CRC32 in hex followed by key=value fields:
+ * <pre>
+ * 1a2b3c4d mapper=4 mirroring=four prgnvram=8192 # Title
+ * </pre>
+ * Keys: mapper, submapper, mirroring (horizontal|vertical|four), battery
+ * (0|1), prgram, prgnvram, chrram, chrnvram (bytes). The default database
+ * is the romdb.txt resource plus, if the nes.romdb system property names
+ * one, a local file whose entries take precedence.
+ */
+public class RomDatabase {
+
+    private static final String RESOURCE = "romdb.txt";
+
+    private static RomDatabase defaultDatabase;
+
+    // Open addressing: keys[i] is valid where values[i] != null
+    private int[] keys;
+    private RomOverride[] values;
+    private int size = 0;
+
+    public RomDatabase() {
+        keys = new int[16];
+        values = new RomOverride[16];
+    }
+
+    /**
+     * The database used when loading cartridges; read on first use.
+     */
+    public static synchronized RomDatabase getDefault() {
+        if (defaultDatabase == null) {
+            RomDatabase database = new RomDatabase();
+            try (InputStream in = RomDatabase.class.getResourceAsStream(RESOURCE)) {
+                if (in != null) {
+                    database.parse(new InputStreamReader(in, StandardCharsets.UTF_8), RESOURCE);
+                }
+                String local = System.getProperty("nes.romdb");
+                if (local != null) {
+                    try (Reader reader = Files.newBufferedReader(Paths.get(local), StandardCharsets.UTF_8)) {
+                        database.parse(reader, local);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read ROM database: " + e.getMessage(), e);
+            }
+            defaultDatabase = database;
+        }
+        return defaultDatabase;
+    }
+
+    /**
+     * Add the entries of a database file; later entries replace earlier ones.
+     * @param source Name used in error messages
+     * @throws IOException on a malformed line
+     */
+    public void parse(Reader reader, String source) throws IOException {
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            String name = null;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                name = line.substring(comment + 1).trim();
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            try {
+                String[] fields = line.split("\\s+");
+                int crc = (int) Long.parseLong(fields[0], 16);
+                put(crc, parseOverride(fields, name));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + ":" + lineNumber + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static RomOverride parseOverride(String[] fields, String name) {
+        int mapper = -1, submapper = -1, mirroring = -1, battery = -1;
+        int prgRam = -1, prgNvram = -1, chrRam = -1, chrNvram = -1;
+        for (int i = 1; i < fields.length; i++) {
+            int eq = fields[i].indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + fields[i]);
+            }
+            String key = fields[i].substring(0, eq);
+            String value = fields[i].substring(eq + 1);
+            switch (key) {
+                case "mapper": mapper = Integer.parseInt(value); break;
+                case "submapper": submapper = Integer.parseInt(value); break;
+                case "battery": battery = Integer.parseInt(value); break;
+                case "prgram": prgRam = Integer.parseInt(value); break;
+                case "prgnvram": prgNvram = Integer.parseInt(value); break;
+                case "chrram": chrRam = Integer.parseInt(value); break;
+                case "chrnvram": chrNvram = Integer.parseInt(value); break;
+                case "mirroring":
+                    switch (value) {
+                        case "horizontal": mirroring = Cartridge.MIRROR_HORIZONTAL; break;
+                        case "vertical": mirroring = Cartridge.MIRROR_VERTICAL; break;
+                        case "four": mirroring = Cartridge.MIRROR_FOUR_SCREEN; break;
+                        default: throw new IllegalArgumentException("Unknown mirroring " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown key " + key);
+            }
+        }
+        return new RomOverride(name, mapper, submapper, mirroring, battery, prgRam, prgNvram, chrRam, chrNvram);
+    }
+
+    private int slot(int key) {
+        // Fibonacci hashing; CRCs are well mixed already, this just spreads the top bits
+        return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(keys.length));
+    }
+
+    public void put(int crc32, RomOverride override) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int i = slot(crc32);
+        while (values[i] != null) {
+            if (keys[i] == crc32) {
+                values[i] = override;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = crc32;
+        values[i] = override;
+        size++;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        RomOverride[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new RomOverride[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Corrections for a ROM, or null if its header is not known to be wrong.
+     * @param crc32 CRC32 of PRG + CHR (RomImage.crc32())
+     */
+    public RomOverride find(long crc32) {
+        int key = (int) crc32;
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The ROM's header with any corrections from this database applied.
+     */
+    public RomHeader correct(RomImage rom) {
+        RomOverride override = find(rom.crc32());
+        return override != null ? rom.getHeader().withOverride(override) : rom.getHeader();
+    }
+}
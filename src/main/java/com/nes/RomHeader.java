@@ -0,0 +1,250 @@
+package com.nes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The 16-byte iNES / NES 2.0 header of a ROM file.
+ * Keeps the raw bytes and decodes fields on request. For iNES 1.0 headers
+ * the fields NES 2.0 added are given their conventional defaults (8KB of
+ * PRG-RAM, 8KB of CHR-RAM when there is no CHR-ROM).
+ */
+public class RomHeader {
+
+    public static final int SIZE = 16;
+
+    private final byte[] bytes;
+
+    /**
+     * @param bytes The 16 header bytes
+     * @throws IOException if they do not start with "NES" + EOF
+     */
+    public RomHeader(byte[] bytes) throws IOException {
+        if (bytes.length < SIZE || bytes[0] != 'N' || bytes[1] != 'E' || bytes[2] != 'S' || bytes[3] != 0x1A) {
+            throw new IOException("Invalid NES ROM header");
+        }
+        this.bytes = Arrays.copyOf(bytes, SIZE);
+    }
+
+    /**
+     * Read a header from the buffer's position.
+     */
+    public static RomHeader read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < SIZE) {
+            throw new IOException("Invalid NES ROM header");
+        }
+        byte[] bytes = new byte[SIZE];
+        buffer.get(bytes);
+        return new RomHeader(bytes);
+    }
+
+    private int flags6() { return bytes[6] & 0xFF; }
+    private int flags7() { return bytes[7] & 0xFF; }
+
+    /**
+     * True for an NES 2.0 header (flags 7 bits 2-3 = 10).
+     */
+    public boolean isNes20() {
+        return (flags7() & 0x0C) == 0x08;
+    }
+
+    /**
+     * iNES 1.0 headers written by old tools carry text ("DiskDude!") in
+     * bytes 7-15; the upper mapper nibble is garbage in that case.
+     */
+    private boolean hasGarbageTail() {
+        return !isNes20() && (bytes[12] != 0 || bytes[13] != 0 || bytes[14] != 0 || bytes[15] != 0);
+    }
+
+    public int getMapperId() {
+        int id = flags6() >> 4;
+        if (!hasGarbageTail()) {
+            id |= flags7() & 0xF0;
+        }
+        if (isNes20()) {
+            id |= (bytes[8] & 0x0F) << 8;
+        }
+        return id;
+    }
+
+    /**
+     * NES 2.0 submapper number, 0 for iNES 1.0.
+     */
+    public int getSubmapper() {
+        return isNes20() ? (bytes[8] & 0xFF) >> 4 : 0;
+    }
+
+    /**
+     * PRG-ROM size in bytes.
+     */
+    public int getPrgRomSize() {
+        return romSize(bytes[4] & 0xFF, bytes[9] & 0x0F, 16384);
+    }
+
+    /**
+     * CHR-ROM size in bytes; 0 means the board has CHR-RAM.
+     */
+    public int getChrRomSize() {
+        return romSize(bytes[5] & 0xFF, (bytes[9] & 0xF0) >> 4, 8192);
+    }
+
+    // NES 2.0 extends the size with a high nibble, or with an exponent form when it is 0xF
+    private int romSize(int lsb, int msb, int unit) {
+        if (!isNes20()) {
+            return lsb * unit;
+        }
+        if (msb == 0x0F) {
+            return (1 << (lsb >> 2)) * ((lsb & 0x03) * 2 + 1);
+        }
+        return ((msb << 8) | lsb) * unit;
+    }
+
+    /**
+     * Nametable mirroring: 0 = horizontal, 1 = vertical.
+     */
+    public int getMirrorMode() {
+        return flags6() & 0x01;
+    }
+
+    public boolean hasBattery() {
+        return (flags6() & 0x02) != 0;
+    }
+
+    public boolean hasTrainer() {
+        return (flags6() & 0x04) != 0;
+    }
+
+    public boolean isFourScreen() {
+        return (flags6() & 0x08) != 0;
+    }
+
+    /**
+     * Volatile PRG-RAM size in bytes at 0x6000.
+     * iNES 1.0: byte 8 in 8KB units (0 means 8KB), all of it battery-backed
+     * if the battery bit is set.
+     */
+    public int getPrgRamSize() {
+        if (isNes20()) {
+            return shiftSize(bytes[10] & 0x0F);
+        }
+        return hasBattery() ? 0 : inesPrgRamSize();
+    }
+
+    /**
+     * Battery-backed PRG-RAM size in bytes.
+     */
+    public int getPrgNvramSize() {
+        if (isNes20()) {
+            return shiftSize((bytes[10] & 0xF0) >> 4);
+        }
+        return hasBattery() ? inesPrgRamSize() : 0;
+    }
+
+    private int inesPrgRamSize() {
+        int units = hasGarbageTail() ? 0 : bytes[8] & 0xFF;
+        return Math.max(1, units) * 8192;
+    }
+
+    /**
+     * Volatile CHR-RAM size in bytes.
+     * iNES 1.0: 8KB when there is no CHR-ROM.
+     */
+    public int getChrRamSize() {
+        if (isNes20()) {
+            return shiftSize(bytes[11] & 0x0F);
+        }
+        return getChrRomSize() == 0 ? 8192 : 0;
+    }
+
+    /**
+     * Battery-backed CHR-RAM size in bytes (NES 2.0 only).
+     */
+    public int getChrNvramSize() {
+        return isNes20() ? shiftSize((bytes[11] & 0xF0) >> 4) : 0;
+    }
+
+    // NES 2.0 RAM sizes are shift counts: 0 = none, otherwise 64 << count
+    private static int shiftSize(int count) {
+        return count == 0 ? 0 : 64 << count;
+    }
+
+    // Sizes NES 2.0 cannot store exactly (e.g. 24KB from iNES byte 8) are
+    // rounded up to the next one it can
+    private static int shiftCount(int size) {
+        if (size == 0) return 0;
+        if (size > (64 << 15)) {
+            throw new IllegalArgumentException("RAM size " + size + " cannot be stored in an NES 2.0 header");
+        }
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(size - 1) - 6);
+    }
+
+    /**
+     * CPU/PPU timing: 0 = NTSC, 1 = PAL, 2 = multi-region, 3 = Dendy.
+     * iNES 1.0 only distinguishes NTSC and PAL (byte 9 bit 0).
+     */
+    public int getTiming() {
+        return isNes20() ? bytes[12] & 0x03 : (hasGarbageTail() ? 0 : bytes[9] & 0x01);
+    }
+
+    /**
+     * Console type: 0 = NES/Famicom, 1 = Vs. System, 2 = PlayChoice-10, 3 = extended.
+     */
+    public int getConsoleType() {
+        return hasGarbageTail() ? 0 : flags7() & 0x03;
+    }
+
+    /**
+     * This header re-encoded as NES 2.0 with some fields replaced.
+     * ROM sizes, trainer and timing are kept.
+     * @param override Fields to replace; -1 (or null) keeps the current value
+     */
+    public RomHeader withOverride(RomOverride override) {
+        int mapper = override.getMapperId() >= 0 ? override.getMapperId() : getMapperId();
+        int submapper = override.getSubmapper() >= 0 ? override.getSubmapper() : getSubmapper();
+        int mirror = getMirrorMode();
+        boolean fourScreen = isFourScreen();
+        if (override.getMirroring() >= 0) {
+            fourScreen = override.getMirroring() == Cartridge.MIRROR_FOUR_SCREEN;
+            mirror = fourScreen ? mirror : override.getMirroring() & 0x01;
+        }
+        boolean battery = override.getBattery() >= 0 ? override.getBattery() != 0 : hasBattery();
+        int prgRam = override.getPrgRamSize() >= 0 ? override.getPrgRamSize() : getPrgRamSize();
+        int prgNvram = override.getPrgNvramSize() >= 0 ? override.getPrgNvramSize() : getPrgNvramSize();
+        int chrRam = override.getChrRamSize() >= 0 ? override.getChrRamSize() : getChrRamSize();
+        int chrNvram = override.getChrNvramSize() >= 0 ? override.getChrNvramSize() : getChrNvramSize();
+
+        byte[] out = new byte[SIZE];
+        System.arraycopy(bytes, 0, out, 0, 4);
+        out[4] = bytes[4];
+        out[5] = bytes[5];
+        out[6] = (byte) (((mapper & 0x0F) << 4) | (fourScreen ? 0x08 : 0) | (hasTrainer() ? 0x04 : 0)
+                | (battery ? 0x02 : 0) | mirror);
+        out[7] = (byte) ((mapper & 0xF0) | 0x08 | getConsoleType());
+        out[8] = (byte) ((submapper << 4) | ((mapper >> 8) & 0x0F));
+        out[9] = isNes20() ? bytes[9] : 0;
+        out[10] = (byte) ((shiftCount(prgNvram) << 4) | shiftCount(prgRam));
+        out[11] = (byte) ((shiftCount(chrNvram) << 4) | shiftCount(chrRam));
+        out[12] = (byte) getTiming();
+        if (isNes20()) {
+            System.arraycopy(bytes, 13, out, 13, 3);
+        }
+        try {
+            return new RomHeader(out);
+        } catch (IOException e) {
+            // The magic was copied from a valid header
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Offset of the PRG-ROM data in the file (after the header and trainer).
+     */
+    public int getPrgOffset() {
+        return SIZE + (hasTrainer() ? 512 : 0);
+    }
+
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+}
@@ -0,0 +1,128 @@
+package com.nes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * A ROM file mapped into memory with FileChannel.map.
+ * Only the header is decoded up front; PRG and CHR are read-only slices
+ * of the mapping and the hashes are computed on first use, so opening a
+ * ROM reads and copies nothing but its 16 header bytes.
+ */
+public class RomImage {
+
+    private final Path path;
+    private final ByteBuffer data;
+    private final RomHeader header;
+
+    private ByteBuffer prg;
+    private ByteBuffer chr;
+    private long crc32 = -1;
+    private String sha1;
+
+    private RomImage(Path path, ByteBuffer data) throws IOException {
+        this.path = path;
+        this.data = data.asReadOnlyBuffer();
+        this.header = RomHeader.read(this.data.duplicate());
+
+        long end = (long) header.getPrgOffset() + header.getPrgRomSize() + header.getChrRomSize();
+        if (end > data.capacity()) {
+            throw new IOException("ROM file truncated: header needs " + end + " bytes, file has " + data.capacity());
+        }
+    }
+
+    /**
+     * Map a ROM file. The mapping stays valid after the file is closed.
+     */
+    public static RomImage open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new RomImage(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Wrap a ROM already in memory (no file behind it).
+     */
+    public static RomImage wrap(byte[] data) throws IOException {
+        return new RomImage(null, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * File the ROM was mapped from, or null if wrapped.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public RomHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Read-only view of PRG-ROM.
+     */
+    public ByteBuffer prg() {
+        if (prg == null) {
+            prg = slice(header.getPrgOffset(), header.getPrgRomSize());
+        }
+        return prg.duplicate();
+    }
+
+    /**
+     * Read-only view of CHR-ROM (empty for CHR-RAM boards).
+     */
+    public ByteBuffer chr() {
+        if (chr == null) {
+            chr = slice(header.getPrgOffset() + header.getPrgRomSize(), header.getChrRomSize());
+        }
+        return chr.duplicate();
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = data.duplicate();
+        view.position(offset).limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * CRC32 of PRG followed by CHR, without header or trainer.
+     * The usual key of ROM databases.
+     */
+    public long crc32() {
+        if (crc32 < 0) {
+            CRC32 crc = new CRC32();
+            crc.update(prg());
+            crc.update(chr());
+            crc32 = crc.getValue();
+        }
+        return crc32;
+    }
+
+    /**
+     * SHA-1 of PRG followed by CHR, as 40 lower-case hex digits.
+     */
+    public String sha1() {
+        if (sha1 == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                digest.update(prg());
+                digest.update(chr());
+                StringBuilder hex = new StringBuilder(40);
+                for (byte b : digest.digest()) {
+                    hex.append(String.format("%02x", b & 0xFF));
+                }
+                sha1 = hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to provide SHA-1
+                throw new IllegalStateException(e);
+            }
+        }
+        return sha1;
+    }
+}
@@ -0,0 +1,45 @@
+package com.nes;
+
+/**
+ * Header corrections for one ROM, as listed in the RomDatabase.
+ * Every field is -1 when the header value is right.
+ */
+public class RomOverride {
+
+    private final String name;
+    private final int mapperId;
+    private final int submapper;
+    private final int mirroring;
+    private final int battery;
+    private final int prgRamSize;
+    private final int prgNvramSize;
+    private final int chrRamSize;
+    private final int chrNvramSize;
+
+    /**
+     * @param mirroring Cartridge.MIRROR_HORIZONTAL, MIRROR_VERTICAL or MIRROR_FOUR_SCREEN
+     * @param battery 0 or 1
+     */
+    public RomOverride(String name, int mapperId, int submapper, int mirroring, int battery,
+                       int prgRamSize, int prgNvramSize, int chrRamSize, int chrNvramSize) {
+        this.name = name;
+        this.mapperId = mapperId;
+        this.submapper = submapper;
+        this.mirroring = mirroring;
+        this.battery = battery;
+        this.prgRamSize = prgRamSize;
+        this.prgNvramSize = prgNvramSize;
+        this.chrRamSize = chrRamSize;
+        this.chrNvramSize = chrNvramSize;
+    }
+
+    public String getName() { return name; }
+    public int getMapperId() { return mapperId; }
+    public int getSubmapper() { return submapper; }
+    public int getMirroring() { return mirroring; }
+    public int getBattery() { return battery; }
+    public int getPrgRamSize() { return prgRamSize; }
+    public int getPrgNvramSize() { return prgNvramSize; }
+    public int getChrRamSize() { return chrRamSize; }
+    public int getChrNvramSize() { return chrNvramSize; }
+}
@@ -0,0 +1,133 @@
+package com.nes;
+
+/**
+ * Pre-decoded CHR tile rows for the PPU.
+ * Every tile row of CHR memory is kept as its two bit planes and as 2-bit
+ * pixels in normal and horizontally flipped order, so pattern fetches are
+ * a single array index instead of two ppuRead() calls plus a flip.
+ *
+ * The PPU pattern space (0x0000-0x1FFF) is seen through eight 1KB windows
+ * pointing into CHR memory. A bank switch only re-points windows; each 1KB
+ * bank is decoded once, the first time it is mapped. CHR-RAM writes
+ * re-decode just the row they touch.
+ */
+public class TileCache {
+
+    private static final int BANK_SIZE = 1024;
+    private static final int ROWS_PER_BANK = BANK_SIZE / 2; // 16 bytes per tile = 8 rows
+
+    private final byte[] chr;
+    private final int bankCount;
+
+    // One entry per tile row, plus a trailing bank of zeros for unmapped windows
+    // planes: low plane (bits 0-7) | high plane (bits 8-15)
+    // pixels: 2-bit pixels, leftmost in bits 15-14 (bits 0-15), flipped copy in bits 16-31
+    private final int[] planes;
+    private final int[] pixels;
+    private final boolean[] decoded;
+
+    // First row of each 1KB PPU window
+    private final int[] windowRows = new int[8];
+
+    public TileCache(byte[] chr) {
+        this.chr = chr;
+        this.bankCount = (chr.length + BANK_SIZE - 1) / BANK_SIZE;
+        this.planes = new int[(bankCount + 1) * ROWS_PER_BANK];
+        this.pixels = new int[(bankCount + 1) * ROWS_PER_BANK];
+        this.decoded = new boolean[bankCount];
+        mapChr8k(0);
+    }
+
+    /**
+     * Point a 1KB window of the PPU pattern space at a 1KB CHR bank.
+     * @param window Window index (PPU address >> 10)
+     * @param bank 1KB bank index in CHR memory; out of range maps to zeros
+     */
+    public void mapChr1k(int window, int bank) {
+        if (bank < 0 || bank >= bankCount) {
+            windowRows[window] = bankCount * ROWS_PER_BANK;
+            return;
+        }
+        if (!decoded[bank]) {
+            for (int row = 0; row < ROWS_PER_BANK; row++) {
+                decodeRow(bank * ROWS_PER_BANK + row);
+            }
+            decoded[bank] = true;
+        }
+        windowRows[window] = bank * ROWS_PER_BANK;
+    }
+
+    /**
+     * Map the whole pattern space to one 8KB CHR bank.
+     */
+    public void mapChr8k(int bank) {
+        for (int window = 0; window < 8; window++) {
+            mapChr1k(window, bank * 8 + window);
+        }
+    }
+
+    /**
+     * Re-decode the row containing a CHR byte after it was written.
+     * @param chrIndex Index into CHR memory
+     */
+    public void invalidate(int chrIndex) {
+        int bank = chrIndex / BANK_SIZE;
+        if (bank < bankCount && decoded[bank]) {
+            decodeRow(((chrIndex >> 4) << 3) | (chrIndex & 0x07));
+        }
+    }
+
+    /**
+     * Re-decode every bank decoded so far, after CHR memory was replaced
+     * wholesale (e.g. by loading a save state).
+     */
+    public void reload() {
+        for (int bank = 0; bank < bankCount; bank++) {
+            if (decoded[bank]) {
+                for (int row = 0; row < ROWS_PER_BANK; row++) {
+                    decodeRow(bank * ROWS_PER_BANK + row);
+                }
+            }
+        }
+    }
+
+    private int row(int addr) {
+        return windowRows[(addr >> 10) & 0x07] + ((addr & 0x3F0) >> 1) + (addr & 0x07);
+    }
+
+    /**
+     * Bit planes of the tile row at a pattern address.
+     * @param addr PPU address (0x0000-0x1FFF); bit 3 (plane select) is ignored
+     * @return Low plane in bits 0-7, high plane in bits 8-15
+     */
+    public int planes(int addr) {
+        return planes[row(addr)];
+    }
+
+    /**
+     * 2-bit pixels of the tile row at a pattern address.
+     * @param addr PPU address (0x0000-0x1FFF); bit 3 (plane select) is ignored
+     * @return Pixel 0 (leftmost) in bits 15-14 ... pixel 7 in bits 1-0,
+     *         and the horizontally flipped row in bits 16-31
+     */
+    public int pixels(int addr) {
+        return pixels[row(addr)];
+    }
+
+    private void decodeRow(int row) {
+        int base = ((row >> 3) << 4) | (row & 0x07);
+        int lo = base < chr.length ? chr[base] & 0xFF : 0;
+        int hi = base + 8 < chr.length ? chr[base + 8] & 0xFF : 0;
+
+        int normal = 0;
+        int flipped = 0;
+        for (int p = 0; p < 8; p++) {
+            int pixel = ((lo >> (7 - p)) & 1) | (((hi >> (7 - p)) & 1) << 1);
+            normal |= pixel << (14 - 2 * p);
+            flipped |= pixel << (2 * p);
+        }
+
+        planes[row] = lo | (hi << 8);
+        pixels[row] = normal | (flipped << 16);
+    }
+}
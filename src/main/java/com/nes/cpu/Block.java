@@ -0,0 +1,30 @@
+package com.nes.cpu;
+
+/**
+ * A basic block of PRG-ROM code compiled to JVM bytecode by the Recompiler.
+ * Each compiled block is a hidden subclass whose run() performs the
+ * block's instructions with their operands as constants.
+ */
+abstract class Block {
+
+    // CPU address of the first instruction
+    final int entry;
+    
+    // Most cycles run() can take, with every page crossing and branch
+    // penalty counted; set by the Recompiler
+    int maxCycles;
+
+    Block(int entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * Execute the block, leaving PC at the next instruction to run.
+     * A block stops early, before an instruction whose indexed or indirect
+     * address turns out to be an I/O register or mapper register.
+     * Interrupts are only checked between blocks, so the caller runs a
+     * block only when no interrupt can arrive within maxCycles.
+     * @return CPU cycles taken; 0 if it stopped before its first instruction
+     */
+    abstract int run(Cpu cpu);
+}
@@ -0,0 +1,227 @@
+package com.nes.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal class file writer for the Recompiler: one class extending
+ * Block with an (int) constructor and a run(Cpu) method.
+ *
+ * Class file version 49 is written, so the code needs no stack map frames
+ * and the verifier infers the types of the few forward branches itself.
+ */
+class ClassAssembler {
+
+    // JVM opcodes used by the recompiler
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD_0 = 0x2A;
+    static final int ALOAD_1 = 0x2B;
+    static final int ILOAD_1 = 0x1B;
+    static final int ILOAD_2 = 0x1C;
+    static final int ILOAD_3 = 0x1D;
+    static final int ISTORE_2 = 0x3D;
+    static final int ISTORE_3 = 0x3E;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int LADD = 0x61;
+    static final int I2L = 0x85;
+    static final int IFNE = 0x9A;
+    static final int IRETURN = 0xAC;
+    static final int RETURN = 0xB1;
+    static final int GETFIELD = 0xB4;
+    static final int PUTFIELD = 0xB5;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    /**
+     * Bytecode of one method body.
+     */
+    class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        void pushInt(int value) {
+            if (value >= 0 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= -128 && value <= 127) {
+                op(BIPUSH);
+                op(value & 0xFF);
+            } else if (value >= -32768 && value <= 32767) {
+                op(SIPUSH);
+                u2(value & 0xFFFF);
+            } else {
+                op(LDC_W);
+                u2(integer(value));
+            }
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(member(9, owner, name, descriptor));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(member(10, owner, name, descriptor));
+        }
+
+        /**
+         * Emit "ifne" that skips the given code, then that code.
+         */
+        void ifNotZeroSkip(Code skipped) {
+            op(IFNE);
+            u2(3 + skipped.length());
+            bytes.writeBytes(skipped.bytes.toByteArray());
+        }
+
+        void append(Code other) {
+            bytes.writeBytes(other.bytes.toByteArray());
+        }
+
+        int length() {
+            return bytes.size();
+        }
+    }
+
+    Code newCode() {
+        return new Code();
+    }
+
+    /**
+     * Assemble the class.
+     * @param name Internal name of the class
+     * @param superName Internal name of its superclass
+     * @param constructor Body of <init>(I)V
+     * @param runDescriptor Descriptor of run()
+     * @param run Body of run()
+     */
+    byte[] assemble(String name, String superName, Code constructor,
+                    String runDescriptor, Code run, int runMaxStack, int runMaxLocals) {
+        try {
+            int thisClass = classRef(name);
+            int superClass = classRef(superName);
+            int codeName = utf8("Code");
+            int initName = utf8("<init>");
+            int initDescriptor = utf8("(I)V");
+            int runName = utf8("run");
+            int runDesc = utf8(runDescriptor);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(0xCAFEBABE);
+            data.writeShort(0);
+            data.writeShort(49);
+            data.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(data);
+            data.writeShort(ACC_FINAL | ACC_SUPER);
+            data.writeShort(thisClass);
+            data.writeShort(superClass);
+            data.writeShort(0); // interfaces
+            data.writeShort(0); // fields
+            data.writeShort(2); // methods
+            writeMethod(data, ACC_PUBLIC, initName, initDescriptor, codeName, constructor, 2, 2);
+            writeMethod(data, ACC_FINAL, runName, runDesc, codeName, run, runMaxStack, runMaxLocals);
+            data.writeShort(0); // attributes
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeMethod(DataOutputStream data, int access, int name, int descriptor, int codeName,
+                                    Code code, int maxStack, int maxLocals) throws IOException {
+        data.writeShort(access);
+        data.writeShort(name);
+        data.writeShort(descriptor);
+        data.writeShort(1);
+        data.writeShort(codeName);
+        data.writeInt(12 + code.length());
+        data.writeShort(maxStack);
+        data.writeShort(maxLocals);
+        data.writeInt(code.length());
+        code.bytes.writeTo(data);
+        data.writeShort(0); // exception table
+        data.writeShort(0); // attributes
+    }
+
+    // --- Constant pool ---
+
+    private int utf8(String value) {
+        return constant("U" + value, () -> {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        });
+    }
+
+    private int integer(int value) {
+        return constant("I" + value, () -> {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        });
+    }
+
+    private int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, () -> {
+            pool.writeByte(7);
+            pool.writeShort(nameIndex);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + " " + descriptor, () -> {
+            pool.writeByte(12);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + descriptor, () -> {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    private interface Entry {
+        void write() throws IOException;
+    }
+
+    private int constant(String key, Entry entry) {
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        try {
+            entry.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+}
@@ -1,21 +1,49 @@
 package com.nes.cpu;
 
 import com.nes.Bus;
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
 
 /**
  * Emulates the MOS 6502 CPU.
  */
 public class Cpu {
 
-    // Registers
-    public byte a = 0x00;      // Accumulator
-    public byte x = 0x00;      // X Register
-    public byte y = 0x00;      // Y Register
-    public byte sp = (byte) 0xFD; // Stack Pointer
+    // Registers, held unsigned (0-255) so effective addresses and compares
+    // use them without masking. getA()/setA() and friends convert to and
+    // from the bytes the bus deals in.
+    private int a = 0x00;      // Accumulator
+    private int x = 0x00;      // X Register
+    private int y = 0x00;      // Y Register
+    private int sp = 0xFD;     // Stack Pointer
     public int pc = 0x0000;    // Program Counter
-    public byte status = 0x00; // Status Register
+    // Status Register bits I, D, B and U. N, Z, C and V are kept lazily in
+    // the fields below and only packed into a byte by getStatus()
+    private int status = 0x00;
+    // Last result: Z is set when its low byte is 0, N when bit 7 or 8 is
+    private int nz = 1;
+    // C, 0 or 1
+    private int carry = 0;
+    // V is bit 6
+    private int overflow = 0;
     
     private boolean nmiPending = false;
+    
+    // Level of the IRQ input; serviced at instruction boundaries while I is clear
+    private boolean irqLine = false;
+
+    // Executed instructions, for throughput reporting
+    long instructionCount = 0;
+    
+    // Extra cycles of the current instruction: page crossings of indexed
+    // reads and taken branches. Reset before every instruction; only the
+    // opcodes flagged in the tables add it to their base count.
+    int penalty = 0;
+    
+    // Cycles to halt for once the current instruction completes (OAM DMA)
+    private int stallCycles = 0;
+    private boolean stallAlign = false;
 
     // Status Flags
     public static final byte C = (byte) (1 << 0); // Carry Bit
@@ -40,8 +68,8 @@ public class Cpu {
         a = 0;
         x = 0;
         y = 0;
-        sp = (byte) 0xFD;
-        status = (byte) (0x00 | U); // Unused bit is always 1
+        sp = 0xFD;
+        setStatus(U); // Unused bit is always 1
 
         // Read reset vector
         int lo = bus.read(0xFFFC) & 0xFF;
@@ -52,6 +80,41 @@ public class Cpu {
         // cycles = 8;
     }
 
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    public static final int STATE_SIZE = 5 + 4 + 4 + 4 + 1;
+
+    /**
+     * Write registers and the pending cycle/NMI state into a buffer.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) a);
+        buffer.put((byte) x);
+        buffer.put((byte) y);
+        buffer.put((byte) sp);
+        buffer.put(getStatus());
+        buffer.putInt(pc);
+        buffer.putInt(cycles);
+        buffer.putInt(opcode);
+        buffer.put((byte) (nmiPending ? 1 : 0));
+    }
+
+    /**
+     * Restore the state written by saveState().
+     */
+    public void loadState(ByteBuffer buffer) {
+        a = buffer.get() & 0xFF;
+        x = buffer.get() & 0xFF;
+        y = buffer.get() & 0xFF;
+        sp = buffer.get() & 0xFF;
+        setStatus(buffer.get());
+        pc = buffer.getInt();
+        cycles = buffer.getInt();
+        opcode = buffer.getInt();
+        nmiPending = buffer.get() != 0;
+    }
+
     /**
      * Non-Maskable Interrupt (NMI)
      * Triggered by PPU at VBlank
@@ -61,25 +124,50 @@ public class Cpu {
     }
 
     /**
-     * Internal NMI execution logic
+     * Drive the maskable interrupt (IRQ) input.
+     * The line is level-sensitive: the CPU keeps taking the interrupt after
+     * each instruction while it is asserted and the I flag is clear, so the
+     * source must be acknowledged by the handler.
      */
-    private void executeNmi() {
-        nmiPending = false;
+    public void setIrq(boolean asserted) {
+        irqLine = asserted;
+    }
+
+    public boolean isIrqAsserted() {
+        return irqLine;
+    }
+
+    /**
+     * True if an NMI, or an IRQ the I flag does not mask, is waiting.
+     */
+    private boolean interruptPending() {
+        return nmiPending || (irqLine && (status & I) == 0);
+    }
+
+    /**
+     * Internal NMI/IRQ execution logic; NMI takes priority.
+     */
+    private void executeInterrupt() {
+        int vector = 0xFFFE;
+        if (nmiPending) {
+            nmiPending = false;
+            vector = 0xFFFA;
+        }
         // Push PC to stack
         pushWord(pc);
         
         // Push status with B flag clear and U flag set
-        push((byte) ((status & ~B) | U));
+        push((byte) ((getStatus() & ~B) | U));
         
         // Set Interrupt Disable flag
-        setFlag(I, true);
+        status |= I;
         
-        // Load NMI vector
-        int lo = bus.read(0xFFFA) & 0xFF;
-        int hi = bus.read(0xFFFB) & 0xFF;
+        // Load NMI or IRQ vector
+        int lo = bus.read(vector) & 0xFF;
+        int hi = bus.read(vector + 1) & 0xFF;
         pc = (hi << 8) | lo;
         
-        // NMI takes 7 cycles
+        // Interrupts take 7 cycles
         cycles = 7;
     }
 
@@ -114,12 +202,12 @@ public class Cpu {
 
     // Zero Page, X
     public int ZPX() {
-        return (fetch() + x) & 0xFF;
+        return zpx(fetch());
     }
 
     // Zero Page, Y
     public int ZPY() {
-        return (fetch() + y) & 0xFF;
+        return zpy(fetch());
     }
 
     // Relative
@@ -140,196 +228,257 @@ public class Cpu {
 
     // Absolute, X
     public int ABX() {
-        int lo = fetch() & 0xFF;
-        int hi = fetch() & 0xFF;
-        int addr = (hi << 8) | lo;
-        addr += (x & 0xFF);
-        return addr & 0xFFFF;
+        return abx(ABS());
     }
 
     // Absolute, Y
     public int ABY() {
-        int lo = fetch() & 0xFF;
-        int hi = fetch() & 0xFF;
-        int addr = (hi << 8) | lo;
-        addr += (y & 0xFF);
-        return addr & 0xFFFF;
+        return aby(ABS());
     }
 
     // Indirect
     public int IND() {
-        int ptrLo = fetch() & 0xFF;
-        int ptrHi = fetch() & 0xFF;
-        int ptr = (ptrHi << 8) | ptrLo;
+        return ind(ABS());
+    }
 
+    // Indirect, X
+    public int IZX() {
+        return izx(fetch());
+    }
+
+    // Indirect, Y
+    public int IZY() {
+        return izy(fetch());
+    }
+
+    // Effective addresses from operands already fetched. Recompiled blocks
+    // call these with the operands as constants.
+
+    int zpx(int zp) {
+        return (zp + x) & 0xFF;
+    }
+
+    int zpy(int zp) {
+        return (zp + y) & 0xFF;
+    }
+
+    int abx(int base) {
+        int addr = (base + x) & 0xFFFF;
+        penalty = pageCrossed(base, addr);
+        return addr;
+    }
+
+    int aby(int base) {
+        int addr = (base + y) & 0xFFFF;
+        penalty = pageCrossed(base, addr);
+        return addr;
+    }
+
+    int ind(int ptr) {
         // Simulate page boundary bug
-        if (ptrLo == 0xFF) {
+        if ((ptr & 0xFF) == 0xFF) {
             return (bus.read(ptr & 0xFF00) << 8) | (bus.read(ptr) & 0xFF);
         } else {
             return (bus.read(ptr + 1) << 8) | (bus.read(ptr) & 0xFF);
         }
     }
 
-    // Indirect, X
-    public int IZX() {
-        int t = (fetch() + x) & 0xFF;
+    int izx(int zp) {
+        int t = (zp + x) & 0xFF;
         int lo = bus.read(t & 0xFF) & 0xFF;
         int hi = bus.read((t + 1) & 0xFF) & 0xFF;
         return (hi << 8) | lo;
     }
 
-    // Indirect, Y
-    public int IZY() {
-        int t = fetch() & 0xFF;
+    int izy(int zp) {
+        int t = zp & 0xFF;
         int lo = bus.read(t & 0xFF) & 0xFF;
         int hi = bus.read((t + 1) & 0xFF) & 0xFF;
-        int addr = (hi << 8) | lo;
-        addr += (y & 0xFF);
-        return addr & 0xFFFF;
+        int base = (hi << 8) | lo;
+        int addr = (base + y) & 0xFFFF;
+        penalty = pageCrossed(base, addr);
+        return addr;
+    }
+
+    // 1 if the indexed address is on a different page than its base
+    private static int pageCrossed(int base, int addr) {
+        return ((base ^ addr) & 0xFF00) != 0 ? 1 : 0;
+    }
+
+    /**
+     * The status register, with N, Z, C and V evaluated from the last
+     * results. Used where the byte itself is needed: PHP, BRK, interrupts
+     * and save states.
+     */
+    public byte getStatus() {
+        int p = (status & (I | D | B | U)) | carry | (overflow & V);
+        if ((nz & 0xFF) == 0) p |= Z;
+        if ((nz & 0x180) != 0) p |= N & 0xFF;
+        return (byte) p;
+    }
+
+    public void setStatus(byte value) {
+        status = value & (I | D | B | U);
+        carry = value & C;
+        overflow = value & V;
+        // Low byte 0 for Z, bit 8 for N
+        nz = ((value & Z) != 0 ? 0 : 1) | ((value & N) != 0 ? 0x100 : 0);
+    }
+
+    // Registers as bytes, the way the bus and save states see them. The
+    // setters take an int so that constants need no cast; only the low
+    // byte is kept.
+
+    public byte getA() {
+        return (byte) a;
+    }
+
+    public void setA(int value) {
+        a = value & 0xFF;
+    }
+
+    public byte getX() {
+        return (byte) x;
+    }
+
+    public void setX(int value) {
+        x = value & 0xFF;
+    }
+
+    public byte getY() {
+        return (byte) y;
+    }
+
+    public void setY(int value) {
+        y = value & 0xFF;
+    }
+
+    public byte getSp() {
+        return (byte) sp;
+    }
+
+    public void setSp(int value) {
+        sp = value & 0xFF;
     }
 
     // Helper to set flags based on result
     private void setFlag(byte flag, boolean v) {
-        if (v) {
-            status |= flag;
-        } else {
-            status &= ~flag;
-        }
+        int p = getStatus();
+        setStatus((byte) (v ? p | flag : p & ~flag));
     }
 
     public byte getFlag(byte flag) {
-        return (byte) ((status & flag) != 0 ? 1 : 0);
+        return (byte) ((getStatus() & flag) != 0 ? 1 : 0);
     }
 
-    private void setZN(byte result) {
-        setFlag(Z, result == 0);
-        setFlag(N, (result & 0x80) != 0);
+    // Takes a register or a byte read from the bus; either way Z is an
+    // empty low byte and N is bit 7 (bit 8 too when sign-extended)
+    private void setZN(int result) {
+        nz = result;
     }
 
     // --- Instructions ---
 
     // Load Accumulator
     public void LDA(int addr) {
-        a = bus.read(addr);
-        setZN(a);
+        a = bus.read(addr) & 0xFF;
+        nz = a;
     }
 
     // Load X Register
     public void LDX(int addr) {
-        x = bus.read(addr);
-        setZN(x);
+        x = bus.read(addr) & 0xFF;
+        nz = x;
     }
 
     // Load Y Register
     public void LDY(int addr) {
-        y = bus.read(addr);
-        setZN(y);
+        y = bus.read(addr) & 0xFF;
+        nz = y;
     }
 
     // Store Accumulator
     public void STA(int addr) {
-        bus.write(addr, a);
+        bus.write(addr, (byte) a);
     }
 
     // Store X Register
     public void STX(int addr) {
-        bus.write(addr, x);
+        bus.write(addr, (byte) x);
     }
 
     // Store Y Register
     public void STY(int addr) {
-        bus.write(addr, y);
+        bus.write(addr, (byte) y);
     }
 
     // Add with Carry
     public void ADC(int addr) {
-        byte fetched = bus.read(addr);
-        int val = fetched & 0xFF;
-        int aVal = a & 0xFF;
-        int cVal = getFlag(C);
-
-        int sum = aVal + val + cVal;
-
-        setFlag(C, sum > 255);
-        setFlag(Z, (sum & 0xFF) == 0);
-        setFlag(N, (sum & 0x80) != 0);
-
-        // Overflow: ~(A ^ M) & (A ^ R) & 0x80
-        boolean overflow = (~(aVal ^ val) & (aVal ^ sum) & 0x80) != 0;
-        setFlag(V, overflow);
-
-        a = (byte) sum;
+        addWithCarry(bus.read(addr) & 0xFF);
     }
 
-    // Subtract with Carry
+    // Subtract with Carry: adding the inverted operand
     public void SBC(int addr) {
-        byte fetched = bus.read(addr);
-        int val = (fetched ^ 0xFF) & 0xFF; // Invert bits
-        int aVal = a & 0xFF;
-        int cVal = getFlag(C);
+        addWithCarry((bus.read(addr) ^ 0xFF) & 0xFF);
+    }
 
-        int sum = aVal + val + cVal;
+    // A = A + val + C, shared by ADC, SBC, RRA and ISB
+    private void addWithCarry(int val) {
+        int aVal = a;
+        int sum = aVal + val + carry;
 
-        setFlag(C, sum > 255);
-        setFlag(Z, (sum & 0xFF) == 0);
-        setFlag(N, (sum & 0x80) != 0);
+        carry = sum >> 8;
+        nz = sum & 0xFF;
 
-        // Overflow logic is same as ADC but with inverted M
-        boolean overflow = (~(aVal ^ val) & (aVal ^ sum) & 0x80) != 0;
-        setFlag(V, overflow);
+        // Overflow: bit 7 of ~(A ^ M) & (A ^ R), moved to V's bit 6
+        overflow = (~(aVal ^ val) & (aVal ^ sum)) >> 1;
 
-        a = (byte) sum;
+        a = sum & 0xFF;
     }
 
     // --- Logical Instructions ---
 
     // Bitwise AND
     public void AND(int addr) {
-        byte fetched = bus.read(addr);
-        a &= fetched;
-        setZN(a);
+        a &= bus.read(addr) & 0xFF;
+        nz = a;
     }
 
     // Bitwise OR
     public void ORA(int addr) {
-        byte fetched = bus.read(addr);
-        a |= fetched;
-        setZN(a);
+        a |= bus.read(addr) & 0xFF;
+        nz = a;
     }
 
     // Exclusive OR
     public void EOR(int addr) {
-        byte fetched = bus.read(addr);
-        a ^= fetched;
-        setZN(a);
+        a ^= bus.read(addr) & 0xFF;
+        nz = a;
     }
 
     // Bit Test
     public void BIT(int addr) {
         byte fetched = bus.read(addr);
         int val = fetched & 0xFF;
-        int aVal = a & 0xFF;
+        int aVal = a;
 
-        // Z flag set if (A & M) == 0
-        setFlag(Z, (aVal & val) == 0);
-
-        // N flag = bit 7 of M
-        setFlag(N, (val & 0x80) != 0);
+        // Z flag set if (A & M) == 0, N flag = bit 7 of M (through bit 8)
+        nz = (aVal & val) | ((val & 0x80) << 1);
 
         // V flag = bit 6 of M
-        setFlag(V, (val & 0x40) != 0);
+        overflow = val;
     }
 
     // --- Stack Operations ---
 
     public void push(byte data) {
-        bus.write(0x0100 + (sp & 0xFF), data);
-        sp--;
+        bus.write(0x0100 | sp, data);
+        sp = (sp - 1) & 0xFF;
     }
 
     public byte pop() {
-        sp++;
-        return bus.read(0x0100 + (sp & 0xFF));
+        sp = (sp + 1) & 0xFF;
+        return bus.read(0x0100 | sp);
     }
 
     public void pushWord(int data) {
@@ -345,48 +494,44 @@ public class Cpu {
 
     // --- Branch Instructions ---
 
-    private void branch(int addr) {
-        // addr is the relative offset (signed byte)
-        // In this emulator structure, the addressing mode (REL) already returns the offset
-        // But wait, REL returns the *offset value*, not the target address?
-        // Let's check REL implementation.
-        // REL reads a byte. If 0x80 is set, it sign extends. It returns the signed int offset.
-        // So 'addr' here is actually the offset.
-
-        int offset = addr;
-        pc += offset;
+    private void branch(int offset) {
+        // REL returns the sign-extended offset, not the target address
+        int target = (pc + offset) & 0xFFFF;
+        // A taken branch costs 1 cycle, 2 if the target is on another page
+        penalty = ((pc ^ target) & 0xFF00) != 0 ? 2 : 1;
+        pc = target;
     }
 
     public void BCC(int offset) {
-        if (getFlag(C) == 0) branch(offset);
+        if (carry == 0) branch(offset);
     }
 
     public void BCS(int offset) {
-        if (getFlag(C) == 1) branch(offset);
+        if (carry != 0) branch(offset);
     }
 
     public void BEQ(int offset) {
-        if (getFlag(Z) == 1) branch(offset);
+        if ((nz & 0xFF) == 0) branch(offset);
     }
 
     public void BNE(int offset) {
-        if (getFlag(Z) == 0) branch(offset);
+        if ((nz & 0xFF) != 0) branch(offset);
     }
 
     public void BMI(int offset) {
-        if (getFlag(N) == 1) branch(offset);
+        if ((nz & 0x180) != 0) branch(offset);
     }
 
     public void BPL(int offset) {
-        if (getFlag(N) == 0) branch(offset);
+        if ((nz & 0x180) == 0) branch(offset);
     }
 
     public void BVC(int offset) {
-        if (getFlag(V) == 0) branch(offset);
+        if ((overflow & V) == 0) branch(offset);
     }
 
     public void BVS(int offset) {
-        if (getFlag(V) == 1) branch(offset);
+        if ((overflow & V) != 0) branch(offset);
     }
 
     // --- Jump Instructions ---
@@ -418,19 +563,19 @@ public class Cpu {
 
     // Push Accumulator
     public void PHA(int addr) {
-        push(a);
+        push((byte) a);
     }
 
     // Push Processor Status
     public void PHP(int addr) {
         // Push status with Break (B) and Unused (U) bits set
-        push((byte) (status | B | U));
+        push((byte) (getStatus() | B | U));
     }
 
     // Pull Accumulator
     public void PLA(int addr) {
-        a = pop();
-        setZN(a);
+        a = pop() & 0xFF;
+        nz = a;
     }
 
     // Pull Processor Status
@@ -442,7 +587,7 @@ public class Cpu {
         // Also U bit is always 1.
 
         byte fetched = pop();
-        status = (byte) ((fetched & ~B) | U); // Ensure U is set, B is ignored (or cleared?)
+        setStatus((byte) ((fetched & ~B) | U)); // Ensure U is set, B is ignored (or cleared?)
         // Wait, B flag doesn't exist in the status register physically. It only exists on stack.
         // So we just load the byte into status, but mask out B bit (keep it 0 or whatever it was?)
         // Actually, the B bit in the status register is unused/meaningless.
@@ -453,7 +598,7 @@ public class Cpu {
     // Transfer Stack Pointer to X
     public void TSX(int addr) {
         x = sp;
-        setZN(x);
+        nz = x;
     }
 
     // Transfer X to Stack Pointer
@@ -465,22 +610,22 @@ public class Cpu {
 
     public void TAX(int addr) {
         x = a;
-        setZN(x);
+        nz = x;
     }
 
     public void TAY(int addr) {
         y = a;
-        setZN(y);
+        nz = y;
     }
 
     public void TXA(int addr) {
         a = x;
-        setZN(a);
+        nz = a;
     }
 
     public void TYA(int addr) {
         a = y;
-        setZN(a);
+        nz = a;
     }
 
     // --- Increment / Decrement ---
@@ -500,23 +645,23 @@ public class Cpu {
     }
 
     public void INX(int addr) {
-        x++;
-        setZN(x);
+        x = (x + 1) & 0xFF;
+        nz = x;
     }
 
     public void DEX(int addr) {
-        x--;
-        setZN(x);
+        x = (x - 1) & 0xFF;
+        nz = x;
     }
 
     public void INY(int addr) {
-        y++;
-        setZN(y);
+        y = (y + 1) & 0xFF;
+        nz = y;
     }
 
     public void DEY(int addr) {
-        y--;
-        setZN(y);
+        y = (y - 1) & 0xFF;
+        nz = y;
     }
 
     // --- Shifts & Rotates ---
@@ -524,27 +669,21 @@ public class Cpu {
     // --- Compares ---
 
     public void CMP(int addr) {
-        byte val = bus.read(addr);
-        int result = (a & 0xFF) - (val & 0xFF);
-        setFlag(C, (a & 0xFF) >= (val & 0xFF));
-        setFlag(Z, (result & 0xFF) == 0);
-        setFlag(N, (result & 0x80) != 0);
+        int val = bus.read(addr) & 0xFF;
+        carry = a >= val ? 1 : 0;
+        nz = (a - val) & 0xFF;
     }
 
     public void CPX(int addr) {
-        byte val = bus.read(addr);
-        int result = (x & 0xFF) - (val & 0xFF);
-        setFlag(C, (x & 0xFF) >= (val & 0xFF));
-        setFlag(Z, (result & 0xFF) == 0);
-        setFlag(N, (result & 0x80) != 0);
+        int val = bus.read(addr) & 0xFF;
+        carry = x >= val ? 1 : 0;
+        nz = (x - val) & 0xFF;
     }
 
     public void CPY(int addr) {
-        byte val = bus.read(addr);
-        int result = (y & 0xFF) - (val & 0xFF);
-        setFlag(C, (y & 0xFF) >= (val & 0xFF));
-        setFlag(Z, (result & 0xFF) == 0);
-        setFlag(N, (result & 0x80) != 0);
+        int val = bus.read(addr) & 0xFF;
+        carry = y >= val ? 1 : 0;
+        nz = (y - val) & 0xFF;
     }
 
     // --- Shifts & Rotates ---
@@ -552,65 +691,65 @@ public class Cpu {
     // Arithmetic Shift Left
     public void ASL(int addr) {
         byte val = bus.read(addr);
-        setFlag(C, (val & 0x80) != 0);
+        carry = (val >> 7) & 1;
         val <<= 1;
         bus.write(addr, val);
         setZN(val);
     }
 
     public void ASL_Acc(int addr) {
-        setFlag(C, (a & 0x80) != 0);
-        a <<= 1;
-        setZN(a);
+        carry = a >> 7;
+        a = (a << 1) & 0xFF;
+        nz = a;
     }
 
     // Logical Shift Right
     public void LSR(int addr) {
         byte val = bus.read(addr);
-        setFlag(C, (val & 0x01) != 0);
+        carry = val & 1;
         val = (byte) ((val & 0xFF) >>> 1);
         bus.write(addr, val);
         setZN(val);
     }
 
     public void LSR_Acc(int addr) {
-        setFlag(C, (a & 0x01) != 0);
-        a = (byte) ((a & 0xFF) >>> 1);
-        setZN(a);
+        carry = a & 1;
+        a >>= 1;
+        nz = a;
     }
 
     // Rotate Left
     public void ROL(int addr) {
         byte val = bus.read(addr);
-        int c = getFlag(C);
-        setFlag(C, (val & 0x80) != 0);
+        int c = carry;
+        carry = (val >> 7) & 1;
         val = (byte) ((val << 1) | c);
         bus.write(addr, val);
         setZN(val);
     }
 
     public void ROL_Acc(int addr) {
-        int c = getFlag(C);
-        setFlag(C, (a & 0x80) != 0);
-        a = (byte) ((a << 1) | c);
-        setZN(a);
+        int c = carry;
+        carry = a >> 7;
+        a = ((a << 1) | c) & 0xFF;
+        nz = a;
     }
 
     // Rotate Right
     public void ROR(int addr) {
         byte val = bus.read(addr);
-        int c = getFlag(C);
-        setFlag(C, (val & 0x01) != 0);
+        int c = carry;
+        carry = val & 1;
         val = (byte) (((val & 0xFF) >>> 1) | (c << 7));
         bus.write(addr, val);
         setZN(val);
     }
 
     public void ROR_Acc(int addr) {
-        int c = getFlag(C);
-        setFlag(C, (a & 0x01) != 0);
-        a = (byte) (((a & 0xFF) >>> 1) | (c << 7));
-        setZN(a);
+        int c = carry;
+        carry = a & 1;
+        a = (a >> 1) | (c << 7);
+        nz = a;
     }
 
     // --- System Instructions ---
@@ -628,10 +767,10 @@ public class Cpu {
         pushWord(pc + 1);
 
         // Push Status with B and U set
-        push((byte) (status | B | U));
+        push((byte) (getStatus() | B | U));
 
         // Set Interrupt Disable
-        setFlag(I, true);
+        status |= I;
 
         // Load IRQ Vector
         int lo = bus.read(0xFFFE) & 0xFF;
@@ -642,7 +781,7 @@ public class Cpu {
     public void RTI(int addr) {
         // Pull Status
         byte fetched = pop();
-        status = (byte) ((fetched & ~B) | U); // Ignore B, set U
+        setStatus((byte) ((fetched & ~B) | U)); // Ignore B, set U
 
         // Pull PC
         pc = popWord();
@@ -651,31 +790,190 @@ public class Cpu {
     // --- Flag Instructions ---
 
     public void CLC(int addr) {
-        setFlag(C, false);
+        carry = 0;
     }
 
     public void SEC(int addr) {
-        setFlag(C, true);
+        carry = 1;
     }
 
     public void CLI(int addr) {
-        setFlag(I, false);
+        status &= ~I;
     }
 
     public void SEI(int addr) {
-        setFlag(I, true);
+        status |= I;
     }
 
     public void CLV(int addr) {
-        setFlag(V, false);
+        overflow = 0;
     }
 
     public void CLD(int addr) {
-        setFlag(D, false);
+        status &= ~D;
     }
 
     public void SED(int addr) {
-        setFlag(D, true);
+        status |= D;
+    }
+
+    // --- Unofficial Instructions ---
+    // Combinations of official operations that the 6502 decodes as a side
+    // effect of its opcode matrix. The read-modify-write ones take the cycles
+    // of the matching official RMW instruction.
+
+    // Load A and X
+    public void LAX(int addr) {
+        a = bus.read(addr) & 0xFF;
+        x = a;
+        nz = a;
+    }
+
+    // Store A AND X
+    public void SAX(int addr) {
+        bus.write(addr, (byte) (a & x));
+    }
+
+    // DEC then CMP
+    public void DCP(int addr) {
+        byte val = (byte) (bus.read(addr) - 1);
+        bus.write(addr, val);
+        carry = a >= (val & 0xFF) ? 1 : 0;
+        nz = (a - val) & 0xFF;
+    }
+
+    // INC then SBC
+    public void ISB(int addr) {
+        byte val = (byte) (bus.read(addr) + 1);
+        bus.write(addr, val);
+        addWithCarry((val ^ 0xFF) & 0xFF);
+    }
+
+    // ASL then ORA
+    public void SLO(int addr) {
+        byte val = bus.read(addr);
+        carry = (val >> 7) & 1;
+        val <<= 1;
+        bus.write(addr, val);
+        a |= val & 0xFF;
+        nz = a;
+    }
+
+    // ROL then AND
+    public void RLA(int addr) {
+        byte val = bus.read(addr);
+        int c = carry;
+        carry = (val >> 7) & 1;
+        val = (byte) ((val << 1) | c);
+        bus.write(addr, val);
+        a &= val;
+        nz = a;
+    }
+
+    // LSR then EOR
+    public void SRE(int addr) {
+        byte val = bus.read(addr);
+        carry = val & 1;
+        val = (byte) ((val & 0xFF) >>> 1);
+        bus.write(addr, val);
+        a ^= val & 0xFF;
+        nz = a;
+    }
+
+    // ROR then ADC, which adds the carry ROR shifted out
+    public void RRA(int addr) {
+        byte val = bus.read(addr);
+        int c = carry;
+        carry = val & 1;
+        val = (byte) (((val & 0xFF) >>> 1) | (c << 7));
+        bus.write(addr, val);
+        addWithCarry(val & 0xFF);
+    }
+
+    // AND immediate, C = N
+    public void ANC(int addr) {
+        a &= bus.read(addr);
+        nz = a;
+        carry = a >> 7;
+    }
+
+    // AND immediate then LSR A
+    public void ALR(int addr) {
+        a &= bus.read(addr);
+        LSR_Acc(addr);
+    }
+
+    // AND immediate then ROR A; C = bit 6, V = bit 6 ^ bit 5 of the result
+    public void ARR(int addr) {
+        int val = a & bus.read(addr);
+        a = (val >>> 1) | (carry << 7);
+        nz = a;
+        carry = (a >> 6) & 1;
+        // Bit 6 ^ bit 5, in bit 6
+        overflow = a ^ (a << 1);
+    }
+
+    // X = (A AND X) - immediate, flags as CMP, borrow ignored
+    public void AXS(int addr) {
+        int ax = a & x;
+        int val = bus.read(addr) & 0xFF;
+        carry = ax >= val ? 1 : 0;
+        x = (ax - val) & 0xFF;
+        nz = x;
+    }
+
+    // A, X and SP = memory AND SP
+    public void LAS(int addr) {
+        a = bus.read(addr) & sp;
+        x = a;
+        sp = a;
+        nz = a;
+    }
+
+    // Unstable: A = (A | magic) AND X AND immediate. 0xEE is the usual magic value
+    public void XAA(int addr) {
+        a = (a | 0xEE) & x & bus.read(addr);
+        nz = a;
+    }
+
+    // Unstable: A = X = (A | magic) AND immediate
+    public void LXA(int addr) {
+        a = (a | 0xEE) & bus.read(addr) & 0xFF;
+        x = a;
+        nz = a;
+    }
+
+    // Unstable stores of a register AND (high byte of the base address + 1)
+    public void SHA(int addr) {
+        storeAndHigh(addr, y, a & x);
+    }
+
+    public void SHX(int addr) {
+        storeAndHigh(addr, y, x);
+    }
+
+    public void SHY(int addr) {
+        storeAndHigh(addr, x, y);
+    }
+
+    public void TAS(int addr) {
+        sp = a & x;
+        storeAndHigh(addr, y, sp);
+    }
+
+    // On a page crossing the stored value also replaces the high address byte
+    private void storeAndHigh(int addr, int index, int value) {
+        int base = (addr - index) & 0xFFFF;
+        int data = value & ((base >> 8) + 1) & 0xFF;
+        if (((base ^ addr) & 0xFF00) != 0) {
+            addr = (data << 8) | (addr & 0xFF);
+        }
+        bus.write(addr, (byte) data);
+    }
+
+    // Halts the CPU: re-executes itself until reset
+    public void JAM(int addr) {
+        pc = (pc - 1) & 0xFFFF;
     }
 
     // --- Dispatch & Cycle Counting ---
@@ -693,247 +991,977 @@ public class Cpu {
         int getAddress();
     }
 
+    /**
+     * The addressing modes, for code that needs to decode an opcode
+     * without executing it.
+     */
+    enum Mode {
+        IMP(0), IMM(1), ZP0(1), ZPX(1), ZPY(1), REL(1), ABS(2), ABX(2), ABY(2), IND(2), IZX(1), IZY(1);
+
+        // Operand bytes after the opcode
+        final int operandBytes;
+
+        Mode(int operandBytes) {
+            this.operandBytes = operandBytes;
+        }
+    }
+
+    private AddressingMode addressing(Mode mode) {
+        switch (mode) {
+            case IMM: return this::IMM;
+            case ZP0: return this::ZP0;
+            case ZPX: return this::ZPX;
+            case ZPY: return this::ZPY;
+            case REL: return this::REL;
+            case ABS: return this::ABS;
+            case ABX: return this::ABX;
+            case ABY: return this::ABY;
+            case IND: return this::IND;
+            case IZX: return this::IZX;
+            case IZY: return this::IZY;
+            default: return this::IMP;
+        }
+    }
+
     class InstructionEntry {
         String name;
         Instruction operation;
+        Mode addressMode;
         AddressingMode mode;
         int cycles;
+        // Add the page-crossing or branch-taken penalty to cycles
+        boolean penalty;
+
+        public InstructionEntry(String name, Instruction operation, Mode mode, int cycles) {
+            this(name, operation, mode, cycles, false);
+        }
 
-        public InstructionEntry(String name, Instruction operation, AddressingMode mode, int cycles) {
+        public InstructionEntry(String name, Instruction operation, Mode mode, int cycles, boolean penalty) {
             this.name = name;
             this.operation = operation;
-            this.mode = mode;
+            this.addressMode = mode;
+            this.mode = addressing(mode);
             this.cycles = cycles;
+            this.penalty = penalty;
         }
     }
 
     private InstructionEntry[] lookup = new InstructionEntry[256];
 
+    /**
+     * Selects how {@link #clock()} decodes and executes an opcode.
+     */
+    public enum Core {
+        // Per-opcode InstructionEntry holding addressing mode and operation lambdas
+        TABLE,
+        // One dense switch(opcode) with the addressing mode called directly per case
+        SWITCH,
+        // SWITCH, plus step() runs hot PRG-ROM code as basic blocks compiled
+        // to JVM bytecode (see Recompiler); clock() still interprets
+        RECOMPILER,
+        // TABLE, with PRG-ROM instructions fetched and decoded once (see DecodeCache)
+        DECODED
+    }
+
+    private final Core core;
+    
+    // Compiled PRG-ROM blocks (RECOMPILER core only)
+    private Recompiler recompiler;
+
+    // Decoded PRG-ROM instructions (DECODED core only)
+    private DecodeCache decodeCache;
+
+    // Instructions per iteration of the loop idleLoopCycles() last found
+    private int idleLoopInstructions = 0;
+
     public Cpu() {
-        // Initialize lookup table
-        for (int i = 0; i < 256; i++) {
-            lookup[i] = new InstructionEntry("XXX", this::NOP, this::IMP, 2);
-        }
+        this(Core.TABLE);
+    }
 
-        // Populate table (Partial list for now, will fill all)
+    public Cpu(Core core) {
+        this.core = core;
+
+        // Every opcode has an entry: the 151 official ones, then the unofficial ones
         // LDA
-        lookup[0xA9] = new InstructionEntry("LDA", this::LDA, this::IMM, 2);
-        lookup[0xA5] = new InstructionEntry("LDA", this::LDA, this::ZP0, 3);
-        lookup[0xB5] = new InstructionEntry("LDA", this::LDA, this::ZPX, 4);
-        lookup[0xAD] = new InstructionEntry("LDA", this::LDA, this::ABS, 4);
-        lookup[0xBD] = new InstructionEntry("LDA", this::LDA, this::ABX, 4); // +1 if page crossed
-        lookup[0xB9] = new InstructionEntry("LDA", this::LDA, this::ABY, 4); // +1 if page crossed
-        lookup[0xA1] = new InstructionEntry("LDA", this::LDA, this::IZX, 6);
-        lookup[0xB1] = new InstructionEntry("LDA", this::LDA, this::IZY, 5); // +1 if page crossed
+        lookup[0xA9] = new InstructionEntry("LDA", this::LDA, Mode.IMM, 2);
+        lookup[0xA5] = new InstructionEntry("LDA", this::LDA, Mode.ZP0, 3);
+        lookup[0xB5] = new InstructionEntry("LDA", this::LDA, Mode.ZPX, 4);
+        lookup[0xAD] = new InstructionEntry("LDA", this::LDA, Mode.ABS, 4);
+        lookup[0xBD] = new InstructionEntry("LDA", this::LDA, Mode.ABX, 4, true); // +1 if page crossed
+        lookup[0xB9] = new InstructionEntry("LDA", this::LDA, Mode.ABY, 4, true); // +1 if page crossed
+        lookup[0xA1] = new InstructionEntry("LDA", this::LDA, Mode.IZX, 6);
+        lookup[0xB1] = new InstructionEntry("LDA", this::LDA, Mode.IZY, 5, true); // +1 if page crossed
 
         // STA
-        lookup[0x85] = new InstructionEntry("STA", this::STA, this::ZP0, 3);
-        lookup[0x95] = new InstructionEntry("STA", this::STA, this::ZPX, 4);
-        lookup[0x8D] = new InstructionEntry("STA", this::STA, this::ABS, 4);
-        lookup[0x9D] = new InstructionEntry("STA", this::STA, this::ABX, 5);
-        lookup[0x99] = new InstructionEntry("STA", this::STA, this::ABY, 5);
-        lookup[0x81] = new InstructionEntry("STA", this::STA, this::IZX, 6);
-        lookup[0x91] = new InstructionEntry("STA", this::STA, this::IZY, 6);
+        lookup[0x85] = new InstructionEntry("STA", this::STA, Mode.ZP0, 3);
+        lookup[0x95] = new InstructionEntry("STA", this::STA, Mode.ZPX, 4);
+        lookup[0x8D] = new InstructionEntry("STA", this::STA, Mode.ABS, 4);
+        lookup[0x9D] = new InstructionEntry("STA", this::STA, Mode.ABX, 5);
+        lookup[0x99] = new InstructionEntry("STA", this::STA, Mode.ABY, 5);
+        lookup[0x81] = new InstructionEntry("STA", this::STA, Mode.IZX, 6);
+        lookup[0x91] = new InstructionEntry("STA", this::STA, Mode.IZY, 6);
 
         // JMP
-        lookup[0x4C] = new InstructionEntry("JMP", this::JMP, this::ABS, 3);
-        lookup[0x6C] = new InstructionEntry("JMP", this::JMP, this::IND, 5);
+        lookup[0x4C] = new InstructionEntry("JMP", this::JMP, Mode.ABS, 3);
+        lookup[0x6C] = new InstructionEntry("JMP", this::JMP, Mode.IND, 5);
 
         // ADC
-        lookup[0x69] = new InstructionEntry("ADC", this::ADC, this::IMM, 2);
-        lookup[0x65] = new InstructionEntry("ADC", this::ADC, this::ZP0, 3);
-        lookup[0x75] = new InstructionEntry("ADC", this::ADC, this::ZPX, 4);
-        lookup[0x6D] = new InstructionEntry("ADC", this::ADC, this::ABS, 4);
-        lookup[0x7D] = new InstructionEntry("ADC", this::ADC, this::ABX, 4);
-        lookup[0x79] = new InstructionEntry("ADC", this::ADC, this::ABY, 4);
-        lookup[0x61] = new InstructionEntry("ADC", this::ADC, this::IZX, 6);
-        lookup[0x71] = new InstructionEntry("ADC", this::ADC, this::IZY, 5);
+        lookup[0x69] = new InstructionEntry("ADC", this::ADC, Mode.IMM, 2);
+        lookup[0x65] = new InstructionEntry("ADC", this::ADC, Mode.ZP0, 3);
+        lookup[0x75] = new InstructionEntry("ADC", this::ADC, Mode.ZPX, 4);
+        lookup[0x6D] = new InstructionEntry("ADC", this::ADC, Mode.ABS, 4);
+        lookup[0x7D] = new InstructionEntry("ADC", this::ADC, Mode.ABX, 4, true);
+        lookup[0x79] = new InstructionEntry("ADC", this::ADC, Mode.ABY, 4, true);
+        lookup[0x61] = new InstructionEntry("ADC", this::ADC, Mode.IZX, 6);
+        lookup[0x71] = new InstructionEntry("ADC", this::ADC, Mode.IZY, 5, true);
 
         // SBC
-        lookup[0xE9] = new InstructionEntry("SBC", this::SBC, this::IMM, 2);
-        lookup[0xE5] = new InstructionEntry("SBC", this::SBC, this::ZP0, 3);
-        lookup[0xF5] = new InstructionEntry("SBC", this::SBC, this::ZPX, 4);
-        lookup[0xED] = new InstructionEntry("SBC", this::SBC, this::ABS, 4);
-        lookup[0xFD] = new InstructionEntry("SBC", this::SBC, this::ABX, 4);
-        lookup[0xF9] = new InstructionEntry("SBC", this::SBC, this::ABY, 4);
-        lookup[0xE1] = new InstructionEntry("SBC", this::SBC, this::IZX, 6);
-        lookup[0xF1] = new InstructionEntry("SBC", this::SBC, this::IZY, 5);
+        lookup[0xE9] = new InstructionEntry("SBC", this::SBC, Mode.IMM, 2);
+        lookup[0xE5] = new InstructionEntry("SBC", this::SBC, Mode.ZP0, 3);
+        lookup[0xF5] = new InstructionEntry("SBC", this::SBC, Mode.ZPX, 4);
+        lookup[0xED] = new InstructionEntry("SBC", this::SBC, Mode.ABS, 4);
+        lookup[0xFD] = new InstructionEntry("SBC", this::SBC, Mode.ABX, 4, true);
+        lookup[0xF9] = new InstructionEntry("SBC", this::SBC, Mode.ABY, 4, true);
+        lookup[0xE1] = new InstructionEntry("SBC", this::SBC, Mode.IZX, 6);
+        lookup[0xF1] = new InstructionEntry("SBC", this::SBC, Mode.IZY, 5, true);
 
         // Branches
-        lookup[0x90] = new InstructionEntry("BCC", this::BCC, this::REL, 2);
-        lookup[0xB0] = new InstructionEntry("BCS", this::BCS, this::REL, 2);
-        lookup[0xF0] = new InstructionEntry("BEQ", this::BEQ, this::REL, 2);
-        lookup[0xD0] = new InstructionEntry("BNE", this::BNE, this::REL, 2);
-        lookup[0x30] = new InstructionEntry("BMI", this::BMI, this::REL, 2);
-        lookup[0x10] = new InstructionEntry("BPL", this::BPL, this::REL, 2);
-        lookup[0x50] = new InstructionEntry("BVC", this::BVC, this::REL, 2);
-        lookup[0x70] = new InstructionEntry("BVS", this::BVS, this::REL, 2);
+        lookup[0x90] = new InstructionEntry("BCC", this::BCC, Mode.REL, 2, true);
+        lookup[0xB0] = new InstructionEntry("BCS", this::BCS, Mode.REL, 2, true);
+        lookup[0xF0] = new InstructionEntry("BEQ", this::BEQ, Mode.REL, 2, true);
+        lookup[0xD0] = new InstructionEntry("BNE", this::BNE, Mode.REL, 2, true);
+        lookup[0x30] = new InstructionEntry("BMI", this::BMI, Mode.REL, 2, true);
+        lookup[0x10] = new InstructionEntry("BPL", this::BPL, Mode.REL, 2, true);
+        lookup[0x50] = new InstructionEntry("BVC", this::BVC, Mode.REL, 2, true);
+        lookup[0x70] = new InstructionEntry("BVS", this::BVS, Mode.REL, 2, true);
 
         // BRK
-        lookup[0x00] = new InstructionEntry("BRK", this::BRK, this::IMP, 7);
+        lookup[0x00] = new InstructionEntry("BRK", this::BRK, Mode.IMP, 7);
         
         // BIT
-        lookup[0x24] = new InstructionEntry("BIT", this::BIT, this::ZP0, 3);
-        lookup[0x2C] = new InstructionEntry("BIT", this::BIT, this::ABS, 4);
+        lookup[0x24] = new InstructionEntry("BIT", this::BIT, Mode.ZP0, 3);
+        lookup[0x2C] = new InstructionEntry("BIT", this::BIT, Mode.ABS, 4);
         
         // LDX
-        lookup[0xA2] = new InstructionEntry("LDX", this::LDX, this::IMM, 2);
-        lookup[0xA6] = new InstructionEntry("LDX", this::LDX, this::ZP0, 3);
-        lookup[0xB6] = new InstructionEntry("LDX", this::LDX, this::ZPY, 4);
-        lookup[0xAE] = new InstructionEntry("LDX", this::LDX, this::ABS, 4);
-        lookup[0xBE] = new InstructionEntry("LDX", this::LDX, this::ABY, 4); // +1 if page crossed
+        lookup[0xA2] = new InstructionEntry("LDX", this::LDX, Mode.IMM, 2);
+        lookup[0xA6] = new InstructionEntry("LDX", this::LDX, Mode.ZP0, 3);
+        lookup[0xB6] = new InstructionEntry("LDX", this::LDX, Mode.ZPY, 4);
+        lookup[0xAE] = new InstructionEntry("LDX", this::LDX, Mode.ABS, 4);
+        lookup[0xBE] = new InstructionEntry("LDX", this::LDX, Mode.ABY, 4, true); // +1 if page crossed
         
         // LDY
-        lookup[0xA0] = new InstructionEntry("LDY", this::LDY, this::IMM, 2);
-        lookup[0xA4] = new InstructionEntry("LDY", this::LDY, this::ZP0, 3);
-        lookup[0xB4] = new InstructionEntry("LDY", this::LDY, this::ZPX, 4);
-        lookup[0xAC] = new InstructionEntry("LDY", this::LDY, this::ABS, 4);
-        lookup[0xBC] = new InstructionEntry("LDY", this::LDY, this::ABX, 4); // +1 if page crossed
+        lookup[0xA0] = new InstructionEntry("LDY", this::LDY, Mode.IMM, 2);
+        lookup[0xA4] = new InstructionEntry("LDY", this::LDY, Mode.ZP0, 3);
+        lookup[0xB4] = new InstructionEntry("LDY", this::LDY, Mode.ZPX, 4);
+        lookup[0xAC] = new InstructionEntry("LDY", this::LDY, Mode.ABS, 4);
+        lookup[0xBC] = new InstructionEntry("LDY", this::LDY, Mode.ABX, 4, true); // +1 if page crossed
         
         // STX
-        lookup[0x86] = new InstructionEntry("STX", this::STX, this::ZP0, 3);
-        lookup[0x96] = new InstructionEntry("STX", this::STX, this::ZPY, 4);
-        lookup[0x8E] = new InstructionEntry("STX", this::STX, this::ABS, 4);
+        lookup[0x86] = new InstructionEntry("STX", this::STX, Mode.ZP0, 3);
+        lookup[0x96] = new InstructionEntry("STX", this::STX, Mode.ZPY, 4);
+        lookup[0x8E] = new InstructionEntry("STX", this::STX, Mode.ABS, 4);
         
         // STY
-        lookup[0x84] = new InstructionEntry("STY", this::STY, this::ZP0, 3);
-        lookup[0x94] = new InstructionEntry("STY", this::STY, this::ZPX, 4);
-        lookup[0x8C] = new InstructionEntry("STY", this::STY, this::ABS, 4);
+        lookup[0x84] = new InstructionEntry("STY", this::STY, Mode.ZP0, 3);
+        lookup[0x94] = new InstructionEntry("STY", this::STY, Mode.ZPX, 4);
+        lookup[0x8C] = new InstructionEntry("STY", this::STY, Mode.ABS, 4);
         
         // Register Transfers
-        lookup[0xAA] = new InstructionEntry("TAX", this::TAX, this::IMP, 2);
-        lookup[0xA8] = new InstructionEntry("TAY", this::TAY, this::IMP, 2);
-        lookup[0x8A] = new InstructionEntry("TXA", this::TXA, this::IMP, 2);
-        lookup[0x98] = new InstructionEntry("TYA", this::TYA, this::IMP, 2);
-        lookup[0x9A] = new InstructionEntry("TXS", this::TXS, this::IMP, 2);
-        lookup[0xBA] = new InstructionEntry("TSX", this::TSX, this::IMP, 2);
+        lookup[0xAA] = new InstructionEntry("TAX", this::TAX, Mode.IMP, 2);
+        lookup[0xA8] = new InstructionEntry("TAY", this::TAY, Mode.IMP, 2);
+        lookup[0x8A] = new InstructionEntry("TXA", this::TXA, Mode.IMP, 2);
+        lookup[0x98] = new InstructionEntry("TYA", this::TYA, Mode.IMP, 2);
+        lookup[0x9A] = new InstructionEntry("TXS", this::TXS, Mode.IMP, 2);
+        lookup[0xBA] = new InstructionEntry("TSX", this::TSX, Mode.IMP, 2);
         
         // Stack Operations
-        lookup[0x48] = new InstructionEntry("PHA", this::PHA, this::IMP, 3);
-        lookup[0x68] = new InstructionEntry("PLA", this::PLA, this::IMP, 4);
-        lookup[0x08] = new InstructionEntry("PHP", this::PHP, this::IMP, 3);
-        lookup[0x28] = new InstructionEntry("PLP", this::PLP, this::IMP, 4);
+        lookup[0x48] = new InstructionEntry("PHA", this::PHA, Mode.IMP, 3);
+        lookup[0x68] = new InstructionEntry("PLA", this::PLA, Mode.IMP, 4);
+        lookup[0x08] = new InstructionEntry("PHP", this::PHP, Mode.IMP, 3);
+        lookup[0x28] = new InstructionEntry("PLP", this::PLP, Mode.IMP, 4);
         
         // Subroutines / Interrupts
-        lookup[0x20] = new InstructionEntry("JSR", this::JSR, this::ABS, 6);
-        lookup[0x60] = new InstructionEntry("RTS", this::RTS, this::IMP, 6);
-        lookup[0x40] = new InstructionEntry("RTI", this::RTI, this::IMP, 6);
+        lookup[0x20] = new InstructionEntry("JSR", this::JSR, Mode.ABS, 6);
+        lookup[0x60] = new InstructionEntry("RTS", this::RTS, Mode.IMP, 6);
+        lookup[0x40] = new InstructionEntry("RTI", this::RTI, Mode.IMP, 6);
         
         // Logical
-        lookup[0x29] = new InstructionEntry("AND", this::AND, this::IMM, 2);
-        lookup[0x25] = new InstructionEntry("AND", this::AND, this::ZP0, 3);
-        lookup[0x35] = new InstructionEntry("AND", this::AND, this::ZPX, 4);
-        lookup[0x2D] = new InstructionEntry("AND", this::AND, this::ABS, 4);
-        lookup[0x3D] = new InstructionEntry("AND", this::AND, this::ABX, 4);
-        lookup[0x39] = new InstructionEntry("AND", this::AND, this::ABY, 4);
-        lookup[0x21] = new InstructionEntry("AND", this::AND, this::IZX, 6);
-        lookup[0x31] = new InstructionEntry("AND", this::AND, this::IZY, 5);
-        
-        lookup[0x09] = new InstructionEntry("ORA", this::ORA, this::IMM, 2);
-        lookup[0x05] = new InstructionEntry("ORA", this::ORA, this::ZP0, 3);
-        lookup[0x15] = new InstructionEntry("ORA", this::ORA, this::ZPX, 4);
-        lookup[0x0D] = new InstructionEntry("ORA", this::ORA, this::ABS, 4);
-        lookup[0x1D] = new InstructionEntry("ORA", this::ORA, this::ABX, 4);
-        lookup[0x19] = new InstructionEntry("ORA", this::ORA, this::ABY, 4);
-        lookup[0x01] = new InstructionEntry("ORA", this::ORA, this::IZX, 6);
-        lookup[0x11] = new InstructionEntry("ORA", this::ORA, this::IZY, 5);
-        
-        lookup[0x49] = new InstructionEntry("EOR", this::EOR, this::IMM, 2);
-        lookup[0x45] = new InstructionEntry("EOR", this::EOR, this::ZP0, 3);
-        lookup[0x55] = new InstructionEntry("EOR", this::EOR, this::ZPX, 4);
-        lookup[0x4D] = new InstructionEntry("EOR", this::EOR, this::ABS, 4);
-        lookup[0x5D] = new InstructionEntry("EOR", this::EOR, this::ABX, 4);
-        lookup[0x59] = new InstructionEntry("EOR", this::EOR, this::ABY, 4);
-        lookup[0x41] = new InstructionEntry("EOR", this::EOR, this::IZX, 6);
-        lookup[0x51] = new InstructionEntry("EOR", this::EOR, this::IZY, 5);
+        lookup[0x29] = new InstructionEntry("AND", this::AND, Mode.IMM, 2);
+        lookup[0x25] = new InstructionEntry("AND", this::AND, Mode.ZP0, 3);
+        lookup[0x35] = new InstructionEntry("AND", this::AND, Mode.ZPX, 4);
+        lookup[0x2D] = new InstructionEntry("AND", this::AND, Mode.ABS, 4);
+        lookup[0x3D] = new InstructionEntry("AND", this::AND, Mode.ABX, 4, true);
+        lookup[0x39] = new InstructionEntry("AND", this::AND, Mode.ABY, 4, true);
+        lookup[0x21] = new InstructionEntry("AND", this::AND, Mode.IZX, 6);
+        lookup[0x31] = new InstructionEntry("AND", this::AND, Mode.IZY, 5, true);
+        
+        lookup[0x09] = new InstructionEntry("ORA", this::ORA, Mode.IMM, 2);
+        lookup[0x05] = new InstructionEntry("ORA", this::ORA, Mode.ZP0, 3);
+        lookup[0x15] = new InstructionEntry("ORA", this::ORA, Mode.ZPX, 4);
+        lookup[0x0D] = new InstructionEntry("ORA", this::ORA, Mode.ABS, 4);
+        lookup[0x1D] = new InstructionEntry("ORA", this::ORA, Mode.ABX, 4, true);
+        lookup[0x19] = new InstructionEntry("ORA", this::ORA, Mode.ABY, 4, true);
+        lookup[0x01] = new InstructionEntry("ORA", this::ORA, Mode.IZX, 6);
+        lookup[0x11] = new InstructionEntry("ORA", this::ORA, Mode.IZY, 5, true);
+        
+        lookup[0x49] = new InstructionEntry("EOR", this::EOR, Mode.IMM, 2);
+        lookup[0x45] = new InstructionEntry("EOR", this::EOR, Mode.ZP0, 3);
+        lookup[0x55] = new InstructionEntry("EOR", this::EOR, Mode.ZPX, 4);
+        lookup[0x4D] = new InstructionEntry("EOR", this::EOR, Mode.ABS, 4);
+        lookup[0x5D] = new InstructionEntry("EOR", this::EOR, Mode.ABX, 4, true);
+        lookup[0x59] = new InstructionEntry("EOR", this::EOR, Mode.ABY, 4, true);
+        lookup[0x41] = new InstructionEntry("EOR", this::EOR, Mode.IZX, 6);
+        lookup[0x51] = new InstructionEntry("EOR", this::EOR, Mode.IZY, 5, true);
         
         // Compares
-        lookup[0xC9] = new InstructionEntry("CMP", this::CMP, this::IMM, 2);
-        lookup[0xC5] = new InstructionEntry("CMP", this::CMP, this::ZP0, 3);
-        lookup[0xD5] = new InstructionEntry("CMP", this::CMP, this::ZPX, 4);
-        lookup[0xCD] = new InstructionEntry("CMP", this::CMP, this::ABS, 4);
-        lookup[0xDD] = new InstructionEntry("CMP", this::CMP, this::ABX, 4);
-        lookup[0xD9] = new InstructionEntry("CMP", this::CMP, this::ABY, 4);
-        lookup[0xC1] = new InstructionEntry("CMP", this::CMP, this::IZX, 6);
-        lookup[0xD1] = new InstructionEntry("CMP", this::CMP, this::IZY, 5);
-        
-        lookup[0xE0] = new InstructionEntry("CPX", this::CPX, this::IMM, 2);
-        lookup[0xE4] = new InstructionEntry("CPX", this::CPX, this::ZP0, 3);
-        lookup[0xEC] = new InstructionEntry("CPX", this::CPX, this::ABS, 4);
-        
-        lookup[0xC0] = new InstructionEntry("CPY", this::CPY, this::IMM, 2);
-        lookup[0xC4] = new InstructionEntry("CPY", this::CPY, this::ZP0, 3);
-        lookup[0xCC] = new InstructionEntry("CPY", this::CPY, this::ABS, 4);
+        lookup[0xC9] = new InstructionEntry("CMP", this::CMP, Mode.IMM, 2);
+        lookup[0xC5] = new InstructionEntry("CMP", this::CMP, Mode.ZP0, 3);
+        lookup[0xD5] = new InstructionEntry("CMP", this::CMP, Mode.ZPX, 4);
+        lookup[0xCD] = new InstructionEntry("CMP", this::CMP, Mode.ABS, 4);
+        lookup[0xDD] = new InstructionEntry("CMP", this::CMP, Mode.ABX, 4, true);
+        lookup[0xD9] = new InstructionEntry("CMP", this::CMP, Mode.ABY, 4, true);
+        lookup[0xC1] = new InstructionEntry("CMP", this::CMP, Mode.IZX, 6);
+        lookup[0xD1] = new InstructionEntry("CMP", this::CMP, Mode.IZY, 5, true);
+        
+        lookup[0xE0] = new InstructionEntry("CPX", this::CPX, Mode.IMM, 2);
+        lookup[0xE4] = new InstructionEntry("CPX", this::CPX, Mode.ZP0, 3);
+        lookup[0xEC] = new InstructionEntry("CPX", this::CPX, Mode.ABS, 4);
+        
+        lookup[0xC0] = new InstructionEntry("CPY", this::CPY, Mode.IMM, 2);
+        lookup[0xC4] = new InstructionEntry("CPY", this::CPY, Mode.ZP0, 3);
+        lookup[0xCC] = new InstructionEntry("CPY", this::CPY, Mode.ABS, 4);
         
         // Increments / Decrements
-        lookup[0xE6] = new InstructionEntry("INC", this::INC, this::ZP0, 5);
-        lookup[0xF6] = new InstructionEntry("INC", this::INC, this::ZPX, 6);
-        lookup[0xEE] = new InstructionEntry("INC", this::INC, this::ABS, 6);
-        lookup[0xFE] = new InstructionEntry("INC", this::INC, this::ABX, 7);
+        lookup[0xE6] = new InstructionEntry("INC", this::INC, Mode.ZP0, 5);
+        lookup[0xF6] = new InstructionEntry("INC", this::INC, Mode.ZPX, 6);
+        lookup[0xEE] = new InstructionEntry("INC", this::INC, Mode.ABS, 6);
+        lookup[0xFE] = new InstructionEntry("INC", this::INC, Mode.ABX, 7);
         
-        lookup[0xC6] = new InstructionEntry("DEC", this::DEC, this::ZP0, 5);
-        lookup[0xD6] = new InstructionEntry("DEC", this::DEC, this::ZPX, 6);
-        lookup[0xCE] = new InstructionEntry("DEC", this::DEC, this::ABS, 6);
-        lookup[0xDE] = new InstructionEntry("DEC", this::DEC, this::ABX, 7);
+        lookup[0xC6] = new InstructionEntry("DEC", this::DEC, Mode.ZP0, 5);
+        lookup[0xD6] = new InstructionEntry("DEC", this::DEC, Mode.ZPX, 6);
+        lookup[0xCE] = new InstructionEntry("DEC", this::DEC, Mode.ABS, 6);
+        lookup[0xDE] = new InstructionEntry("DEC", this::DEC, Mode.ABX, 7);
         
-        lookup[0xE8] = new InstructionEntry("INX", this::INX, this::IMP, 2);
-        lookup[0xC8] = new InstructionEntry("INY", this::INY, this::IMP, 2);
-        lookup[0xCA] = new InstructionEntry("DEX", this::DEX, this::IMP, 2);
-        lookup[0x88] = new InstructionEntry("DEY", this::DEY, this::IMP, 2);
+        lookup[0xE8] = new InstructionEntry("INX", this::INX, Mode.IMP, 2);
+        lookup[0xC8] = new InstructionEntry("INY", this::INY, Mode.IMP, 2);
+        lookup[0xCA] = new InstructionEntry("DEX", this::DEX, Mode.IMP, 2);
+        lookup[0x88] = new InstructionEntry("DEY", this::DEY, Mode.IMP, 2);
         
         // Shifts
-        lookup[0x0A] = new InstructionEntry("ASL", this::ASL_Acc, this::IMP, 2);
-        lookup[0x06] = new InstructionEntry("ASL", this::ASL, this::ZP0, 5);
-        lookup[0x16] = new InstructionEntry("ASL", this::ASL, this::ZPX, 6);
-        lookup[0x0E] = new InstructionEntry("ASL", this::ASL, this::ABS, 6);
-        lookup[0x1E] = new InstructionEntry("ASL", this::ASL, this::ABX, 7);
-        
-        lookup[0x4A] = new InstructionEntry("LSR", this::LSR_Acc, this::IMP, 2);
-        lookup[0x46] = new InstructionEntry("LSR", this::LSR, this::ZP0, 5);
-        lookup[0x56] = new InstructionEntry("LSR", this::LSR, this::ZPX, 6);
-        lookup[0x4E] = new InstructionEntry("LSR", this::LSR, this::ABS, 6);
-        lookup[0x5E] = new InstructionEntry("LSR", this::LSR, this::ABX, 7);
-        
-        lookup[0x2A] = new InstructionEntry("ROL", this::ROL_Acc, this::IMP, 2);
-        lookup[0x26] = new InstructionEntry("ROL", this::ROL, this::ZP0, 5);
-        lookup[0x36] = new InstructionEntry("ROL", this::ROL, this::ZPX, 6);
-        lookup[0x2E] = new InstructionEntry("ROL", this::ROL, this::ABS, 6);
-        lookup[0x3E] = new InstructionEntry("ROL", this::ROL, this::ABX, 7);
-        
-        lookup[0x6A] = new InstructionEntry("ROR", this::ROR_Acc, this::IMP, 2);
-        lookup[0x66] = new InstructionEntry("ROR", this::ROR, this::ZP0, 5);
-        lookup[0x76] = new InstructionEntry("ROR", this::ROR, this::ZPX, 6);
-        lookup[0x6E] = new InstructionEntry("ROR", this::ROR, this::ABS, 6);
-        lookup[0x7E] = new InstructionEntry("ROR", this::ROR, this::ABX, 7);
+        lookup[0x0A] = new InstructionEntry("ASL", this::ASL_Acc, Mode.IMP, 2);
+        lookup[0x06] = new InstructionEntry("ASL", this::ASL, Mode.ZP0, 5);
+        lookup[0x16] = new InstructionEntry("ASL", this::ASL, Mode.ZPX, 6);
+        lookup[0x0E] = new InstructionEntry("ASL", this::ASL, Mode.ABS, 6);
+        lookup[0x1E] = new InstructionEntry("ASL", this::ASL, Mode.ABX, 7);
+        
+        lookup[0x4A] = new InstructionEntry("LSR", this::LSR_Acc, Mode.IMP, 2);
+        lookup[0x46] = new InstructionEntry("LSR", this::LSR, Mode.ZP0, 5);
+        lookup[0x56] = new InstructionEntry("LSR", this::LSR, Mode.ZPX, 6);
+        lookup[0x4E] = new InstructionEntry("LSR", this::LSR, Mode.ABS, 6);
+        lookup[0x5E] = new InstructionEntry("LSR", this::LSR, Mode.ABX, 7);
+        
+        lookup[0x2A] = new InstructionEntry("ROL", this::ROL_Acc, Mode.IMP, 2);
+        lookup[0x26] = new InstructionEntry("ROL", this::ROL, Mode.ZP0, 5);
+        lookup[0x36] = new InstructionEntry("ROL", this::ROL, Mode.ZPX, 6);
+        lookup[0x2E] = new InstructionEntry("ROL", this::ROL, Mode.ABS, 6);
+        lookup[0x3E] = new InstructionEntry("ROL", this::ROL, Mode.ABX, 7);
+        
+        lookup[0x6A] = new InstructionEntry("ROR", this::ROR_Acc, Mode.IMP, 2);
+        lookup[0x66] = new InstructionEntry("ROR", this::ROR, Mode.ZP0, 5);
+        lookup[0x76] = new InstructionEntry("ROR", this::ROR, Mode.ZPX, 6);
+        lookup[0x6E] = new InstructionEntry("ROR", this::ROR, Mode.ABS, 6);
+        lookup[0x7E] = new InstructionEntry("ROR", this::ROR, Mode.ABX, 7);
         
         // Flags
-        lookup[0x18] = new InstructionEntry("CLC", this::CLC, this::IMP, 2);
-        lookup[0x38] = new InstructionEntry("SEC", this::SEC, this::IMP, 2);
-        lookup[0x58] = new InstructionEntry("CLI", this::CLI, this::IMP, 2);
-        lookup[0x78] = new InstructionEntry("SEI", this::SEI, this::IMP, 2);
-        lookup[0xB8] = new InstructionEntry("CLV", this::CLV, this::IMP, 2);
-        lookup[0xD8] = new InstructionEntry("CLD", this::CLD, this::IMP, 2);
-        lookup[0xF8] = new InstructionEntry("SED", this::SED, this::IMP, 2);
+        lookup[0x18] = new InstructionEntry("CLC", this::CLC, Mode.IMP, 2);
+        lookup[0x38] = new InstructionEntry("SEC", this::SEC, Mode.IMP, 2);
+        lookup[0x58] = new InstructionEntry("CLI", this::CLI, Mode.IMP, 2);
+        lookup[0x78] = new InstructionEntry("SEI", this::SEI, Mode.IMP, 2);
+        lookup[0xB8] = new InstructionEntry("CLV", this::CLV, Mode.IMP, 2);
+        lookup[0xD8] = new InstructionEntry("CLD", this::CLD, Mode.IMP, 2);
+        lookup[0xF8] = new InstructionEntry("SED", this::SED, Mode.IMP, 2);
+        
+        // NOP
+        lookup[0xEA] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        
+        // --- Unofficial opcodes ---
+        
+        // NOP
+        lookup[0x1A] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        lookup[0x3A] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        lookup[0x5A] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        lookup[0x7A] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        lookup[0xDA] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        lookup[0xFA] = new InstructionEntry("NOP", this::NOP, Mode.IMP, 2);
+        lookup[0x80] = new InstructionEntry("NOP", this::NOP, Mode.IMM, 2);
+        lookup[0x82] = new InstructionEntry("NOP", this::NOP, Mode.IMM, 2);
+        lookup[0x89] = new InstructionEntry("NOP", this::NOP, Mode.IMM, 2);
+        lookup[0xC2] = new InstructionEntry("NOP", this::NOP, Mode.IMM, 2);
+        lookup[0xE2] = new InstructionEntry("NOP", this::NOP, Mode.IMM, 2);
+        lookup[0x04] = new InstructionEntry("NOP", this::NOP, Mode.ZP0, 3);
+        lookup[0x44] = new InstructionEntry("NOP", this::NOP, Mode.ZP0, 3);
+        lookup[0x64] = new InstructionEntry("NOP", this::NOP, Mode.ZP0, 3);
+        lookup[0x14] = new InstructionEntry("NOP", this::NOP, Mode.ZPX, 4);
+        lookup[0x34] = new InstructionEntry("NOP", this::NOP, Mode.ZPX, 4);
+        lookup[0x54] = new InstructionEntry("NOP", this::NOP, Mode.ZPX, 4);
+        lookup[0x74] = new InstructionEntry("NOP", this::NOP, Mode.ZPX, 4);
+        lookup[0xD4] = new InstructionEntry("NOP", this::NOP, Mode.ZPX, 4);
+        lookup[0xF4] = new InstructionEntry("NOP", this::NOP, Mode.ZPX, 4);
+        lookup[0x0C] = new InstructionEntry("NOP", this::NOP, Mode.ABS, 4);
+        lookup[0x1C] = new InstructionEntry("NOP", this::NOP, Mode.ABX, 4, true);
+        lookup[0x3C] = new InstructionEntry("NOP", this::NOP, Mode.ABX, 4, true);
+        lookup[0x5C] = new InstructionEntry("NOP", this::NOP, Mode.ABX, 4, true);
+        lookup[0x7C] = new InstructionEntry("NOP", this::NOP, Mode.ABX, 4, true);
+        lookup[0xDC] = new InstructionEntry("NOP", this::NOP, Mode.ABX, 4, true);
+        lookup[0xFC] = new InstructionEntry("NOP", this::NOP, Mode.ABX, 4, true);
+        
+        // LAX / SAX
+        lookup[0xA7] = new InstructionEntry("LAX", this::LAX, Mode.ZP0, 3);
+        lookup[0xB7] = new InstructionEntry("LAX", this::LAX, Mode.ZPY, 4);
+        lookup[0xAF] = new InstructionEntry("LAX", this::LAX, Mode.ABS, 4);
+        lookup[0xBF] = new InstructionEntry("LAX", this::LAX, Mode.ABY, 4, true);
+        lookup[0xA3] = new InstructionEntry("LAX", this::LAX, Mode.IZX, 6);
+        lookup[0xB3] = new InstructionEntry("LAX", this::LAX, Mode.IZY, 5, true);
+        lookup[0x87] = new InstructionEntry("SAX", this::SAX, Mode.ZP0, 3);
+        lookup[0x97] = new InstructionEntry("SAX", this::SAX, Mode.ZPY, 4);
+        lookup[0x8F] = new InstructionEntry("SAX", this::SAX, Mode.ABS, 4);
+        lookup[0x83] = new InstructionEntry("SAX", this::SAX, Mode.IZX, 6);
+        
+        // SBC immediate duplicate
+        lookup[0xEB] = new InstructionEntry("SBC", this::SBC, Mode.IMM, 2);
+        
+        // Read-modify-write combinations
+        lookup[0x07] = new InstructionEntry("SLO", this::SLO, Mode.ZP0, 5);
+        lookup[0x17] = new InstructionEntry("SLO", this::SLO, Mode.ZPX, 6);
+        lookup[0x0F] = new InstructionEntry("SLO", this::SLO, Mode.ABS, 6);
+        lookup[0x1F] = new InstructionEntry("SLO", this::SLO, Mode.ABX, 7);
+        lookup[0x1B] = new InstructionEntry("SLO", this::SLO, Mode.ABY, 7);
+        lookup[0x03] = new InstructionEntry("SLO", this::SLO, Mode.IZX, 8);
+        lookup[0x13] = new InstructionEntry("SLO", this::SLO, Mode.IZY, 8);
+        lookup[0x27] = new InstructionEntry("RLA", this::RLA, Mode.ZP0, 5);
+        lookup[0x37] = new InstructionEntry("RLA", this::RLA, Mode.ZPX, 6);
+        lookup[0x2F] = new InstructionEntry("RLA", this::RLA, Mode.ABS, 6);
+        lookup[0x3F] = new InstructionEntry("RLA", this::RLA, Mode.ABX, 7);
+        lookup[0x3B] = new InstructionEntry("RLA", this::RLA, Mode.ABY, 7);
+        lookup[0x23] = new InstructionEntry("RLA", this::RLA, Mode.IZX, 8);
+        lookup[0x33] = new InstructionEntry("RLA", this::RLA, Mode.IZY, 8);
+        lookup[0x47] = new InstructionEntry("SRE", this::SRE, Mode.ZP0, 5);
+        lookup[0x57] = new InstructionEntry("SRE", this::SRE, Mode.ZPX, 6);
+        lookup[0x4F] = new InstructionEntry("SRE", this::SRE, Mode.ABS, 6);
+        lookup[0x5F] = new InstructionEntry("SRE", this::SRE, Mode.ABX, 7);
+        lookup[0x5B] = new InstructionEntry("SRE", this::SRE, Mode.ABY, 7);
+        lookup[0x43] = new InstructionEntry("SRE", this::SRE, Mode.IZX, 8);
+        lookup[0x53] = new InstructionEntry("SRE", this::SRE, Mode.IZY, 8);
+        lookup[0x67] = new InstructionEntry("RRA", this::RRA, Mode.ZP0, 5);
+        lookup[0x77] = new InstructionEntry("RRA", this::RRA, Mode.ZPX, 6);
+        lookup[0x6F] = new InstructionEntry("RRA", this::RRA, Mode.ABS, 6);
+        lookup[0x7F] = new InstructionEntry("RRA", this::RRA, Mode.ABX, 7);
+        lookup[0x7B] = new InstructionEntry("RRA", this::RRA, Mode.ABY, 7);
+        lookup[0x63] = new InstructionEntry("RRA", this::RRA, Mode.IZX, 8);
+        lookup[0x73] = new InstructionEntry("RRA", this::RRA, Mode.IZY, 8);
+        lookup[0xC7] = new InstructionEntry("DCP", this::DCP, Mode.ZP0, 5);
+        lookup[0xD7] = new InstructionEntry("DCP", this::DCP, Mode.ZPX, 6);
+        lookup[0xCF] = new InstructionEntry("DCP", this::DCP, Mode.ABS, 6);
+        lookup[0xDF] = new InstructionEntry("DCP", this::DCP, Mode.ABX, 7);
+        lookup[0xDB] = new InstructionEntry("DCP", this::DCP, Mode.ABY, 7);
+        lookup[0xC3] = new InstructionEntry("DCP", this::DCP, Mode.IZX, 8);
+        lookup[0xD3] = new InstructionEntry("DCP", this::DCP, Mode.IZY, 8);
+        lookup[0xE7] = new InstructionEntry("ISB", this::ISB, Mode.ZP0, 5);
+        lookup[0xF7] = new InstructionEntry("ISB", this::ISB, Mode.ZPX, 6);
+        lookup[0xEF] = new InstructionEntry("ISB", this::ISB, Mode.ABS, 6);
+        lookup[0xFF] = new InstructionEntry("ISB", this::ISB, Mode.ABX, 7);
+        lookup[0xFB] = new InstructionEntry("ISB", this::ISB, Mode.ABY, 7);
+        lookup[0xE3] = new InstructionEntry("ISB", this::ISB, Mode.IZX, 8);
+        lookup[0xF3] = new InstructionEntry("ISB", this::ISB, Mode.IZY, 8);
+        
+        // Immediate combinations
+        lookup[0x0B] = new InstructionEntry("ANC", this::ANC, Mode.IMM, 2);
+        lookup[0x2B] = new InstructionEntry("ANC", this::ANC, Mode.IMM, 2);
+        lookup[0x4B] = new InstructionEntry("ALR", this::ALR, Mode.IMM, 2);
+        lookup[0x6B] = new InstructionEntry("ARR", this::ARR, Mode.IMM, 2);
+        lookup[0xCB] = new InstructionEntry("AXS", this::AXS, Mode.IMM, 2);
+        
+        // Unstable; the commonly emulated behaviour
+        lookup[0xBB] = new InstructionEntry("LAS", this::LAS, Mode.ABY, 4, true);
+        lookup[0x8B] = new InstructionEntry("XAA", this::XAA, Mode.IMM, 2);
+        lookup[0xAB] = new InstructionEntry("LXA", this::LXA, Mode.IMM, 2);
+        lookup[0x93] = new InstructionEntry("SHA", this::SHA, Mode.IZY, 6);
+        lookup[0x9F] = new InstructionEntry("SHA", this::SHA, Mode.ABY, 5);
+        lookup[0x9E] = new InstructionEntry("SHX", this::SHX, Mode.ABY, 5);
+        lookup[0x9C] = new InstructionEntry("SHY", this::SHY, Mode.ABX, 5);
+        lookup[0x9B] = new InstructionEntry("TAS", this::TAS, Mode.ABY, 5);
+        
+        // JAM: locks up the CPU
+        lookup[0x02] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x12] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x22] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x32] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x42] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x52] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x62] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x72] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0x92] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0xB2] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0xD2] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+        lookup[0xF2] = new InstructionEntry("JAM", this::JAM, Mode.IMP, 2);
+    }
+
+    public Core getCore() {
+        return core;
+    }
+
+    /**
+     * Decoded form of an opcode: name, addressing mode and cycle count.
+     */
+    InstructionEntry decode(int opcode) {
+        return lookup[opcode & 0xFF];
+    }
+
+    Bus getBus() {
+        return bus;
+    }
+
+    /**
+     * The block recompiler for the current cartridge, created on first use;
+     * null unless the core is RECOMPILER.
+     */
+    Recompiler getRecompiler() {
+        return recompiler;
+    }
+
+    /**
+     * Number of instructions executed since construction (interrupts excluded).
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * Check whether PC is at an idle loop that only waits for something
+     * outside the CPU: JMP to itself, or a load, compare or BIT of RAM, PRG
+     * memory or PPUSTATUS followed by a taken branch back to it. Every iteration then
+     * leaves the CPU and memory exactly as the previous one did, until an
+     * interrupt arrives or the value read changes.
+     * PPUSTATUS loops must load or BIT it and branch with BPL, BVC or BVS.
+     * Reading clears VBlank, so only a loop that waits for VBlank to be set
+     * (N clear) repeats unchanged; sprite 0 hit (V) survives the read.
+     * @return Cycles per iteration, or 0 if PC is not at an idle loop
+     */
+    public int idleLoopCycles() {
+        if (cycles != 0 || stallCycles != 0 || interruptPending()) return 0;
+
+        // Runs before every instruction in catch-up mode, so anything that
+        // is not a loop head is rejected on its opcode alone
+        int op = bus.peek(pc);
+        // Register a compare subtracts from, -1 for loads and BIT
+        int register = -1;
+        boolean bit = false;
+        switch (op) {
+            case 0x4C:
+                // JMP to itself
+                idleLoopInstructions = 1;
+                return bus.peek(pc + 1) == (pc & 0xFF) && bus.peek(pc + 2) == (pc >> 8) ? 3 : 0;
+            case 0xA5: case 0xAD:   // LDA
+            case 0xA6: case 0xAE:   // LDX
+            case 0xA4: case 0xAC:   // LDY
+            case 0xA7: case 0xAF:   // LAX
+                break;
+            case 0x24: case 0x2C:   // BIT
+                bit = true;
+                break;
+            case 0xC5: case 0xCD:   // CMP
+                register = a;
+                break;
+            case 0xE4: case 0xEC:   // CPX
+                register = x;
+                break;
+            case 0xC4: case 0xCC:   // CPY
+                register = y;
+                break;
+            default:
+                return 0;
+        }
+        InstructionEntry load = lookup[op];
+        int addr = bus.peek(pc + 1);
+        if (load.addressMode == Mode.ABS) {
+            addr |= bus.peek(pc + 2) << 8;
+        }
+        int branchPc = (pc + 1 + load.addressMode.operandBytes) & 0xFFFF;
+        int branch = bus.peek(branchPc);
+        int offset = bus.peek(branchPc + 1);
+        if (addr < 0 || branch < 0 || offset < 0 || lookup[branch].addressMode != Mode.REL) return 0;
+        int next = (branchPc + 2) & 0xFFFF;
+        if (((next + (byte) offset) & 0xFFFF) != pc) return 0;
+
+        int value = bus.peek(addr);
+        if (value < 0) return 0;
+        boolean ppuStatus = addr >= 0x2000 && addr < 0x4000;
+
+        // Flags as the instruction leaves them
+        boolean n = (value & 0x80) != 0;
+        boolean z = bit ? (a & value) == 0 : value == 0;
+        boolean v = bit ? (value & 0x40) != 0 : (overflow & V) != 0;
+        boolean c = carry != 0;
+        if (register >= 0) {
+            n = ((register - value) & 0x80) != 0;
+            z = register == value;
+            c = register >= value;
+        }
+        boolean taken;
+        switch (branch) {
+            case 0x10: taken = !n && (!ppuStatus || register < 0); break;   // BPL
+            case 0x30: taken = !ppuStatus && n; break;          // BMI
+            case 0x50: taken = !v; break;                       // BVC
+            case 0x70: taken = v; break;                        // BVS
+            case 0x90: taken = !ppuStatus && !c; break;         // BCC
+            case 0xB0: taken = !ppuStatus && c; break;          // BCS
+            case 0xD0: taken = !ppuStatus && !z; break;         // BNE
+            default:   taken = !ppuStatus && z; break;          // BEQ
+        }
+        if (!taken) return 0;
+
+        idleLoopInstructions = 2;
+        return load.cycles + (((next ^ pc) & 0xFF00) != 0 ? 4 : 3);
+    }
+
+    /**
+     * Account for iterations of the idle loop at PC that were not executed.
+     * PC and registers stay as they are: the next real iteration sets them
+     * as the skipped ones would have.
+     */
+    public void skipIdleLoop(long iterations) {
+        instructionCount += iterations * idleLoopInstructions;
+    }
+
+    /**
+     * Halt the CPU for a number of cycles after the current instruction,
+     * while something else (OAM DMA) owns the bus. The halt is added to
+     * the instruction's cycle count, so clock() and step() both honour it.
+     * @param alignToEven Add one cycle when the halt would start on an odd CPU cycle
+     */
+    public void stall(int cycles, boolean alignToEven) {
+        stallCycles += cycles;
+        stallAlign |= alignToEven;
     }
 
     public void clock() {
         if (cycles == 0) {
-            // Check for pending NMI
-            if (nmiPending) {
-                executeNmi();
+            // Check for pending NMI or IRQ
+            if (interruptPending()) {
+                executeInterrupt();
                 return;
             }
 
+            cycles = executeInstruction();
+        }
+        cycles--;
+    }
+
+    /**
+     * Execute a whole instruction (or a pending interrupt) at once.
+     * Used by the catch-up scheduler instead of calling clock() once per cycle.
+     *
+     * @return The number of CPU cycles consumed, i.e. how many clock() calls
+     *         the same work takes in per-cycle mode.
+     */
+    public int step() {
+        // Finish an instruction started by clock()
+        if (cycles != 0) {
+            int remaining = cycles;
+            cycles = 0;
+            return remaining;
+        }
+
+        if (interruptPending()) {
+            executeInterrupt();
+            // executeInterrupt() skips the decrement clock() does on the first cycle
+            int taken = cycles + 1;
+            cycles = 0;
+            return taken;
+        }
+
+        if (core == Core.RECOMPILER && pc >= 0x8000) {
+            int taken = runBlock();
+            if (taken != 0) {
+                return taken;
+            }
+        }
+
+        return executeInstruction();
+    }
+
+    /**
+     * Run the compiled block at PC, if there is one and no interrupt can
+     * become pending before it ends.
+     * @return Cycles taken, or 0 to interpret the next instruction instead
+     */
+    private int runBlock() {
+        Cartridge cartridge = bus.getCartridge();
+        if (cartridge == null) return 0;
+        if (recompiler == null || recompiler.getCartridge() != cartridge) {
+            recompiler = new Recompiler(this, cartridge);
+        }
+        Block block = recompiler.lookup(pc);
+        if (block == null || block.maxCycles > bus.cyclesUntilInterrupt()) return 0;
+        return block.run(this);
+    }
+
+    /**
+     * Fetch and execute the instruction at PC.
+     *
+     * @return The cycle count of the instruction.
+     */
+    private int executeInstruction() {
+        int record = core == Core.DECODED && pc >= 0x8000 ? decodedRecord() : 0;
+        instructionCount++;
+
+        penalty = 0;
+        int taken;
+        if (record != 0) {
+            taken = executeDecoded(record);
+        } else {
             opcode = bus.read(pc) & 0xFF; // Read opcode
             pc++;
+            if (core == Core.SWITCH || core == Core.RECOMPILER) {
+                taken = execute(opcode);
+            } else {
+                InstructionEntry entry = lookup[opcode];
+                int addr = entry.mode.getAddress();
+                entry.operation.execute(addr);
+                taken = entry.penalty ? entry.cycles + penalty : entry.cycles;
+            }
+        }
+
+        if (stallCycles != 0) {
+            taken += takeStall(taken);
+        }
+        return taken;
+    }
 
-            InstructionEntry entry = lookup[opcode];
+    /**
+     * The decoded record of the PRG-ROM instruction at PC.
+     * @return The record, or 0 to fetch the instruction from the bus
+     */
+    private int decodedRecord() {
+        Cartridge cartridge = bus.getCartridge();
+        if (cartridge == null) return 0;
+        if (decodeCache == null || decodeCache.getCartridge() != cartridge) {
+            decodeCache = new DecodeCache(this, cartridge);
+        }
+        return decodeCache.lookup(pc);
+    }
 
-            cycles = entry.cycles;
+    /**
+     * Execute an instruction from its DecodeCache record, without reading
+     * the opcode and operand from the bus.
+     */
+    private int executeDecoded(int record) {
+        opcode = record & 0xFF;
+        int operand = (record >> 8) & 0xFFFF;
+        InstructionEntry entry = lookup[opcode];
+        int start = pc;
+        pc += 1 + entry.addressMode.operandBytes;
+
+        int addr;
+        switch (entry.addressMode) {
+            case IMM: addr = start + 1; break;
+            case ZP0: case ABS: addr = operand; break;
+            case ZPX: addr = zpx(operand); break;
+            case ZPY: addr = zpy(operand); break;
+            case REL: addr = (byte) operand; break;
+            case ABX: addr = abx(operand); break;
+            case ABY: addr = aby(operand); break;
+            case IND: addr = ind(operand); break;
+            case IZX: addr = izx(operand); break;
+            case IZY: addr = izy(operand); break;
+            default: addr = 0; break;
+        }
+        entry.operation.execute(addr);
+        return entry.penalty ? entry.cycles + penalty : entry.cycles;
+    }
 
-            int addr = entry.mode.getAddress();
-            entry.operation.execute(addr);
+    /**
+     * Cycles of pending halt to append to an instruction of the given length.
+     */
+    private int takeStall(int taken) {
+        int stall = stallCycles;
+        // The instruction started on the bus's current CPU cycle
+        if (stallAlign && ((bus.getCpuCycle() + taken) & 1) != 0) {
+            stall++;
+        }
+        stallCycles = 0;
+        stallAlign = false;
+        return stall;
+    }
+
+    /**
+     * Switch-based equivalent of the lookup table.
+     * Every case mirrors its lookup[] entry exactly (same addressing mode,
+     * operation and cycle count, penalty included), but without the two
+     * interface calls.
+     *
+     * @param opcode The opcode already fetched from memory (PC points past it).
+     * @return The cycle count of the instruction.
+     */
+    private int execute(int opcode) {
+        switch (opcode) {
+            case 0x00: BRK(0); return 7;
+            case 0x01: ORA(IZX()); return 6;
+            case 0x02: JAM(0); return 2;
+            case 0x03: SLO(IZX()); return 8;
+            case 0x04: NOP(ZP0()); return 3;
+            case 0x05: ORA(ZP0()); return 3;
+            case 0x06: ASL(ZP0()); return 5;
+            case 0x07: SLO(ZP0()); return 5;
+            case 0x08: PHP(0); return 3;
+            case 0x09: ORA(IMM()); return 2;
+            case 0x0A: ASL_Acc(0); return 2;
+            case 0x0B: ANC(IMM()); return 2;
+            case 0x0C: NOP(ABS()); return 4;
+            case 0x0D: ORA(ABS()); return 4;
+            case 0x0E: ASL(ABS()); return 6;
+            case 0x0F: SLO(ABS()); return 6;
+            case 0x10: BPL(REL()); return 2 + penalty;
+            case 0x11: ORA(IZY()); return 5 + penalty;
+            case 0x12: JAM(0); return 2;
+            case 0x13: SLO(IZY()); return 8;
+            case 0x14: NOP(ZPX()); return 4;
+            case 0x15: ORA(ZPX()); return 4;
+            case 0x16: ASL(ZPX()); return 6;
+            case 0x17: SLO(ZPX()); return 6;
+            case 0x18: CLC(0); return 2;
+            case 0x19: ORA(ABY()); return 4 + penalty;
+            case 0x1A: NOP(0); return 2;
+            case 0x1B: SLO(ABY()); return 7;
+            case 0x1C: NOP(ABX()); return 4 + penalty;
+            case 0x1D: ORA(ABX()); return 4 + penalty;
+            case 0x1E: ASL(ABX()); return 7;
+            case 0x1F: SLO(ABX()); return 7;
+            case 0x20: JSR(ABS()); return 6;
+            case 0x21: AND(IZX()); return 6;
+            case 0x22: JAM(0); return 2;
+            case 0x23: RLA(IZX()); return 8;
+            case 0x24: BIT(ZP0()); return 3;
+            case 0x25: AND(ZP0()); return 3;
+            case 0x26: ROL(ZP0()); return 5;
+            case 0x27: RLA(ZP0()); return 5;
+            case 0x28: PLP(0); return 4;
+            case 0x29: AND(IMM()); return 2;
+            case 0x2A: ROL_Acc(0); return 2;
+            case 0x2B: ANC(IMM()); return 2;
+            case 0x2C: BIT(ABS()); return 4;
+            case 0x2D: AND(ABS()); return 4;
+            case 0x2E: ROL(ABS()); return 6;
+            case 0x2F: RLA(ABS()); return 6;
+            case 0x30: BMI(REL()); return 2 + penalty;
+            case 0x31: AND(IZY()); return 5 + penalty;
+            case 0x32: JAM(0); return 2;
+            case 0x33: RLA(IZY()); return 8;
+            case 0x34: NOP(ZPX()); return 4;
+            case 0x35: AND(ZPX()); return 4;
+            case 0x36: ROL(ZPX()); return 6;
+            case 0x37: RLA(ZPX()); return 6;
+            case 0x38: SEC(0); return 2;
+            case 0x39: AND(ABY()); return 4 + penalty;
+            case 0x3A: NOP(0); return 2;
+            case 0x3B: RLA(ABY()); return 7;
+            case 0x3C: NOP(ABX()); return 4 + penalty;
+            case 0x3D: AND(ABX()); return 4 + penalty;
+            case 0x3E: ROL(ABX()); return 7;
+            case 0x3F: RLA(ABX()); return 7;
+            case 0x40: RTI(0); return 6;
+            case 0x41: EOR(IZX()); return 6;
+            case 0x42: JAM(0); return 2;
+            case 0x43: SRE(IZX()); return 8;
+            case 0x44: NOP(ZP0()); return 3;
+            case 0x45: EOR(ZP0()); return 3;
+            case 0x46: LSR(ZP0()); return 5;
+            case 0x47: SRE(ZP0()); return 5;
+            case 0x48: PHA(0); return 3;
+            case 0x49: EOR(IMM()); return 2;
+            case 0x4A: LSR_Acc(0); return 2;
+            case 0x4B: ALR(IMM()); return 2;
+            case 0x4C: JMP(ABS()); return 3;
+            case 0x4D: EOR(ABS()); return 4;
+            case 0x4E: LSR(ABS()); return 6;
+            case 0x4F: SRE(ABS()); return 6;
+            case 0x50: BVC(REL()); return 2 + penalty;
+            case 0x51: EOR(IZY()); return 5 + penalty;
+            case 0x52: JAM(0); return 2;
+            case 0x53: SRE(IZY()); return 8;
+            case 0x54: NOP(ZPX()); return 4;
+            case 0x55: EOR(ZPX()); return 4;
+            case 0x56: LSR(ZPX()); return 6;
+            case 0x57: SRE(ZPX()); return 6;
+            case 0x58: CLI(0); return 2;
+            case 0x59: EOR(ABY()); return 4 + penalty;
+            case 0x5A: NOP(0); return 2;
+            case 0x5B: SRE(ABY()); return 7;
+            case 0x5C: NOP(ABX()); return 4 + penalty;
+            case 0x5D: EOR(ABX()); return 4 + penalty;
+            case 0x5E: LSR(ABX()); return 7;
+            case 0x5F: SRE(ABX()); return 7;
+            case 0x60: RTS(0); return 6;
+            case 0x61: ADC(IZX()); return 6;
+            case 0x62: JAM(0); return 2;
+            case 0x63: RRA(IZX()); return 8;
+            case 0x64: NOP(ZP0()); return 3;
+            case 0x65: ADC(ZP0()); return 3;
+            case 0x66: ROR(ZP0()); return 5;
+            case 0x67: RRA(ZP0()); return 5;
+            case 0x68: PLA(0); return 4;
+            case 0x69: ADC(IMM()); return 2;
+            case 0x6A: ROR_Acc(0); return 2;
+            case 0x6B: ARR(IMM()); return 2;
+            case 0x6C: JMP(IND()); return 5;
+            case 0x6D: ADC(ABS()); return 4;
+            case 0x6E: ROR(ABS()); return 6;
+            case 0x6F: RRA(ABS()); return 6;
+            case 0x70: BVS(REL()); return 2 + penalty;
+            case 0x71: ADC(IZY()); return 5 + penalty;
+            case 0x72: JAM(0); return 2;
+            case 0x73: RRA(IZY()); return 8;
+            case 0x74: NOP(ZPX()); return 4;
+            case 0x75: ADC(ZPX()); return 4;
+            case 0x76: ROR(ZPX()); return 6;
+            case 0x77: RRA(ZPX()); return 6;
+            case 0x78: SEI(0); return 2;
+            case 0x79: ADC(ABY()); return 4 + penalty;
+            case 0x7A: NOP(0); return 2;
+            case 0x7B: RRA(ABY()); return 7;
+            case 0x7C: NOP(ABX()); return 4 + penalty;
+            case 0x7D: ADC(ABX()); return 4 + penalty;
+            case 0x7E: ROR(ABX()); return 7;
+            case 0x7F: RRA(ABX()); return 7;
+            case 0x80: NOP(IMM()); return 2;
+            case 0x81: STA(IZX()); return 6;
+            case 0x82: NOP(IMM()); return 2;
+            case 0x83: SAX(IZX()); return 6;
+            case 0x84: STY(ZP0()); return 3;
+            case 0x85: STA(ZP0()); return 3;
+            case 0x86: STX(ZP0()); return 3;
+            case 0x87: SAX(ZP0()); return 3;
+            case 0x88: DEY(0); return 2;
+            case 0x89: NOP(IMM()); return 2;
+            case 0x8A: TXA(0); return 2;
+            case 0x8B: XAA(IMM()); return 2;
+            case 0x8C: STY(ABS()); return 4;
+            case 0x8D: STA(ABS()); return 4;
+            case 0x8E: STX(ABS()); return 4;
+            case 0x8F: SAX(ABS()); return 4;
+            case 0x90: BCC(REL()); return 2 + penalty;
+            case 0x91: STA(IZY()); return 6;
+            case 0x92: JAM(0); return 2;
+            case 0x93: SHA(IZY()); return 6;
+            case 0x94: STY(ZPX()); return 4;
+            case 0x95: STA(ZPX()); return 4;
+            case 0x96: STX(ZPY()); return 4;
+            case 0x97: SAX(ZPY()); return 4;
+            case 0x98: TYA(0); return 2;
+            case 0x99: STA(ABY()); return 5;
+            case 0x9A: TXS(0); return 2;
+            case 0x9B: TAS(ABY()); return 5;
+            case 0x9C: SHY(ABX()); return 5;
+            case 0x9D: STA(ABX()); return 5;
+            case 0x9E: SHX(ABY()); return 5;
+            case 0x9F: SHA(ABY()); return 5;
+            case 0xA0: LDY(IMM()); return 2;
+            case 0xA1: LDA(IZX()); return 6;
+            case 0xA2: LDX(IMM()); return 2;
+            case 0xA3: LAX(IZX()); return 6;
+            case 0xA4: LDY(ZP0()); return 3;
+            case 0xA5: LDA(ZP0()); return 3;
+            case 0xA6: LDX(ZP0()); return 3;
+            case 0xA7: LAX(ZP0()); return 3;
+            case 0xA8: TAY(0); return 2;
+            case 0xA9: LDA(IMM()); return 2;
+            case 0xAA: TAX(0); return 2;
+            case 0xAB: LXA(IMM()); return 2;
+            case 0xAC: LDY(ABS()); return 4;
+            case 0xAD: LDA(ABS()); return 4;
+            case 0xAE: LDX(ABS()); return 4;
+            case 0xAF: LAX(ABS()); return 4;
+            case 0xB0: BCS(REL()); return 2 + penalty;
+            case 0xB1: LDA(IZY()); return 5 + penalty;
+            case 0xB2: JAM(0); return 2;
+            case 0xB3: LAX(IZY()); return 5 + penalty;
+            case 0xB4: LDY(ZPX()); return 4;
+            case 0xB5: LDA(ZPX()); return 4;
+            case 0xB6: LDX(ZPY()); return 4;
+            case 0xB7: LAX(ZPY()); return 4;
+            case 0xB8: CLV(0); return 2;
+            case 0xB9: LDA(ABY()); return 4 + penalty;
+            case 0xBA: TSX(0); return 2;
+            case 0xBB: LAS(ABY()); return 4 + penalty;
+            case 0xBC: LDY(ABX()); return 4 + penalty;
+            case 0xBD: LDA(ABX()); return 4 + penalty;
+            case 0xBE: LDX(ABY()); return 4 + penalty;
+            case 0xBF: LAX(ABY()); return 4 + penalty;
+            case 0xC0: CPY(IMM()); return 2;
+            case 0xC1: CMP(IZX()); return 6;
+            case 0xC2: NOP(IMM()); return 2;
+            case 0xC3: DCP(IZX()); return 8;
+            case 0xC4: CPY(ZP0()); return 3;
+            case 0xC5: CMP(ZP0()); return 3;
+            case 0xC6: DEC(ZP0()); return 5;
+            case 0xC7: DCP(ZP0()); return 5;
+            case 0xC8: INY(0); return 2;
+            case 0xC9: CMP(IMM()); return 2;
+            case 0xCA: DEX(0); return 2;
+            case 0xCB: AXS(IMM()); return 2;
+            case 0xCC: CPY(ABS()); return 4;
+            case 0xCD: CMP(ABS()); return 4;
+            case 0xCE: DEC(ABS()); return 6;
+            case 0xCF: DCP(ABS()); return 6;
+            case 0xD0: BNE(REL()); return 2 + penalty;
+            case 0xD1: CMP(IZY()); return 5 + penalty;
+            case 0xD2: JAM(0); return 2;
+            case 0xD3: DCP(IZY()); return 8;
+            case 0xD4: NOP(ZPX()); return 4;
+            case 0xD5: CMP(ZPX()); return 4;
+            case 0xD6: DEC(ZPX()); return 6;
+            case 0xD7: DCP(ZPX()); return 6;
+            case 0xD8: CLD(0); return 2;
+            case 0xD9: CMP(ABY()); return 4 + penalty;
+            case 0xDA: NOP(0); return 2;
+            case 0xDB: DCP(ABY()); return 7;
+            case 0xDC: NOP(ABX()); return 4 + penalty;
+            case 0xDD: CMP(ABX()); return 4 + penalty;
+            case 0xDE: DEC(ABX()); return 7;
+            case 0xDF: DCP(ABX()); return 7;
+            case 0xE0: CPX(IMM()); return 2;
+            case 0xE1: SBC(IZX()); return 6;
+            case 0xE2: NOP(IMM()); return 2;
+            case 0xE3: ISB(IZX()); return 8;
+            case 0xE4: CPX(ZP0()); return 3;
+            case 0xE5: SBC(ZP0()); return 3;
+            case 0xE6: INC(ZP0()); return 5;
+            case 0xE7: ISB(ZP0()); return 5;
+            case 0xE8: INX(0); return 2;
+            case 0xE9: SBC(IMM()); return 2;
+            case 0xEA: NOP(0); return 2;
+            case 0xEB: SBC(IMM()); return 2;
+            case 0xEC: CPX(ABS()); return 4;
+            case 0xED: SBC(ABS()); return 4;
+            case 0xEE: INC(ABS()); return 6;
+            case 0xEF: ISB(ABS()); return 6;
+            case 0xF0: BEQ(REL()); return 2 + penalty;
+            case 0xF1: SBC(IZY()); return 5 + penalty;
+            case 0xF2: JAM(0); return 2;
+            case 0xF3: ISB(IZY()); return 8;
+            case 0xF4: NOP(ZPX()); return 4;
+            case 0xF5: SBC(ZPX()); return 4;
+            case 0xF6: INC(ZPX()); return 6;
+            case 0xF7: ISB(ZPX()); return 6;
+            case 0xF8: SED(0); return 2;
+            case 0xF9: SBC(ABY()); return 4 + penalty;
+            case 0xFA: NOP(0); return 2;
+            case 0xFB: ISB(ABY()); return 7;
+            case 0xFC: NOP(ABX()); return 4 + penalty;
+            case 0xFD: SBC(ABX()); return 4 + penalty;
+            case 0xFE: INC(ABX()); return 7;
+            case 0xFF: ISB(ABX()); return 7;
+            default: throw new IllegalStateException("Opcode " + opcode);
         }
-        cycles--;
     }
 }
@@ -0,0 +1,74 @@
+package com.nes.cpu;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+
+/**
+ * Pre-decoded PRG-ROM instructions for the DECODED core.
+ *
+ * The first time an instruction in PRG-ROM runs, its opcode and operand are
+ * read once and packed into a record; after that the core executes it from
+ * the record without reading the bus. The opcode doubles as the handler
+ * index into the Cpu's instruction table, which also gives the length and
+ * base cycles.
+ *
+ * Records are indexed by PRG-ROM offset rather than CPU address, so a bank
+ * switch does not invalidate them: the offsets of the new bank have records
+ * of their own, and the old ones are still valid when the bank comes back.
+ * An instruction whose operand runs into the next 8KB window depends on two
+ * bank mappings and is never cached. Code in RAM or PRG-RAM never gets here.
+ */
+class DecodeCache {
+
+    // Set in every record, so 0 means "not decoded yet"
+    static final int VALID = 0x1000000;
+    // Record of an instruction that must be read from the bus each time
+    private static final int UNCACHED = -1;
+
+    private final Cpu cpu;
+    private final Bus bus;
+    private final Cartridge cartridge;
+
+    // VALID | operand << 8 | opcode, by PRG-ROM offset of the opcode
+    private final int[] records;
+
+    DecodeCache(Cpu cpu, Cartridge cartridge) {
+        this.cpu = cpu;
+        this.bus = cpu.getBus();
+        this.cartridge = cartridge;
+        this.records = new int[cartridge.getPrgRomSize()];
+    }
+
+    Cartridge getCartridge() {
+        return cartridge;
+    }
+
+    /**
+     * The record of the instruction at a PC in PRG-ROM, decoding it on first use.
+     * @return The record, or 0 if the instruction must be fetched from the bus
+     */
+    int lookup(int pc) {
+        int offset = cartridge.getPrgRomOffset(pc);
+        int record = records[offset];
+        if (record != 0) {
+            return record == UNCACHED ? 0 : record;
+        }
+
+        int opcode = bus.read(pc) & 0xFF;
+        int length = 1 + cpu.decode(opcode).addressMode.operandBytes;
+        if ((pc & 0x1FFF) + length > 0x2000) {
+            records[offset] = UNCACHED;
+            return 0;
+        }
+        int operand = 0;
+        if (length > 1) {
+            operand = bus.read(pc + 1) & 0xFF;
+        }
+        if (length > 2) {
+            operand |= (bus.read(pc + 2) & 0xFF) << 8;
+        }
+        record = VALID | operand << 8 | opcode;
+        records[offset] = record;
+        return record;
+    }
+}
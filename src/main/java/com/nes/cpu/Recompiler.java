@@ -0,0 +1,318 @@
+package com.nes.cpu;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Set;
+
+/**
+ * Compiles hot PRG-ROM code into JVM classes, one basic block per class.
+ *
+ * A block starts at a PC that step() reached {@link #COMPILE_THRESHOLD}
+ * times and runs straight-line code up to the first branch, jump, return or
+ * instruction that changes the I flag (at most {@link #MAX_INSTRUCTIONS}).
+ * Operands, effective addresses of the static modes and the base cycle
+ * counts are constants in the generated code; instructions still run
+ * through the Cpu's own methods, so flags and memory behave exactly as in
+ * the interpreter.
+ *
+ * Only reads and writes with no side effects (RAM, PRG-RAM, and reads of
+ * PRG-ROM) happen inside a block. An instruction with a static address
+ * anywhere else ends the block before it, and an indexed or indirect one
+ * checks its address at run time and leaves the block if it is not plain
+ * memory. The interpreter then runs that instruction, so PPU, APU and mapper
+ * registers are always accessed one instruction at a time.
+ *
+ * Interrupts are only taken between blocks. The Cpu therefore enters a block
+ * only if the bus reports that no NMI or IRQ can arrive within the block's
+ * worst-case cycle count, and interprets instruction by instruction near
+ * one, which keeps interrupts on the same instruction as the interpreter.
+ *
+ * Blocks are cached by PRG-ROM offset and entry PC. Bank switching needs no
+ * invalidation: a block never leaves the 8KB window of its entry, whose
+ * mapping the offset identifies, and ROM cannot change.
+ */
+class Recompiler {
+
+    // Entries into a PC before its block is compiled
+    static final int COMPILE_THRESHOLD = 8;
+
+    static final int MAX_INSTRUCTIONS = 64;
+
+    private static final String CPU = "com/nes/cpu/Cpu";
+    private static final String BLOCK = "com/nes/cpu/Block";
+    private static final String RECOMPILER = "com/nes/cpu/Recompiler";
+
+    // Locals of run(): this, cpu, dynamic cycles, effective address
+    private static final int MAX_LOCALS = 4;
+    private static final int MAX_STACK = 6;
+
+    // Instructions that write to their address (stores and read-modify-write)
+    private static final Set<String> WRITES = Set.of(
+            "STA", "STX", "STY", "SAX", "SHA", "SHX", "SHY", "TAS",
+            "ASL", "LSR", "ROL", "ROR", "INC", "DEC",
+            "SLO", "RLA", "SRE", "RRA", "DCP", "ISB");
+
+    // Left to the interpreter: they touch the interrupt vectors or never finish
+    private static final Set<String> INTERPRETED = Set.of("BRK", "RTI", "JAM");
+
+    // Executed, then the block ends: they may let a pending IRQ in
+    private static final Set<String> INTERRUPT_FLAG = Set.of("PLP", "CLI", "SEI");
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Cpu cpu;
+    private final Bus bus;
+    private final Cartridge cartridge;
+
+    // Indexed by PRG-ROM offset of the entry
+    private final Block[] blocks;
+    // Entries seen per offset; -1 when the offset cannot start a block
+    private final byte[] hits;
+
+    private int blockCount = 0;
+
+    Recompiler(Cpu cpu, Cartridge cartridge) {
+        this.cpu = cpu;
+        this.bus = cpu.getBus();
+        this.cartridge = cartridge;
+        this.blocks = new Block[cartridge.getPrgRomSize()];
+        this.hits = new byte[cartridge.getPrgRomSize()];
+    }
+
+    Cartridge getCartridge() {
+        return cartridge;
+    }
+
+    /**
+     * Number of blocks compiled so far.
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * The compiled block starting at a PC in PRG-ROM, compiling it once the
+     * PC is hot.
+     * @return The block, or null to interpret
+     */
+    Block lookup(int pc) {
+        int offset = cartridge.getPrgRomOffset(pc);
+        Block block = blocks[offset];
+        if (block != null && block.entry == pc) {
+            return block;
+        }
+        if (hits[offset] < 0 || ++hits[offset] < COMPILE_THRESHOLD) {
+            return null;
+        }
+
+        block = compile(pc);
+        if (block == null) {
+            hits[offset] = -1;
+            return null;
+        }
+        // The same offset reached through another mirror recompiles after
+        // another COMPILE_THRESHOLD entries
+        hits[offset] = 0;
+        blocks[offset] = block;
+        blockCount++;
+        return block;
+    }
+
+    // Addresses whose reads have no side effects: RAM, PRG-RAM, PRG-ROM
+    static boolean plainRead(int addr) {
+        return addr < 0x2000 || addr >= 0x6000;
+    }
+
+    // Addresses whose writes only store a byte: RAM, PRG-RAM
+    static boolean plainWrite(int addr) {
+        return addr < 0x2000 || (addr >= 0x6000 && addr < 0x8000);
+    }
+
+    /**
+     * Translate the instructions at PC into a block.
+     * @return The block, or null if its first instruction must be interpreted
+     */
+    private Block compile(int entry) {
+        ClassAssembler assembler = new ClassAssembler();
+        ClassAssembler.Code code = assembler.newCode();
+        int windowEnd = entry | 0x1FFF;
+
+        int pc = entry;
+        int count = 0;
+        int cycles = 0;
+        // Worst-case penalty cycles: 1 per page crossing, 2 per taken branch
+        int penalties = 0;
+        boolean ended = false;
+        while (!ended && count < MAX_INSTRUCTIONS) {
+            int opcode = bus.read(pc) & 0xFF;
+            Cpu.InstructionEntry decoded = cpu.decode(opcode);
+            Cpu.Mode mode = decoded.addressMode;
+            int next = pc + 1 + mode.operandBytes;
+            if (next - 1 > windowEnd || INTERPRETED.contains(decoded.name)) {
+                break;
+            }
+            int operand = mode.operandBytes == 0 ? 0 : bus.read(pc + 1) & 0xFF;
+            if (mode.operandBytes == 2) {
+                operand |= (bus.read(pc + 2) & 0xFF) << 8;
+            }
+            boolean write = WRITES.contains(decoded.name);
+            String method = decoded.name;
+            if (mode == Cpu.Mode.IMP && (method.equals("ASL") || method.equals("LSR")
+                    || method.equals("ROL") || method.equals("ROR"))) {
+                method += "_Acc";
+            }
+
+            if (mode == Cpu.Mode.REL) {
+                // Branches see PC at the next instruction and add 1-2 cycles if taken
+                setPc(code, next);
+                code.op(ClassAssembler.ALOAD_1);
+                code.op(ClassAssembler.ICONST_0);
+                code.field(ClassAssembler.PUTFIELD, CPU, "penalty", "I");
+                code.op(ClassAssembler.ALOAD_1);
+                code.pushInt((byte) operand);
+                call(code, method);
+                addPenalty(code);
+                exit(code, -1, count + 1, cycles + decoded.cycles);
+                return define(assembler, code, entry, cycles + decoded.cycles + penalties + 2);
+            }
+
+            boolean staticAddress = mode == Cpu.Mode.IND
+                    || (mode == Cpu.Mode.ABS && !method.equals("JMP") && !method.equals("JSR"));
+            if (staticAddress && !(write ? plainWrite(operand) : plainRead(operand))) {
+                break;
+            }
+
+            if (method.equals("JSR")) {
+                // JSR pushes the address of its last byte
+                setPc(code, next);
+            }
+            code.op(ClassAssembler.ALOAD_1);
+            switch (mode) {
+                case IMP:
+                    code.op(ClassAssembler.ICONST_0);
+                    break;
+                case IMM:
+                    code.pushInt(pc + 1);
+                    break;
+                case ZP0:
+                case ABS:
+                    code.pushInt(operand);
+                    break;
+                case ZPX:
+                case ZPY:
+                case IND:
+                    code.op(ClassAssembler.ALOAD_1);
+                    code.pushInt(operand);
+                    code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, mode.name().toLowerCase(), "(I)I");
+                    break;
+                default:
+                    // ABX, ABY, IZX, IZY: leave before the instruction unless plain
+                    code.op(ClassAssembler.ALOAD_1);
+                    code.pushInt(operand);
+                    code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, mode.name().toLowerCase(), "(I)I");
+                    code.op(ClassAssembler.ISTORE_3);
+                    code.op(ClassAssembler.ILOAD_3);
+                    code.invoke(ClassAssembler.INVOKESTATIC, RECOMPILER,
+                            write ? "plainWrite" : "plainRead", "(I)Z");
+                    ClassAssembler.Code bail = assembler.newCode();
+                    // The receiver pushed for the call is dropped by the return
+                    exit(bail, pc, count, cycles);
+                    code.ifNotZeroSkip(bail);
+                    code.op(ClassAssembler.ILOAD_3);
+                    break;
+            }
+            call(code, method);
+            if (decoded.penalty) {
+                addPenalty(code);
+                penalties++;
+            }
+            count++;
+            cycles += decoded.cycles;
+
+            if (method.equals("JMP") || method.equals("JSR") || method.equals("RTS")) {
+                exit(code, -1, count, cycles);
+                return define(assembler, code, entry, cycles + penalties);
+            }
+            ended = INTERRUPT_FLAG.contains(method);
+            pc = next;
+        }
+
+        if (count == 0) {
+            return null;
+        }
+        exit(code, pc, count, cycles);
+        return define(assembler, code, entry, cycles + penalties);
+    }
+
+    private static void call(ClassAssembler.Code code, String method) {
+        code.invoke(ClassAssembler.INVOKEVIRTUAL, CPU, method, "(I)V");
+    }
+
+    private static void setPc(ClassAssembler.Code code, int pc) {
+        code.op(ClassAssembler.ALOAD_1);
+        code.pushInt(pc);
+        code.field(ClassAssembler.PUTFIELD, CPU, "pc", "I");
+    }
+
+    // Dynamic cycles += cpu.penalty
+    private static void addPenalty(ClassAssembler.Code code) {
+        code.op(ClassAssembler.ILOAD_2);
+        code.op(ClassAssembler.ALOAD_1);
+        code.field(ClassAssembler.GETFIELD, CPU, "penalty", "I");
+        code.op(ClassAssembler.IADD);
+        code.op(ClassAssembler.ISTORE_2);
+    }
+
+    /**
+     * Leave the block: set PC (unless pc is -1, when the last instruction
+     * did), count the instructions and return the cycles taken.
+     */
+    private static void exit(ClassAssembler.Code code, int pc, int count, int cycles) {
+        if (pc >= 0) {
+            setPc(code, pc);
+        }
+        if (count != 0) {
+            code.op(ClassAssembler.ALOAD_1);
+            code.op(ClassAssembler.DUP);
+            code.field(ClassAssembler.GETFIELD, CPU, "instructionCount", "J");
+            code.pushInt(count);
+            code.op(ClassAssembler.I2L);
+            code.op(ClassAssembler.LADD);
+            code.field(ClassAssembler.PUTFIELD, CPU, "instructionCount", "J");
+        }
+        code.op(ClassAssembler.ILOAD_2);
+        code.pushInt(cycles);
+        code.op(ClassAssembler.IADD);
+        code.op(ClassAssembler.IRETURN);
+    }
+
+    private static Block define(ClassAssembler assembler, ClassAssembler.Code run, int entry, int maxCycles) {
+        ClassAssembler.Code constructor = assembler.newCode();
+        constructor.op(ClassAssembler.ALOAD_0);
+        constructor.op(ClassAssembler.ILOAD_1);
+        constructor.invoke(ClassAssembler.INVOKESPECIAL, BLOCK, "<init>", "(I)V");
+        constructor.op(ClassAssembler.RETURN);
+
+        // run() starts with no dynamic cycles
+        ClassAssembler.Code body = assembler.newCode();
+        body.op(ClassAssembler.ICONST_0);
+        body.op(ClassAssembler.ISTORE_2);
+        body.append(run);
+
+        byte[] bytes = assembler.assemble("com/nes/cpu/CompiledBlock", BLOCK, constructor,
+                "(L" + CPU + ";)I", body, MAX_STACK, MAX_LOCALS);
+        try {
+            Class<?> cls = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            MethodHandle create = LOOKUP.findConstructor(cls, MethodType.methodType(void.class, int.class));
+            Block block = (Block) create.invoke(entry);
+            block.maxCycles = maxCycles;
+            return block;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot define block at " + Integer.toHexString(entry), e);
+        }
+    }
+}
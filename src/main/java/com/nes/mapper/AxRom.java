@@ -0,0 +1,60 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 7 (AxROM): switchable 32KB PRG bank, 8KB CHR-RAM, and
+ * single-screen mirroring selected by bit 4 of the bank register.
+ */
+public class AxRom implements Mapper {
+
+    private final Cartridge cartridge;
+    private int bankSelect = 0;
+
+    public AxRom(Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    @Override
+    public int getId() {
+        return 7;
+    }
+
+    @Override
+    public void reset() {
+        bankSelect = 0;
+        cartridge.mapChr8k(0);
+        updateBanks();
+    }
+
+    private void updateBanks() {
+        cartridge.mapPrg32k(bankSelect & 0x07);
+        cartridge.setMirroring((bankSelect & 0x10) != 0
+                ? Cartridge.MIRROR_SINGLE_UPPER : Cartridge.MIRROR_SINGLE_LOWER);
+    }
+
+    @Override
+    public void cpuWrite(int addr, byte data) {
+        bankSelect = data & 0x17;
+        updateBanks();
+    }
+
+    @Override
+    public int stateSize() {
+        return 4;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(bankSelect);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        bankSelect = buffer.getInt();
+        cartridge.mapChr8k(0);
+        updateBanks();
+    }
+}
@@ -0,0 +1,56 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 3 (CNROM): fixed 16KB or 32KB PRG, switchable 8KB CHR bank.
+ */
+public class CnRom implements Mapper {
+
+    private final Cartridge cartridge;
+    private int chrBank = 0;
+
+    public CnRom(Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    @Override
+    public int getId() {
+        return 3;
+    }
+
+    @Override
+    public void reset() {
+        chrBank = 0;
+        cartridge.mapPrg32k(0);
+        cartridge.mapChr8k(chrBank);
+    }
+
+    @Override
+    public void cpuWrite(int addr, byte data) {
+        int bank = data & 0x03; // Select 8KB bank (0-3)
+        if (bank != chrBank) {
+            chrBank = bank;
+            cartridge.mapChr8k(chrBank);
+        }
+    }
+
+    @Override
+    public int stateSize() {
+        return 4;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(chrBank);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        chrBank = buffer.getInt();
+        cartridge.mapPrg32k(0);
+        cartridge.mapChr8k(chrBank);
+    }
+}
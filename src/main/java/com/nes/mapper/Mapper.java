@@ -0,0 +1,86 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cartridge bank-switching hardware.
+ *
+ * A mapper only decodes its register writes; the resulting PRG, CHR and
+ * nametable mapping is published through the Cartridge's bank pointers
+ * (mapPrg8k(), mapChr1k(), setMirroring() ...), so reads never call into
+ * the mapper.
+ */
+public interface Mapper {
+
+    /**
+     * iNES mapper number.
+     */
+    int getId();
+
+    /**
+     * Put the registers in their power-on state and publish the banks.
+     */
+    void reset();
+
+    /**
+     * CPU write to the cartridge (0x8000 - 0xFFFF).
+     */
+    void cpuWrite(int addr, byte data);
+
+    /**
+     * PPU address line A12 rose (a pattern fetch from 0x1000 after one from
+     * 0x0000). The PPU reports at most one rise per rendered scanline, at
+     * its sprite pattern fetches; scanline-counting mappers clock on it.
+     */
+    default void ppuA12Rise() {
+    }
+
+    /**
+     * A12 rises left until this mapper raises its IRQ, or -1 if none is
+     * scheduled. With one rise per rendered scanline this predicts the IRQ
+     * scanline without watching the PPU dot by dot.
+     */
+    default int getIrqCountdown() {
+        return -1;
+    }
+
+    /**
+     * Size in bytes of the state written by saveState().
+     */
+    int stateSize();
+
+    void saveState(ByteBuffer buffer);
+
+    /**
+     * Restore the registers written by saveState() and publish the banks.
+     */
+    void loadState(ByteBuffer buffer);
+
+    static boolean isSupported(int id) {
+        switch (id) {
+            case 0: case 1: case 2: case 3: case 4: case 7:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Create the mapper for an iNES mapper number.
+     * @throws IllegalArgumentException if the mapper is not implemented
+     */
+    static Mapper create(int id, Cartridge cartridge) {
+        switch (id) {
+            case 0: return new Nrom(cartridge);
+            case 1: return new Mmc1(cartridge);
+            case 2: return new UxRom(cartridge);
+            case 3: return new CnRom(cartridge);
+            case 4: return new Mmc3(cartridge);
+            case 7: return new AxRom(cartridge);
+            default:
+                throw new IllegalArgumentException("Unsupported mapper " + id);
+        }
+    }
+}
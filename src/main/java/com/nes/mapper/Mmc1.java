@@ -0,0 +1,132 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 1 (MMC1 / SxROM).
+ * Registers are loaded one bit at a time through a 5-bit shift register;
+ * the fifth write copies it into the register picked by address bits 13-14:
+ * control (0x8000), CHR bank 0 (0xA000), CHR bank 1 (0xC000), PRG bank (0xE000).
+ * Bit 4 of the PRG bank register disables PRG-RAM (MMC1B).
+ */
+public class Mmc1 implements Mapper {
+
+    private final Cartridge cartridge;
+
+    // The 1 marks the end of the shift register: it reaches bit 0 after four writes
+    private static final int SHIFT_EMPTY = 0x10;
+
+    private int shift = SHIFT_EMPTY;
+    private int control = 0x0C;
+    private int chrBank0 = 0;
+    private int chrBank1 = 0;
+    private int prgBank = 0;
+
+    public Mmc1(Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    @Override
+    public int getId() {
+        return 1;
+    }
+
+    @Override
+    public void reset() {
+        shift = SHIFT_EMPTY;
+        control = 0x0C;
+        chrBank0 = 0;
+        chrBank1 = 0;
+        prgBank = 0;
+        updateBanks();
+    }
+
+    @Override
+    public void cpuWrite(int addr, byte data) {
+        // Bit 7 resets the shift register and selects PRG mode 3
+        if ((data & 0x80) != 0) {
+            shift = SHIFT_EMPTY;
+            control |= 0x0C;
+            updateBanks();
+            return;
+        }
+
+        boolean full = (shift & 0x01) != 0;
+        shift = (shift >> 1) | ((data & 0x01) << 4);
+        if (!full) return;
+
+        int value = shift;
+        shift = SHIFT_EMPTY;
+        switch ((addr >> 13) & 0x03) {
+            case 0: control = value; break;
+            case 1: chrBank0 = value; break;
+            case 2: chrBank1 = value; break;
+            case 3: prgBank = value; break;
+        }
+        updateBanks();
+    }
+
+    private void updateBanks() {
+        switch (control & 0x03) {
+            case 0: cartridge.setMirroring(Cartridge.MIRROR_SINGLE_LOWER); break;
+            case 1: cartridge.setMirroring(Cartridge.MIRROR_SINGLE_UPPER); break;
+            case 2: cartridge.setMirroring(Cartridge.MIRROR_VERTICAL); break;
+            case 3: cartridge.setMirroring(Cartridge.MIRROR_HORIZONTAL); break;
+        }
+
+        switch ((control >> 2) & 0x03) {
+            case 0:
+            case 1:
+                // 32KB mode ignores the low bit of the bank number
+                cartridge.mapPrg32k((prgBank & 0x0F) >> 1);
+                break;
+            case 2:
+                // First bank fixed at 0x8000, switchable bank at 0xC000
+                cartridge.mapPrg16k(0, 0);
+                cartridge.mapPrg16k(1, prgBank & 0x0F);
+                break;
+            case 3:
+                // Switchable bank at 0x8000, last bank fixed at 0xC000
+                cartridge.mapPrg16k(0, prgBank & 0x0F);
+                cartridge.mapPrg16k(1, -1);
+                break;
+        }
+
+        cartridge.setPrgRamAccess((prgBank & 0x10) == 0, true);
+
+        if ((control & 0x10) != 0) {
+            // Two independent 4KB CHR banks
+            cartridge.mapChr4k(0, chrBank0);
+            cartridge.mapChr4k(1, chrBank1);
+        } else {
+            // One 8KB CHR bank, low bit ignored
+            cartridge.mapChr8k(chrBank0 >> 1);
+        }
+    }
+
+    @Override
+    public int stateSize() {
+        return 5 * 4;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(shift);
+        buffer.putInt(control);
+        buffer.putInt(chrBank0);
+        buffer.putInt(chrBank1);
+        buffer.putInt(prgBank);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        shift = buffer.getInt();
+        control = buffer.getInt();
+        chrBank0 = buffer.getInt();
+        chrBank1 = buffer.getInt();
+        prgBank = buffer.getInt();
+        updateBanks();
+    }
+}
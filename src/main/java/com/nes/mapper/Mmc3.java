@@ -0,0 +1,190 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 4 (MMC3 / TxROM).
+ * Eight bank registers R0-R7 are written through a select/data pair
+ * (0x8000/0x8001). R0-R1 are 2KB and R2-R5 1KB CHR banks, swapped between
+ * the two pattern tables by CHR inversion; R6-R7 are 8KB PRG banks, with
+ * the second-to-last bank fixed at 0x8000 or 0xC000 depending on PRG mode.
+ * 0xA001 enables PRG-RAM (bit 7) and write-protects it (bit 6).
+ *
+ * The scanline IRQ counter is clocked by PPU A12 rises. When it is zero
+ * (or a reload was requested) it reloads from the latch, otherwise it
+ * decrements; reaching zero with IRQs enabled asserts the IRQ line until
+ * 0xE000 is written.
+ */
+public class Mmc3 implements Mapper {
+
+    private final Cartridge cartridge;
+
+    private final int[] registers = new int[8];
+    private int bankSelect = 0;
+    // Enabled and writable at power-on; some games never write 0xA001
+    private int prgRamProtect = 0x80;
+
+    // Scanline IRQ counter
+    private int irqLatch = 0;
+    private int irqCounter = 0;
+    private boolean irqReload = false;
+    private boolean irqEnabled = false;
+
+    public Mmc3(Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    @Override
+    public int getId() {
+        return 4;
+    }
+
+    @Override
+    public void reset() {
+        bankSelect = 0;
+        prgRamProtect = 0x80;
+        updatePrgRam();
+        irqLatch = 0;
+        irqCounter = 0;
+        irqReload = false;
+        irqEnabled = false;
+        cartridge.setIrq(false);
+        registers[0] = 0;
+        registers[1] = 2;
+        registers[2] = 4;
+        registers[3] = 5;
+        registers[4] = 6;
+        registers[5] = 7;
+        registers[6] = 0;
+        registers[7] = 1;
+        // Mirroring stays as the header set it until the game selects one
+        updateBanks();
+    }
+
+    @Override
+    public void cpuWrite(int addr, byte data) {
+        int value = data & 0xFF;
+        boolean odd = (addr & 0x01) != 0;
+        switch (addr & 0xE000) {
+            case 0x8000:
+                if (odd) {
+                    registers[bankSelect & 0x07] = value;
+                } else {
+                    bankSelect = value;
+                }
+                updateBanks();
+                break;
+            case 0xA000:
+                if (odd) {
+                    prgRamProtect = value;
+                    updatePrgRam();
+                } else {
+                    cartridge.setMirroring((value & 0x01) == 0
+                            ? Cartridge.MIRROR_VERTICAL : Cartridge.MIRROR_HORIZONTAL);
+                }
+                break;
+            case 0xC000:
+                if (odd) {
+                    // Reload on the next A12 rise
+                    irqCounter = 0;
+                    irqReload = true;
+                } else {
+                    irqLatch = value;
+                }
+                break;
+            default:
+                // 0xE000 disables and acknowledges, 0xE001 enables
+                irqEnabled = odd;
+                if (!odd) {
+                    cartridge.setIrq(false);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void ppuA12Rise() {
+        if (irqCounter == 0 || irqReload) {
+            irqCounter = irqLatch;
+            irqReload = false;
+        } else {
+            irqCounter--;
+        }
+        if (irqCounter == 0 && irqEnabled) {
+            cartridge.setIrq(true);
+        }
+    }
+
+    @Override
+    public int getIrqCountdown() {
+        if (!irqEnabled) return -1;
+        if (irqCounter > 0 && !irqReload) return irqCounter;
+        // The next rise reloads; a zero latch fires on every rise
+        return irqLatch == 0 ? 1 : irqLatch + 1;
+    }
+
+    private void updatePrgRam() {
+        cartridge.setPrgRamAccess((prgRamProtect & 0x80) != 0, (prgRamProtect & 0x40) == 0);
+    }
+
+    private void updateBanks() {
+        // PRG mode: swap the R6 window with the fixed second-to-last bank
+        if ((bankSelect & 0x40) == 0) {
+            cartridge.mapPrg8k(0, registers[6]);
+            cartridge.mapPrg8k(2, -2);
+        } else {
+            cartridge.mapPrg8k(0, -2);
+            cartridge.mapPrg8k(2, registers[6]);
+        }
+        cartridge.mapPrg8k(1, registers[7]);
+        cartridge.mapPrg8k(3, -1);
+
+        // CHR inversion: 2KB banks at 0x1000 instead of 0x0000
+        int invert = (bankSelect & 0x80) != 0 ? 4 : 0;
+        cartridge.mapChr1k(invert, registers[0] & 0xFE);
+        cartridge.mapChr1k(invert + 1, registers[0] | 0x01);
+        cartridge.mapChr1k(invert + 2, registers[1] & 0xFE);
+        cartridge.mapChr1k(invert + 3, registers[1] | 0x01);
+        cartridge.mapChr1k(invert ^ 4, registers[2]);
+        cartridge.mapChr1k((invert ^ 4) + 1, registers[3]);
+        cartridge.mapChr1k((invert ^ 4) + 2, registers[4]);
+        cartridge.mapChr1k((invert ^ 4) + 3, registers[5]);
+    }
+
+    @Override
+    public int stateSize() {
+        return 8 * 4 + 4 + 4 + 4 + 4 + 1 + 1 + 1;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        for (int register : registers) {
+            buffer.putInt(register);
+        }
+        buffer.putInt(bankSelect);
+        buffer.putInt(prgRamProtect);
+        buffer.putInt(irqLatch);
+        buffer.putInt(irqCounter);
+        buffer.put((byte) (irqReload ? 1 : 0));
+        buffer.put((byte) (irqEnabled ? 1 : 0));
+        buffer.put((byte) (cartridge.isIrqAsserted() ? 1 : 0));
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = buffer.getInt();
+        }
+        bankSelect = buffer.getInt();
+        prgRamProtect = buffer.getInt();
+        irqLatch = buffer.getInt();
+        irqCounter = buffer.getInt();
+        irqReload = buffer.get() != 0;
+        irqEnabled = buffer.get() != 0;
+        cartridge.setIrq(buffer.get() != 0);
+        updatePrgRam();
+        updateBanks();
+    }
+}
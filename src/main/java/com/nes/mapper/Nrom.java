@@ -0,0 +1,48 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 0 (NROM): 16KB or 32KB PRG, 8KB CHR, no registers.
+ * A 16KB PRG is mirrored into 0xC000 - 0xFFFF.
+ */
+public class Nrom implements Mapper {
+
+    private final Cartridge cartridge;
+
+    public Nrom(Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    @Override
+    public int getId() {
+        return 0;
+    }
+
+    @Override
+    public void reset() {
+        cartridge.mapPrg32k(0);
+        cartridge.mapChr8k(0);
+    }
+
+    @Override
+    public void cpuWrite(int addr, byte data) {
+        // ROM, no registers
+    }
+
+    @Override
+    public int stateSize() {
+        return 0;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        reset();
+    }
+}
@@ -0,0 +1,58 @@
+package com.nes.mapper;
+
+import com.nes.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mapper 2 (UxROM): switchable 16KB PRG bank at 0x8000, last bank fixed
+ * at 0xC000, 8KB CHR (usually RAM).
+ */
+public class UxRom implements Mapper {
+
+    private final Cartridge cartridge;
+    private int prgBank = 0;
+
+    public UxRom(Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    @Override
+    public int getId() {
+        return 2;
+    }
+
+    @Override
+    public void reset() {
+        prgBank = 0;
+        updateBanks();
+    }
+
+    private void updateBanks() {
+        cartridge.mapPrg16k(0, prgBank);
+        cartridge.mapPrg16k(1, -1);
+        cartridge.mapChr8k(0);
+    }
+
+    @Override
+    public void cpuWrite(int addr, byte data) {
+        prgBank = data & 0xFF;
+        cartridge.mapPrg16k(0, prgBank);
+    }
+
+    @Override
+    public int stateSize() {
+        return 4;
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(prgBank);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        prgBank = buffer.getInt();
+        updateBanks();
+    }
+}
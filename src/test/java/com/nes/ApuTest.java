@@ -0,0 +1,280 @@
+package com.nes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApuTest {
+
+    // CPU cycles in one 4-step frame counter sequence
+    private static final int SEQUENCE_CYCLES = 29830;
+
+    private Apu apu;
+    private long cycle;
+
+    @BeforeEach
+    public void setUp() {
+        apu = new Apu();
+        apu.reset();
+        cycle = 0;
+    }
+
+    private void write(int addr, int value) {
+        apu.cpuWrite(addr, (byte) value);
+    }
+
+    private int status() {
+        return apu.cpuRead(0x4015) & 0xFF;
+    }
+
+    private void runCycles(long cycles) {
+        cycle += cycles;
+        apu.run(cycle);
+    }
+
+    /**
+     * Run for a number of seconds, draining the output as a frontend would.
+     */
+    private short[] record(double seconds) {
+        int total = (int) (seconds * apu.getSampleRate());
+        short[] out = new short[total + 1024];
+        int count = 0;
+        int chunk = Apu.CPU_CLOCK_RATE / 60;
+        long end = cycle + (long) (seconds * Apu.CPU_CLOCK_RATE);
+        while (cycle < end) {
+            runCycles(Math.min(chunk, end - cycle));
+            count += apu.readSamples(out, count, Math.min(apu.samplesAvailable(), out.length - count));
+        }
+        return java.util.Arrays.copyOf(out, count);
+    }
+
+    private static int zeroCrossings(short[] samples, int from) {
+        int crossings = 0;
+        for (int i = from + 1; i < samples.length; i++) {
+            if ((samples[i - 1] < 0) != (samples[i] < 0)) crossings++;
+        }
+        return crossings;
+    }
+
+    @Test
+    public void testLengthCounterStatus() {
+        write(0x4015, 0x01);
+        write(0x4003, 0x08);  // Length index 1 = 254
+        assertEquals(0x01, status() & 0x1F);
+
+        // Disabling the channel clears its length counter
+        write(0x4015, 0x00);
+        assertEquals(0x00, status() & 0x1F);
+
+        // A disabled channel ignores length loads
+        write(0x4003, 0x08);
+        assertEquals(0x00, status() & 0x1F);
+    }
+
+    @Test
+    public void testLengthCounterClockedByHalfFrames() {
+        write(0x4017, 0x40);  // 4-step, no IRQ
+        write(0x4015, 0x08);
+        write(0x400C, 0x00);  // Length counter running
+        write(0x400F, 0x00);  // Length index 0 = 10, two half frames per sequence
+
+        runCycles(4L * SEQUENCE_CYCLES);
+        assertEquals(0x08, status() & 0x08, "8 half frames leave 2 of 10");
+        runCycles(SEQUENCE_CYCLES);
+        assertEquals(0x00, status() & 0x08, "10 half frames empty the counter");
+    }
+
+    @Test
+    public void testLengthCounterHalt() {
+        write(0x4017, 0x40);
+        write(0x4015, 0x04);
+        write(0x4008, 0x80);  // Halt
+        write(0x400B, 0x00);
+
+        runCycles(10L * SEQUENCE_CYCLES);
+        assertEquals(0x04, status() & 0x04);
+    }
+
+    @Test
+    public void testFrameIrq() {
+        write(0x4017, 0x00);
+        runCycles(SEQUENCE_CYCLES - 10);
+        assertFalse(apu.isIrqPending());
+        runCycles(10);
+        assertTrue(apu.isIrqPending());
+
+        // Reading the status returns and acknowledges the flag
+        assertEquals(0x40, status() & 0x40);
+        assertFalse(apu.isIrqPending());
+        assertEquals(0x00, status() & 0x40);
+    }
+
+    @Test
+    public void testFrameIrqInhibitAndFiveStepMode() {
+        write(0x4017, 0x40);
+        runCycles(3L * SEQUENCE_CYCLES);
+        assertFalse(apu.isIrqPending());
+
+        write(0x4017, 0x80);
+        runCycles(3L * SEQUENCE_CYCLES);
+        assertFalse(apu.isIrqPending());
+
+        // Setting inhibit clears a pending interrupt
+        write(0x4017, 0x00);
+        runCycles(SEQUENCE_CYCLES);
+        assertTrue(apu.isIrqPending());
+        write(0x4017, 0x40);
+        assertFalse(apu.isIrqPending());
+    }
+
+    @Test
+    public void testSilenceWhenNothingPlays() {
+        short[] samples = record(0.5);
+        assertTrue(samples.length > 0.49 * apu.getSampleRate());
+        for (short sample : samples) {
+            assertEquals(0, sample);
+        }
+    }
+
+    @Test
+    public void testPulseToneFrequency() {
+        write(0x4015, 0x01);
+        write(0x4000, 0xBF);  // 50% duty, halt, constant volume 15
+        write(0x4001, 0x00);
+        write(0x4002, 0xFD);  // Period 253: 1789773 / (16 * 254) = 440.4 Hz
+        write(0x4003, 0x00);
+
+        short[] samples = record(1.0);
+        int peak = 0;
+        for (short sample : samples) peak = Math.max(peak, Math.abs(sample));
+        assertTrue(peak > 1000, "Tone is audible, peak " + peak);
+
+        // Skip the DC settling, then two zero crossings per cycle
+        int from = samples.length / 4;
+        double seconds = (samples.length - from) / (double) apu.getSampleRate();
+        double frequency = zeroCrossings(samples, from) / 2.0 / seconds;
+        assertEquals(440.4, frequency, 3.0);
+    }
+
+    @Test
+    public void testTriangleToneFrequency() {
+        write(0x4015, 0x04);
+        write(0x4008, 0xFF);  // Linear counter halted on
+        write(0x400A, 0x7E);  // Period 126: 1789773 / (32 * 127) = 440.4 Hz
+        write(0x400B, 0x00);
+
+        short[] samples = record(1.0);
+        int from = samples.length / 4;
+        double seconds = (samples.length - from) / (double) apu.getSampleRate();
+        double frequency = zeroCrossings(samples, from) / 2.0 / seconds;
+        assertEquals(440.4, frequency, 3.0);
+    }
+
+    @Test
+    public void testOutputIsBandLimited() {
+        // A square wave near the top of the audible range: a naive
+        // point-sampled square would alias into jumps of the full amplitude
+        write(0x4015, 0x01);
+        write(0x4000, 0xBF);
+        write(0x4002, 0x10);  // About 6.6 kHz
+        write(0x4003, 0x00);
+
+        short[] samples = record(0.5);
+        int peak = 0;
+        for (int i = samples.length / 2; i < samples.length; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        // Full-scale square amplitude is 15 * 241 around its mean
+        assertTrue(peak > 500 && peak < 15 * 241, "Peak " + peak);
+    }
+
+    @Test
+    public void testOutputSettlesAfterNoteOff() {
+        write(0x4015, 0x01);
+        write(0x4000, 0xBF);
+        write(0x4002, 0xFD);
+        write(0x4003, 0x00);
+        record(0.25);
+
+        write(0x4015, 0x00);
+        short[] samples = record(0.5);
+        for (int i = samples.length - 100; i < samples.length; i++) {
+            assertTrue(Math.abs(samples[i]) < 16, "DC removed, sample " + samples[i]);
+        }
+    }
+
+    @Test
+    public void testUnreadSamplesAreBounded() {
+        write(0x4015, 0x01);
+        write(0x4000, 0xBF);
+        write(0x4002, 0xFD);
+        write(0x4003, 0x00);
+
+        runCycles(10L * Apu.CPU_CLOCK_RATE);
+        assertTrue(apu.samplesAvailable() < 16384);
+    }
+
+    @Test
+    public void testDmcPlaysSampleAndRaisesIrq() {
+        Bus bus = new Bus();
+        bus.reset();
+        // Without a cartridge 0xC000 is plain RAM
+        for (int i = 0; i < 17; i++) {
+            bus.write(0xC000 + i, (byte) 0xFF);
+        }
+
+        bus.write(0x4010, (byte) 0x8F);  // IRQ, fastest rate (54 cycles per bit)
+        bus.write(0x4011, (byte) 0x00);
+        bus.write(0x4012, (byte) 0x00);  // $C000
+        bus.write(0x4013, (byte) 0x01);  // 17 bytes
+        bus.write(0x4015, (byte) 0x10);
+        assertEquals(0x10, bus.read(0x4015) & 0x10);
+
+        // 17 bytes of 8 bits, plus the byte in the output unit
+        bus.run(3L * 54 * 8 * 19);
+        int status = bus.read(0x4015) & 0xFF;
+        assertEquals(0x00, status & 0x10, "Sample finished");
+        assertEquals(0x80, status & 0x80, "DMC IRQ raised");
+        assertTrue(bus.getApu().isIrqPending());
+
+        // Writing the status register acknowledges it
+        bus.write(0x4015, (byte) 0x00);
+        assertFalse(bus.getApu().isIrqPending());
+    }
+
+    @Test
+    public void testNextIrqCyclePredictsFrameIrq() {
+        runCycles(1000);
+        long predicted = apu.getNextIrqCycle();
+        assertEquals(SEQUENCE_CYCLES - 1, predicted);
+        runCycles(predicted - 1 - cycle);
+        assertFalse(apu.isIrqPending());
+        runCycles(1);
+        assertTrue(apu.isIrqPending());
+        // Already raised: nothing new until it is acknowledged
+        assertEquals(-1, apu.getNextIrqCycle());
+
+        write(0x4017, 0x40);
+        assertEquals(-1, apu.getNextIrqCycle(), "Inhibited");
+    }
+
+    @Test
+    public void testNextIrqCyclePredictsDmcIrq() {
+        Bus bus = new Bus();
+        bus.reset();
+        Apu dmcApu = bus.getApu();
+        bus.write(0x4017, (byte) 0x40);  // Frame IRQ off
+        bus.write(0x4010, (byte) 0x8E);  // IRQ, 72 cycles per bit
+        bus.write(0x4012, (byte) 0x00);
+        bus.write(0x4013, (byte) 0x02);  // 33 bytes
+        bus.write(0x4015, (byte) 0x10);
+
+        long predicted = dmcApu.getNextIrqCycle();
+        assertTrue(predicted > 32 * 8 * 72, "Predicted at " + predicted);
+        dmcApu.run(predicted - 1);
+        assertFalse(dmcApu.isIrqPending());
+        dmcApu.run(predicted);
+        assertTrue(dmcApu.isIrqPending());
+    }
+}
@@ -0,0 +1,112 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AudioRingBufferTest {
+
+    private static short[] sequence(int start, int count) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) (start + i);
+        }
+        return samples;
+    }
+
+    @Test
+    public void testCapacityRoundsUpToPowerOfTwo() {
+        assertEquals(1024, new AudioRingBuffer(1000).capacity());
+        assertEquals(1024, new AudioRingBuffer(1024).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new AudioRingBuffer(0));
+    }
+
+    @Test
+    public void testWriteThenRead() {
+        AudioRingBuffer ring = new AudioRingBuffer(16);
+        assertEquals(5, ring.write(sequence(100, 5), 0, 5));
+        assertEquals(5, ring.size());
+
+        short[] out = new short[8];
+        assertEquals(5, ring.read(out, 1, 8 - 1));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(100 + i, out[1 + i]);
+        }
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.read(out, 0, 8));
+    }
+
+    @Test
+    public void testFullRingDropsExcess() {
+        AudioRingBuffer ring = new AudioRingBuffer(16);
+        assertEquals(16, ring.write(sequence(0, 20), 0, 20));
+        assertEquals(0, ring.write(sequence(0, 1), 0, 1));
+
+        short[] out = new short[4];
+        ring.read(out, 0, 4);
+        assertEquals(4, ring.write(sequence(16, 10), 0, 10));
+        assertEquals(16, ring.size());
+    }
+
+    @Test
+    public void testWrapAround() {
+        AudioRingBuffer ring = new AudioRingBuffer(16);
+        short[] out = new short[16];
+        int next = 0;
+        int expected = 0;
+        // Chunk sizes that do not divide the capacity
+        for (int round = 0; round < 100; round++) {
+            next += ring.write(sequence(next, 7), 0, 7);
+            int n = ring.read(out, 0, 5);
+            for (int i = 0; i < n; i++) {
+                assertEquals((short) expected++, out[i]);
+            }
+            if (ring.size() > 10) {
+                n = ring.read(out, 0, 16);
+                for (int i = 0; i < n; i++) {
+                    assertEquals((short) expected++, out[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentProducerAndConsumer() throws Exception {
+        AudioRingBuffer ring = new AudioRingBuffer(256);
+        final int total = 200_000;
+
+        Thread producer = new Thread(() -> {
+            short[] chunk = new short[100];
+            int written = 0;
+            while (written < total) {
+                int n = Math.min(chunk.length, total - written);
+                for (int i = 0; i < n; i++) {
+                    chunk[i] = (short) (written + i);
+                }
+                int done = 0;
+                while (done < n) {
+                    done += ring.write(chunk, done, n - done);
+                    // Yield rather than spin so this also progresses on one core
+                    if (done < n) Thread.yield();
+                }
+                written += n;
+            }
+        });
+        producer.start();
+
+        short[] out = new short[77];
+        int read = 0;
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (read < total && System.nanoTime() < deadline) {
+            int n = ring.read(out, 0, out.length);
+            for (int i = 0; i < n; i++) {
+                assertEquals((short) (read + i), out[i], "Sample " + (read + i));
+            }
+            read += n;
+            if (n == 0) Thread.yield();
+        }
+        assertEquals(total, read);
+        producer.join();
+        assertEquals(0, ring.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AudioSinkTest {
+
+    private static final int RATE = 48000;
+
+    @Test
+    public void testNullSinkDrainsInRealTime() throws Exception {
+        try (NullAudioSink sink = new NullAudioSink(RATE, 16384)) {
+            // 200ms of audio
+            short[] samples = new short[RATE / 5];
+            assertEquals(samples.length, sink.write(samples, 0, samples.length));
+            sink.start();
+
+            long start = System.nanoTime();
+            sink.pace(0);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(0, sink.buffered());
+            assertTrue(millis >= 150, "Drained too fast: " + millis + " ms");
+            assertTrue(millis < 2000, "Drained too slowly: " + millis + " ms");
+        }
+    }
+
+    @Test
+    public void testPaceHoldsEmulationToRealTime() throws Exception {
+        try (NullAudioSink sink = new NullAudioSink(RATE, 16384)) {
+            sink.start();
+            short[] frame = new short[RATE / 60];
+
+            // 30 frames of audio paced at 50ms latency take about 0.5s minus the latency
+            long start = System.nanoTime();
+            for (int i = 0; i < 30; i++) {
+                sink.write(frame, 0, frame.length);
+                sink.pace(RATE / 20);
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue(millis >= 350, "Ran ahead of real time: " + millis + " ms");
+            assertTrue(sink.buffered() <= RATE / 20);
+        }
+    }
+
+    @Test
+    public void testPaceReturnsImmediatelyWhenStopped() throws Exception {
+        NullAudioSink sink = new NullAudioSink(RATE, 16384);
+        short[] samples = new short[8000];
+        sink.write(samples, 0, samples.length);
+
+        // Not started: nothing drains, so pacing must not wait forever
+        long start = System.nanoTime();
+        sink.pace(0);
+        assertTrue(System.nanoTime() - start < 100_000_000L);
+        sink.close();
+    }
+
+    @Test
+    public void testNullSinkSelectedByProperty() {
+        String previous = System.getProperty("nes.audio");
+        System.setProperty("nes.audio", "null");
+        try (AudioSink sink = AudioSink.open(RATE)) {
+            assertTrue(sink instanceof NullAudioSink);
+            assertEquals(RATE, sink.getSampleRate());
+        } finally {
+            if (previous == null) {
+                System.clearProperty("nes.audio");
+            } else {
+                System.setProperty("nes.audio", previous);
+            }
+        }
+    }
+}
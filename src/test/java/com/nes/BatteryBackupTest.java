@@ -0,0 +1,116 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatteryBackupTest {
+
+    @TempDir
+    Path dir;
+
+    private static Cartridge cartridge() {
+        return new Cartridge(new byte[16384], new byte[8192], 0);
+    }
+
+    @Test
+    public void testSavePath() {
+        assertEquals(Paths.get("roms", "Zelda.sav"), BatteryBackup.savePath(Paths.get("roms", "Zelda.nes")));
+        assertEquals(Paths.get("game.v1.sav"), BatteryBackup.savePath(Paths.get("game.v1.nes")));
+        assertEquals(Paths.get("noext.sav"), BatteryBackup.savePath(Paths.get("noext")));
+    }
+
+    @Test
+    public void testLoadsExistingSave() throws IOException {
+        Path file = dir.resolve("game.sav");
+        byte[] saved = new byte[8192];
+        saved[0] = 0x11;
+        saved[8191] = 0x22;
+        Files.write(file, saved);
+
+        Cartridge cart = cartridge();
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+        try (BatteryBackup backup = new BatteryBackup(cart, file)) {
+            assertEquals(0x11, bus.read(0x6000));
+            assertEquals(0x22, bus.read(0x7FFF));
+            // Loading alone writes nothing back
+            backup.sync();
+        }
+        assertArrayEquals(saved, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void testWritesAreCoalesced() throws IOException {
+        Path file = dir.resolve("game.sav");
+        Cartridge cart = cartridge();
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+
+        // An idle delay long enough that the writer never fires during the test
+        BatteryBackup backup = new BatteryBackup(cart, file, 60_000);
+        for (int frame = 0; frame < 600; frame++) {
+            bus.write(0x6000 + (frame & 0xFF), (byte) frame);
+            backup.sync();
+        }
+        assertEquals(0, backup.getWriteCount());
+        assertFalse(Files.exists(file));
+
+        // Closing writes the last state once
+        backup.close();
+        assertEquals(1, backup.getWriteCount());
+        byte[] saved = Files.readAllBytes(file);
+        assertEquals(8192, saved.length);
+        assertEquals((byte) 599, saved[599 & 0xFF]);
+    }
+
+    @Test
+    public void testWritesWhenIdle() throws Exception {
+        Path file = dir.resolve("game.sav");
+        Cartridge cart = cartridge();
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+
+        try (BatteryBackup backup = new BatteryBackup(cart, file, 10)) {
+            bus.write(0x6123, (byte) 0x5A);
+            backup.sync();
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (backup.getWriteCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, backup.getWriteCount());
+            assertEquals(0x5A, Files.readAllBytes(file)[0x123]);
+
+            // Nothing changed since: no further writes
+            backup.sync();
+            backup.flush();
+            assertEquals(1, backup.getWriteCount());
+        }
+    }
+
+    @Test
+    public void testConsoleSyncsEveryFrame() throws IOException {
+        Path file = dir.resolve("game.sav");
+        byte[] prg = new byte[16384];
+        // STA $6000 then JMP to itself
+        prg[0] = (byte) 0xA9; prg[1] = 0x77;
+        prg[2] = (byte) 0x8D; prg[3] = 0x00; prg[4] = 0x60;
+        prg[5] = 0x4C; prg[6] = 0x05; prg[7] = (byte) 0x80;
+        prg[0x3FFC] = 0x00;
+        prg[0x3FFD] = (byte) 0x80;
+        Console console = new Console(new Cartridge(prg, new byte[8192], 0));
+        BatteryBackup backup = console.enableBatteryBackup(file);
+
+        console.runFrame();
+        console.close();
+        assertEquals(1, backup.getWriteCount());
+        assertEquals(0x77, Files.readAllBytes(file)[0]);
+    }
+}
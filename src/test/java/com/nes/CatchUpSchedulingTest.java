@@ -0,0 +1,178 @@
+package com.nes;
+
+import com.nes.FrameEquivalence.Mode;
+import com.nes.cpu.Cpu;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import static com.nes.FrameEquivalence.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that catch-up scheduling produces exactly the same machine state
+ * as the per-cycle Bus.clock() loop.
+ */
+public class CatchUpSchedulingTest {
+
+    @Test
+    public void testFramesMatchPerCycle90Tank() throws IOException {
+        assertSameFrames("rom/90tank.nes", 60, Mode.PER_CYCLE, Mode.CATCH_UP);
+    }
+
+    @Test
+    public void testFramesMatchPerCycleF1() throws IOException {
+        assertSameFrames("rom/f1.nes", 60, Mode.PER_CYCLE, Mode.CATCH_UP);
+    }
+
+    @Test
+    public void testSwitchingModesMidInstruction() throws IOException {
+        Bus reference = createBus("rom/90tank.nes", Mode.PER_CYCLE);
+        Bus mixed = createBus("rom/90tank.nes", Mode.PER_CYCLE);
+
+        // Toggle every few ticks so switches land on all clock phases
+        long ticks = 0;
+        boolean catchUp = false;
+        while (ticks < 5L * Bus.FRAME_TICKS) {
+            int n = 7 + (int) (ticks % 11);
+            for (int i = 0; i < n; i++) {
+                reference.clock();
+            }
+            mixed.run(n);
+            ticks += n;
+            catchUp = !catchUp;
+            mixed.setCatchUp(catchUp);
+        }
+
+        assertArrayEquals(reference.getFrameBuffer(), mixed.getFrameBuffer());
+        assertSameRam(reference, mixed);
+    }
+
+    @Test
+    public void testIdleLoopSkipMatchesPerCycle() throws IOException {
+        // 90tank waits for its NMI with CMP $0B / BEQ
+        Bus perCycle = createBus("rom/90tank.nes", Mode.PER_CYCLE);
+        Bus skipping = createBus("rom/90tank.nes", Mode.CATCH_UP);
+        for (int frame = 0; frame < 120; frame++) {
+            runFrame(perCycle, Mode.PER_CYCLE);
+            runFrame(skipping, Mode.CATCH_UP);
+            assertArrayEquals(perCycle.getFrameBuffer(), skipping.getFrameBuffer(), "Frame " + frame);
+        }
+        assertTrue(skipping.getSkippedCycles() > 0);
+        assertEquals(perCycle.getCpu().getInstructionCount(), skipping.getCpu().getInstructionCount());
+        assertSameRam(perCycle, skipping);
+    }
+
+    /**
+     * NROM program: mask IRQs, enable NMI, then spin in the given loop at 0x8006.
+     * The NMI handler increments $10.
+     */
+    private static Bus idleProgram(boolean catchUp, int... loop) {
+        byte[] prg = new byte[16384];
+        int[] program = {0x78, 0xA9, 0x80, 0x8D, 0x00, 0x20};
+        for (int i = 0; i < program.length; i++) {
+            prg[i] = (byte) program[i];
+        }
+        for (int i = 0; i < loop.length; i++) {
+            prg[6 + i] = (byte) loop[i];
+        }
+        int[] nmi = {0xE6, 0x10, 0x40};
+        for (int i = 0; i < nmi.length; i++) {
+            prg[0x10 + i] = (byte) nmi[i];
+        }
+        // IRQ: count it in $11 and acknowledge the APU frame IRQ
+        int[] irq = {0xE6, 0x11, 0xAD, 0x15, 0x40, 0x40};
+        for (int i = 0; i < irq.length; i++) {
+            prg[0x20 + i] = (byte) irq[i];
+        }
+        prg[0x3FFA] = 0x10;
+        prg[0x3FFB] = (byte) 0x80;
+        prg[0x3FFE] = 0x20;
+        prg[0x3FFF] = (byte) 0x80;
+        prg[0x3FFC] = 0x00;
+        prg[0x3FFD] = (byte) 0x80;
+
+        Bus bus = new Bus();
+        Cpu cpu = new Cpu();
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge(prg, new byte[8192], 0));
+        cpu.connectBus(bus);
+        bus.reset();
+        bus.setCatchUp(catchUp);
+        return bus;
+    }
+
+    private static void assertIdleLoopSkipped(int... loop) {
+        Bus perCycle = idleProgram(false, loop);
+        Bus skipping = idleProgram(true, loop);
+        for (int frame = 0; frame < 5; frame++) {
+            for (int i = 0; i < Bus.FRAME_TICKS; i++) {
+                perCycle.clock();
+            }
+            skipping.runFrame();
+        }
+        assertEquals(5, skipping.read(0x0010));
+        assertEquals(perCycle.read(0x0010), skipping.read(0x0010));
+        assertEquals(perCycle.getCpu().pc, skipping.getCpu().pc);
+        assertEquals(perCycle.getCpu().getInstructionCount(), skipping.getCpu().getInstructionCount());
+        // Nearly the whole frame is spent waiting
+        assertTrue(skipping.getSkippedCycles() > 4 * Bus.FRAME_TICKS / 3, "Skipped " + skipping.getSkippedCycles());
+    }
+
+    @Test
+    public void testJmpToItselfSkipsToNmi() {
+        assertIdleLoopSkipped(0x4C, 0x06, 0x80);
+    }
+
+    @Test
+    public void testJmpToItselfSkipsToApuFrameIrq() {
+        // CLI, then JMP to itself until the NMI or the APU frame IRQ
+        assertIdleLoopSkipped(0x58, 0x4C, 0x07, 0x80);
+        // Stop 70 cycles after the IRQ at cycle 29829, inside its handler
+        Bus perCycle = idleProgram(false, 0x58, 0x4C, 0x07, 0x80);
+        Bus skipping = idleProgram(true, 0x58, 0x4C, 0x07, 0x80);
+        for (int i = 0; i < 3 * 29900; i++) {
+            perCycle.clock();
+        }
+        skipping.run(3 * 29900);
+        assertEquals(1, perCycle.read(0x0011));
+        assertEquals(1, skipping.read(0x0011));
+        assertEquals(perCycle.getCpu().pc, skipping.getCpu().pc);
+        assertEquals(perCycle.getCpu().getInstructionCount(), skipping.getCpu().getInstructionCount());
+    }
+
+    @Test
+    public void testRamPollSkipsToNmi() {
+        // LDA $10, then CMP $10 / BEQ until the NMI increments $10
+        assertIdleLoopSkipped(0xA5, 0x10, 0xC5, 0x10, 0xF0, 0xFC, 0x4C, 0x06, 0x80);
+    }
+
+    @Test
+    public void testLoopsWithSideEffectsAreNotIdle() {
+        // LDA $2002 / BNE depends on bits that change at any time;
+        // LDA $2007 / BPL reads VRAM; LDA $4016 / BEQ shifts the controller
+        int[][] loops = {
+            {0xAD, 0x02, 0x20, 0xD0, 0xFB},
+            {0xAD, 0x07, 0x20, 0x10, 0xFB},
+            {0xAD, 0x16, 0x40, 0xF0, 0xFB},
+        };
+        for (int[] loop : loops) {
+            Bus bus = idleProgram(true, loop);
+            Cpu cpu = bus.getCpu();
+            cpu.pc = 0x8006;
+            assertEquals(0, cpu.idleLoopCycles(), "Loop " + Integer.toHexString(loop[0]));
+        }
+        // LDA $2002 / BMI while VBlank is set: the read clears it, so the
+        // second iteration falls through
+        Bus vblank = idleProgram(true, 0xAD, 0x02, 0x20, 0x30, 0xFB);
+        Ppu ppu = vblank.getPpu();
+        ppu.cpuWrite(0x2000, (byte) 0x00);
+        while ((ppu.getPpuStatus() & 0x80) == 0) {
+            ppu.clock();
+        }
+        vblank.getCpu().pc = 0x8006;
+        assertEquals(0, vblank.getCpu().idleLoopCycles());
+        // LDA $2002 / BPL waiting for VBlank: 4 + 3 cycles per iteration
+        Bus bus = idleProgram(true, 0xAD, 0x02, 0x20, 0x10, 0xFB);
+        bus.getCpu().pc = 0x8006;
+        assertEquals(7, bus.getCpu().idleLoopCycles());
+    }
+}
@@ -0,0 +1,108 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConsoleFarmTest {
+
+    private static final int FRAMES = 240;
+
+    /**
+     * Press a different button pattern for each instance, starting after
+     * the title screen
+     */
+    private static IntUnaryOperator script(int index) {
+        return frame -> {
+            if (frame < 60) return 0;
+            if (frame % 40 < 4) return Controller.BUTTON_START;
+            return (frame / 16 + index) % 4 == 0 ? Controller.BUTTON_A | (1 << (index % 4)) : 1 << (index % 4);
+        };
+    }
+
+    /**
+     * Fingerprint of the final machine state: frame buffer and CPU RAM
+     */
+    private static long fingerprint(Console console) {
+        byte[] ram = new byte[0x800];
+        for (int addr = 0; addr < ram.length; addr++) {
+            ram[addr] = console.getBus().read(addr);
+        }
+        return 31L * Arrays.hashCode(console.getFrameBuffer()) + Arrays.hashCode(ram);
+    }
+
+    private static long runSequential(int index) throws IOException {
+        Console console = new Console(new Cartridge("rom/90tank.nes"));
+        console.runFrames(FRAMES, script(index));
+        return fingerprint(console);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        int count = 8;
+        List<Long> parallel;
+        try (ConsoleFarm farm = new ConsoleFarm(4)) {
+            parallel = farm.run(count,
+                    i -> new Console(new Cartridge("rom/90tank.nes")),
+                    (i, console) -> {
+                        console.runFrames(FRAMES, script(i));
+                        return fingerprint(console);
+                    });
+        }
+
+        List<Long> sequential = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sequential.add(runSequential(i));
+        }
+
+        assertEquals(sequential, parallel);
+        // The scripts must actually steer the instances apart
+        assertTrue(parallel.stream().distinct().count() > 1);
+    }
+
+    @Test
+    public void testIdenticalInstancesStayIdentical() {
+        List<Long> results;
+        try (ConsoleFarm farm = new ConsoleFarm(4)) {
+            results = farm.run(6,
+                    i -> new Console(new Cartridge("rom/90tank.nes")),
+                    (i, console) -> {
+                        console.runFrames(FRAMES, script(0));
+                        return fingerprint(console);
+                    });
+        }
+        assertEquals(1, results.stream().distinct().count());
+    }
+
+    @Test
+    public void testFactoryFailureIsReported() {
+        try (ConsoleFarm farm = new ConsoleFarm(2)) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+                    farm.run(2, i -> new Console(new Cartridge("rom/missing.nes")), (i, console) -> 0));
+            assertTrue(e.getCause() instanceof IOException, String.valueOf(e.getCause()));
+        }
+    }
+
+    @Test
+    public void testConsoleMatchesPerCycleEmulation() throws IOException {
+        Console console = new Console(new Cartridge("rom/f1.nes"));
+        console.runFrames(120, null);
+
+        Bus bus = new Bus();
+        com.nes.cpu.Cpu cpu = new com.nes.cpu.Cpu();
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge("rom/f1.nes"));
+        cpu.connectBus(bus);
+        bus.reset();
+        for (int i = 0; i < 120; i++) {
+            bus.runFrame();
+        }
+        assertArrayEquals(bus.getFrameBuffer(), console.getFrameBuffer());
+    }
+}
@@ -1,5 +1,6 @@
 package com.nes;
 
+import com.nes.cpu.Cpu;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -46,4 +47,29 @@ public class DisplaySyncTest {
         assertEquals(0, ppu.getCycle(), "End Cycle should be 0 (Frame 2)");
         assertEquals(2, ppu.getFrame(), "Frame count should increment to 2");
     }
+
+    @Test
+    public void testFrameSynchronizationCatchUp() {
+        Cpu cpu = new Cpu();
+        bus.connectCpu(cpu);
+        cpu.connectBus(bus);
+        bus.reset();
+        bus.setCatchUp(true);
+
+        bus.runFrame();
+
+        assertEquals(0, ppu.getScanline(), "End Scanline should be 0");
+        assertEquals(0, ppu.getCycle(), "End Cycle should be 0");
+        assertEquals(1, ppu.getFrame(), "Frame count should increment to 1");
+        assertEquals(Bus.FRAME_TICKS, bus.getSystemClockCounter());
+
+        // Single ticks keep the same granularity in catch-up mode
+        for (int i = 0; i < Bus.FRAME_TICKS; i++) {
+            bus.clock();
+        }
+
+        assertEquals(0, ppu.getScanline(), "End Scanline should be 0 (Frame 2)");
+        assertEquals(0, ppu.getCycle(), "End Cycle should be 0 (Frame 2)");
+        assertEquals(2, ppu.getFrame(), "Frame count should increment to 2");
+    }
 }
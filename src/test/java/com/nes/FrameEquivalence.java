@@ -0,0 +1,87 @@
+package com.nes;
+
+import com.nes.cpu.Cpu;
+import java.io.IOException;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs a ROM on two machines configured differently and checks that they
+ * produce the same frames, PPUSTATUS and RAM.
+ */
+final class FrameEquivalence {
+
+    /**
+     * How a machine is scheduled and how its PPU draws.
+     */
+    enum Mode {
+        // Bus.clock() on every master clock tick, DOT renderer
+        PER_CYCLE(false, Ppu.Renderer.DOT),
+        // Catch-up scheduling, DOT renderer
+        CATCH_UP(true, Ppu.Renderer.DOT),
+        // Catch-up scheduling, SCANLINE renderer
+        SCANLINE(true, Ppu.Renderer.SCANLINE);
+
+        private final boolean catchUp;
+        private final Ppu.Renderer renderer;
+
+        Mode(boolean catchUp, Ppu.Renderer renderer) {
+            this.catchUp = catchUp;
+            this.renderer = renderer;
+        }
+    }
+
+    private FrameEquivalence() {
+    }
+
+    static Bus createBus(String rom, Mode mode) throws IOException {
+        return createBus(new Cartridge(rom), mode);
+    }
+
+    static Bus createBus(Cartridge cartridge, Mode mode) {
+        Bus bus = new Bus();
+        Cpu cpu = new Cpu();
+        bus.connectCpu(cpu);
+        bus.insertCartridge(cartridge);
+        cpu.connectBus(bus);
+        bus.reset();
+        bus.setCatchUp(mode.catchUp);
+        bus.getPpu().setRenderer(mode.renderer);
+        return bus;
+    }
+
+    static void runFrame(Bus bus, Mode mode) {
+        if (mode.catchUp) {
+            bus.runFrame();
+            return;
+        }
+        for (int i = 0; i < Bus.FRAME_TICKS; i++) {
+            bus.clock();
+        }
+    }
+
+    static void assertSameFrames(String rom, int frames, Mode expected, Mode actual) throws IOException {
+        Bus reference = createBus(rom, expected);
+        Bus tested = createBus(rom, actual);
+
+        for (int frame = 0; frame < frames; frame++) {
+            // Press Start partway through so the game leaves its title screen
+            boolean start = frame >= 30 && frame < 40;
+            reference.getController(0).setButtonPressed(Controller.BUTTON_START, start);
+            tested.getController(0).setButtonPressed(Controller.BUTTON_START, start);
+
+            runFrame(reference, expected);
+            runFrame(tested, actual);
+
+            assertArrayEquals(reference.getFrameBuffer(), tested.getFrameBuffer(), rom + " frame " + frame);
+            assertEquals(reference.getPpu().getPpuStatus(), tested.getPpu().getPpuStatus(), rom + " status " + frame);
+        }
+
+        assertSameRam(reference, tested);
+    }
+
+    static void assertSameRam(Bus expected, Bus actual) {
+        for (int addr = 0; addr < 0x0800; addr++) {
+            assertEquals(expected.read(addr), actual.read(addr), "RAM at " + Integer.toHexString(addr));
+        }
+    }
+}
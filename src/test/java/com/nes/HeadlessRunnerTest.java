@@ -0,0 +1,130 @@
+package com.nes;
+
+import com.nes.cpu.Cpu;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeadlessRunnerTest {
+
+    @Test
+    public void testMatchesReferenceEmulation() throws IOException {
+        HeadlessRunner runner = new HeadlessRunner(new Cartridge("rom/90tank.nes"));
+        HeadlessRunner.Result result = runner.run(120, null);
+
+        // Plain per-cycle emulation with the table core and DOT renderer
+        Bus bus = new Bus();
+        Cpu cpu = new Cpu();
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge("rom/90tank.nes"));
+        cpu.connectBus(bus);
+        bus.reset();
+        for (int i = 0; i < 120; i++) {
+            bus.runFrame();
+        }
+
+        assertArrayEquals(bus.getFrameBuffer(), runner.getBus().getFrameBuffer());
+        assertEquals(120, result.frames);
+        assertFalse(result.conditionMet);
+        assertEquals(120L * Bus.FRAME_TICKS, result.dots);
+        assertEquals(cpu.getInstructionCount(), result.instructions);
+        assertTrue(result.instructions > 0);
+        assertTrue(result.framesPerSecond() > 0);
+    }
+
+    @Test
+    public void testStopCondition() throws IOException {
+        HeadlessRunner runner = new HeadlessRunner(new Cartridge("rom/90tank.nes"));
+        HeadlessRunner.Result result = runner.run(1000, bus -> bus.getPpu().getFrame() >= 10);
+
+        assertTrue(result.conditionMet);
+        assertTrue(result.frames < 1000);
+        assertEquals(10, runner.getBus().getPpu().getFrame());
+    }
+
+    @Test
+    public void testPngRoundTrip() throws IOException {
+        int[] pixels = new int[HeadlessRunner.WIDTH * HeadlessRunner.HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (int) (i * 2654435761L) & 0xFFFFFF;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HeadlessRunner.writePng(pixels, HeadlessRunner.WIDTH, HeadlessRunner.HEIGHT, out);
+
+        // Decode with the JDK reader to validate the hand-written encoder
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertNotNull(image);
+        assertEquals(HeadlessRunner.WIDTH, image.getWidth());
+        assertEquals(HeadlessRunner.HEIGHT, image.getHeight());
+        for (int y = 0; y < HeadlessRunner.HEIGHT; y++) {
+            for (int x = 0; x < HeadlessRunner.WIDTH; x++) {
+                assertEquals(pixels[y * HeadlessRunner.WIDTH + x], image.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void testRawDump() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HeadlessRunner.writeRaw(new int[] { 0x123456, 0xABCDEF }, out);
+        assertArrayEquals(new byte[] { 0x12, 0x34, 0x56, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF }, out.toByteArray());
+    }
+
+    @Test
+    public void testMainDoesNotLoadAwt(@TempDir Path dir) throws Exception {
+        Path png = dir.resolve("frame.png");
+        Path raw = dir.resolve("frame.rgb");
+
+        // Fresh JVM so classes loaded by other tests do not count
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-verbose:class");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.nes.HeadlessRunner");
+        command.add("rom/90tank.nes");
+        command.add("--frames");
+        command.add("30");
+        command.add("--png");
+        command.add(png.toString());
+        command.add("--raw");
+        command.add(raw.toString());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> awtClasses = new ArrayList<>();
+        String report = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("java.awt") || line.contains("javax.swing") || line.contains("javax.imageio")) {
+                    awtClasses.add(line);
+                }
+                if (line.startsWith("rom/90tank.nes: ")) {
+                    report = line;
+                }
+            }
+        }
+
+        assertEquals(0, process.waitFor());
+        assertTrue(awtClasses.isEmpty(), "AWT classes loaded: " + awtClasses);
+        assertNotNull(report);
+        assertTrue(report.contains("30 frames") && report.contains("instructions/s") && report.contains("dots/s"), report);
+        assertEquals(HeadlessRunner.WIDTH * HeadlessRunner.HEIGHT * 3, Files.size(raw));
+        assertTrue(Files.size(png) > 0);
+    }
+}
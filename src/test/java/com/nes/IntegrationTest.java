@@ -44,7 +44,7 @@ public class IntegrationTest {
         
         // Verify reset
         assertEquals(0x8000, cpu.pc);
-        assertEquals(0, cpu.a);
+        assertEquals(0, cpu.getA());
         
         // Run enough cycles to execute the program
         for (int i = 0; i < 200; i++) {
@@ -52,7 +52,7 @@ public class IntegrationTest {
         }
         
         // Verify execution results
-        assertEquals((byte) 0xAA, cpu.a);  // Last LDA should have loaded 0xAA
+        assertEquals((byte) 0xAA, cpu.getA());  // Last LDA should have loaded 0xAA
         assertEquals((byte) 0x55, bus.read(0x0200));  // First STA
         assertEquals((byte) 0xAA, bus.read(0x0201));  // Second STA
         assertEquals(0x800A, cpu.pc);  // Should be at the JMP target
@@ -142,7 +142,7 @@ public class IntegrationTest {
         }
         
         // Verify branch was taken and correct value stored
-        assertEquals((byte) 0x42, cpu.a);
+        assertEquals((byte) 0x42, cpu.getA());
         assertEquals((byte) 0x42, bus.read(0x0200));
     }
     
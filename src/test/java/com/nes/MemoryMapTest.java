@@ -50,4 +50,98 @@ public class MemoryMapTest {
         // Since PPU stub returns 0, we expect 0.
         assertEquals(0x00, bus.read(0x2000));
     }
+    
+    @Test
+    public void testPageTableMatchesDecoder() {
+        // 16KB NROM with a distinct value in every page
+        byte[] prg = new byte[16384];
+        for (int i = 0; i < prg.length; i++) {
+            prg[i] = (byte) (i >> 8);
+        }
+        bus.insertCartridge(new Cartridge(prg, new byte[8192], 0));
+        
+        for (int i = 0; i < 0x0800; i++) {
+            bus.write(i, (byte) (i * 3));
+        }
+        
+        // Skip the PPU/APU registers, reading those has side effects
+        for (int addr = 0; addr <= 0xFFFF; addr++) {
+            if (addr >= 0x2000 && addr < 0x4020) continue;
+            assertEquals(bus.decodeRead(addr), bus.read(addr), "Address " + Integer.toHexString(addr));
+        }
+    }
+    
+    @Test
+    public void testCartridgeWritesBypassPageTable() {
+        byte[] prg = new byte[16384];
+        prg[0] = 0x11;
+        bus.insertCartridge(new Cartridge(prg, new byte[8192], 0));
+        
+        // ROM is read-only: the write goes to the cartridge, not the mapped page
+        bus.write(0x8000, (byte) 0x22);
+        assertEquals(0x11, bus.read(0x8000));
+        assertEquals(0x11, bus.read(0xC000));
+    }
+    
+    @Test
+    public void testAddressesWrapTo16Bits() {
+        bus.write(0x0010, (byte) 0x42);
+        assertEquals(0x42, bus.read(0x10010));
+        
+        bus.write(0x10011, (byte) 0x43);
+        assertEquals(0x43, bus.read(0x0011));
+    }
+
+    @Test
+    public void testPrgRam() {
+        Cartridge cart = new Cartridge(new byte[16384], new byte[8192], 0);
+        bus.insertCartridge(cart);
+        
+        // Reads come from the page table, writes go through the cartridge
+        bus.write(0x6000, (byte) 0x42);
+        bus.write(0x7FFF, (byte) 0x43);
+        assertEquals(0x42, bus.read(0x6000));
+        assertEquals(0x43, bus.read(0x7FFF));
+        assertEquals(0x42, cart.getPrgRam()[0]);
+        
+        // Only changes mark the RAM dirty
+        assertTrue(cart.takePrgRamDirty());
+        assertFalse(cart.takePrgRamDirty());
+        bus.write(0x6000, (byte) 0x42);
+        assertFalse(cart.takePrgRamDirty());
+        bus.write(0x6000, (byte) 0x44);
+        assertTrue(cart.takePrgRamDirty());
+        
+        // Nothing answers below 0x6000
+        bus.write(0x5000, (byte) 0x45);
+        assertEquals(0x00, bus.read(0x5000));
+    }
+
+    @Test
+    public void testOamDmaCopiesPageFromOamAddr() {
+        for (int i = 0; i < 256; i++) {
+            bus.write(0x0300 + i, (byte) i);
+        }
+        
+        // Starts at OAMADDR and wraps around
+        bus.write(0x2003, (byte) 0x10);
+        bus.write(0x4014, (byte) 0x03);
+        assertEquals(0x10, bus.getPpu().getOamAddr());
+        assertEquals(0x00, bus.read(0x2004));
+        bus.write(0x2003, (byte) 0x0F);
+        assertEquals((byte) 0xFF, bus.read(0x2004));
+        bus.write(0x2003, (byte) 0x00);
+        assertEquals((byte) 0xF0, bus.read(0x2004));
+    }
+    
+    @Test
+    public void testOamDmaFromRegisterPage() {
+        // A page with no array behind it is read through the decoder
+        bus.write(0x2003, (byte) 0x00);
+        bus.write(0x4014, (byte) 0x50);
+        for (int i = 0; i < 256; i++) {
+            bus.write(0x2003, (byte) i);
+            assertEquals(0x00, bus.read(0x2004));
+        }
+    }
 }
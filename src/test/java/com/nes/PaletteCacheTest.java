@@ -0,0 +1,127 @@
+package com.nes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaletteCacheTest {
+
+    private Ppu ppu;
+
+    @BeforeEach
+    public void setUp() {
+        Bus bus = new Bus();
+        ppu = bus.getPpu();
+        ppu.connectCartridge(new Cartridge(new byte[16384], new byte[8192], 0));
+        ppu.reset();
+    }
+
+    private void writePalette(int index, int value) {
+        ppu.cpuWrite(0x2006, (byte) 0x3F);
+        ppu.cpuWrite(0x2006, (byte) index);
+        ppu.cpuWrite(0x2007, (byte) value);
+    }
+
+    /**
+     * With rendering disabled every visible pixel is the backdrop color
+     */
+    private int renderBackdrop() {
+        for (int i = 0; i < 262 * 341; i++) {
+            ppu.clock();
+        }
+        int[] buffer = ppu.getFrameBuffer();
+        int color = buffer[120 * 256 + 128];
+        assertEquals(color, buffer[0]);
+        assertEquals(color, buffer[239 * 256 + 255]);
+        return color;
+    }
+
+    @Test
+    public void testPaletteWriteUpdatesOutput() {
+        writePalette(0x00, 0x21);
+        assertEquals(0x64B0FF, renderBackdrop());
+
+        writePalette(0x00, 0x16);
+        assertEquals(0xB53120, renderBackdrop());
+    }
+
+    @Test
+    public void testSpriteBackdropMirror() {
+        // $3F10 is a mirror of $3F00
+        writePalette(0x10, 0x21);
+        assertEquals(0x64B0FF, renderBackdrop());
+    }
+
+    @Test
+    public void testGreyscale() {
+        writePalette(0x00, 0x21);
+        ppu.cpuWrite(0x2001, (byte) 0x01);
+        assertEquals(0xFFFEFF, renderBackdrop());  // Color 0x20
+
+        ppu.cpuWrite(0x2001, (byte) 0x00);
+        assertEquals(0x64B0FF, renderBackdrop());
+    }
+
+    @Test
+    public void testEmphasisDimsOtherChannels() {
+        writePalette(0x00, 0x20);  // 0xFFFEFF
+        ppu.cpuWrite(0x2001, (byte) 0x20);  // Emphasize red
+        int color = renderBackdrop();
+        assertEquals(0xFF, (color >> 16) & 0xFF);
+        assertTrue(((color >> 8) & 0xFF) < 0xFE);
+        assertTrue((color & 0xFF) < 0xFF);
+
+        ppu.cpuWrite(0x2001, (byte) 0xE0);  // All three: uniformly darker
+        color = renderBackdrop();
+        assertTrue(((color >> 16) & 0xFF) < 0xFF);
+    }
+
+    @Test
+    public void testCustomPalette() {
+        byte[] pal = new byte[64 * 3];
+        pal[0x21 * 3] = 0x12;
+        pal[0x21 * 3 + 1] = 0x34;
+        pal[0x21 * 3 + 2] = 0x56;
+        writePalette(0x00, 0x21);
+
+        // Loading a palette re-resolves colors already in palette RAM
+        ppu.setPalette(pal);
+        assertEquals(0x123456, renderBackdrop());
+    }
+
+    @Test
+    public void testFullEmphasisPalette() {
+        byte[] pal = new byte[512 * 3];
+        int entry = (0x02 << 6) | 0x21;  // Green emphasis, color 0x21
+        pal[entry * 3] = 0x01;
+        pal[entry * 3 + 1] = 0x02;
+        pal[entry * 3 + 2] = 0x03;
+        ppu.setPalette(pal);
+        writePalette(0x00, 0x21);
+
+        assertEquals(0x000000, renderBackdrop());
+        ppu.cpuWrite(0x2001, (byte) 0x40);
+        assertEquals(0x010203, renderBackdrop());
+    }
+
+    @Test
+    public void testLoadPaletteFile(@TempDir Path dir) throws IOException {
+        byte[] pal = new byte[64 * 3];
+        pal[0x0F * 3] = (byte) 0xAB;
+        Path file = dir.resolve("test.pal");
+        Files.write(file, pal);
+
+        ppu.loadPalette(file.toString());
+        writePalette(0x00, 0x0F);
+        assertEquals(0xAB0000, renderBackdrop());
+    }
+
+    @Test
+    public void testRejectsBadPaletteSize() {
+        assertThrows(IllegalArgumentException.class, () -> ppu.setPalette(new byte[100]));
+    }
+}
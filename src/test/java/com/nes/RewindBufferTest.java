@@ -0,0 +1,152 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RewindBufferTest {
+
+    private static final IntUnaryOperator INPUT = frame ->
+            (frame % 50 < 3) ? Controller.BUTTON_START : (frame / 20 % 2 == 0 ? Controller.BUTTON_A | Controller.BUTTON_UP : Controller.BUTTON_RIGHT);
+
+    private static byte[] save(Console console) {
+        ByteBuffer buffer = console.createStateBuffer();
+        console.saveState(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Run frames with rewind enabled, keeping a plain save state of each
+     */
+    private static List<byte[]> record(Console console, int frames) {
+        List<byte[]> states = new ArrayList<>();
+        states.add(save(console));
+        Controller controller = console.getController(0);
+        for (int frame = 0; frame < frames; frame++) {
+            controller.setState(INPUT.applyAsInt(frame));
+            console.runFrame();
+            states.add(save(console));
+        }
+        return states;
+    }
+
+    @Test
+    public void testRewindRestoresEveryFrame() throws IOException {
+        Console console = new Console(new Cartridge("rom/90tank.nes"));
+        console.enableRewind(new RewindBuffer(console, 1000, 30, 4 * 1024 * 1024));
+        List<byte[]> states = record(console, 200);
+
+        assertEquals(200, console.getRewindBuffer().getFrameCount());
+        for (int back = 1; back <= 200; back++) {
+            assertTrue(console.rewind());
+            assertArrayEquals(states.get(200 - back), save(console), "Rewound " + back + " frames");
+        }
+        assertFalse(console.rewind());
+    }
+
+    @Test
+    public void testRewindShowsRestoredFrame() throws IOException {
+        Console console = new Console(new Cartridge("rom/90tank.nes"));
+        console.enableRewind();
+        console.runFrames(150, INPUT);
+        int[] frame149 = null;
+        Controller controller = console.getController(0);
+        for (int frame = 150; frame < 160; frame++) {
+            controller.setState(INPUT.applyAsInt(frame));
+            console.runFrame();
+            if (frame == 157) frame149 = console.getFrameBuffer().clone();
+        }
+
+        // Back from frame 160 to the state right after frame 157
+        assertTrue(console.rewind());
+        assertTrue(console.rewind());
+        assertArrayEquals(frame149, console.getFrameBuffer());
+    }
+
+    @Test
+    public void testContinueAfterRewind() throws IOException {
+        Console console = new Console(new Cartridge("rom/f1.nes"));
+        console.enableRewind(new RewindBuffer(console, 1000, 16, 4 * 1024 * 1024));
+        List<byte[]> states = record(console, 100);
+
+        for (int i = 0; i < 40; i++) {
+            assertTrue(console.rewind());
+        }
+        // Replaying the same input from frame 60 reaches the same states,
+        // and the new captures (keyframe first) rewind correctly again
+        Controller controller = console.getController(0);
+        for (int frame = 60; frame < 100; frame++) {
+            controller.setState(INPUT.applyAsInt(frame));
+            console.runFrame();
+            assertArrayEquals(states.get(frame + 1), save(console), "Frame " + frame);
+        }
+        for (int back = 1; back <= 100; back++) {
+            assertTrue(console.rewind());
+            assertArrayEquals(states.get(100 - back), save(console), "Rewound " + back + " frames");
+        }
+    }
+
+    @Test
+    public void testOldFramesAreDropped() throws IOException {
+        Console console = new Console(new Cartridge("rom/90tank.nes"));
+        // Frame limit and a small arena that wraps many times
+        console.enableRewind(new RewindBuffer(console, 80, 10, 64 * 1024));
+        List<byte[]> states = record(console, 400);
+
+        RewindBuffer buffer = console.getRewindBuffer();
+        int available = buffer.getFrameCount();
+        assertTrue(available > 10 && available < 90, "Frames kept: " + available);
+        assertTrue(buffer.getStoredBytes() <= 64 * 1024);
+
+        for (int back = 1; back <= available; back++) {
+            assertTrue(console.rewind());
+            assertArrayEquals(states.get(400 - back), save(console), "Rewound " + back + " frames");
+        }
+        assertFalse(console.rewind());
+    }
+
+    @Test
+    public void testSixtySecondsFitInBudget() throws IOException {
+        Console console = new Console(new Cartridge("rom/90tank.nes"));
+        RewindBuffer buffer = console.enableRewind();
+        console.runFrames(RewindBuffer.DEFAULT_FRAMES + 100, INPUT);
+
+        // Nothing evicted for lack of space: at least a full minute is kept
+        assertTrue(buffer.getFrameCount() >= RewindBuffer.DEFAULT_FRAMES, "Frames kept: " + buffer.getFrameCount());
+        assertTrue(buffer.getMemoryBytes() < 20L * 1024 * 1024);
+        assertTrue(buffer.getAverageCaptureNanos() < 1_000_000, "Average capture " + buffer.getAverageCaptureNanos() + " ns");
+    }
+
+    @Test
+    public void testEncodeCompressesZeros() {
+        byte[] zeros = new byte[4096];
+        byte[] out = new byte[4096 + 64];
+        assertEquals(32, RewindBuffer.encode(zeros, out));
+
+        byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+        for (int i = 0; i < random.length; i++) {
+            if (random[i] == 0) random[i] = 1;
+        }
+        // Incompressible data costs one control byte per 128
+        assertEquals(1000 + 8, RewindBuffer.encode(random, new byte[1100]));
+
+        byte[] mixed = new byte[300];
+        mixed[5] = 1;
+        mixed[6] = 0;   // Lone zero stays inside the literal
+        mixed[7] = 2;
+        mixed[299] = 3;
+        byte[] encoded = new byte[400];
+        int length = RewindBuffer.encode(mixed, encoded);
+        assertEquals(1 + 1 + 3 + 3 + 1 + 1, length);
+        assertArrayEquals(new byte[] { 4, (byte) 0x82, 1, 0, 2 }, Arrays.copyOf(encoded, 5));
+    }
+}
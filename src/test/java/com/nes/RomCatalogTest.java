@@ -0,0 +1,159 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] rom(int mapperId, int prgBanks, int chrBanks, int fill) {
+        byte[] data = new byte[16 + prgBanks * 16384 + chrBanks * 8192];
+        data[0] = 'N';
+        data[1] = 'E';
+        data[2] = 'S';
+        data[3] = 0x1A;
+        data[4] = (byte) prgBanks;
+        data[5] = (byte) chrBanks;
+        data[6] = (byte) ((mapperId & 0x0F) << 4);
+        data[7] = (byte) (mapperId & 0xF0);
+        for (int i = 16; i < data.length; i++) {
+            data[i] = (byte) (i * fill);
+        }
+        return data;
+    }
+
+    @Test
+    public void testRomImageSlices() throws IOException {
+        byte[] data = rom(1, 2, 1, 3);
+        Path file = dir.resolve("a.nes");
+        Files.write(file, data);
+
+        RomImage image = RomImage.open(file);
+        assertEquals(1, image.getHeader().getMapperId());
+        ByteBuffer prg = image.prg();
+        ByteBuffer chr = image.chr();
+        assertEquals(32768, prg.remaining());
+        assertEquals(8192, chr.remaining());
+        assertTrue(prg.isReadOnly());
+        assertEquals(data[16], prg.get(0));
+        assertEquals(data[16 + 32768], chr.get(0));
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 16, data.length - 16);
+        assertEquals(crc.getValue(), image.crc32());
+        assertEquals(40, image.sha1().length());
+    }
+
+    @Test
+    public void testTruncatedRomRejected() throws IOException {
+        byte[] data = rom(0, 2, 1, 1);
+        Path file = dir.resolve("short.nes");
+        Files.write(file, Arrays.copyOf(data, data.length - 1));
+        assertThrows(IOException.class, () -> RomImage.open(file));
+    }
+
+    @Test
+    public void testCartridgeFromMappedRom() throws IOException {
+        Path file = dir.resolve("b.nes");
+        Files.write(file, rom(2, 4, 0, 5));
+        Cartridge cart = new Cartridge(file.toString());
+        assertEquals(2, cart.getMapperId());
+        assertEquals(4, cart.getPrgBanks());
+        assertEquals(0, cart.getChrBanks());
+    }
+
+    @Test
+    public void testScanSaveAndReload() throws IOException {
+        Path roms = Files.createDirectory(dir.resolve("roms"));
+        Files.write(roms.resolve("nrom.nes"), rom(0, 1, 1, 1));
+        Files.write(roms.resolve("mmc1.nes"), rom(1, 8, 2, 2));
+        Files.write(roms.resolve("mmc3.NES"), rom(4, 8, 16, 3));
+        Files.write(roms.resolve("notes.txt"), new byte[] {1, 2, 3});
+        Files.write(roms.resolve("broken.nes"), new byte[] {1, 2, 3});
+        Path index = dir.resolve("index.tsv");
+
+        RomCatalog catalog = RomCatalog.load(index);
+        assertEquals(4, catalog.scan(roms));
+        catalog.save();
+        assertEquals(3, catalog.getEntries().size());
+
+        RomCatalog reloaded = RomCatalog.load(index);
+        assertEquals(3, reloaded.getEntries().size());
+        assertEquals(1, reloaded.findByMapper(4).size());
+        RomCatalog.Entry mmc1 = reloaded.findByMapper(1).get(0);
+        assertEquals(8 * 16384, mmc1.getHeader().getPrgRomSize());
+        assertSame(mmc1, reloaded.findByCrc32(mmc1.getCrc32()));
+        assertSame(mmc1, reloaded.findBySha1(mmc1.getSha1().toUpperCase()));
+        assertEquals(1, mmc1.load().getMapperId());
+
+        // Unchanged files are not opened again (the broken one is retried)
+        assertEquals(1, reloaded.scan(roms));
+
+        // Changed and deleted files are picked up
+        Path nrom = roms.resolve("nrom.nes");
+        Files.write(nrom, rom(3, 2, 4, 7));
+        Files.setLastModifiedTime(nrom, FileTime.fromMillis(Files.getLastModifiedTime(nrom).toMillis() + 2000));
+        Files.delete(roms.resolve("mmc3.NES"));
+        assertEquals(2, reloaded.scan(roms));
+        assertEquals(1, reloaded.findByMapper(3).size());
+        assertTrue(reloaded.findByMapper(4).isEmpty());
+    }
+
+    @Test
+    public void testHashLookupsFollowScans() throws IOException {
+        Path roms = Files.createDirectory(dir.resolve("roms"));
+        byte[] game = rom(1, 8, 2, 5);
+        Files.write(roms.resolve("a.nes"), game);
+        Files.write(roms.resolve("b.nes"), game);
+        RomCatalog catalog = RomCatalog.load(dir.resolve("index.tsv"));
+        catalog.scan(roms);
+
+        // Copies of one ROM: the first path wins, as before
+        RomCatalog.Entry first = catalog.findByCrc32(catalog.getEntries().iterator().next().getCrc32());
+        assertEquals("a.nes", first.getPath().getFileName().toString());
+        long crc = first.getCrc32();
+        String sha1 = first.getSha1();
+
+        Files.delete(roms.resolve("a.nes"));
+        catalog.scan(roms);
+        assertEquals("b.nes", catalog.findByCrc32(crc).getPath().getFileName().toString());
+        assertSame(catalog.findByCrc32(crc), catalog.findBySha1(sha1));
+
+        // Rewritten with other contents: the old hashes are gone
+        Path b = roms.resolve("b.nes");
+        Files.write(b, rom(1, 8, 2, 6));
+        Files.setLastModifiedTime(b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 2000));
+        catalog.scan(roms);
+        assertNull(catalog.findByCrc32(crc));
+        assertNull(catalog.findBySha1(sha1));
+        assertNotNull(catalog.findByCrc32(catalog.getEntries().iterator().next().getCrc32()));
+    }
+
+    @Test
+    public void testNes20Sizes() throws IOException {
+        byte[] header = {'N', 'E', 'S', 0x1A, 0x02, 0x01, 0x40, 0x08, 0x31, 0x10, 0, 0, 0, 0, 0, 0};
+        RomHeader parsed = new RomHeader(header);
+        assertTrue(parsed.isNes20());
+        assertEquals(0x104, parsed.getMapperId());
+        assertEquals(3, parsed.getSubmapper());
+        assertEquals(2 * 16384, parsed.getPrgRomSize());
+        assertEquals(0x101 * 8192, parsed.getChrRomSize());
+
+        // Exponent form: 2^E * (2M + 1)
+        header[9] = 0x0F;
+        header[4] = (byte) ((14 << 2) | 1);
+        assertEquals((1 << 14) * 3, new RomHeader(header).getPrgRomSize());
+    }
+}
@@ -0,0 +1,200 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RomDatabaseTest {
+
+    private static byte[] rom(int mapperId, int flags6, int prgBanks, int chrBanks) {
+        byte[] data = new byte[16 + prgBanks * 16384 + chrBanks * 8192];
+        data[0] = 'N';
+        data[1] = 'E';
+        data[2] = 'S';
+        data[3] = 0x1A;
+        data[4] = (byte) prgBanks;
+        data[5] = (byte) chrBanks;
+        data[6] = (byte) (((mapperId & 0x0F) << 4) | flags6);
+        data[7] = (byte) (mapperId & 0xF0);
+        for (int i = 16; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        return data;
+    }
+
+    @Test
+    public void testParseAndFind() throws IOException {
+        RomDatabase db = new RomDatabase();
+        db.parse(new StringReader(
+                "# comment\n"
+                + "\n"
+                + "deadbeef mapper=4 mirroring=four prgnvram=8192 # Some Game\n"
+                + "00000001 battery=1\n"), "test");
+        assertEquals(2, db.size());
+
+        RomOverride fix = db.find(0xDEADBEEFL);
+        assertEquals("Some Game", fix.getName());
+        assertEquals(4, fix.getMapperId());
+        assertEquals(Cartridge.MIRROR_FOUR_SCREEN, fix.getMirroring());
+        assertEquals(8192, fix.getPrgNvramSize());
+        assertEquals(-1, fix.getSubmapper());
+        assertEquals(1, db.find(1).getBattery());
+        assertNull(db.find(2));
+    }
+
+    @Test
+    public void testMalformedLinesRejected() {
+        assertThrows(IOException.class,
+                () -> new RomDatabase().parse(new StringReader("deadbeef colour=red\n"), "test"));
+        assertThrows(IOException.class,
+                () -> new RomDatabase().parse(new StringReader("nothex mapper=1\n"), "test"));
+    }
+
+    @Test
+    public void testManyEntries() {
+        RomDatabase db = new RomDatabase();
+        RomOverride fix = new RomOverride(null, 1, -1, -1, -1, -1, -1, -1, -1);
+        for (int i = 0; i < 10000; i++) {
+            db.put(i * 0x10000, fix);
+        }
+        // Replacing keeps the size
+        db.put(0, new RomOverride(null, 2, -1, -1, -1, -1, -1, -1, -1));
+        assertEquals(10000, db.size());
+        for (int i = 1; i < 10000; i++) {
+            assertSame(fix, db.find(i * 0x10000L));
+        }
+        assertEquals(2, db.find(0).getMapperId());
+        assertNull(db.find(0x12345));
+    }
+
+    @Test
+    public void testInesDefaults() throws IOException {
+        RomHeader battery = RomImage.wrap(rom(1, 0x02, 8, 0)).getHeader();
+        assertFalse(battery.isNes20());
+        assertEquals(0, battery.getPrgRamSize());
+        assertEquals(8192, battery.getPrgNvramSize());
+        assertEquals(8192, battery.getChrRamSize());
+
+        // "DiskDude!" in bytes 7-15 must not leak into the mapper number
+        byte[] dirty = rom(2, 0, 2, 1);
+        byte[] text = "DiskDude!".getBytes();
+        System.arraycopy(text, 0, dirty, 7, text.length);
+        assertEquals(2, RomImage.wrap(dirty).getHeader().getMapperId());
+    }
+
+    @Test
+    public void testNes20RamSizes() throws IOException {
+        byte[] data = rom(4, 0, 2, 0);
+        data[7] |= 0x08;
+        data[10] = 0x70;  // 8KB PRG-NVRAM
+        data[11] = 0x09;  // 32KB CHR-RAM
+        RomHeader header = RomImage.wrap(data).getHeader();
+        assertTrue(header.isNes20());
+        assertEquals(0, header.getPrgRamSize());
+        assertEquals(8192, header.getPrgNvramSize());
+        assertEquals(32768, header.getChrRamSize());
+
+        Cartridge cart = new Cartridge(RomImage.wrap(data), header);
+        cart.ppuWrite(0x0000, (byte) 1);
+        assertEquals(1, cart.ppuRead(0x0000));
+        assertEquals(32, cart.getChrBankCount1k());
+    }
+
+    @Test
+    public void testOddRamSizesRoundUp() throws IOException {
+        // iNES byte 8 = 3 asks for 24KB, which NES 2.0 cannot store exactly
+        byte[] data = rom(1, 0x02, 8, 0);
+        data[8] = 3;
+        RomImage image = RomImage.wrap(data);
+        assertEquals(24576, image.getHeader().getPrgNvramSize());
+
+        RomDatabase db = new RomDatabase();
+        db.parse(new StringReader(String.format("%08x mapper=1 chrram=24000%n", image.crc32())), "test");
+        RomHeader fixed = db.correct(image);
+        assertEquals(32768, fixed.getPrgNvramSize());
+        assertEquals(32768, fixed.getChrRamSize());
+
+        db.parse(new StringReader(String.format("%08x prgram=100%n", image.crc32())), "test");
+        assertEquals(128, db.correct(image).getPrgRamSize());
+    }
+
+    @Test
+    public void testShippedEntriesMatchRealImages() throws IOException {
+        Set<Long> images = new HashSet<>();
+        try (DirectoryStream<Path> roms = Files.newDirectoryStream(Paths.get("rom"), "*.nes")) {
+            for (Path rom : roms) {
+                images.add(RomImage.open(rom).crc32());
+            }
+        }
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                RomDatabase.class.getResourceAsStream("romdb.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String entry = line.replaceFirst("#.*", "").trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                long crc = Long.parseLong(entry.split("\\s+")[0], 16);
+                assertTrue(images.contains(crc), "no image under rom/ for " + line);
+                assertNotNull(RomDatabase.getDefault().find(crc), line);
+            }
+        }
+    }
+
+    @Test
+    public void testOverrideAppliedOnLoad() throws IOException {
+        // Header claims NROM with horizontal mirroring
+        RomImage image = RomImage.wrap(rom(0, 0, 8, 16));
+        RomDatabase db = new RomDatabase();
+        db.parse(new StringReader(String.format("%08x mapper=4 submapper=1 mirroring=four battery=1 prgnvram=8192%n",
+                image.crc32())), "test");
+
+        RomHeader fixed = db.correct(image);
+        assertTrue(fixed.isNes20());
+        assertEquals(4, fixed.getMapperId());
+        assertEquals(1, fixed.getSubmapper());
+        assertTrue(fixed.isFourScreen());
+        assertTrue(fixed.hasBattery());
+        assertEquals(8192, fixed.getPrgNvramSize());
+        assertEquals(image.getHeader().getPrgRomSize(), fixed.getPrgRomSize());
+        assertEquals(image.getHeader().getChrRomSize(), fixed.getChrRomSize());
+
+        Cartridge cart = new Cartridge(image, fixed);
+        assertEquals(4, cart.getMapperId());
+        assertEquals(Cartridge.MIRROR_FOUR_SCREEN, cart.getMirrorMode());
+        assertArrayEquals(new int[] {0x000, 0x400, 0x800, 0xC00}, cart.getNametables());
+
+        // The mapper cannot take four-screen mirroring away
+        cart.cpuWrite(0xA000, (byte) 0);
+        assertEquals(Cartridge.MIRROR_FOUR_SCREEN, cart.getMirrorMode());
+
+        // Unknown ROMs keep their header
+        RomImage other = RomImage.wrap(rom(3, 1, 2, 4));
+        assertSame(other.getHeader(), db.correct(other));
+    }
+
+    @Test
+    public void testFourScreenNametablesAreDistinct() throws IOException {
+        Ppu ppu = new Ppu();
+        ppu.connectCartridge(new Cartridge(RomImage.wrap(rom(0, 0x08, 1, 1))));
+        for (int nt = 0; nt < 4; nt++) {
+            ppu.ppuWrite(0x2000 + nt * 0x400, (byte) (nt + 1));
+        }
+        for (int nt = 0; nt < 4; nt++) {
+            assertEquals(nt + 1, ppu.ppuRead(0x2000 + nt * 0x400));
+        }
+    }
+}
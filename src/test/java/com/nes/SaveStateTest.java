@@ -0,0 +1,146 @@
+package com.nes;
+
+import com.nes.cpu.Cpu;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SaveStateTest {
+
+    private static final IntUnaryOperator INPUT = frame ->
+            (frame % 50 < 3) ? Controller.BUTTON_START : (frame / 20 % 2 == 0 ? Controller.BUTTON_A | Controller.BUTTON_UP : Controller.BUTTON_LEFT);
+
+    private static byte[] ram(Console console) {
+        byte[] ram = new byte[0x800];
+        for (int addr = 0; addr < ram.length; addr++) {
+            ram[addr] = console.getBus().read(addr);
+        }
+        return ram;
+    }
+
+    private static byte[] save(Console console) {
+        ByteBuffer buffer = console.createStateBuffer();
+        console.saveState(buffer);
+        assertEquals(buffer.capacity(), buffer.position(), "stateSize() must match what is written");
+        return buffer.array();
+    }
+
+    @Test
+    public void testRestoredConsoleContinuesIdentically() throws IOException {
+        Console original = new Console(new Cartridge("rom/90tank.nes"));
+        original.runFrames(150, INPUT);
+        byte[] state = save(original);
+
+        Console restored = new Console(new Cartridge("rom/90tank.nes"));
+        restored.loadState(ByteBuffer.wrap(state));
+        assertArrayEquals(state, save(restored));
+
+        original.runFrames(200, INPUT);
+        restored.runFrames(200, INPUT);
+        assertArrayEquals(original.getFrameBuffer(), restored.getFrameBuffer());
+        assertArrayEquals(ram(original), ram(restored));
+        assertArrayEquals(save(original), save(restored));
+    }
+
+    @Test
+    public void testStateIsIndependentOfSchedulingAndRenderer() throws IOException {
+        Console original = new Console(new Cartridge("rom/f1.nes"));
+        original.runFrames(90, null);
+        // Stop mid-scanline and mid-instruction
+        original.getBus().run(12345);
+        byte[] state = save(original);
+
+        // Load into a per-cycle machine with the DOT renderer
+        Bus bus = new Bus();
+        Cpu cpu = new Cpu(Cpu.Core.TABLE);
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge("rom/f1.nes"));
+        cpu.connectBus(bus);
+        bus.reset();
+        ByteBuffer buffer = ByteBuffer.wrap(state);
+        buffer.position(8);
+        bus.loadState(buffer);
+
+        for (int i = 0; i < 60; i++) {
+            original.runFrame();
+            bus.runFrame();
+        }
+        assertArrayEquals(original.getFrameBuffer(), bus.getFrameBuffer());
+        assertEquals(original.getBus().getSystemClockCounter(), bus.getSystemClockCounter());
+        assertEquals(original.getCpu().pc, cpu.pc);
+    }
+
+    @Test
+    public void testChrRamAndTileCacheRestored() {
+        Cartridge cart = new Cartridge(new byte[16384], new byte[8192], 0, 1, 1, 0);
+        Console console = new Console(cart);
+        Ppu ppu = console.getPpu();
+
+        ppu.cpuWrite(0x2006, (byte) 0x00);
+        ppu.cpuWrite(0x2006, (byte) 0x10);
+        ppu.cpuWrite(0x2007, (byte) 0x5A);
+        byte[] state = save(console);
+
+        ppu.cpuWrite(0x2006, (byte) 0x00);
+        ppu.cpuWrite(0x2006, (byte) 0x10);
+        ppu.cpuWrite(0x2007, (byte) 0x00);
+        assertEquals(0x00, cart.getTileCache().planes(0x0010));
+
+        console.loadState(ByteBuffer.wrap(state));
+        assertEquals(0x5A, cart.ppuRead(0x0010));
+        assertEquals(0x5A, cart.getTileCache().planes(0x0010));
+    }
+
+    @Test
+    public void testRejectsForeignStates() throws IOException {
+        Console tank = new Console(new Cartridge("rom/90tank.nes"));
+        // 32KB PRG instead of 16KB
+        Console other = new Console(new Cartridge(new byte[32768], new byte[8192], 0));
+        byte[] state = save(tank);
+
+        assertThrows(IllegalArgumentException.class, () -> other.loadState(ByteBuffer.wrap(state)));
+
+        byte[] badMagic = state.clone();
+        badMagic[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> tank.loadState(ByteBuffer.wrap(badMagic)));
+
+        byte[] badVersion = state.clone();
+        badVersion[7] = 99;
+        assertThrows(IllegalArgumentException.class, () -> tank.loadState(ByteBuffer.wrap(badVersion)));
+    }
+
+    @Test
+    public void testSaveDoesNotAllocate() throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeAllocationCounting(threads);
+
+        Console console = new Console(new Cartridge("rom/90tank.nes"));
+        console.runFrames(30, null);
+        ByteBuffer buffer = console.createStateBuffer();
+        for (int i = 0; i < 1000; i++) {
+            buffer.clear();
+            console.saveState(buffer);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            buffer.clear();
+            console.saveState(buffer);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Leave room for the measurement itself, far below one state per save
+        assertTrue(allocated < 1024, "Allocated " + allocated + " bytes in 1000 saves");
+    }
+
+    private static void assumeAllocationCounting(com.sun.management.ThreadMXBean threads) {
+        org.junit.jupiter.api.Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+}
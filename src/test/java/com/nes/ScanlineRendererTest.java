@@ -0,0 +1,155 @@
+package com.nes;
+
+import com.nes.FrameEquivalence.Mode;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import static com.nes.FrameEquivalence.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the SCANLINE renderer produces the same frames as the DOT renderer.
+ */
+public class ScanlineRendererTest {
+
+    @Test
+    public void testFramesMatchDot90Tank() throws IOException {
+        assertSameFrames("rom/90tank.nes", 120, Mode.CATCH_UP, Mode.SCANLINE);
+    }
+
+    @Test
+    public void testFramesMatchDotF1() throws IOException {
+        // Split-scroll game: writes $2005/$2006 in the middle of the frame
+        assertSameFrames("rom/f1.nes", 120, Mode.CATCH_UP, Mode.SCANLINE);
+    }
+
+    /**
+     * CHR with tile 1 striped in every 8KB bank, differently in each bank.
+     */
+    private static byte[] stripedChr(int banks) {
+        byte[] chr = new byte[banks * 8192];
+        for (int bank = 0; bank < banks; bank++) {
+            for (int row = 0; row < 8; row++) {
+                chr[bank * 8192 + 16 + row] = (byte) (0xF0 >> bank);
+                chr[bank * 8192 + 16 + row + 8] = (byte) (0x3C >> bank);
+            }
+        }
+        return chr;
+    }
+
+    /**
+     * Fill the first nametable with tile 1, set visible background colors,
+     * select that nametable and zero the scroll.
+     */
+    private static void drawStripes(Ppu ppu) {
+        ppu.cpuWrite(0x2006, (byte) 0x20);
+        ppu.cpuWrite(0x2006, (byte) 0x00);
+        for (int i = 0; i < 960; i++) {
+            ppu.cpuWrite(0x2007, (byte) 0x01);
+        }
+        int[] colors = {0x0F, 0x16, 0x2A, 0x30};
+        ppu.cpuWrite(0x2006, (byte) 0x3F);
+        ppu.cpuWrite(0x2006, (byte) 0x00);
+        for (int color : colors) {
+            ppu.cpuWrite(0x2007, (byte) color);
+        }
+        ppu.cpuWrite(0x2000, (byte) 0x00);
+        ppu.cpuWrite(0x2005, (byte) 0x00);
+        ppu.cpuWrite(0x2005, (byte) 0x00);
+    }
+
+    private static int[] row(int[] frame, int line, int from, int to) {
+        return Arrays.copyOfRange(frame, line * 256 + from, line * 256 + to);
+    }
+
+    @Test
+    public void testMidScanlineWriteFallsBackToDot() {
+        Ppu[] ppus = new Ppu[2];
+        for (int n = 0; n < 2; n++) {
+            Bus bus = new Bus();
+            bus.insertCartridge(new Cartridge(new byte[16384], stripedChr(1), 0, 1));
+            Ppu ppu = bus.getPpu();
+            ppu.reset();
+            ppu.setRenderer(n == 0 ? Ppu.Renderer.DOT : Ppu.Renderer.SCANLINE);
+            drawStripes(ppu);
+            ppu.cpuWrite(0x2001, (byte) 0x0A);
+
+            // Run through the pre-render line so v is loaded from t, then
+            // change the fine X scroll in the middle of scanline 20
+            while (ppu.getScanline() != 261) {
+                ppu.clock();
+            }
+            while (ppu.getScanline() != 20 || ppu.getCycle() != 100) {
+                ppu.clock();
+            }
+            ppu.cpuWrite(0x2005, (byte) 0x03);
+            ppu.cpuWrite(0x2005, (byte) 0x00);
+            while (ppu.getScanline() != 240) {
+                ppu.clock();
+            }
+            ppus[n] = ppu;
+        }
+
+        int[] frame = ppus[0].getFrameBuffer();
+        assertArrayEquals(frame, ppus[1].getFrameBuffer());
+        // Line 20 starts like line 19 and ends like line 21
+        assertArrayEquals(row(frame, 19, 0, 64), row(frame, 20, 0, 64));
+        assertArrayEquals(row(frame, 21, 128, 256), row(frame, 20, 128, 256));
+        assertFalse(Arrays.equals(row(frame, 19, 128, 256), row(frame, 20, 128, 256)));
+    }
+
+    @Test
+    public void testMidScanlineBankSwitchMatchesDot() {
+        // CNROM program: wait for VBlank, then for sprite 0 hit on the next
+        // frame, then switch CHR banks in the middle of a line a few lines
+        // further down
+        int[] program = {
+            0x78,               // $8000 SEI
+            0x2C, 0x02, 0x20,   // $8001 BIT $2002
+            0x10, 0xFB,         // $8004 BPL $8001
+            0x2C, 0x02, 0x20,   // $8006 BIT $2002
+            0x70, 0xFB,         // $8009 BVS $8006
+            0x2C, 0x02, 0x20,   // $800B BIT $2002
+            0x50, 0xFB,         // $800E BVC $800B
+            0xA2, 0x47,         // $8010 LDX #$47
+            0xCA,               // $8012 DEX
+            0xD0, 0xFD,         // $8013 BNE $8012
+            0xA9, 0x01,         // $8015 LDA #$01
+            0x8D, 0x00, 0x80,   // $8017 STA $8000
+            0x4C, 0x1A, 0x80,   // $801A JMP $801A
+        };
+        byte[] prg = new byte[16384];
+        for (int i = 0; i < program.length; i++) {
+            prg[i] = (byte) program[i];
+        }
+        prg[0x3FFD] = (byte) 0x80;
+
+        Bus[] buses = new Bus[2];
+        for (int n = 0; n < 2; n++) {
+            Bus bus = createBus(new Cartridge(prg, stripedChr(2), 3, 1), n == 0 ? Mode.CATCH_UP : Mode.SCANLINE);
+            Ppu ppu = bus.getPpu();
+            drawStripes(ppu);
+            // Sprite 0 over the background at (50, 10)
+            ppu.cpuWrite(0x2003, (byte) 0x00);
+            for (int b : new int[] {10, 0x01, 0x00, 50}) {
+                ppu.cpuWrite(0x2004, (byte) b);
+            }
+            ppu.cpuWrite(0x2001, (byte) 0x1E);
+
+            // Run to the bank switch, then to the end of that frame's visible lines
+            for (int i = 0; i < 3 * Bus.FRAME_TICKS && bus.getCpu().pc != 0x801A; i++) {
+                bus.run(1);
+            }
+            assertEquals(0x801A, bus.getCpu().pc);
+            while (ppu.getScanline() != 240) {
+                bus.run(1);
+            }
+            buses[n] = bus;
+        }
+
+        int[] frame = buses[0].getFrameBuffer();
+        assertArrayEquals(frame, buses[1].getFrameBuffer());
+        // The top of the frame uses bank 0, the bottom bank 1
+        assertFalse(Arrays.equals(row(frame, 5, 0, 256), row(frame, 100, 0, 256)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.nes;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileCacheTest {
+
+    private static int reverse(int b) {
+        return Integer.reverse(b) >>> 24;
+    }
+
+    private static void assertMatchesPpuRead(Cartridge cart) {
+        TileCache cache = cart.getTileCache();
+        for (int addr = 0; addr < 0x2000; addr++) {
+            if ((addr & 0x08) != 0) continue;
+            int lo = cart.ppuRead(addr) & 0xFF;
+            int hi = cart.ppuRead(addr + 8) & 0xFF;
+            assertEquals(lo | (hi << 8), cache.planes(addr), "Planes at " + Integer.toHexString(addr));
+            // The plane select bit is ignored
+            assertEquals(cache.planes(addr), cache.planes(addr + 8));
+
+            int pixels = cache.pixels(addr);
+            for (int p = 0; p < 8; p++) {
+                int expected = ((lo >> (7 - p)) & 1) | (((hi >> (7 - p)) & 1) << 1);
+                assertEquals(expected, (pixels >> (14 - 2 * p)) & 0x03, "Pixel " + p + " at " + Integer.toHexString(addr));
+            }
+            // Flipped copy is the same row read right to left
+            int flippedLo = reverse(lo);
+            int flippedHi = reverse(hi);
+            for (int p = 0; p < 8; p++) {
+                int expected = ((flippedLo >> (7 - p)) & 1) | (((flippedHi >> (7 - p)) & 1) << 1);
+                assertEquals(expected, (pixels >>> (30 - 2 * p)) & 0x03, "Flipped pixel " + p);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeMatchesChrRom() {
+        byte[] chr = new byte[8192];
+        for (int i = 0; i < chr.length; i++) {
+            chr[i] = (byte) (i * 31 + (i >> 5));
+        }
+        assertMatchesPpuRead(new Cartridge(new byte[16384], chr, 0));
+    }
+
+    @Test
+    public void testBankSwitchMapper3() {
+        // 4 x 8KB CHR banks, each filled with its own bank number pattern
+        byte[] chr = new byte[4 * 8192];
+        for (int i = 0; i < chr.length; i++) {
+            chr[i] = (byte) ((i >> 13) * 0x41 + i);
+        }
+        Cartridge cart = new Cartridge(new byte[16384], chr, 3, 0, 1, 4);
+
+        for (int bank : new int[] { 2, 0, 3, 3, 1 }) {
+            cart.cpuWrite(0x8000, (byte) bank);
+            assertMatchesPpuRead(cart);
+        }
+    }
+
+    @Test
+    public void testChrRamWriteInvalidatesRow() {
+        Cartridge cart = new Cartridge(new byte[16384], new byte[8192], 0, 0, 1, 0);
+        TileCache cache = cart.getTileCache();
+        assertEquals(0, cache.planes(0x0123 & ~0x08));
+
+        cart.ppuWrite(0x012B, (byte) 0x81);  // Tile 0x12, row 3, high plane
+        assertEquals(0x8100, cache.planes(0x0123));
+        assertEquals(0x0000, cache.planes(0x0124));
+        // Pixels 0 and 7 are color 2, symmetric so the flipped half matches
+        assertEquals(0x80028002, cache.pixels(0x0123));
+        assertMatchesPpuRead(cart);
+    }
+
+    @Test
+    public void testShortChrReadsAsZero() {
+        // Smaller than one 8KB bank: the rest of the pattern space reads as 0
+        byte[] chr = new byte[2048];
+        java.util.Arrays.fill(chr, (byte) 0xFF);
+        assertMatchesPpuRead(new Cartridge(new byte[16384], chr, 0));
+    }
+}
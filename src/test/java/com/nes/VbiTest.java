@@ -71,6 +71,18 @@ public class VbiTest {
         // TODO: Implement more precise timing test if needed
     }
 
+    @Test
+    public void testLateNmiEnableCatchUp() {
+        bus.setCatchUp(true);
+        testLateNmiEnable();
+    }
+
+    @Test
+    public void testNmiDoesNotInterruptInstructionCatchUp() {
+        bus.setCatchUp(true);
+        testNmiDoesNotInterruptInstruction();
+    }
+
     @Test
     public void testNmiDoesNotInterruptInstruction() {
         // Setup a long instruction: e.g., ADC ABS,X (4+1 cycles)
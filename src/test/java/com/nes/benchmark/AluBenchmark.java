@@ -0,0 +1,78 @@
+package com.nes.benchmark;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+import com.nes.cpu.Cpu;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instructions per second on a flag-heavy loop: ADC, SBC, ROL, EOR, CMP and
+ * BIT, each followed by a branch on the flags they set. This is the case
+ * lazy flag evaluation targets, where most computed flags are never read.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=Alu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class AluBenchmark {
+
+    private static final int INSTRUCTIONS = 10000;
+
+    // Runs from RAM at $0200 so every core interprets it
+    private static final int[] PROGRAM = {
+            0x18,             // $0200 CLC
+            0xA9, 0x00,       // $0201 LDA #$00
+            0xA2, 0x00,       // $0203 LDX #$00
+            0x69, 0x37,       // $0205 ADC #$37
+            0xE9, 0x11,       // $0207 SBC #$11
+            0x2A,             // $0209 ROL A
+            0x49, 0x5A,       // $020A EOR #$5A
+            0xC9, 0x80,       // $020C CMP #$80
+            0x90, 0x01,       // $020E BCC $0211
+            0x6A,             // $0210 ROR A
+            0x24, 0x10,       // $0211 BIT $10
+            0x70, 0x00,       // $0213 BVS $0215
+            0xE8,             // $0215 INX
+            0xD0, 0xED,       // $0216 BNE $0205
+            0x4C, 0x00, 0x02, // $0218 JMP $0200
+    };
+
+    @Param({"TABLE", "SWITCH"})
+    public Cpu.Core core;
+
+    private Bus bus;
+    private Cpu cpu;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bus = new Bus();
+        cpu = new Cpu(core);
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge("rom/nestest.nes"));
+        cpu.connectBus(bus);
+        bus.reset();
+
+        for (int i = 0; i < PROGRAM.length; i++) {
+            bus.write(0x0200 + i, (byte) PROGRAM[i]);
+        }
+        bus.write(0x0010, (byte) 0xC3);
+        cpu.pc = 0x0200;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public int alu() {
+        long end = cpu.getInstructionCount() + INSTRUCTIONS;
+        while (cpu.getInstructionCount() < end) {
+            cpu.step();
+        }
+        return cpu.getA();
+    }
+}
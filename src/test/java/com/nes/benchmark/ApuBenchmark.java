@@ -0,0 +1,71 @@
+package com.nes.benchmark;
+
+import com.nes.Apu;
+import com.nes.Cartridge;
+import com.nes.Console;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one frame of audio: the APU alone with every channel playing
+ * (worst case), and a whole console frame with and without draining the
+ * sample buffer, to put the APU share of the frame time in perspective.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=Apu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApuBenchmark {
+
+    // CPU cycles per NTSC frame
+    private static final int FRAME_CYCLES = 29781;
+
+    private Apu apu;
+    private long cycle;
+    private Console console;
+    private final short[] samples = new short[4096];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        apu = new Apu();
+        apu.reset();
+        apu.cpuWrite(0x4015, (byte) 0x0F);
+        // Pulse 1 and 2: 440 Hz and 660 Hz, constant volume
+        apu.cpuWrite(0x4000, (byte) 0xBF);
+        apu.cpuWrite(0x4002, (byte) 0xFD);
+        apu.cpuWrite(0x4003, (byte) 0x00);
+        apu.cpuWrite(0x4004, (byte) 0x7F);
+        apu.cpuWrite(0x4006, (byte) 0xA8);
+        apu.cpuWrite(0x4007, (byte) 0x00);
+        // Triangle 220 Hz
+        apu.cpuWrite(0x4008, (byte) 0xFF);
+        apu.cpuWrite(0x400A, (byte) 0xFD);
+        apu.cpuWrite(0x400B, (byte) 0x00);
+        // Noise at a short period
+        apu.cpuWrite(0x400C, (byte) 0x3F);
+        apu.cpuWrite(0x400E, (byte) 0x04);
+        apu.cpuWrite(0x400F, (byte) 0x00);
+
+        console = new Console(new Cartridge("rom/90tank.nes"));
+        console.runFrames(300, null);
+    }
+
+    @Benchmark
+    public int apuFrame() {
+        cycle += FRAME_CYCLES;
+        apu.run(cycle);
+        return apu.readSamples(samples, 0, samples.length);
+    }
+
+    @Benchmark
+    public int consoleFrame() {
+        console.runFrame();
+        return console.getBus().getApu().readSamples(samples, 0, samples.length);
+    }
+}
@@ -0,0 +1,55 @@
+package com.nes.benchmark;
+
+import com.nes.Cartridge;
+import com.nes.Console;
+import com.nes.ConsoleFarm;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate frames per second of independent 90tank.nes consoles run on a
+ * ConsoleFarm with 1, 2, 4 and 8 worker threads. Each invocation runs
+ * 16 consoles for 60 frames; near-linear scaling up to the core count is
+ * the expected result.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=ConsoleFarm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsoleFarmBenchmark {
+
+    private static final int CONSOLES = 16;
+    private static final int FRAMES = 60;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ConsoleFarm farm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        farm = new ConsoleFarm(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        farm.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONSOLES * FRAMES)
+    public List<Integer> frames() {
+        return farm.run(CONSOLES,
+                i -> new Console(new Cartridge("rom/90tank.nes")),
+                (i, console) -> {
+                    console.runFrames(FRAMES, null);
+                    return console.getFrameBuffer()[128 * 256 + 128];
+                });
+    }
+}
@@ -0,0 +1,76 @@
+package com.nes.benchmark;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+import com.nes.cpu.Cpu;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instructions per second of the TABLE, SWITCH, RECOMPILER and DECODED cores on nestest.nes.
+ * RECOMPILER only differs from SWITCH in stepped(), as clock() always interprets.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=CpuDispatch
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuDispatchBenchmark {
+
+    // Roughly the length of the official-opcode section of nestest
+    private static final int INSTRUCTIONS = 5000;
+
+    @Param({"TABLE", "SWITCH", "RECOMPILER", "DECODED"})
+    public Cpu.Core core;
+
+    private Bus bus;
+    private Cpu cpu;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bus = new Bus();
+        cpu = new Cpu(core);
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge("rom/nestest.nes"));
+        cpu.connectBus(bus);
+        bus.reset();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public int nestest() {
+        // Restart the automated mode entry point every invocation
+        cpu.pc = 0xC000;
+        cpu.setSp((byte) 0xFD);
+        cpu.setStatus((byte) 0x24);
+        cpu.cycles = 0;
+
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            do {
+                cpu.clock();
+            } while (cpu.cycles != 0);
+        }
+        return cpu.pc;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public int stepped() {
+        // Same program, one step() per instruction or compiled block
+        cpu.pc = 0xC000;
+        cpu.setSp((byte) 0xFD);
+        cpu.setStatus((byte) 0x24);
+        cpu.cycles = 0;
+
+        long end = cpu.getInstructionCount() + INSTRUCTIONS;
+        while (cpu.getInstructionCount() < end) {
+            cpu.step();
+        }
+        return cpu.pc;
+    }
+}
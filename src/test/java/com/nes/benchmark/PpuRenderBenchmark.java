@@ -0,0 +1,68 @@
+package com.nes.benchmark;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+import com.nes.Controller;
+import com.nes.Ppu;
+import com.nes.cpu.Cpu;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PPU-only frames per second of the DOT and SCANLINE renderers, driven
+ * per dot or through Ppu.run(), on a 90tank.nes screen with background
+ * and sprites.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=PpuRender
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PpuRenderBenchmark {
+
+    @Param({"DOT", "SCANLINE"})
+    public Ppu.Renderer renderer;
+
+    private Ppu ppu;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Bus bus = new Bus();
+        Cpu cpu = new Cpu();
+        bus.connectCpu(cpu);
+        bus.insertCartridge(new Cartridge("rom/90tank.nes"));
+        cpu.connectBus(bus);
+        bus.reset();
+        bus.setCatchUp(true);
+
+        // Get into gameplay so nametables and OAM are populated
+        for (int frame = 0; frame < 300; frame++) {
+            bus.getController(0).setButtonPressed(Controller.BUTTON_START, frame >= 60 && frame < 70);
+            bus.runFrame();
+        }
+
+        ppu = bus.getPpu();
+        ppu.setRenderer(renderer);
+    }
+
+    // One clock() call per dot
+    @Benchmark
+    public int clockLoop() {
+        for (int i = 0; i < Bus.FRAME_TICKS; i++) {
+            ppu.clock();
+        }
+        return ppu.getFrameBuffer()[128 * 256 + 128];
+    }
+
+    // Batched, as the catch-up scheduler drives it
+    @Benchmark
+    public int run() {
+        ppu.run(Bus.FRAME_TICKS);
+        return ppu.getFrameBuffer()[128 * 256 + 128];
+    }
+}
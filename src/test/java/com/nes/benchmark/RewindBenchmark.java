@@ -0,0 +1,56 @@
+package com.nes.benchmark;
+
+import com.nes.Cartridge;
+import com.nes.Console;
+import com.nes.Controller;
+import com.nes.RewindBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of capturing a rewind state (save, XOR delta, RLE,
+ * store) on a running 90tank.nes, and of stepping back one frame.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=Rewind
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewindBenchmark {
+
+    private Console console;
+    private RewindBuffer rewind;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = new Console(new Cartridge("rom/90tank.nes"));
+        console.runFrames(300, frame -> (frame % 60 < 2) ? Controller.BUTTON_START : Controller.BUTTON_A);
+        rewind = console.enableRewind();
+        // Fill some history so captures hit deltas and eviction as in play
+        for (int i = 0; i < 120; i++) {
+            console.runFrame();
+        }
+    }
+
+    @Benchmark
+    public RewindBuffer capture() {
+        rewind.capture();
+        return rewind;
+    }
+
+    @Benchmark
+    public boolean rewindOneFrame() {
+        // Keep enough history around for the whole measurement
+        if (rewind.getFrameCount() < 2) {
+            for (int i = 0; i < 120; i++) {
+                console.runFrame();
+            }
+        }
+        return rewind.rewind();
+    }
+}
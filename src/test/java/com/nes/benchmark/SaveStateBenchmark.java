@@ -0,0 +1,49 @@
+package com.nes.benchmark;
+
+import com.nes.Cartridge;
+import com.nes.Console;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing and restoring a full save state of a running 90tank.nes
+ * into a reused buffer.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=SaveState
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveStateBenchmark {
+
+    private Console console;
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = new Console(new Cartridge("rom/90tank.nes"));
+        console.runFrames(300, null);
+        buffer = console.createStateBuffer();
+        console.saveState(buffer);
+    }
+
+    @Benchmark
+    public ByteBuffer save() {
+        buffer.clear();
+        console.saveState(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer load() {
+        buffer.rewind();
+        console.loadState(buffer);
+        return buffer;
+    }
+}
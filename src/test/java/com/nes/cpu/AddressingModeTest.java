@@ -43,7 +43,7 @@ public class AddressingModeTest {
 
     @Test
     public void testZeroPageX() {
-        cpu.x = 0x05;
+        cpu.setX(0x05);
         bus.write(0x8000, (byte) 0x10); // ZP address 0x10
         int addr = cpu.ZPX();
         assertEquals(0x0015, addr);
@@ -59,7 +59,7 @@ public class AddressingModeTest {
     
     @Test
     public void testIndirectX() {
-        cpu.x = 0x04;
+        cpu.setX(0x04);
         bus.write(0x8000, (byte) 0x20); // Base ZP address
         
         // Effective ZP address = 0x20 + 0x04 = 0x24
@@ -26,7 +26,7 @@ public class BranchJumpTest {
     @Test
     public void testBranchTaken() {
         // PC at 0x8000
-        cpu.status = 0; // Clear flags (Z=0)
+        cpu.setStatus((byte) 0); // Clear flags (Z=0)
         
         // BNE +5 (0x05)
         // BNE is taken if Z=0
@@ -38,7 +38,7 @@ public class BranchJumpTest {
     @Test
     public void testBranchNotTaken() {
         // PC at 0x8000
-        cpu.status |= Cpu.Z; // Set Z=1
+        cpu.setStatus((byte) (cpu.getStatus() | Cpu.Z)); // Set Z=1
         
         // BNE +5
         // BNE is NOT taken if Z=1
@@ -51,7 +51,7 @@ public class BranchJumpTest {
     public void testBranchBackward() {
         // PC at 0x8010
         cpu.pc = 0x8010;
-        cpu.status = 0;
+        cpu.setStatus((byte) 0);
         
         // BNE -5 (0xFB) -> Signed int -5
         cpu.BNE(-5);
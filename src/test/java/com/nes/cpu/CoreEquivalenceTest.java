@@ -0,0 +1,292 @@
+package com.nes.cpu;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+import com.nes.Console;
+import com.nes.Controller;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the TABLE, SWITCH, RECOMPILER and DECODED cores side by side and
+ * checks they never diverge.
+ */
+public class CoreEquivalenceTest {
+
+    private static Cpu createCpu(Cpu.Core core, Bus bus, Cartridge cart) {
+        Cpu cpu = new Cpu(core);
+        bus.connectCpu(cpu);
+        if (cart != null) {
+            bus.insertCartridge(cart);
+        }
+        cpu.connectBus(bus);
+        cpu.reset();
+        return cpu;
+    }
+
+    private static void step(Cpu cpu) {
+        do {
+            cpu.clock();
+        } while (cpu.cycles != 0);
+    }
+
+    @Test
+    public void testDefaultCoreIsTable() {
+        assertEquals(Cpu.Core.TABLE, new Cpu().getCore());
+        assertEquals(Cpu.Core.SWITCH, new Cpu(Cpu.Core.SWITCH).getCore());
+    }
+
+    @Test
+    public void testNestestLockstep() throws IOException {
+        Bus tableBus = new Bus();
+        Bus fastBus = new Bus();
+        Cpu table = createCpu(Cpu.Core.TABLE, tableBus, new Cartridge("rom/nestest.nes"));
+        Cpu fast = createCpu(Cpu.Core.SWITCH, fastBus, new Cartridge("rom/nestest.nes"));
+
+        // nestest automated mode starts at $C000
+        table.pc = 0xC000;
+        fast.pc = 0xC000;
+
+        for (int i = 0; i < 10000; i++) {
+            step(table);
+            step(fast);
+
+            assertEquals(table.opcode, fast.opcode, "Opcode at step " + i);
+            assertEquals(table.pc, fast.pc, "PC at step " + i);
+            assertEquals(table.getA(), fast.getA(), "A at step " + i);
+            assertEquals(table.getX(), fast.getX(), "X at step " + i);
+            assertEquals(table.getY(), fast.getY(), "Y at step " + i);
+            assertEquals(table.getSp(), fast.getSp(), "SP at step " + i);
+            assertEquals(table.getStatus(), fast.getStatus(), "Status at step " + i);
+        }
+
+        // Memory side effects must match as well
+        for (int addr = 0; addr < 0x0800; addr++) {
+            assertEquals(tableBus.read(addr), fastBus.read(addr), "RAM at " + Integer.toHexString(addr));
+        }
+    }
+
+    @Test
+    public void testRecompilerMatchesInterpreter() throws IOException {
+        Bus switchBus = new Bus();
+        Bus compiledBus = new Bus();
+        Cpu interpreted = createCpu(Cpu.Core.SWITCH, switchBus, new Cartridge("rom/nestest.nes"));
+        Cpu compiled = createCpu(Cpu.Core.RECOMPILER, compiledBus, new Cartridge("rom/nestest.nes"));
+        interpreted.pc = 0xC000;
+        compiled.pc = 0xC000;
+
+        // A block runs several instructions per step(): compare whenever
+        // both cores have used the same number of cycles
+        long switchCycles = 0;
+        long compiledCycles = 0;
+        while (compiled.getInstructionCount() < 8990) {
+            compiledCycles += compiled.step();
+            while (switchCycles < compiledCycles) {
+                switchCycles += interpreted.step();
+            }
+            String msg = "at cycle " + compiledCycles;
+            assertEquals(switchCycles, compiledCycles, msg);
+            assertEquals(interpreted.getInstructionCount(), compiled.getInstructionCount(), msg);
+            assertEquals(interpreted.pc, compiled.pc, "PC " + msg);
+            assertEquals(interpreted.getA(), compiled.getA(), "A " + msg);
+            assertEquals(interpreted.getX(), compiled.getX(), "X " + msg);
+            assertEquals(interpreted.getY(), compiled.getY(), "Y " + msg);
+            assertEquals(interpreted.getSp(), compiled.getSp(), "SP " + msg);
+            assertEquals(interpreted.getStatus(), compiled.getStatus(), "Status " + msg);
+        }
+        assertTrue(compiled.getRecompiler().getBlockCount() > 0);
+
+        for (int addr = 0; addr < 0x0800; addr++) {
+            assertEquals(switchBus.read(addr), compiledBus.read(addr), "RAM at " + Integer.toHexString(addr));
+        }
+        // nestest's result bytes
+        assertEquals(0x00, compiledBus.read(0x0002));
+        assertEquals(0x00, compiledBus.read(0x0003));
+    }
+
+    @Test
+    public void testRecompilerRendersSameFrames() throws IOException {
+        Console interpreted = new Console(new Cartridge("rom/90tank.nes"), Cpu.Core.SWITCH);
+        Console compiled = new Console(new Cartridge("rom/90tank.nes"), Cpu.Core.RECOMPILER);
+        for (int frame = 0; frame < 240; frame++) {
+            // Press Start now and then to get past the title screen
+            int buttons = (frame / 30) % 2 == 1 ? Controller.BUTTON_START : 0;
+            interpreted.getController(0).setState(buttons);
+            compiled.getController(0).setState(buttons);
+            interpreted.runFrame();
+            compiled.runFrame();
+            assertArrayEquals(interpreted.getFrameBuffer(), compiled.getFrameBuffer(), "Frame " + frame);
+        }
+        assertTrue(compiled.getCpu().getRecompiler().getBlockCount() > 0);
+    }
+
+    /**
+     * The CPU cycle and pushed PC of each of the first NMIs taken by a
+     * hot RAM-only loop in PRG-ROM.
+     */
+    private static List<Long> nmiTrace(Cpu.Core core) {
+        byte[] prg = new byte[16384];
+        int[] program = {
+            0x78,                           // $8000 SEI
+            0xA9, 0x80, 0x8D, 0x00, 0x20,   // $8001 LDA #$80 / STA $2000: NMI on
+            0xE6, 0x00,                     // $8006 INC $00
+            0xA5, 0x01,                     //       LDA $01
+            0x18,                           //       CLC
+            0x69, 0x07,                     //       ADC #$07
+            0x85, 0x01,                     //       STA $01
+            0xA6, 0x00,                     //       LDX $00
+            0xE8,                           //       INX
+            0x86, 0x02,                     //       STX $02
+            0xA4, 0x01,                     //       LDY $01
+            0xC8,                           //       INY
+            0x84, 0x03,                     //       STY $03
+            0x4C, 0x06, 0x80,               //       JMP $8006
+        };
+        for (int i = 0; i < program.length; i++) {
+            prg[i] = (byte) program[i];
+        }
+        prg[0x100] = (byte) 0xE6;  // $8100 INC $10
+        prg[0x101] = 0x10;
+        prg[0x102] = 0x40;         //       RTI
+        prg[0x3FFA] = 0x00;
+        prg[0x3FFB] = (byte) 0x81;
+        prg[0x3FFC] = 0x00;
+        prg[0x3FFD] = (byte) 0x80;
+
+        Bus bus = new Bus();
+        Cpu cpu = createCpu(core, bus, new Cartridge(prg, new byte[8192], 0));
+        bus.reset();
+        bus.setCatchUp(true);
+
+        List<Long> trace = new ArrayList<>();
+        int previous = cpu.pc;
+        while (trace.size() < 2 * 8) {
+            bus.run(1);
+            if (cpu.pc == 0x8100 && previous != 0x8100) {
+                int sp = cpu.getSp() & 0xFF;
+                int pushed = (bus.read(0x0100 | ((sp + 2) & 0xFF)) & 0xFF)
+                        | (bus.read(0x0100 | ((sp + 3) & 0xFF)) & 0xFF) << 8;
+                trace.add(bus.getCpuCycle());
+                trace.add((long) pushed);
+            }
+            previous = cpu.pc;
+        }
+        if (core == Cpu.Core.RECOMPILER) {
+            assertTrue(cpu.getRecompiler().getBlockCount() > 0);
+        }
+        return trace;
+    }
+
+    @Test
+    public void testRecompilerTakesNmiLikeInterpreter() {
+        assertEquals(nmiTrace(Cpu.Core.SWITCH), nmiTrace(Cpu.Core.RECOMPILER));
+    }
+
+    @Test
+    public void testDecodedMatchesTable() throws IOException {
+        Bus tableBus = new Bus();
+        Bus decodedBus = new Bus();
+        Cpu table = createCpu(Cpu.Core.TABLE, tableBus, new Cartridge("rom/nestest.nes"));
+        Cpu decoded = createCpu(Cpu.Core.DECODED, decodedBus, new Cartridge("rom/nestest.nes"));
+        table.pc = 0xC000;
+        decoded.pc = 0xC000;
+
+        for (int i = 0; i < 8990; i++) {
+            assertEquals(table.step(), decoded.step(), "Cycles at step " + i);
+            assertEquals(table.opcode, decoded.opcode, "Opcode at step " + i);
+            assertEquals(table.pc, decoded.pc, "PC at step " + i);
+            assertEquals(table.getA(), decoded.getA(), "A at step " + i);
+            assertEquals(table.getX(), decoded.getX(), "X at step " + i);
+            assertEquals(table.getY(), decoded.getY(), "Y at step " + i);
+            assertEquals(table.getSp(), decoded.getSp(), "SP at step " + i);
+            assertEquals(table.getStatus(), decoded.getStatus(), "Status at step " + i);
+        }
+        for (int addr = 0; addr < 0x0800; addr++) {
+            assertEquals(tableBus.read(addr), decodedBus.read(addr), "RAM at " + Integer.toHexString(addr));
+        }
+    }
+
+    @Test
+    public void testDecodedFollowsBankSwitches() {
+        // UxROM, 4 x 16KB: banks 0 and 1 hold "LDA #bank+$11; RTS" at 0x8000
+        byte[] prg = new byte[4 * 16384];
+        for (int bank = 0; bank < 2; bank++) {
+            prg[bank * 16384] = (byte) 0xA9;
+            prg[bank * 16384 + 1] = (byte) (0x11 * (bank + 1));
+            prg[bank * 16384 + 2] = 0x60;
+        }
+        // Fixed bank at 0xC000: call 0x8000 with each bank mapped, twice over
+        int[] program = {
+            0xA2, 0x00, 0x8E, 0x00, 0x80,   // LDX #0; STX $8000
+            0x20, 0x00, 0x80,               // JSR $8000
+            0x85, 0x10,                     // STA $10
+            0xA2, 0x01, 0x8E, 0x00, 0x80,   // LDX #1; STX $8000
+            0x20, 0x00, 0x80,               // JSR $8000
+            0x85, 0x11,                     // STA $11
+            0xE6, 0x12,                     // INC $12
+            0x4C, 0x00, 0xC0,               // JMP $C000
+        };
+        int fixed = 3 * 16384;
+        for (int i = 0; i < program.length; i++) {
+            prg[fixed + i] = (byte) program[i];
+        }
+        prg[fixed + 0x3FFC] = 0x00;
+        prg[fixed + 0x3FFD] = (byte) 0xC0;
+
+        Bus bus = new Bus();
+        Cpu cpu = createCpu(Cpu.Core.DECODED, bus, new Cartridge(prg, new byte[8192], 2));
+        while (bus.read(0x0012) < 2) {
+            cpu.step();
+        }
+        assertEquals(0x11, bus.read(0x0010));
+        assertEquals(0x22, bus.read(0x0011));
+    }
+
+    @Test
+    public void testEveryOpcodeMatchesTable() {
+        // Execute each opcode once from an identical, non-trivial machine state
+        for (int op = 0; op < 256; op++) {
+            Bus tableBus = new Bus();
+            Bus fastBus = new Bus();
+            Cpu table = createCpu(Cpu.Core.TABLE, tableBus, null);
+            Cpu fast = createCpu(Cpu.Core.SWITCH, fastBus, null);
+            prepare(table, tableBus, op);
+            prepare(fast, fastBus, op);
+
+            table.clock();
+            fast.clock();
+
+            String msg = "Opcode " + Integer.toHexString(op);
+            assertEquals(table.cycles, fast.cycles, msg);
+            assertEquals(table.pc, fast.pc, msg);
+            assertEquals(table.getA(), fast.getA(), msg);
+            assertEquals(table.getX(), fast.getX(), msg);
+            assertEquals(table.getY(), fast.getY(), msg);
+            assertEquals(table.getSp(), fast.getSp(), msg);
+            assertEquals(table.getStatus(), fast.getStatus(), msg);
+            for (int addr = 0; addr < 0x0800; addr++) {
+                assertEquals(tableBus.read(addr), fastBus.read(addr), msg + " RAM at " + Integer.toHexString(addr));
+            }
+        }
+    }
+
+    private static void prepare(Cpu cpu, Bus bus, int op) {
+        for (int addr = 0; addr < 0x0800; addr++) {
+            bus.write(addr, (byte) (addr * 7 + 3));
+        }
+        bus.write(0xFFFE, (byte) 0x00);
+        bus.write(0xFFFF, (byte) 0x90);
+        cpu.pc = 0x0400;
+        bus.write(0x0400, (byte) op);
+        bus.write(0x0401, (byte) 0x40);
+        bus.write(0x0402, (byte) 0x02);
+        cpu.setA((byte) 0x81);
+        cpu.setX((byte) 0x13);
+        cpu.setY((byte) 0xF2);
+        cpu.setSp((byte) 0xF0);
+        cpu.setStatus((byte) 0xA5);
+    }
+}
@@ -26,10 +26,10 @@ public class CpuTest {
         cpu.reset();
 
         assertEquals(0x8000, cpu.pc, "PC should be loaded from reset vector");
-        assertEquals(0, cpu.a, "Accumulator should be 0");
-        assertEquals(0, cpu.x, "X register should be 0");
-        assertEquals(0, cpu.y, "Y register should be 0");
-        assertEquals((byte) 0xFD, cpu.sp, "Stack Pointer should be 0xFD");
+        assertEquals(0, cpu.getA(), "Accumulator should be 0");
+        assertEquals(0, cpu.getX(), "X register should be 0");
+        assertEquals(0, cpu.getY(), "Y register should be 0");
+        assertEquals((byte) 0xFD, cpu.getSp(), "Stack Pointer should be 0xFD");
         
         // Check Unused flag is set
         assertEquals(1, cpu.getFlag(Cpu.U), "Unused flag should be set");
@@ -31,26 +31,26 @@ public class InstructionTest {
         // Execute LDA with address 0x1000
         cpu.LDA(0x1000);
         
-        assertEquals(0x55, cpu.a);
+        assertEquals(0x55, cpu.getA());
         assertEquals(0, cpu.getFlag(Cpu.Z));
         assertEquals(0, cpu.getFlag(Cpu.N));
         
         // Test Zero Flag
         bus.write(0x1001, (byte) 0x00);
         cpu.LDA(0x1001);
-        assertEquals(0x00, cpu.a);
+        assertEquals(0x00, cpu.getA());
         assertEquals(1, cpu.getFlag(Cpu.Z));
         
         // Test Negative Flag
         bus.write(0x1002, (byte) 0x80);
         cpu.LDA(0x1002);
-        assertEquals((byte)0x80, cpu.a);
+        assertEquals((byte)0x80, cpu.getA());
         assertEquals(1, cpu.getFlag(Cpu.N));
     }
 
     @Test
     public void testSTA() {
-        cpu.a = 0x42;
+        cpu.setA(0x42);
         cpu.STA(0x0200);
         
         assertEquals(0x42, bus.read(0x0200));
@@ -60,20 +60,20 @@ public class InstructionTest {
     public void testLDX_LDY() {
         bus.write(0x100, (byte) 10);
         cpu.LDX(0x100);
-        assertEquals(10, cpu.x);
+        assertEquals(10, cpu.getX());
         
         bus.write(0x101, (byte) 20);
         cpu.LDY(0x101);
-        assertEquals(20, cpu.y);
+        assertEquals(20, cpu.getY());
     }
     
     @Test
     public void testSTX_STY() {
-        cpu.x = 15;
+        cpu.setX(15);
         cpu.STX(0x0300);
         assertEquals(15, bus.read(0x0300));
         
-        cpu.y = 25;
+        cpu.setY(25);
         cpu.STY(0x0301);
         assertEquals(25, bus.read(0x0301));
     }
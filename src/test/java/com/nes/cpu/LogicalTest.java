@@ -25,54 +25,54 @@ public class LogicalTest {
 
     @Test
     public void testAND() {
-        cpu.a = (byte) 0xFF; // 1111 1111
+        cpu.setA((byte) 0xFF); // 1111 1111
         bus.write(0x1000, (byte) 0x0F); // 0000 1111
         cpu.AND(0x1000);
         
-        assertEquals(0x0F, cpu.a);
+        assertEquals(0x0F, cpu.getA());
         assertEquals(0, cpu.getFlag(Cpu.Z));
         assertEquals(0, cpu.getFlag(Cpu.N));
         
         // Test Zero
-        cpu.a = (byte) 0xF0;
+        cpu.setA((byte) 0xF0);
         bus.write(0x1001, (byte) 0x0F);
         cpu.AND(0x1001);
-        assertEquals(0x00, cpu.a);
+        assertEquals(0x00, cpu.getA());
         assertEquals(1, cpu.getFlag(Cpu.Z));
     }
 
     @Test
     public void testORA() {
-        cpu.a = (byte) 0xF0; // 1111 0000
+        cpu.setA((byte) 0xF0); // 1111 0000
         bus.write(0x1000, (byte) 0x0F); // 0000 1111
         cpu.ORA(0x1000);
         
-        assertEquals((byte) 0xFF, cpu.a);
+        assertEquals((byte) 0xFF, cpu.getA());
         assertEquals(0, cpu.getFlag(Cpu.Z));
         assertEquals(1, cpu.getFlag(Cpu.N));
     }
 
     @Test
     public void testEOR() {
-        cpu.a = (byte) 0xFF; // 1111 1111
+        cpu.setA((byte) 0xFF); // 1111 1111
         bus.write(0x1000, (byte) 0x0F); // 0000 1111
         cpu.EOR(0x1000);
         
-        assertEquals((byte) 0xF0, cpu.a); // 1111 0000
+        assertEquals((byte) 0xF0, cpu.getA()); // 1111 0000
         assertEquals(0, cpu.getFlag(Cpu.Z));
         assertEquals(1, cpu.getFlag(Cpu.N));
     }
 
     @Test
     public void testBIT() {
-        cpu.a = (byte) 0x0F; // 0000 1111
+        cpu.setA((byte) 0x0F); // 0000 1111
         // Memory: 1100 0000 (N=1, V=1)
         bus.write(0x1000, (byte) 0xC0); 
         
         cpu.BIT(0x1000);
         
         // A should not change
-        assertEquals(0x0F, cpu.a);
+        assertEquals(0x0F, cpu.getA());
         
         // (0x0F & 0xC0) == 0 -> Z=1
         assertEquals(1, cpu.getFlag(Cpu.Z));
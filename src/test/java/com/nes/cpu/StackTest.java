@@ -25,20 +25,20 @@ public class StackTest {
 
     @Test
     public void testPHA_PLA() {
-        cpu.a = 0x42;
+        cpu.setA(0x42);
         cpu.PHA(0);
         
-        cpu.a = 0x00;
+        cpu.setA(0x00);
         cpu.PLA(0);
         
-        assertEquals(0x42, cpu.a);
+        assertEquals(0x42, cpu.getA());
         assertEquals(0, cpu.getFlag(Cpu.Z));
         assertEquals(0, cpu.getFlag(Cpu.N));
     }
 
     @Test
     public void testPHP_PLP() {
-        cpu.status = (byte) (Cpu.Z | Cpu.C); // Z=1, C=1
+        cpu.setStatus((byte) (Cpu.Z | Cpu.C)); // Z=1, C=1
         
         cpu.PHP(0);
         
@@ -51,24 +51,24 @@ public class StackTest {
         // Z(1) | C(0) | B(4) | U(5) = 0011 0011 = 0x33
         assertEquals(0x33, pushedStatus & 0xFF);
         
-        cpu.status = 0;
+        cpu.setStatus((byte) 0);
         cpu.PLP(0);
         
         // Restored status should have Z and C set. B should be ignored (0). U should be 1.
         // 0010 0011 = 0x23
-        assertEquals(0x23, cpu.status & 0xFF);
+        assertEquals(0x23, cpu.getStatus() & 0xFF);
     }
     
     @Test
     public void testTSX_TXS() {
-        cpu.sp = (byte) 0xF0;
+        cpu.setSp((byte) 0xF0);
         cpu.TSX(0);
         
-        assertEquals((byte) 0xF0, cpu.x);
+        assertEquals((byte) 0xF0, cpu.getX());
         assertEquals(1, cpu.getFlag(Cpu.N)); // 0xF0 is negative
         
-        cpu.x = (byte) 0x88;
+        cpu.setX((byte) 0x88);
         cpu.TXS(0);
-        assertEquals((byte) 0x88, cpu.sp);
+        assertEquals((byte) 0x88, cpu.getSp());
     }
 }
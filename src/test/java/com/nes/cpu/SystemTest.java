@@ -62,4 +62,166 @@ public class SystemTest {
         // Should return to 0x8002
         assertEquals(0x8002, cpu.pc);
     }
+
+    @Test
+    public void testIrqLineHonoursInterruptDisable() {
+        // IRQ vector -> 0x9000; NOPs at 0x8000
+        bus.write(0xFFFE, (byte) 0x00);
+        bus.write(0xFFFF, (byte) 0x90);
+        for (int addr = 0x8000; addr < 0x8010; addr++) {
+            bus.write(addr, (byte) 0xEA);
+        }
+        
+        // Masked while I is set
+        cpu.SEI(0);
+        cpu.setIrq(true);
+        assertEquals(2, cpu.step());
+        assertEquals(0x8001, cpu.pc);
+        
+        // Taken at the next instruction boundary once I is clear
+        cpu.CLI(0);
+        cpu.step();
+        assertEquals(0x9000, cpu.pc);
+        assertEquals(1, cpu.getFlag(Cpu.I));
+        
+        // Pushed status has B clear
+        byte pushed = bus.read(0x0100 | ((cpu.getSp() + 1) & 0xFF));
+        assertEquals(0, pushed & Cpu.B);
+    }
+    
+    @Test
+    public void testIrqIsLevelSensitive() {
+        bus.write(0xFFFE, (byte) 0x00);
+        bus.write(0xFFFF, (byte) 0x90);
+        bus.write(0x9000, (byte) 0x40); // RTI
+        bus.write(0x8000, (byte) 0xEA); // NOP
+        cpu.CLI(0);
+        
+        // RTI restores I = 0, so a line still asserted interrupts again
+        cpu.setIrq(true);
+        cpu.step();
+        assertEquals(0x9000, cpu.pc);
+        cpu.step();
+        assertEquals(0x8000, cpu.pc);
+        cpu.step();
+        assertEquals(0x9000, cpu.pc);
+        
+        // Released: execution continues
+        cpu.step();
+        cpu.setIrq(false);
+        cpu.step();
+        assertEquals(0x8001, cpu.pc);
+    }
+    
+    /**
+     * CLI, then NOP / JMP $8001 forever; the IRQ handler at $9000 jumps to
+     * itself. Nothing accesses the APU, so only the bus can deliver its
+     * frame IRQ.
+     */
+    private static Bus apuIrqProgram(boolean catchUp) {
+        Bus system = new Bus();
+        Cpu irqCpu = new Cpu();
+        system.connectCpu(irqCpu);
+        irqCpu.connectBus(system);
+        int[] program = {0x58, 0xEA, 0x4C, 0x01, 0x80};
+        for (int i = 0; i < program.length; i++) {
+            system.write(0x8000 + i, (byte) program[i]);
+        }
+        system.write(0x9000, (byte) 0x4C);
+        system.write(0x9001, (byte) 0x00);
+        system.write(0x9002, (byte) 0x90);
+        system.write(0xFFFC, (byte) 0x00);
+        system.write(0xFFFD, (byte) 0x80);
+        system.write(0xFFFE, (byte) 0x00);
+        system.write(0xFFFF, (byte) 0x90);
+        system.reset();
+        system.setCatchUp(catchUp);
+        return system;
+    }
+
+    @Test
+    public void testApuFrameIrqIsTakenOnTime() {
+        // The 4-step frame counter raises its IRQ at CPU cycle 29829
+        Bus perCycle = apuIrqProgram(false);
+        while (perCycle.getCpu().pc != 0x9000 && perCycle.getSystemClockCounter() < 2 * Bus.FRAME_TICKS) {
+            perCycle.clock();
+        }
+        long taken = perCycle.getCpuCycle();
+        assertTrue(taken >= 29829 && taken <= 29829 + 4, "IRQ taken at cycle " + taken);
+        
+        // Catch-up scheduling takes it at the same point inside a single run()
+        Bus before = apuIrqProgram(true);
+        before.run(3 * (taken - 1));
+        assertNotEquals(0x9000, before.getCpu().pc);
+        Bus after = apuIrqProgram(true);
+        after.run(3 * (taken + 1));
+        assertEquals(0x9000, after.getCpu().pc);
+        // It interrupted the loop, not the end of the frame
+        assertEquals(0x80, after.read(0x0100 | ((after.getCpu().getSp() + 3) & 0xFF)) & 0xFF);
+    }
+
+    @Test
+    public void testNmiTakesPriorityOverIrq() {
+        bus.write(0xFFFA, (byte) 0x00);
+        bus.write(0xFFFB, (byte) 0xA0);
+        bus.write(0xFFFE, (byte) 0x00);
+        bus.write(0xFFFF, (byte) 0x90);
+        cpu.CLI(0);
+        
+        cpu.setIrq(true);
+        cpu.nmi();
+        cpu.step();
+        assertEquals(0xA000, cpu.pc);
+    }
+
+    @Test
+    public void testOamDmaStallsCpu() {
+        // STA $4014 (4 cycles) starting on cycle 0: the halt starts on an even cycle
+        bus.write(0x8000, (byte) 0x8D);
+        bus.write(0x8001, (byte) 0x14);
+        bus.write(0x8002, (byte) 0x40);
+        bus.connectCpu(cpu);
+        assertEquals(4 + 513, cpu.step());
+        
+        // Only the instruction that started the DMA is extended
+        bus.write(0x8003, (byte) 0xEA);
+        assertEquals(2, cpu.step());
+    }
+    
+    @Test
+    public void testOamDmaOddCycleAlignment() {
+        // LDA $00 (3 cycles), then STA $4014: the halt starts on cycle 7
+        bus.write(0x8000, (byte) 0xA5);
+        bus.write(0x8001, (byte) 0x00);
+        bus.write(0x8002, (byte) 0x8D);
+        bus.write(0x8003, (byte) 0x14);
+        bus.write(0x8004, (byte) 0x40);
+        cpu.reset();
+        bus.connectCpu(cpu);
+        bus.run(3 * 3);
+        assertEquals(0x8002, cpu.pc);
+        assertEquals(4 + 514, cpu.step());
+    }
+    
+    @Test
+    public void testOamDmaHaltsInBothSchedulers() {
+        // STA $4014 then NOPs: the halt delays the next instruction by the same
+        // number of master clock ticks in per-cycle and catch-up mode
+        for (boolean catchUp : new boolean[] {false, true}) {
+            setUp();
+            bus.write(0x8000, (byte) 0x8D);
+            bus.write(0x8001, (byte) 0x14);
+            bus.write(0x8002, (byte) 0x40);
+            for (int addr = 0x8003; addr < 0x8010; addr++) {
+                bus.write(addr, (byte) 0xEA);
+            }
+            bus.connectCpu(cpu);
+            bus.setCatchUp(catchUp);
+            
+            bus.run(3 * (4 + 513));
+            assertEquals(0x8003, cpu.pc, "catchUp=" + catchUp);
+            bus.run(1);
+            assertEquals(0x8004, cpu.pc, "catchUp=" + catchUp);
+        }
+    }
 }
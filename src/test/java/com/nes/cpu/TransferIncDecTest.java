@@ -25,32 +25,32 @@ public class TransferIncDecTest {
 
     @Test
     public void testTransfers() {
-        cpu.a = 0x42;
+        cpu.setA(0x42);
         cpu.TAX(0);
-        assertEquals(0x42, cpu.x);
+        assertEquals(0x42, cpu.getX());
         assertEquals(0, cpu.getFlag(Cpu.Z));
         
-        cpu.a = 0x00;
+        cpu.setA(0x00);
         cpu.TAY(0);
-        assertEquals(0x00, cpu.y);
+        assertEquals(0x00, cpu.getY());
         assertEquals(1, cpu.getFlag(Cpu.Z));
         
-        cpu.x = (byte) 0x80;
+        cpu.setX((byte) 0x80);
         cpu.TXA(0);
-        assertEquals((byte) 0x80, cpu.a);
+        assertEquals((byte) 0x80, cpu.getA());
         assertEquals(1, cpu.getFlag(Cpu.N));
     }
 
     @Test
     public void testIncDecRegister() {
-        cpu.x = 0x00;
+        cpu.setX(0x00);
         cpu.DEX(0);
-        assertEquals((byte) 0xFF, cpu.x);
+        assertEquals((byte) 0xFF, cpu.getX());
         assertEquals(1, cpu.getFlag(Cpu.N));
         
-        cpu.x = (byte) 0xFF;
+        cpu.setX((byte) 0xFF);
         cpu.INX(0);
-        assertEquals(0x00, cpu.x);
+        assertEquals(0x00, cpu.getX());
         assertEquals(1, cpu.getFlag(Cpu.Z));
     }
 
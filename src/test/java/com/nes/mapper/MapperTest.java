@@ -0,0 +1,423 @@
+package com.nes.mapper;
+
+import com.nes.Bus;
+import com.nes.Cartridge;
+import com.nes.Ppu;
+import com.nes.cpu.Cpu;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapperTest {
+
+    /**
+     * PRG where every byte holds its 8KB bank number, CHR where every byte
+     * holds its 1KB bank number.
+     */
+    private static Cartridge cartridge(int mapperId, int prgKb, int chrKb) {
+        byte[] prg = new byte[prgKb * 1024];
+        for (int i = 0; i < prg.length; i++) {
+            prg[i] = (byte) (i / 8192);
+        }
+        byte[] chr = new byte[chrKb * 1024];
+        for (int i = 0; i < chr.length; i++) {
+            chr[i] = (byte) (i / 1024);
+        }
+        return new Cartridge(prg, chr, mapperId, Cartridge.MIRROR_HORIZONTAL);
+    }
+
+    private static void mmc1Write(Cartridge cart, int addr, int value) {
+        for (int i = 0; i < 5; i++) {
+            cart.cpuWrite(addr, (byte) ((value >> i) & 0x01));
+        }
+    }
+
+    @Test
+    public void testFactory() {
+        for (int id : new int[] {0, 1, 2, 3, 4, 7}) {
+            assertTrue(Mapper.isSupported(id));
+            assertEquals(id, cartridge(id, 32, 8).getMapper().getId());
+        }
+        assertFalse(Mapper.isSupported(5));
+        assertThrows(IllegalArgumentException.class, () -> cartridge(5, 32, 8));
+    }
+
+    @Test
+    public void testUxRom() {
+        Cartridge cart = cartridge(2, 128, 8);
+        // Last 16KB fixed at 0xC000
+        assertEquals(14, cart.cpuRead(0xC000));
+        assertEquals(15, cart.cpuRead(0xE000));
+
+        cart.cpuWrite(0x8000, (byte) 3);
+        assertEquals(6, cart.cpuRead(0x8000));
+        assertEquals(7, cart.cpuRead(0xA000));
+        assertEquals(14, cart.cpuRead(0xC000));
+    }
+
+    @Test
+    public void testAxRomSingleScreenMirroring() {
+        Cartridge cart = cartridge(7, 256, 8);
+        assertEquals(Cartridge.MIRROR_SINGLE_LOWER, cart.getMirrorMode());
+
+        cart.cpuWrite(0x8000, (byte) 0x12);
+        assertEquals(8, cart.cpuRead(0x8000));
+        assertEquals(11, cart.cpuRead(0xE000));
+        assertEquals(Cartridge.MIRROR_SINGLE_UPPER, cart.getMirrorMode());
+        assertArrayEquals(new int[] {0x400, 0x400, 0x400, 0x400}, cart.getNametables());
+    }
+
+    @Test
+    public void testMmc1() {
+        Cartridge cart = cartridge(1, 256, 128);
+        // Power-on: PRG mode 3, last bank fixed at 0xC000
+        assertEquals(0, cart.cpuRead(0x8000));
+        assertEquals(30, cart.cpuRead(0xC000));
+
+        mmc1Write(cart, 0xE000, 5);
+        assertEquals(10, cart.cpuRead(0x8000));
+        assertEquals(30, cart.cpuRead(0xC000));
+
+        // Vertical mirroring, PRG mode 2, 4KB CHR banks
+        mmc1Write(cart, 0x8000, 0x1A);
+        assertEquals(Cartridge.MIRROR_VERTICAL, cart.getMirrorMode());
+        assertEquals(0, cart.cpuRead(0x8000));
+        assertEquals(10, cart.cpuRead(0xC000));
+
+        mmc1Write(cart, 0xA000, 3);
+        mmc1Write(cart, 0xC000, 6);
+        assertEquals(12, cart.ppuRead(0x0000));
+        assertEquals(15, cart.ppuRead(0x0C00));
+        assertEquals(24, cart.ppuRead(0x1000));
+        assertEquals(12, cart.getTileCache().planes(0x0000) & 0xFF);
+
+        // Bit 7 resets the shift register mid-sequence
+        cart.cpuWrite(0xE000, (byte) 1);
+        cart.cpuWrite(0xE000, (byte) 0x80);
+        mmc1Write(cart, 0xE000, 2);
+        assertEquals(4, cart.cpuRead(0x8000));
+    }
+
+    @Test
+    public void testMmc3() {
+        Cartridge cart = cartridge(4, 128, 256);
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+        assertEquals(14, bus.read(0xC000));
+        assertEquals(15, bus.read(0xE000));
+
+        // R6 = 3, R7 = 5
+        bus.write(0x8000, (byte) 6);
+        bus.write(0x8001, (byte) 3);
+        bus.write(0x8000, (byte) 7);
+        bus.write(0x8001, (byte) 5);
+        assertEquals(3, bus.read(0x8000));
+        assertEquals(5, bus.read(0xA000));
+
+        // PRG mode 1 swaps 0x8000 and 0xC000; the page table follows
+        bus.write(0x8000, (byte) 0x46);
+        assertEquals(14, bus.read(0x8000));
+        assertEquals(3, bus.read(0xC000));
+        assertEquals(bus.decodeRead(0x8123), bus.read(0x8123));
+
+        // R0 = 2KB bank at 0x0000, R2 = 1KB bank at 0x1000
+        bus.write(0x8000, (byte) 0);
+        bus.write(0x8001, (byte) 9);
+        bus.write(0x8000, (byte) 2);
+        bus.write(0x8001, (byte) 40);
+        assertEquals(8, cart.ppuRead(0x0000));
+        assertEquals(9, cart.ppuRead(0x0400));
+        assertEquals(40, cart.ppuRead(0x1000));
+
+        // CHR inversion moves them to the other pattern table
+        bus.write(0x8000, (byte) 0x80);
+        assertEquals(8, cart.ppuRead(0x1000));
+        assertEquals(40, cart.ppuRead(0x0000));
+
+        bus.write(0xA000, (byte) 0);
+        assertEquals(Cartridge.MIRROR_VERTICAL, cart.getMirrorMode());
+        bus.write(0xA000, (byte) 1);
+        assertEquals(Cartridge.MIRROR_HORIZONTAL, cart.getMirrorMode());
+    }
+
+    @Test
+    public void testMmc3IrqCounter() {
+        Cartridge cart = cartridge(4, 128, 256);
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+        Mapper mmc3 = cart.getMapper();
+
+        // Latch 3, reload, enable
+        bus.write(0xC000, (byte) 3);
+        bus.write(0xC001, (byte) 0);
+        bus.write(0xE001, (byte) 0);
+        assertEquals(4, mmc3.getIrqCountdown());
+
+        // First rise reloads, three more count down to zero
+        for (int i = 0; i < 3; i++) {
+            cart.ppuA12Rise();
+            assertFalse(cart.isIrqAsserted());
+        }
+        assertEquals(1, mmc3.getIrqCountdown());
+        cart.ppuA12Rise();
+        assertTrue(cart.isIrqAsserted());
+
+        // Level stays until acknowledged through 0xE000
+        cart.ppuA12Rise();
+        assertTrue(cart.isIrqAsserted());
+        bus.write(0xE000, (byte) 0);
+        assertFalse(cart.isIrqAsserted());
+        assertEquals(-1, mmc3.getIrqCountdown());
+    }
+
+    @Test
+    public void testPpuClocksMmc3OncePerRenderedLine() {
+        Cartridge cart = cartridge(4, 128, 256);
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+
+        // Background at 0x0000, 8x8 sprites at 0x1000, rendering on
+        bus.getPpu().cpuWrite(0x2000, (byte) 0x08);
+        bus.getPpu().cpuWrite(0x2001, (byte) 0x18);
+
+        // IRQ after 10 rises
+        bus.write(0xC000, (byte) 9);
+        bus.write(0xC001, (byte) 0);
+        bus.write(0xE001, (byte) 0);
+        int countdown = cart.getMapper().getIrqCountdown();
+        assertEquals(10, countdown);
+
+        // Scanline n fetches its sprites at dot 320: the 10th rise is on line 9
+        bus.run(9 * 341 + 320);
+        assertFalse(cart.isIrqAsserted());
+        bus.run(1);
+        assertTrue(cart.isIrqAsserted());
+        assertEquals(countdown - 1, bus.getPpu().getScanline());
+    }
+
+    @Test
+    public void testStateRestoresBanks() {
+        Cartridge cart = cartridge(1, 256, 128);
+        mmc1Write(cart, 0x8000, 0x12);
+        mmc1Write(cart, 0xE000, 7);
+        mmc1Write(cart, 0xA000, 9);
+
+        ByteBuffer buffer = ByteBuffer.allocate(cart.stateSize());
+        cart.saveState(buffer);
+        assertEquals(cart.stateSize(), buffer.position());
+
+        Cartridge restored = cartridge(1, 256, 128);
+        buffer.flip();
+        restored.loadState(buffer);
+        for (int addr = 0x8000; addr <= 0xFFFF; addr += 0x2000) {
+            assertEquals(cart.cpuRead(addr), restored.cpuRead(addr));
+        }
+        for (int addr = 0; addr < 0x2000; addr += 0x400) {
+            assertEquals(cart.ppuRead(addr), restored.ppuRead(addr));
+        }
+        assertEquals(cart.getMirrorMode(), restored.getMirrorMode());
+    }
+
+    @Test
+    public void testMmc1PrgRamDisable() {
+        Cartridge cart = cartridge(1, 256, 128);
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+        bus.write(0x6000, (byte) 0x42);
+        assertEquals(0x42, bus.read(0x6000));
+
+        // Bit 4 of the PRG register disables the RAM without changing the bank
+        mmc1Write(cart, 0xE000, 0x13);
+        assertEquals(3, bus.read(0x8000) / 2);
+        assertEquals(0x00, bus.read(0x6000));
+        bus.write(0x6000, (byte) 0x55);
+
+        mmc1Write(cart, 0xE000, 0x03);
+        assertEquals(0x42, bus.read(0x6000));
+    }
+
+    @Test
+    public void testMmc3PrgRamProtect() {
+        Cartridge cart = cartridge(4, 256, 256);
+        Bus bus = new Bus();
+        bus.insertCartridge(cart);
+        bus.write(0x7FFF, (byte) 0x42);
+        assertEquals(0x42, bus.read(0x7FFF));
+
+        // Enabled but write-protected
+        cart.cpuWrite(0xA001, (byte) 0xC0);
+        bus.write(0x7FFF, (byte) 0x55);
+        assertEquals(0x42, bus.read(0x7FFF));
+
+        // Disabled: open bus
+        cart.cpuWrite(0xA001, (byte) 0x00);
+        assertEquals(0x00, bus.read(0x7FFF));
+        assertEquals(0x00, bus.decodeRead(0x7FFF));
+
+        // The protect register is part of the state
+        ByteBuffer buffer = ByteBuffer.allocate(cart.stateSize());
+        cart.saveState(buffer);
+        cart.cpuWrite(0xA001, (byte) 0x80);
+        assertEquals(0x42, bus.read(0x7FFF));
+        buffer.flip();
+        cart.loadState(buffer);
+        assertEquals(0x00, bus.read(0x7FFF));
+    }
+
+    /**
+     * LDA #value / STA addr
+     */
+    private static void store(List<Integer> code, int addr, int value) {
+        code.addAll(List.of(0xA9, value, 0x8D, addr & 0xFF, addr >> 8));
+    }
+
+    /**
+     * The five LDA/STA pairs that load an MMC1 register
+     */
+    private static void storeMmc1(List<Integer> code, int addr, int value) {
+        for (int i = 0; i < 5; i++) {
+            store(code, addr, (value >> i) & 0x01);
+        }
+    }
+
+    /**
+     * Run a program at $8000 under the DOT and SCANLINE renderers until it
+     * sets $10, then to the end of that frame's visible lines, and check
+     * both draw the same frame. Tile $41 fills the nametable at $2000 and
+     * tile $81 the one at $2400, shown with vertical mirroring; every 1KB
+     * CHR bank has its own pattern.
+     * @param setUp Mapper writes that select vertical mirroring and the initial banks
+     * @return The frame
+     */
+    private static int[] assertSameFrameAsDot(int mapperId, List<Integer> code, Consumer<Bus> setUp, int ppuCtrl) {
+        byte[] prg = new byte[32768];
+        for (int i = 0; i < code.size(); i++) {
+            prg[i] = (byte) (int) code.get(i);
+        }
+        // Reset to $8000 and IRQ to $8040, from the last bank, which both
+        // mappers fix at the top
+        prg[prg.length - 3] = (byte) 0x80;
+        prg[prg.length - 2] = 0x40;
+        prg[prg.length - 1] = (byte) 0x80;
+        byte[] chr = new byte[32768];
+        for (int i = 0; i < chr.length; i++) {
+            chr[i] = (byte) (0xFF >> (i / 1024 % 8));
+        }
+
+        int[][] frames = new int[2][];
+        for (int n = 0; n < 2; n++) {
+            Bus bus = new Bus();
+            Cpu cpu = new Cpu();
+            bus.connectCpu(cpu);
+            bus.insertCartridge(new Cartridge(prg, chr, mapperId, Cartridge.MIRROR_VERTICAL));
+            cpu.connectBus(bus);
+            bus.reset();
+            bus.setCatchUp(true);
+            Ppu ppu = bus.getPpu();
+            ppu.setRenderer(n == 0 ? Ppu.Renderer.DOT : Ppu.Renderer.SCANLINE);
+            setUp.accept(bus);
+
+            for (int table = 0; table < 2; table++) {
+                ppu.cpuWrite(0x2006, (byte) (0x20 + table * 4));
+                ppu.cpuWrite(0x2006, (byte) 0x00);
+                for (int i = 0; i < 960; i++) {
+                    ppu.cpuWrite(0x2007, (byte) (0x41 + table * 0x40));
+                }
+            }
+            ppu.cpuWrite(0x2006, (byte) 0x3F);
+            ppu.cpuWrite(0x2006, (byte) 0x00);
+            for (int color : new int[] {0x0F, 0x16, 0x2A, 0x30}) {
+                ppu.cpuWrite(0x2007, (byte) color);
+            }
+            // Sprite 0 over the background at (50, 10)
+            ppu.cpuWrite(0x2003, (byte) 0x00);
+            for (int b : new int[] {10, 0x41, 0x00, 50}) {
+                ppu.cpuWrite(0x2004, (byte) b);
+            }
+            ppu.cpuWrite(0x2000, (byte) ppuCtrl);
+            ppu.cpuWrite(0x2005, (byte) 0x00);
+            ppu.cpuWrite(0x2005, (byte) 0x00);
+            ppu.cpuWrite(0x2001, (byte) 0x1E);
+
+            for (int i = 0; i < 3 * Bus.FRAME_TICKS && bus.peek(0x0010) == 0; i++) {
+                bus.run(1);
+            }
+            assertEquals(1, bus.peek(0x0010));
+            while (ppu.getScanline() != 240) {
+                bus.run(1);
+            }
+            frames[n] = ppu.getFrameBuffer();
+        }
+
+        assertArrayEquals(frames[0], frames[1], "Mapper " + mapperId);
+        // The banks and mirroring changed partway down the frame
+        assertFalse(Arrays.equals(Arrays.copyOfRange(frames[0], 5 * 256, 6 * 256),
+                Arrays.copyOfRange(frames[0], 100 * 256, 101 * 256)));
+        return frames[0];
+    }
+
+    @Test
+    public void testMmc1MidFrameWritesMatchDot() {
+        // Wait for VBlank, then for sprite 0 hit on the next frame; a few
+        // lines down, switch the CHR bank at $0000 and then the mirroring
+        List<Integer> code = new ArrayList<>(List.of(
+                0x78,                   // SEI
+                0x2C, 0x02, 0x20,       // BIT $2002
+                0x10, 0xFB,             // BPL
+                0x2C, 0x02, 0x20,       // BIT $2002
+                0x70, 0xFB,             // BVS
+                0x2C, 0x02, 0x20,       // BIT $2002
+                0x50, 0xFB,             // BVC
+                0xA2, 0x47,             // LDX #$47
+                0xCA,                   // DEX
+                0xD0, 0xFD));           // BNE
+        storeMmc1(code, 0xA000, 3);
+        storeMmc1(code, 0x8000, 0x1F);
+        code.addAll(List.of(0xE6, 0x10, 0x4C, code.size() + 2, 0x80));  // INC $10, JMP *
+
+        // 4KB CHR mode, last PRG bank fixed, vertical mirroring
+        assertSameFrameAsDot(1, code, bus -> {
+            for (int[] write : new int[][] {{0x8000, 0x1E}, {0xA000, 0}, {0xC000, 1}}) {
+                for (int i = 0; i < 5; i++) {
+                    bus.write(write[0], (byte) ((write[1] >> i) & 0x01));
+                }
+            }
+        }, 0x01);
+    }
+
+    @Test
+    public void testMmc3IrqHandlerWritesMatchDot() {
+        // Inhibit the APU frame IRQ, wait for VBlank, then have the scanline
+        // counter interrupt at line 20
+        List<Integer> code = new ArrayList<>(List.of(
+                0x78,                   // SEI
+                0x2C, 0x02, 0x20,       // BIT $2002
+                0x10, 0xFB));           // BPL
+        store(code, 0x4017, 0x40);
+        store(code, 0xC000, 20);
+        store(code, 0xC001, 0);
+        store(code, 0xE001, 0);
+        code.add(0x58);                                                   // CLI
+        code.addAll(List.of(0x4C, code.size(), 0x80));                   // JMP *
+
+        // IRQ handler at $8040: R0 = 4, horizontal mirroring, then
+        // acknowledge and disable the IRQ
+        while (code.size() < 0x40) {
+            code.add(0xEA);
+        }
+        store(code, 0x8000, 0);
+        store(code, 0x8001, 4);
+        store(code, 0xA000, 1);
+        store(code, 0xE000, 0);
+        code.addAll(List.of(0xE6, 0x10, 0x40));                          // INC $10, RTI
+
+        // Sprites from $1000 so A12 rises once per line
+        assertSameFrameAsDot(4, code, bus -> bus.write(0xA000, (byte) 0), 0x09);
+    }
+}